@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 
   private static final org.apache.thrift.protocol.TField KEY_FIELD_DESC = new org.apache.thrift.protocol.TField("key", org.apache.thrift.protocol.TType.STRING, (short)1);
   private static final org.apache.thrift.protocol.TField VALUES_FIELD_DESC = new org.apache.thrift.protocol.TField("values", org.apache.thrift.protocol.TType.LIST, (short)2);
+  private static final org.apache.thrift.protocol.TField ENCODED_VALUES_FIELD_DESC = new org.apache.thrift.protocol.TField("encodedValues", org.apache.thrift.protocol.TType.STRING, (short)3);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -44,11 +45,13 @@ import org.slf4j.LoggerFactory;
 
   public ByteBuffer key; // required
   public List<VersionedValue> values; // required
+  public ByteBuffer encodedValues; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
     KEY((short)1, "key"),
-    VALUES((short)2, "values");
+    VALUES((short)2, "values"),
+    ENCODED_VALUES((short)3, "encodedValues");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -67,6 +70,8 @@ import org.slf4j.LoggerFactory;
           return KEY;
         case 2: // VALUES
           return VALUES;
+        case 3: // ENCODED_VALUES
+          return ENCODED_VALUES;
         default:
           return null;
       }
@@ -107,6 +112,7 @@ import org.slf4j.LoggerFactory;
   }
 
   // isset id assignments
+  private _Fields optionals[] = {_Fields.ENCODED_VALUES};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -115,6 +121,8 @@ import org.slf4j.LoggerFactory;
     tmpMap.put(_Fields.VALUES, new org.apache.thrift.meta_data.FieldMetaData("values", org.apache.thrift.TFieldRequirementType.REQUIRED, 
         new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
             new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, VersionedValue.class))));
+    tmpMap.put(_Fields.ENCODED_VALUES, new org.apache.thrift.meta_data.FieldMetaData("encodedValues", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING        , true)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(KeyedValues.class, metaDataMap);
   }
@@ -146,6 +154,10 @@ import org.slf4j.LoggerFactory;
       }
       this.values = __this__values;
     }
+    if (other.isSetEncodedValues()) {
+      this.encodedValues = org.apache.thrift.TBaseHelper.copyBinary(other.encodedValues);
+;
+    }
   }
 
   public KeyedValues deepCopy() {
@@ -156,6 +168,7 @@ import org.slf4j.LoggerFactory;
   public void clear() {
     this.key = null;
     this.values = null;
+    this.encodedValues = null;
   }
 
   public byte[] getKey() {
@@ -231,6 +244,40 @@ import org.slf4j.LoggerFactory;
     }
   }
 
+  public byte[] getEncodedValues() {
+    setEncodedValues(org.apache.thrift.TBaseHelper.rightSize(encodedValues));
+    return encodedValues == null ? null : encodedValues.array();
+  }
+
+  public ByteBuffer bufferForEncodedValues() {
+    return encodedValues;
+  }
+
+  public KeyedValues setEncodedValues(byte[] encodedValues) {
+    setEncodedValues(encodedValues == null ? (ByteBuffer)null : ByteBuffer.wrap(encodedValues));
+    return this;
+  }
+
+  public KeyedValues setEncodedValues(ByteBuffer encodedValues) {
+    this.encodedValues = encodedValues;
+    return this;
+  }
+
+  public void unsetEncodedValues() {
+    this.encodedValues = null;
+  }
+
+  /** Returns true if field encodedValues is set (has been assigned a value) and false otherwise */
+  public boolean isSetEncodedValues() {
+    return this.encodedValues != null;
+  }
+
+  public void setEncodedValuesIsSet(boolean value) {
+    if (!value) {
+      this.encodedValues = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case KEY:
@@ -249,6 +296,14 @@ import org.slf4j.LoggerFactory;
       }
       break;
 
+    case ENCODED_VALUES:
+      if (value == null) {
+        unsetEncodedValues();
+      } else {
+        setEncodedValues((ByteBuffer)value);
+      }
+      break;
+
     }
   }
 
@@ -260,6 +315,9 @@ import org.slf4j.LoggerFactory;
     case VALUES:
       return getValues();
 
+    case ENCODED_VALUES:
+      return getEncodedValues();
+
     }
     throw new IllegalStateException();
   }
@@ -275,6 +333,8 @@ import org.slf4j.LoggerFactory;
       return isSetKey();
     case VALUES:
       return isSetValues();
+    case ENCODED_VALUES:
+      return isSetEncodedValues();
     }
     throw new IllegalStateException();
   }
@@ -310,6 +370,15 @@ import org.slf4j.LoggerFactory;
         return false;
     }
 
+    boolean this_present_encodedValues = true && this.isSetEncodedValues();
+    boolean that_present_encodedValues = true && that.isSetEncodedValues();
+    if (this_present_encodedValues || that_present_encodedValues) {
+      if (!(this_present_encodedValues && that_present_encodedValues))
+        return false;
+      if (!this.encodedValues.equals(that.encodedValues))
+        return false;
+    }
+
     return true;
   }
 
@@ -346,6 +415,16 @@ import org.slf4j.LoggerFactory;
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetEncodedValues()).compareTo(typedOther.isSetEncodedValues());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetEncodedValues()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.encodedValues, typedOther.encodedValues);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -381,6 +460,16 @@ import org.slf4j.LoggerFactory;
       sb.append(this.values);
     }
     first = false;
+    if (isSetEncodedValues()) {
+      if (!first) sb.append(", ");
+      sb.append("encodedValues:");
+      if (this.encodedValues == null) {
+        sb.append("null");
+      } else {
+        org.apache.thrift.TBaseHelper.toString(this.encodedValues, sb);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -457,6 +546,14 @@ import org.slf4j.LoggerFactory;
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 3: // ENCODED_VALUES
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+              struct.encodedValues = iprot.readBinary();
+              struct.setEncodedValuesIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -489,6 +586,13 @@ import org.slf4j.LoggerFactory;
         }
         oprot.writeFieldEnd();
       }
+      if (struct.encodedValues != null) {
+        if (struct.isSetEncodedValues()) {
+          oprot.writeFieldBegin(ENCODED_VALUES_FIELD_DESC);
+          oprot.writeBinary(struct.encodedValues);
+          oprot.writeFieldEnd();
+        }
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -514,6 +618,14 @@ import org.slf4j.LoggerFactory;
           _iter12.write(oprot);
         }
       }
+      BitSet optionals = new BitSet();
+      if (struct.isSetEncodedValues()) {
+        optionals.set(0);
+      }
+      oprot.writeBitSet(optionals, 1);
+      if (struct.isSetEncodedValues()) {
+        oprot.writeBinary(struct.encodedValues);
+      }
     }
 
     @Override
@@ -533,6 +645,11 @@ import org.slf4j.LoggerFactory;
         }
       }
       struct.setValuesIsSet(true);
+      BitSet incoming = iprot.readBitSet(1);
+      if (incoming.get(0)) {
+        struct.encodedValues = iprot.readBinary();
+        struct.setEncodedValuesIsSet(true);
+      }
     }
   }
 
@@ -32,7 +32,8 @@ import org.apache.thrift.TEnum;
   REGISTER_REQUEST(18),
   REGISTER_RESPONSE(19),
   CLUSTER_JOIN_REQUEST(20),
-  CLUSTER_JOIN_RESPONSE(21);
+  CLUSTER_JOIN_RESPONSE(21),
+  SYNC_DIGEST(22);
 
   private final int value;
 
@@ -95,6 +96,8 @@ import org.apache.thrift.TEnum;
         return CLUSTER_JOIN_REQUEST;
       case 21:
         return CLUSTER_JOIN_RESPONSE;
+      case 22:
+        return SYNC_DIGEST;
       default:
         return null;
     }
@@ -17,19 +17,110 @@
 
 package net.floodlightcontroller.core;
 
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This is a context object where floodlight listeners can register 
  * and later retrieve context information associated with an
  * event
+ *
+ * Values are kept in an array indexed by slot. Each key gets a slot the
+ * first time it is registered, normally once at class or module init
+ * through {@link FloodlightContextStore}, so that storing and retrieving
+ * a value does not hash or allocate. Keys beyond {@link #MAX_SLOTS} fall
+ * back to a map that is only created when needed.
+ *
+ * A context is used by one thread at a time. It may be handed to another
+ * thread through a queue, but it must not be accessed concurrently.
  * @author readams
  */
 public class FloodlightContext {
-    protected ConcurrentHashMap<String, Object> storage =
-            new ConcurrentHashMap<String, Object>();
+    public static final int MAX_SLOTS = 256;
+    private static final int INITIAL_SLOTS = 8;
 
+    private static final ConcurrentMap<String, Integer> slotIndex =
+            new ConcurrentHashMap<String, Integer>();
+    private static volatile int slotCount = 0;
+
+    protected ConcurrentHashMap<String, Object> storage;
+
+    private Object[] slots = new Object[Math.max(INITIAL_SLOTS, slotCount)];
+    private int slotsInUse = 0; /* highest slot set + 1, to limit clear() */
+
+    /**
+     * Get the slot of a key, registering the key if it does not have one.
+     * @param key
+     * @return the slot, or -1 if all {@link #MAX_SLOTS} slots are taken
+     */
+    public static int registerKey(String key) {
+        Integer slot = slotIndex.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        synchronized (slotIndex) {
+            slot = slotIndex.get(key);
+            if (slot == null) {
+                if (slotCount >= MAX_SLOTS) {
+                    return -1;
+                }
+                slot = slotCount++;
+                slotIndex.put(key, slot);
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Get the slot of a key without registering it.
+     * @param key
+     * @return the slot, or -1 if the key has not been registered
+     */
+    public static int getSlot(String key) {
+        Integer slot = slotIndex.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    Object getSlotValue(int slot) {
+        return slot < slots.length ? slots[slot] : null;
+    }
+
+    void setSlotValue(int slot, Object value) {
+        if (slot >= slots.length) {
+            if (value == null) {
+                return;
+            }
+            slots = Arrays.copyOf(slots, Math.min(MAX_SLOTS, Math.max(slot + 1, slots.length * 2)));
+        }
+        slots[slot] = value;
+        if (slot >= slotsInUse) {
+            slotsInUse = slot + 1;
+        }
+    }
+
+    /**
+     * Remove all values so that the context can be reused for another event.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0, slotsInUse, null);
+        slotsInUse = 0;
+        if (storage != null) {
+            storage.clear();
+        }
+    }
+
+    /**
+     * Get the map holding values of keys that do not have a slot. Values
+     * stored through {@link FloodlightContextStore} are normally kept in
+     * slots and are not visible here; use the store to access them.
+     * @return the map
+     */
+    @Deprecated
     public ConcurrentHashMap<String, Object> getStorage() {
+        if (storage == null) {
+            storage = new ConcurrentHashMap<String, Object>();
+        }
         return storage;
     }
 }
@@ -17,18 +17,87 @@
 
 package net.floodlightcontroller.core;
 
+/**
+ * Typed access to values in a {@link FloodlightContext}. Keys are strings,
+ * each mapped to a slot of the context the first time a value is put. The
+ * slot of the last key used is remembered, so the common case of a store
+ * used with one constant key needs no map lookup. Callers on a hot path can
+ * also get the slot once with {@link #registerKey(String)} and use the
+ * slot-based methods.
+ */
 public class FloodlightContextStore<V> {
+
+    /* Last key used and its slot; replaced together */
+    private static final class KeySlot {
+        private final String key;
+        private final int slot;
+
+        private KeySlot(String key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+    }
+
+    private volatile KeySlot last = new KeySlot(null, -1);
+
+    /**
+     * Register a key for use with this store.
+     * @param key
+     * @return the slot of the key, or -1 if no slots are left
+     */
+    public int registerKey(String key) {
+        return FloodlightContext.registerKey(key);
+    }
+
+    private int slotFor(String key, boolean register) {
+        KeySlot ks = last;
+        if (ks.key == key) { /* identity check; keys are usually constants */
+            return ks.slot;
+        }
+        int slot = register ? FloodlightContext.registerKey(key) : FloodlightContext.getSlot(key);
+        if (slot >= 0) {
+            last = new KeySlot(key, slot);
+        }
+        return slot;
+    }
     
     @SuppressWarnings("unchecked")
     public V get(FloodlightContext bc, String key) {
-        return (V)bc.storage.get(key);
+        int slot = slotFor(key, false);
+        if (slot >= 0) {
+            return (V)bc.getSlotValue(slot);
+        }
+        return bc.storage == null ? null : (V)bc.storage.get(key);
     }
     
     public void put(FloodlightContext bc, String key, V value) {
-        bc.storage.put(key, value);
+        int slot = slotFor(key, true);
+        if (slot >= 0) {
+            bc.setSlotValue(slot, value);
+        } else {
+            bc.getStorage().put(key, value);
+        }
     }
     
     public void remove(FloodlightContext bc, String key) {
-        bc.storage.remove(key);
+        int slot = slotFor(key, false);
+        if (slot >= 0) {
+            bc.setSlotValue(slot, null);
+        } else if (bc.storage != null) {
+            bc.storage.remove(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(FloodlightContext bc, int slot) {
+        return (V)bc.getSlotValue(slot);
+    }
+
+    public void put(FloodlightContext bc, int slot, V value) {
+        bc.setSlotValue(slot, value);
+    }
+
+    public void remove(FloodlightContext bc, int slot) {
+        bc.setSlotValue(slot, null);
     }
 }
@@ -46,7 +46,10 @@ public interface IOFMessageWriter{
      * Writes the list of messages to the output stream.
      *
      * Any messages that could not be written due to channel disconnect
-     * will be returned.
+     * will be returned. Messages are written asynchronously, so a message
+     * that is not returned can still be lost if the connection goes down
+     * before it is sent; follow it with a request, such as a barrier, and
+     * wait for the reply to know that it reached the switch.
      *
      * @param msglist
      * @return list of messages that could not be written
@@ -47,6 +47,7 @@ import net.floodlightcontroller.core.IInfoProvider;
 import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IShutdownListener;
 import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.RoleInfo;
@@ -163,6 +164,16 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     
     protected static boolean alwaysDecodeEth = true;
 
+    /*
+     * Sharded dispatch of OF messages to listeners on worker threads.
+     * 0 threads dispatches inline on the Netty I/O threads.
+     */
+    private static int dispatchThreads = 0;
+    private static int dispatchQueueSize = 1024;
+    private static ShardedMessageDispatcher.OverflowPolicy dispatchOverflowPolicy =
+            ShardedMessageDispatcher.OverflowPolicy.DROP;
+    private static volatile ShardedMessageDispatcher messageDispatcher;
+
     @Override
     public ModuleLoaderState getModuleLoaderState(){
         return moduleLoaderState;
@@ -325,7 +336,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @param flcontext
      */
     protected void flcontext_free(FloodlightContext flcontext) {
-        flcontext.getStorage().clear();
+        flcontext.clear();
         flcontext_cache.get().push(flcontext);
     }
 
@@ -348,6 +359,21 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     @Override
     public void handleMessage(IOFSwitch sw, OFMessage m,
                                  FloodlightContext bContext) {
+        ShardedMessageDispatcher dispatcher = messageDispatcher;
+        if (dispatcher != null) {
+            dispatcher.dispatch(sw, m, bContext);
+        } else {
+            dispatchToListeners(sw, m, bContext);
+        }
+    }
+
+    /**
+     * Run the listener chain for a message on the current thread. This is
+     * either the I/O thread that read the message or, if sharded dispatch
+     * is enabled, the worker thread of the switch's shard.
+     */
+    private void dispatchToListeners(IOFSwitch sw, OFMessage m,
+                                 FloodlightContext bContext) {
         Ethernet eth = null;
         log.trace("Dispatching OFMessage to listeners.");
         if (this.notifiedRole == HARole.STANDBY) {
@@ -640,6 +666,38 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         		log.error("Could not parse 'deserializeEthPacketIns' of {}. Using default setting of {}", decodeEth, alwaysDecodeEth);
         	}
         }        
+        String threads = configParams.get("dispatchThreads");
+        if (!Strings.isNullOrEmpty(threads)) {
+            try {
+                dispatchThreads = Integer.parseInt(threads.trim());
+            } catch (NumberFormatException e) {
+                throw new FloodlightModuleException("Invalid 'dispatchThreads' of " + threads);
+            }
+        }
+        String queueSize = configParams.get("dispatchQueueSize");
+        if (!Strings.isNullOrEmpty(queueSize)) {
+            try {
+                dispatchQueueSize = Integer.parseInt(queueSize.trim());
+            } catch (NumberFormatException e) {
+                throw new FloodlightModuleException("Invalid 'dispatchQueueSize' of " + queueSize);
+            }
+        }
+        String overflow = configParams.get("dispatchOverflowPolicy");
+        if (!Strings.isNullOrEmpty(overflow)) {
+            try {
+                dispatchOverflowPolicy = ShardedMessageDispatcher.OverflowPolicy.fromString(overflow);
+            } catch (IllegalArgumentException e) {
+                throw new FloodlightModuleException(e.getMessage());
+            }
+        }
+        if (dispatchThreads > 0) {
+            log.info("OF messages will be dispatched to listeners on {} worker thread(s) with a queue of {} each. {} on overflow",
+                    new Object[] { dispatchThreads, dispatchQueueSize, dispatchOverflowPolicy });
+        } else {
+            log.info("OF messages will be dispatched to listeners on the I/O threads. "
+                    + "Set 'dispatchThreads' to use dedicated worker threads");
+        }
+
         if (alwaysDecodeEth) {
 	        log.warn("Controller will automatically deserialize all Ethernet packet-in messages. "
 	        		+ "Set 'deserializeEthPacketIns' to 'FALSE' if this feature is not "
@@ -678,6 +736,22 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         // Switch Service Startup
         switchService.registerLogicalOFMessageCategory(LogicalOFMessageCategory.MAIN);
         counters = new ControllerCounters(debugCounterService);
+
+        /* The dispatcher is static; stop the workers of any earlier controller */
+        stopMessageDispatcher();
+        if (dispatchThreads > 0) {
+            messageDispatcher = new ShardedMessageDispatcher(
+                    new ShardedMessageDispatcher.IMessageHandler() {
+                        @Override
+                        public void handle(IOFSwitch sw, OFMessage m, FloodlightContext bContext) {
+                            dispatchToListeners(sw, m, bContext);
+                        }
+                    },
+                    dispatchThreads, dispatchQueueSize, dispatchOverflowPolicy,
+                    debugCounterService, counters.prefix);
+        } else {
+            messageDispatcher = null;
+        }
      }
 
     /**
@@ -715,6 +789,28 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         }
         
         addInfoProvider("summary", this);
+
+        if (messageDispatcher != null) {
+            messageDispatcher.start();
+            shutdownService.registerShutdownListener(new IShutdownListener() {
+                @Override
+                public void floodlightIsShuttingDown() {
+                    stopMessageDispatcher();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop the worker threads of the sharded message dispatcher, if any.
+     * Messages still queued are discarded.
+     */
+    void stopMessageDispatcher() {
+        ShardedMessageDispatcher dispatcher = messageDispatcher;
+        messageDispatcher = null;
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
     }
     
     private void readFlowPriorityConfigurationFromStorage() {
@@ -23,14 +23,19 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.util.Timeout;
 import io.netty.util.Timer;
 import io.netty.util.TimerTask;
@@ -102,6 +107,17 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 
 	private volatile U64 latency;
 
+	/*
+	 * Write coalescing. When enabled, writers append to pendingWrites and at
+	 * most one FlushPendingWritesTask is queued on the EventLoop at a time.
+	 * The task drains the queue in FIFO order and flushes the channel once.
+	 */
+	private static volatile boolean coalesceWrites = false;
+	static final int MAX_WRITE_BATCH = 1024;
+	private final Queue<OFMessage> pendingWrites;
+	private final AtomicBoolean flushScheduled;
+	private final Runnable flushTask;
+
 	/**
 	 * Used to write messages to ensure order w/Netty4.
 	 * It also ensures we do not reuse the array, since
@@ -125,6 +141,76 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		}
 	}
 
+	/**
+	 * Drains the messages queued by {@link #write(Iterable)} in coalescing
+	 * mode and writes them to the channel as a single batch with one flush.
+	 * If more than {@link #MAX_WRITE_BATCH} messages are pending, the rest
+	 * are left to a new task so other channels on the EventLoop get a turn.
+	 */
+	private class FlushPendingWritesTask implements Runnable {
+		@Override
+		public void run() {
+			/*
+			 * Clear the flag before draining. A writer that enqueues after this
+			 * point schedules a new task, so no message is ever stranded. At worst
+			 * that task finds the queue already drained by us.
+			 */
+			flushScheduled.set(false);
+
+			List<OFMessage> batch = new ArrayList<OFMessage>(Math.min(pendingWrites.size(), MAX_WRITE_BATCH));
+			OFMessage m;
+			while (batch.size() < MAX_WRITE_BATCH && (m = pendingWrites.poll()) != null) {
+				if (logger.isTraceEnabled())
+					logger.trace("{}: send {}", OFConnection.this, m);
+				counters.updateWriteStats(m);
+				batch.add(m);
+			}
+
+			if (!batch.isEmpty()) {
+				if (!channel.isActive()) {
+					/* The connection went down while the messages were queued */
+					failUnsentMessages(batch, null);
+				} else {
+					counters.updateWriteBatchStats(batch.size());
+					final List<OFMessage> written = batch;
+					channel.writeAndFlush(batch).addListener(new ChannelFutureListener() {
+						@Override
+						public void operationComplete(ChannelFuture future) {
+							if (!future.isSuccess()) {
+								failUnsentMessages(written, future.cause());
+							}
+						}
+					});
+				}
+			}
+
+			if (!pendingWrites.isEmpty()) {
+				scheduleFlush();
+			}
+		}
+	}
+
+	/**
+	 * Report coalesced messages that were accepted by {@link #write(Iterable)}
+	 * but never reached the switch. Requests among them fail their futures
+	 * right away with a {@link SwitchDisconnectedException}, rather than
+	 * when the disconnect is processed or the request times out.
+	 * @param unsent the messages that were not written
+	 * @param cause the write failure, or null if the channel was closed
+	 */
+	private void failUnsentMessages(List<OFMessage> unsent, Throwable cause) {
+		counters.updateWriteBatchDropped(unsent.size());
+		logger.warn("{}: {} queued message(s) could not be written: {}",
+				new Object[] { this, unsent.size(), cause != null ? cause.toString() : "channel closed" });
+		SwitchDisconnectedException exception = new SwitchDisconnectedException(getDatapathId());
+		for (OFMessage m : unsent) {
+			Deliverable<?> deliverable = xidDeliverableMap.remove(m.getXid());
+			if (deliverable != null) {
+				deliverable.deliverError(exception);
+			}
+		}
+	}
+
 	public OFConnection(@Nonnull DatapathId dpid,
 			@Nonnull OFFactory factory,
 			@Nonnull Channel channel,
@@ -147,13 +233,47 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		this.counters = new OFConnectionCounters(debugCounters, dpid, this.auxId);
 		this.timer = timer;
 		this.latency = U64.ZERO;
+		this.pendingWrites = new ConcurrentLinkedQueue<OFMessage>();
+		this.flushScheduled = new AtomicBoolean(false);
+		this.flushTask = new FlushPendingWritesTask();
+	}
+
+	/**
+	 * Enable or disable write coalescing for all connections. When enabled,
+	 * messages written from any thread are queued on the connection and
+	 * written to the channel in batches, with a single flush per batch,
+	 * instead of one EventLoop task and one flush per write call.
+	 * @param coalesce
+	 */
+	static void setCoalesceWrites(boolean coalesce) {
+		coalesceWrites = coalesce;
+	}
+
+	static boolean isCoalesceWrites() {
+		return coalesceWrites;
+	}
+
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			this.channel.eventLoop().execute(flushTask);
+		}
 	}
 
 	/**
-	 * All write methods chain into this write() to use WriteMessageTask.
+	 * All write methods chain into this write() to use WriteMessageTask,
+	 * or FlushPendingWritesTask if write coalescing is enabled.
 	 * 
 	 * Write the list of messages to the switch
 	 * 
+	 * Messages are written from the channel's EventLoop after this method
+	 * returns, so the returned list only holds the messages refused because
+	 * the connection was already down. With write coalescing, messages that
+	 * are queued when the connection goes down, or whose flush fails, are
+	 * counted as dropped, and the futures of any requests among them fail
+	 * with a {@link SwitchDisconnectedException}. Callers that need to know
+	 * a message reached the switch must follow it with a request, such as a
+	 * barrier, and wait for the reply.
+	 * 
 	 * @param msgList list of messages to write
 	 * @return list of failed messages; can only fail if channel disconnected
 	 */
@@ -166,6 +286,13 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 						String.valueOf(msgList).substring(0, 80));
 			return IterableUtils.toCollection(msgList);
 		}
+		if (coalesceWrites) {
+			for (OFMessage m : msgList) {
+				pendingWrites.add(m);
+			}
+			scheduleFlush();
+			return Collections.emptyList();
+		}
 		for (OFMessage m : msgList) {			
 			if (logger.isTraceEnabled()) {
 				logger.trace("{}: send {}", this, m);
@@ -263,6 +390,7 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	@Override
 	public void disconnect() {
 		this.channel.disconnect();
+		this.pendingWrites.clear();
 		this.counters.uninstallCounters();
 	}
 
@@ -62,6 +62,13 @@ public class OFConnectionCounters {
     private final IDebugCounter ctrWriteBundleAdd;
     private final IDebugCounter ctrWriteControllerStatus;
 
+    // Write Batch Counters
+    //
+    private final IDebugCounter ctrWriteBatchFlushes;
+    private final IDebugCounter ctrWriteBatchMessages;
+    private final IDebugCounter ctrWriteBatchMaxSize;
+    private final IDebugCounter ctrWriteBatchDropped;
+
     // Read Counters
     //
     private final IDebugCounter ctrReadHello;
@@ -335,6 +342,23 @@ public class OFConnectionCounters {
                 stringId,
                 OFType.CONTROLLER_STATUS.toString());
 
+        // Register Write Batch Counters
+        //
+        counters.registerCounter(COUNTER_MODULE, stringId + hierarchy + "/batch",
+                                 "Coalesced write batches in this connection");
+        ctrWriteBatchFlushes =
+                counters.registerCounter(COUNTER_MODULE, stringId + hierarchy + "/batch/flushes",
+                                         "Number of channel flushes of coalesced write batches in this connection");
+        ctrWriteBatchMessages =
+                counters.registerCounter(COUNTER_MODULE, stringId + hierarchy + "/batch/messages",
+                                         "Number of messages written in coalesced write batches in this connection");
+        ctrWriteBatchMaxSize =
+                counters.registerCounter(COUNTER_MODULE, stringId + hierarchy + "/batch/max-size",
+                                         "Largest coalesced write batch in this connection");
+        ctrWriteBatchDropped =
+                counters.registerCounter(COUNTER_MODULE, stringId + hierarchy + "/batch/dropped",
+                                         "Number of coalesced messages that could not be written in this connection");
+
         // Register Read Counters
         //
         hierarchy = "/read";
@@ -699,6 +723,30 @@ public class OFConnectionCounters {
          }
     }
 
+   /**
+    * Update Write Batch counters after a coalesced batch has been flushed.
+    * The average batch size is messages / flushes.
+    * @param batchSize number of messages written with a single flush
+    */
+   public void updateWriteBatchStats(int batchSize) {
+       ctrWriteBatchFlushes.increment();
+       ctrWriteBatchMessages.add(batchSize);
+       long max = ctrWriteBatchMaxSize.getCounterValue();
+       if (batchSize > max) {
+           /* Only ever updated from the connection's EventLoop */
+           ctrWriteBatchMaxSize.add(batchSize - max);
+       }
+   }
+
+   /**
+    * Update Write Batch counters after coalesced messages could not be
+    * written because the channel was closed or the write failed
+    * @param dropped number of messages that were not written
+    */
+   public void updateWriteBatchDropped(int dropped) {
+       ctrWriteBatchDropped.add(dropped);
+   }
+
    /**
     * Update Read openflow counters for this connection
     * @param ofm Open Flow Message
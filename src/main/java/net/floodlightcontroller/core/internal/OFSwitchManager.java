@@ -40,6 +40,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.util.NettyTransport;
 
 import org.projectfloodlight.openflow.protocol.OFControllerRole;
 import org.projectfloodlight.openflow.protocol.OFFactories;
@@ -76,8 +77,8 @@ import com.google.common.collect.ImmutableSet;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 import io.netty.util.concurrent.GlobalEventExecutor;
@@ -142,8 +143,10 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     private static IFloodlightProviderService floodlightProvider;
     private static IDebugCounterService debugCounterService;
 
-    private static NioEventLoopGroup bossGroup;
-    private static NioEventLoopGroup workerGroup;
+    private static NettyTransport transport = NettyTransport.NIO;
+    private static EpollMode epollMode = null; /* null uses Netty's default */
+    private static EventLoopGroup bossGroup;
+    private static EventLoopGroup workerGroup;
     private static DefaultChannelGroup cg;
 
     protected static Timer timer;
@@ -848,19 +851,36 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
             tcpSendBufferSize = Integer.parseInt(tcpBuffer);
         }
 
+        /* Netty transport; NIO unless native epoll is requested and available on Linux */
+        try {
+            transport = NettyTransport.fromConfig(configParams.get("useNativeTransport"));
+            epollMode = NettyTransport.parseEpollMode(configParams.get("epollMode"));
+        } catch (IllegalArgumentException e) {
+            throw new FloodlightModuleException(e.getMessage());
+        }
+
+        /* Coalesce writes to each switch connection into batches with a single flush */
+        String coalesce = configParams.get("coalesceWrites");
+        if (!Strings.isNullOrEmpty(coalesce)) {
+            OFConnection.setCoalesceWrites(coalesce.equalsIgnoreCase("yes") || coalesce.equalsIgnoreCase("true"));
+        }
+        log.info("Coalesce writes to switch connections: {}", OFConnection.isCoalesceWrites() ? "TRUE" : "FALSE");
+
         log.info("Listening for OpenFlow switches on {}:{}", openFlowAddresses, openFlowPort);
         log.info("OpenFlow socket config: "
                 + "{} boss thread(s), "
                 + "{} worker thread(s), "
                 + "{} ms TCP connection timeout, "
                 + "max {} connection backlog, "
-                + "{} byte TCP send buffer size", 
+                + "{} byte TCP send buffer size, "
+                + "{} transport", 
                 new Object[] {
                         bossThreads, 
                         workerThreads, 
                         connectionTimeoutMsec, 
                         connectionBacklog, 
-                        tcpSendBufferSize
+                        tcpSendBufferSize,
+                        transport
                 });
     }
 
@@ -1025,18 +1045,19 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
      */
     public void bootstrapNetty() {
         try {
-            bossGroup = new NioEventLoopGroup(bossThreads);
-            workerGroup = new NioEventLoopGroup(workerThreads);
+            bossGroup = transport.newEventLoopGroup(bossThreads);
+            workerGroup = transport.newEventLoopGroup(workerThreads);
 
             ServerBootstrap bootstrap = new ServerBootstrap()
                     .group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.getServerChannelClass())
                     .option(ChannelOption.SO_REUSEADDR, true)
                     .option(ChannelOption.SO_KEEPALIVE, true)
                     .option(ChannelOption.TCP_NODELAY, true)
                     .option(ChannelOption.SO_SNDBUF, tcpSendBufferSize)
                     .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeoutMsec)
                     .option(ChannelOption.SO_BACKLOG, connectionBacklog);
+            transport.setTransportOptions(bootstrap, epollMode);
 
             OFChannelInitializer initializer = new OFChannelInitializer(
                     this, 
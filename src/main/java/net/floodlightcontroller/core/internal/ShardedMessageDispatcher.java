@@ -0,0 +1,288 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the dispatch of OpenFlow messages to IOFMessageListeners off of the
+ * Netty I/O threads and onto a fixed set of worker threads. Each switch is
+ * assigned to one worker (shard) by its DPID, so messages from a switch are
+ * still handled one at a time and in the order they were received, while a
+ * slow listener only holds up the switches of its own shard.
+ *
+ * Each shard has a bounded queue. When it is full, the {@link OverflowPolicy}
+ * decides whether the message is dropped or whether the I/O thread blocks
+ * until there is room, which stops reads from the switches on that thread.
+ * Blocking is bounded by a timeout after which the message is dropped, since
+ * a listener on the full shard may itself be waiting on the blocked I/O
+ * thread, e.g. for the reply to a request written to the same switch.
+ */
+public class ShardedMessageDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(ShardedMessageDispatcher.class);
+
+    public static final String COUNTER_PREFIX = "dispatch";
+
+    /**
+     * Default longest time in milliseconds the BLOCK policy waits for room
+     */
+    public static final long DEFAULT_BLOCK_TIMEOUT_MS = 100;
+
+    /**
+     * What to do with a message when the queue of its shard is full
+     */
+    public enum OverflowPolicy {
+        /** Drop the message and count it */
+        DROP,
+        /**
+         * Block the calling I/O thread until the shard has room, for up
+         * to the block timeout; then drop the message and count it
+         */
+        BLOCK;
+
+        public static OverflowPolicy fromString(String s) {
+            for (OverflowPolicy p : values()) {
+                if (p.name().equalsIgnoreCase(s.trim())) {
+                    return p;
+                }
+            }
+            throw new IllegalArgumentException("Invalid overflow policy " + s + ". Must be one of DROP or BLOCK");
+        }
+    }
+
+    /**
+     * Handles a message on a worker thread
+     */
+    public interface IMessageHandler {
+        void handle(IOFSwitch sw, OFMessage m, FloodlightContext bContext);
+    }
+
+    private static class QueuedMessage {
+        private final IOFSwitch sw;
+        private final OFMessage m;
+        private final FloodlightContext bContext;
+        private final long enqueuedNs;
+
+        private QueuedMessage(IOFSwitch sw, OFMessage m, FloodlightContext bContext) {
+            this.sw = sw;
+            this.m = m;
+            this.bContext = bContext;
+            this.enqueuedNs = System.nanoTime();
+        }
+    }
+
+    private class Shard implements Runnable {
+        private final int id;
+        private final BlockingQueue<QueuedMessage> queue;
+
+        private final IDebugCounter ctrEnqueued;
+        private final IDebugCounter ctrDequeued;
+        private final IDebugCounter ctrDropped;
+        private final IDebugCounter ctrMaxDepth;
+        private final IDebugCounter ctrQueueLatencyUs;
+        private final IDebugCounter ctrMaxQueueLatencyUs;
+        private final AtomicLong maxDepth = new AtomicLong();
+        private final AtomicLong maxQueueLatencyUs = new AtomicLong();
+
+        private Shard(int id, int capacity) {
+            this.id = id;
+            this.queue = new ArrayBlockingQueue<QueuedMessage>(capacity);
+
+            String h = COUNTER_PREFIX + "/shard-" + id;
+            debugCounterService.registerCounter(counterModule, h, "Dispatch shard " + id);
+            ctrEnqueued = debugCounterService.registerCounter(counterModule, h + "/enqueued",
+                    "Number of messages queued for dispatch on this shard");
+            ctrDequeued = debugCounterService.registerCounter(counterModule, h + "/dequeued",
+                    "Number of messages dispatched by this shard. Queue depth is enqueued - dequeued");
+            ctrDropped = debugCounterService.registerCounter(counterModule, h + "/dropped",
+                    "Number of messages dropped because the queue of this shard was full",
+                    MetaData.WARN);
+            ctrMaxDepth = debugCounterService.registerCounter(counterModule, h + "/max-depth",
+                    "Largest queue depth seen on this shard");
+            ctrQueueLatencyUs = debugCounterService.registerCounter(counterModule, h + "/queue-latency-us",
+                    "Total time in microseconds messages waited in the queue of this shard. "
+                            + "Average latency is queue-latency-us / dequeued");
+            ctrMaxQueueLatencyUs = debugCounterService.registerCounter(counterModule, h + "/max-queue-latency-us",
+                    "Longest time in microseconds a message waited in the queue of this shard");
+        }
+
+        private void offer(QueuedMessage qm) throws InterruptedException {
+            boolean queued;
+            if (policy == OverflowPolicy.BLOCK) {
+                queued = queue.offer(qm, blockTimeoutMs, TimeUnit.MILLISECONDS);
+            } else {
+                queued = queue.offer(qm);
+            }
+            if (!queued) {
+                ctrDropped.increment();
+                if (log.isTraceEnabled()) {
+                    log.trace("Dispatch shard {} full. Dropping {} from {}", new Object[] { id, qm.m, qm.sw });
+                }
+                return;
+            }
+            ctrEnqueued.increment();
+            raiseTo(maxDepth, ctrMaxDepth, queue.size());
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                QueuedMessage qm;
+                try {
+                    qm = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (qm == null) {
+                    continue;
+                }
+
+                long waitedUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - qm.enqueuedNs);
+                ctrDequeued.increment();
+                ctrQueueLatencyUs.add(waitedUs);
+                raiseTo(maxQueueLatencyUs, ctrMaxQueueLatencyUs, waitedUs);
+
+                try {
+                    handler.handle(qm.sw, qm.m, qm.bContext);
+                } catch (Exception e) {
+                    log.error("Exception dispatching " + qm.m + " from " + qm.sw + " on shard " + id, e);
+                }
+            }
+            log.debug("Dispatch shard {} stopped", id);
+        }
+    }
+
+    private final IMessageHandler handler;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMs;
+    private final IDebugCounterService debugCounterService;
+    private final String counterModule;
+    private final Shard[] shards;
+    private final List<Thread> threads;
+    private volatile boolean shutdown;
+
+    /**
+     * @param handler what to run for each message on the worker threads
+     * @param numShards number of worker threads
+     * @param queueCapacity maximum number of queued messages per shard
+     * @param policy what to do when a shard's queue is full
+     * @param debugCounterService
+     * @param counterModule registered debug counter module for the shard counters
+     */
+    public ShardedMessageDispatcher(IMessageHandler handler, int numShards, int queueCapacity,
+            OverflowPolicy policy, IDebugCounterService debugCounterService, String counterModule) {
+        this(handler, numShards, queueCapacity, policy, DEFAULT_BLOCK_TIMEOUT_MS,
+                debugCounterService, counterModule);
+    }
+
+    /**
+     * @param handler what to run for each message on the worker threads
+     * @param numShards number of worker threads
+     * @param queueCapacity maximum number of queued messages per shard
+     * @param policy what to do when a shard's queue is full
+     * @param blockTimeoutMs longest time the BLOCK policy waits for room
+     * @param debugCounterService
+     * @param counterModule registered debug counter module for the shard counters
+     */
+    public ShardedMessageDispatcher(IMessageHandler handler, int numShards, int queueCapacity,
+            OverflowPolicy policy, long blockTimeoutMs,
+            IDebugCounterService debugCounterService, String counterModule) {
+        if (blockTimeoutMs < 0) {
+            throw new IllegalArgumentException("Dispatch block timeout must not be negative. Was " + blockTimeoutMs);
+        }
+        if (numShards < 1) {
+            throw new IllegalArgumentException("Number of dispatch shards must be at least 1. Was " + numShards);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Dispatch queue capacity must be at least 1. Was " + queueCapacity);
+        }
+        this.handler = handler;
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.debugCounterService = debugCounterService;
+        this.counterModule = counterModule;
+
+        debugCounterService.registerCounter(counterModule, COUNTER_PREFIX, "Sharded message dispatch");
+        this.shards = new Shard[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+        }
+        this.threads = new ArrayList<Thread>(numShards);
+    }
+
+    /**
+     * Start the worker threads
+     */
+    public synchronized void start() {
+        for (Shard s : shards) {
+            Thread t = new Thread(s, "OFMessage Dispatch-" + s.id);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+        log.info("Dispatching OpenFlow messages on {} shard(s), {} on overflow", shards.length, policy);
+    }
+
+    /**
+     * Stop the worker threads. Messages still queued are discarded.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        threads.clear();
+    }
+
+    /**
+     * Queue a message for dispatch on the shard of its switch
+     * @param sw
+     * @param m
+     * @param bContext
+     */
+    public void dispatch(IOFSwitch sw, OFMessage m, FloodlightContext bContext) {
+        try {
+            shards[getShard(sw)].offer(new QueuedMessage(sw, m, bContext));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int getShard(IOFSwitch sw) {
+        long dpid = sw.getId().getLong();
+        int h = (int) (dpid ^ (dpid >>> 32));
+        h ^= (h >>> 16); /* DPIDs often differ only in the low bits */
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    /*
+     * Counters only go up, so a high-water mark is kept in max and the
+     * counter is raised by the amount of each successful increase.
+     */
+    private static void raiseTo(AtomicLong max, IDebugCounter counter, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                counter.add(value - current);
+                return;
+            }
+        }
+    }
+}
@@ -67,7 +67,7 @@ public class CPAnalyzer implements ICPAnalyzerService, IFloodlightModule, IOFMes
         if (log.isTraceEnabled()) {
             switch (msg.getType()) {
             case PACKET_IN:
-                Ethernet eth = (Ethernet) cntx.getStorage().get(Controller.CONTEXT_PI_PAYLOAD);
+                Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, Controller.CONTEXT_PI_PAYLOAD);
                 if (eth == null) {
                     break;
                 }
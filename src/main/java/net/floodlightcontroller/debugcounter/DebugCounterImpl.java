@@ -126,7 +126,7 @@ class DebugCounterImpl implements IDebugCounter {
         } else if (!moduleName.equals(other.moduleName)) return false;
         if (value == null) {
             if (other.value != null) return false;
-        } else if (value.get() != other.value.get()) return false;
+        } else if (getCounterValue() != other.getCounterValue()) return false;
         return true;
     }
 
@@ -142,7 +142,7 @@ class DebugCounterImpl implements IDebugCounter {
         builder.append(", metaData=");
         builder.append(metaData);
         builder.append(", value=");
-        builder.append(value);
+        builder.append(getCounterValue());
         builder.append("]");
         return builder.toString();
     }
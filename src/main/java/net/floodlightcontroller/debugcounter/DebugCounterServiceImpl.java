@@ -28,6 +28,12 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
      */
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    /**
+     * Whether new counters are {@link StripedDebugCounterImpl}s, which scale
+     * with the number of updating threads, or plain {@link DebugCounterImpl}s
+     */
+    private volatile boolean stripedCounters = false;
+
     static void verifyStringSanity(String str, String name) {
         if (str == null) {
             if (name == null) {
@@ -82,7 +88,10 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
             // somebody passing in a null array. sigh.
             throw new NullPointerException("metaData must not be null");
         }
-        DebugCounterImpl counter =
+        DebugCounterImpl counter = stripedCounters ?
+                new StripedDebugCounterImpl(moduleName, counterHierarchy,
+                                            counterDescription,
+                                            Arrays.asList(metaData)) :
                 new DebugCounterImpl(moduleName, counterHierarchy,
                                      counterDescription,
                                      Arrays.asList(metaData));
@@ -267,6 +276,12 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
 
    @Override
    public void init(FloodlightModuleContext context) {
+       Map<String, String> configParams = context.getConfigParams(this);
+       String striped = configParams.get("stripedCounters");
+       if (striped != null && !striped.trim().isEmpty()) {
+           stripedCounters = Boolean.parseBoolean(striped.trim());
+       }
+       logger.info("Debug counters are {}", stripedCounters ? "striped" : "not striped");
    }
 
    @Override
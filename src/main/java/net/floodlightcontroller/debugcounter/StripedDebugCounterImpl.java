@@ -0,0 +1,75 @@
+package net.floodlightcontroller.debugcounter;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+
+/**
+ * A debug counter for counters that are updated from many threads at once.
+ * The value is spread over per-thread cells by a {@link LongAdder}, so
+ * concurrent updates do not contend on a single cache line, and reading the
+ * value sums the cells.
+ *
+ * Updates do not touch the last-modified time. Instead, it is brought up to
+ * date when it is read: if the value changed since the last read, the
+ * counter is taken to have been modified now. The last-modified time is
+ * therefore only as precise as the interval between reads, and a counter
+ * that was reset and counted back up to the same value between two reads
+ * looks unmodified.
+ */
+class StripedDebugCounterImpl extends DebugCounterImpl {
+    private final LongAdder value = new LongAdder();
+
+    /* Value seen by the last getLastModified(), and when it changed */
+    private long lastSeenValue;
+    private long lastModified;
+
+    StripedDebugCounterImpl(@Nonnull String moduleName,
+                            @Nonnull String counterHierarchy,
+                            @Nonnull String description,
+                            @Nonnull Collection<MetaData> metaData) {
+        super(moduleName, counterHierarchy, description, metaData);
+        this.lastModified = System.currentTimeMillis();
+    }
+
+    @Override
+    public void reset() {
+        value.reset();
+        synchronized (this) {
+            lastSeenValue = 0;
+            lastModified = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void increment() {
+        value.increment();
+    }
+
+    @Override
+    public void add(long increment) {
+        if (increment < 0) {
+            throw new IllegalArgumentException("increment must be > 0. Was "
+                    + increment);
+        }
+        value.add(increment);
+    }
+
+    @Override
+    public long getCounterValue() {
+        return value.sum();
+    }
+
+    @Override
+    public synchronized long getLastModified() {
+        long v = value.sum();
+        if (v != lastSeenValue) {
+            lastSeenValue = v;
+            lastModified = System.currentTimeMillis();
+        }
+        return lastModified;
+    }
+}
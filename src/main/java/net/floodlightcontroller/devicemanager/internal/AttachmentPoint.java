@@ -29,8 +29,9 @@ import org.projectfloodlight.openflow.types.OFPort;
 public class AttachmentPoint {
     DatapathId  sw;
     OFPort port;
-    Date  activeSince;
-    Date  lastSeen;
+    /* In milliseconds; updated for every packet from the device */
+    volatile long activeSince;
+    volatile long lastSeen;
 
     // Timeout for moving attachment points from OF/broadcast
     // domain to another.
@@ -42,11 +43,20 @@ public class AttachmentPoint {
     public AttachmentPoint(DatapathId sw, OFPort port, Date activeSince, Date lastSeen) {
         this.sw = sw;
         this.port = port;
-        this.activeSince = activeSince;
-        this.lastSeen = lastSeen;
+        this.activeSince = Entity.toTime(activeSince);
+        this.lastSeen = Entity.toTime(lastSeen);
     }
 
     public AttachmentPoint(DatapathId sw, OFPort port, Date lastSeen) {
+        this(sw, port, Entity.toTime(lastSeen));
+    }
+
+    /**
+     * @param sw
+     * @param port
+     * @param lastSeen in milliseconds
+     */
+    public AttachmentPoint(DatapathId sw, OFPort port, long lastSeen) {
         this.sw = sw;
         this.port = port;
         this.lastSeen = lastSeen;
@@ -73,18 +83,27 @@ public class AttachmentPoint {
         this.port = port;
     }
     public Date getActiveSince() {
+        return new Date(activeSince);
+    }
+    public long getActiveSinceTime() {
         return activeSince;
     }
     public void setActiveSince(Date activeSince) {
-        this.activeSince = activeSince;
+        this.activeSince = Entity.toTime(activeSince);
     }
     public Date getLastSeen() {
+        return new Date(lastSeen);
+    }
+    public long getLastSeenTime() {
         return lastSeen;
     }
     public void setLastSeen(Date lastSeen) {
-        if (this.lastSeen.getTime() + INACTIVITY_INTERVAL < lastSeen.getTime())
+        setLastSeenTime(Entity.toTime(lastSeen));
+    }
+    public void setLastSeenTime(long lastSeen) {
+        if (this.lastSeen + INACTIVITY_INTERVAL < lastSeen)
             this.activeSince = lastSeen;
-        if (this.lastSeen.before(lastSeen))
+        if (this.lastSeen < lastSeen)
             this.lastSeen = lastSeen;
     }
 
@@ -122,7 +141,7 @@ public class AttachmentPoint {
     @Override
     public String toString() {
         return "AttachmentPoint [sw=" + sw + ", port=" + port
-               + ", activeSince=" + activeSince + ", lastSeen=" + lastSeen.toString()
+               + ", activeSince=" + getActiveSince() + ", lastSeen=" + getLastSeen()
                + "]";
     }
 }
\ No newline at end of file
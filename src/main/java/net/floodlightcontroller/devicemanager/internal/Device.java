@@ -117,7 +117,7 @@ public class Device implements IDevice {
 			if (deviceManager.isValidAttachmentPoint(sw, port)) {
 				AttachmentPoint ap;
 				ap = new AttachmentPoint(sw, port,
-						entity.getLastSeenTimestamp());
+						entity.getLastSeenTime());
 				this.attachmentPoints = new ArrayList<AttachmentPoint>();
 				this.attachmentPoints.add(ap);
 			}
@@ -306,7 +306,7 @@ public class Device implements IDevice {
 			return false;
 
 		for (AttachmentPoint ap : apList) {
-			if (ap.getLastSeen().getTime()
+			if (ap.getLastSeenTime()
 					+ AttachmentPoint.INACTIVITY_INTERVAL < System
 						.currentTimeMillis()) {
 				expiredAPs.add(ap);
@@ -353,9 +353,9 @@ public class Device implements IDevice {
 			}
 			boolean c = (topology.isConsistent(trueAP.getSw(),
 					trueAP.getPort(), ap.getSw(), ap.getPort()));
-			boolean active = trueAP.getActiveSince().after(ap.getActiveSince())
-					&& ap.getLastSeen().after(trueAP.getLastSeen());
-			boolean last = ap.getLastSeen().getTime() > timeThreshold;
+			boolean active = trueAP.getActiveSinceTime() > ap.getActiveSinceTime()
+					&& ap.getLastSeenTime() > trueAP.getLastSeenTime();
+			boolean last = ap.getLastSeenTime() > timeThreshold;
 			if (!c && active && last) {
 				visitedIslands.add(id);
 			}
@@ -369,7 +369,7 @@ public class Device implements IDevice {
 		for (AttachmentPoint ap : oldAPList) {				
 			DatapathId id = topology.getClusterId(ap.getSw());
 			if (visitedIslands.contains(id)) {
-				if (ap.getLastSeen().getTime() > timeThreshold) {
+				if (ap.getLastSeenTime() > timeThreshold) {
 					dupAPs.add(ap);
 				}
 			}
@@ -429,6 +429,20 @@ public class Device implements IDevice {
 	 */
 	protected boolean updateAttachmentPoint(DatapathId sw, OFPort port,
 			Date lastSeen) {
+		return updateAttachmentPoint(sw, port, lastSeen.getTime());
+	}
+
+	/**
+	 * Same as {@link #updateAttachmentPoint(DatapathId, OFPort, Date)}, with
+	 * lastSeen in milliseconds.
+	 * 
+	 * @param sw
+	 * @param port
+	 * @param lastSeen
+	 * @return
+	 */
+	protected boolean updateAttachmentPoint(DatapathId sw, OFPort port,
+			long lastSeen) {
 		ITopologyService topology = deviceManager.topology;
 		List<AttachmentPoint> oldAPList;
 		List<AttachmentPoint> apList;
@@ -450,7 +464,7 @@ public class Device implements IDevice {
 		if (oldAPList.contains(newAP)) {
 			int index = oldAPList.indexOf(newAP);
 			newAP = oldAPList.remove(index);
-			newAP.setLastSeen(lastSeen);
+			newAP.setLastSeenTime(lastSeen);
 			this.oldAPs = oldAPList;
 			oldAPFlag = true;
 		}
@@ -487,8 +501,8 @@ public class Device implements IDevice {
 		// we need to compare oldAP and newAP.
 		if (oldAP.equals(newAP)) {
 			// nothing to do here. just the last seen has to be changed.
-			if (newAP.lastSeen.after(oldAP.lastSeen)) {
-				oldAP.setLastSeen(newAP.lastSeen);
+			if (newAP.lastSeen > oldAP.lastSeen) {
+				oldAP.setLastSeenTime(newAP.lastSeen);
 			}
 			this.attachmentPoints = new ArrayList<AttachmentPoint>(
 					apMap.values());
@@ -726,10 +740,8 @@ public class Device implements IDevice {
 				for (Entity se : d.entities) {
 					if (se.getIpv4Address() != null
 							&& se.getIpv4Address().equals(e.getIpv4Address())
-							&& !se.getLastSeenTimestamp()
-									.equals(Entity.NO_DATE)
-							&& 0 < se.getLastSeenTimestamp().compareTo(
-									e.getLastSeenTimestamp())) {
+							&& se.getLastSeenTime() != Entity.NO_TIME
+							&& se.getLastSeenTime() > e.getLastSeenTime()) {
 						validIP = false;
 						break;
 					}
@@ -764,10 +776,8 @@ public class Device implements IDevice {
 				for (Entity se : d.entities) {
 					if (se.getIpv6Address() != null
 							&& se.getIpv6Address().equals(e.getIpv6Address())
-							&& !se.getLastSeenTimestamp()
-									.equals(Entity.NO_DATE)
-							&& 0 < se.getLastSeenTimestamp().compareTo(
-									e.getLastSeenTimestamp())) {
+							&& se.getLastSeenTime() != Entity.NO_TIME
+							&& se.getLastSeenTime() > e.getLastSeenTime()) {
 						validIP = false;
 						break;
 					}
@@ -800,13 +810,13 @@ public class Device implements IDevice {
 
 	@Override
 	public Date getLastSeen() {
-		Date d = null;
+		Entity last = null;
 		for (int i = 0; i < entities.length; i++) {
-			if (d == null
-					|| entities[i].getLastSeenTimestamp().compareTo(d) > 0)
-				d = entities[i].getLastSeenTimestamp();
+			if (last == null
+					|| entities[i].getLastSeenTime() > last.getLastSeenTime())
+				last = entities[i];
 		}
-		return d;
+		return last == null ? null : last.getLastSeenTimestamp();
 	}
 
 	// ***************
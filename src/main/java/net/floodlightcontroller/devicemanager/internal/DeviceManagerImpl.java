@@ -18,7 +18,6 @@
 package net.floodlightcontroller.devicemanager.internal;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -145,6 +144,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	public IDebugCounter cntDeviceMoved;
 	public IDebugCounter cntCleanupEntitiesRuns;
 	public IDebugCounter cntEntityRemovedTimeout;
+	public IDebugCounter cntEntityExpired;
+	public IDebugCounter cntCleanupEntitiesTimeUs;
 	public IDebugCounter cntDeviceDeleted;
 	public IDebugCounter cntDeviceReclassifyDelete;
 	public IDebugCounter cntDeviceStrored;
@@ -195,12 +196,23 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 */
 	protected static final int ENTITY_CLEANUP_INTERVAL = 60*60;
 
+	/**
+	 * Time in milliseconds covered by each bucket of the entity expiry wheel
+	 */
+	protected static final int ENTITY_EXPIRY_TICK_MS = 60*1000;
+
 	/**
 	 * This is the master device map that maps device IDs to {@link Device}
 	 * objects.
 	 */
 	protected ConcurrentHashMap<Long, Device> deviceMap;
 
+	/**
+	 * Learned entities by the time they expire, so that cleanupEntities
+	 * only needs to look at the devices with expired entities.
+	 */
+	protected EntityExpiryWheel entityExpiryWheel;
+
 	/**
 	 * Counter used to generate device keys
 	 */
@@ -363,7 +375,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			// We expect that the last seen of the new AP is higher than
 			// old AP, if it is not, just reverse and send the negative
 			// of the result.
-			if (oldAP.getLastSeen().after(newAP.getLastSeen())) //TODO should this be lastSeen? @Ryan did change this from activeSince
+			if (oldAP.getLastSeenTime() > newAP.getLastSeenTime()) //TODO should this be lastSeen? @Ryan did change this from activeSince
 				return -compare(newAP, oldAP);
 
 			long activeOffset = 0;
@@ -384,8 +396,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			}
 
 
-			if ((newAP.getActiveSince().getTime() > oldAP.getLastSeen().getTime() + activeOffset) ||
-					(newAP.getLastSeen().getTime() > oldAP.getLastSeen().getTime() +
+			if ((newAP.getActiveSinceTime() > oldAP.getLastSeenTime() + activeOffset) ||
+					(newAP.getLastSeenTime() > oldAP.getLastSeenTime() +
 							AttachmentPoint.INACTIVITY_INTERVAL)) {
 				return -1;
 			}
@@ -852,10 +864,12 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	public void startUp(FloodlightModuleContext fmc)
 			throws FloodlightModuleException {
 		isMaster = (floodlightProvider.getRole() == HARole.ACTIVE);
-		primaryIndex = new DeviceUniqueIndex(entityClassifier.getKeyFields());
+		primaryIndex = MacVlanDeviceIndex.create(entityClassifier.getKeyFields());
 		secondaryIndexMap = new HashMap<EnumSet<DeviceField>, DeviceIndex>();
 
 		deviceMap = new ConcurrentHashMap<Long, Device>();
+		entityExpiryWheel = new EntityExpiryWheel(ENTITY_TIMEOUT,
+				ENTITY_EXPIRY_TICK_MS, System.currentTimeMillis());
 		classStateMap =
 				new ConcurrentHashMap<String, ClassState>();
 		apComparator = new AttachmentPointComparator();
@@ -981,6 +995,12 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				"entity-removed-timeout",
 				"Number of times entities have been removed due to timeout " +
 						"(entity has been inactive for " + ENTITY_TIMEOUT/1000 + "s)");
+		cntEntityExpired = debugCounters.registerCounter(PACKAGE,
+				"entity-expired",
+				"Number of entities that have been removed due to timeout");
+		cntCleanupEntitiesTimeUs = debugCounters.registerCounter(PACKAGE,
+				"cleanup-entities-time-us",
+				"Total time in microseconds spent in entity cleanup runs");
 		cntDeviceDeleted = debugCounters.registerCounter(PACKAGE, "device-deleted",
 				"Number of devices that have been removed due to inactivity");
 		cntDeviceReclassifyDelete = debugCounters.registerCounter(PACKAGE,
@@ -1232,7 +1252,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				ipv6Src,
 				swdpid,
 				port,
-				new Date());
+				System.currentTimeMillis());
 	}
 
 	/**
@@ -1269,7 +1289,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				IPv6Address.NONE, /* must be none for ARP */
 				swdpid,
 				port,
-				new Date());
+				System.currentTimeMillis());
 
 		learnDeviceByEntity(e);
 	}
@@ -1491,6 +1511,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				}
 
 				updateSecondaryIndices(entity, entityClass, deviceKey);
+				entityExpiryWheel.add(deviceKey, entity);
 
 				// We need to count and log here. If we log earlier we could
 				// hit a concurrent modification and restart the dev creation
@@ -1526,12 +1547,12 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			if ((entityindex = device.entityIndex(entity)) >= 0) {
 				// Entity already exists
 				// update timestamp on the found entity
-				Date lastSeen = entity.getLastSeenTimestamp();
-				if (lastSeen.equals(Entity.NO_DATE)) {
-					lastSeen = new Date();
-					entity.setLastSeenTimestamp(lastSeen);
+				long lastSeen = entity.getLastSeenTime();
+				if (lastSeen == Entity.NO_TIME) {
+					lastSeen = System.currentTimeMillis();
+					entity.setLastSeenTime(lastSeen);
 				}
-				device.entities[entityindex].setLastSeenTimestamp(lastSeen);
+				device.entities[entityindex].setLastSeenTime(lastSeen);
 				// we break the loop after checking for changes to the AP
 			} else {
 				// New entity for this device
@@ -1559,6 +1580,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				updateSecondaryIndices(entity,
 						device.getEntityClass(),
 						deviceKey);
+				entityExpiryWheel.add(deviceKey, entity);
 
 				// We need to count here after all the possible "continue"
 				// statements in this branch
@@ -1577,7 +1599,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			if (entity.hasSwitchPort()) {
 				boolean moved = device.updateAttachmentPoint(entity.getSwitchDPID(),
 						entity.getSwitchPort(),
-						entity.getLastSeenTimestamp());
+						entity.getLastSeenTime());
 				if (moved) {
 					// we count device moved events in sendDeviceMovedNotification()
 					// TODO remove this. It's now done in the event handler as a result of the update above... sendDeviceMovedNotification(device);
@@ -1834,32 +1856,38 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 }
 
 	 /**
-	  * Clean up expired entities/devices
+	  * Clean up expired entities/devices. Only the devices that the
+	  * {@link EntityExpiryWheel} reports as having expired entities are
+	  * visited.
 	  */
 	 protected void cleanupEntities () {
 		 cntCleanupEntitiesRuns.increment();
+		 long startNs = System.nanoTime();
 
-		 Calendar c = Calendar.getInstance();
-		 c.add(Calendar.MILLISECOND, -ENTITY_TIMEOUT);
-		 Date cutoff = c.getTime();
+		 long now = System.currentTimeMillis();
+		 long cutoff = now - ENTITY_TIMEOUT;
+		 Set<Long> expired = entityExpiryWheel.sweep(now);
+		 int removed = 0;
 
 		 ArrayList<Entity> toRemove = new ArrayList<Entity>();
 		 ArrayList<Entity> toKeep = new ArrayList<Entity>();
 
-		 Iterator<Device> diter = deviceMap.values().iterator();
 		 LinkedList<DeviceUpdate> deviceUpdates =
 				 new LinkedList<DeviceUpdate>();
 
-		 while (diter.hasNext()) {
-			 Device d = diter.next();
+		 for (Long deviceKey : expired) {
+			 Device d = deviceMap.get(deviceKey);
+			 if (d == null) {
+				 continue;
+			 }
 
 			 while (true) {
 				 deviceUpdates.clear();
 				 toRemove.clear();
 				 toKeep.clear();
 				 for (Entity e : d.getEntities()) {
-					 if (!e.getLastSeenTimestamp().equals(Entity.NO_DATE) &&
-							 0 > e.getLastSeenTimestamp().compareTo(cutoff)) {
+					 long lastSeen = e.getLastSeenTime();
+					 if (lastSeen != Entity.NO_TIME && lastSeen < cutoff) {
 						 // individual entity needs to be removed
 						 toRemove.add(e);
 					 } else {
@@ -1902,6 +1930,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 						 d = deviceMap.get(d.getDeviceKey());
 								 if (null != d)
 									 continue;
+						 // removed concurrently; its entities are not ours to count
+						 toRemove.clear();
 					 }
 					 if (update != null) {
 						 // need to count after all possibly continue stmts in
@@ -1919,13 +1949,24 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 						 if (null != d)
 							 continue;
 						 cntDeviceDeleted.increment();
+						 toRemove.clear();
 					 }
 					 deviceUpdates.add(update);
 				 }
+				 // count once the device map holds the result, not per retry
+				 removed += toRemove.size();
 				 processUpdates(deviceUpdates);
 				 break;
 			 }
 		 }
+
+		 long elapsedUs = (System.nanoTime() - startNs) / 1000;
+		 cntEntityExpired.add(removed);
+		 cntCleanupEntitiesTimeUs.add(elapsedUs);
+		 if (logger.isDebugEnabled()) {
+			 logger.debug("Entity cleanup removed {} entities of {} devices in {}us",
+					 new Object[] { removed, expired.size(), elapsedUs });
+		 }
 	 }
 
 	 protected void removeEntity(Entity removed,
@@ -61,6 +61,11 @@ public class Entity implements Comparable<Entity> {
     
     protected static final Date NO_DATE = new Date(0); /* Jan 1st 1970 00:00:00 */
     
+    /**
+     * {@link Entity#NO_DATE} in milliseconds
+     */
+    protected static final long NO_TIME = 0;
+    
     /**
      * The MAC address associated with this entity
      */
@@ -96,9 +101,11 @@ public class Entity implements Comparable<Entity> {
     protected OFPort switchPort;
     
     /**
-     * The last time we observed this entity on the network
+     * The last time we observed this entity on the network, in milliseconds.
+     * Updated in place each time a known entity is seen again, so it is
+     * kept as a primitive rather than as a new Date per packet.
      */
-    protected Date lastSeenTimestamp;
+    protected volatile long lastSeenTimestamp;
 
     /**
      * The time between {@link Entity#activeSince} and 
@@ -108,7 +115,7 @@ public class Entity implements Comparable<Entity> {
      * {@link Entity#lastSeenTimestamp} and {@link Entity#activeSince} will 
      * be set to the current time.
      */
-    protected Date activeSince;
+    protected volatile long activeSince;
     
     // ************
     // Constructors
@@ -128,6 +135,24 @@ public class Entity implements Comparable<Entity> {
     public Entity(@Nonnull MacAddress macAddress, VlanVid vlan, @Nonnull IPv4Address ipv4Address, 
     		@Nonnull IPv6Address ipv6Address, @Nonnull DatapathId switchDPID, @Nonnull OFPort switchPort, 
                   @Nonnull Date lastSeenTimestamp) {
+    	this(macAddress, vlan, ipv4Address, ipv6Address, switchDPID, switchPort,
+    			checkLastSeen(lastSeenTimestamp).getTime());
+    }
+
+    /**
+     * Create a new entity
+     * 
+     * @param macAddress
+     * @param vlan
+     * @param ipv4Address
+     * @param ipv6Address
+     * @param switchDPID
+     * @param switchPort
+     * @param lastSeenTimestamp in milliseconds, or {@link Entity#NO_TIME}
+     */
+    public Entity(@Nonnull MacAddress macAddress, VlanVid vlan, @Nonnull IPv4Address ipv4Address, 
+    		@Nonnull IPv6Address ipv6Address, @Nonnull DatapathId switchDPID, @Nonnull OFPort switchPort, 
+                  long lastSeenTimestamp) {
     	if (macAddress == null) {
     		throw new IllegalArgumentException("MAC address cannot be null. Try MacAddress.NONE if intention is 'no MAC'");
     	}
@@ -144,9 +169,6 @@ public class Entity implements Comparable<Entity> {
     	if (switchPort == null) {
     		throw new IllegalArgumentException("Switch port cannot be null. Try OFPort.ZERO if intention is 'no port'");
     	}
-    	if (lastSeenTimestamp == null) {
-    		throw new IllegalArgumentException("Last seen time stamp cannot be null. Try Entity.NO_DATE if intention is 'no time'");
-    	}
     	
         this.macAddress = macAddress;
         this.ipv4Address = ipv4Address;
@@ -158,6 +180,13 @@ public class Entity implements Comparable<Entity> {
         this.activeSince = lastSeenTimestamp;
     }
 
+    private static Date checkLastSeen(Date lastSeenTimestamp) {
+    	if (lastSeenTimestamp == null) {
+    		throw new IllegalArgumentException("Last seen time stamp cannot be null. Try Entity.NO_DATE if intention is 'no time'");
+    	}
+    	return lastSeenTimestamp;
+    }
+
     // ***************
     // Getters/Setters
     // ***************
@@ -198,6 +227,15 @@ public class Entity implements Comparable<Entity> {
     }
 
     public Date getLastSeenTimestamp() {
+        return toDate(lastSeenTimestamp);
+    }
+
+    /**
+     * @return the last seen timestamp in milliseconds, or
+     * {@link Entity#NO_TIME}
+     */
+    @JsonIgnore
+    public long getLastSeenTime() {
         return lastSeenTimestamp;
     }
 
@@ -208,18 +246,46 @@ public class Entity implements Comparable<Entity> {
      * @see {@link Entity#activeSince}
      */
     public void setLastSeenTimestamp(Date lastSeenTimestamp) {
-        if (activeSince.equals(Entity.NO_DATE) ||
-        		(activeSince.getTime() + ACTIVITY_TIMEOUT) < lastSeenTimestamp.getTime())
+        setLastSeenTime(toTime(lastSeenTimestamp));
+    }
+
+    /**
+     * Set the last seen timestamp and also update {@link Entity#activeSince}
+     * if appropriate
+     * @param lastSeenTimestamp the new last seen timestamp in milliseconds
+     * @see {@link Entity#activeSince}
+     */
+    public void setLastSeenTime(long lastSeenTimestamp) {
+        if (activeSince == NO_TIME ||
+        		(activeSince + ACTIVITY_TIMEOUT) < lastSeenTimestamp)
             this.activeSince = lastSeenTimestamp;
         this.lastSeenTimestamp = lastSeenTimestamp;
     }
 
     public Date getActiveSince() {
+        return toDate(activeSince);
+    }
+
+    /**
+     * @return the start of the current period of activity in milliseconds,
+     * or {@link Entity#NO_TIME}
+     */
+    @JsonIgnore
+    public long getActiveSinceTime() {
         return activeSince;
     }
 
     public void setActiveSince(Date activeSince) {
-        this.activeSince = activeSince;
+        this.activeSince = toTime(activeSince);
+    }
+
+    private static Date toDate(long time) {
+        return time == NO_TIME ? NO_DATE : new Date(time);
+    }
+
+    /* A null date means no time, as NO_DATE does */
+    static long toTime(Date date) {
+        return date == null ? NO_TIME : date.getTime();
     }
     
     @Override
@@ -324,18 +390,9 @@ public class Entity implements Comparable<Entity> {
             builder.append("null");
         }
         builder.append(", lastSeenTimestamp=");
-        if (lastSeenTimestamp != null) {
-            builder.append(lastSeenTimestamp == null? "null" : lastSeenTimestamp.toString());
-            
-        } else {
-            builder.append("null");
-        }
+        builder.append(getLastSeenTimestamp().toString());
         builder.append(", activeSince=");
-        if (activeSince != null) {
-            builder.append(activeSince == null? "null" : activeSince.toString());
-        } else {
-            builder.append("null");
-        }
+        builder.append(getActiveSince().toString());
         builder.append("]");
         return builder.toString();
     }
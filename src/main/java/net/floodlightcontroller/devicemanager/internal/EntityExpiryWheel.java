@@ -0,0 +1,148 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timing wheel of the entities the device manager has learned,
+ * bucketed by the time they expire, so that cleaning up expired entities
+ * only visits the buckets whose time has come instead of every device.
+ *
+ * Entities update their last seen time in place, so a refresh does not
+ * touch the wheel. Instead, when a bucket comes due, each entity in it is
+ * checked against its current last seen time: one that was seen since it
+ * was added is moved to the bucket of its new expiry time, and only the
+ * others are reported as expired.
+ *
+ * Entities may be added from any thread; {@link #sweep(long)} must only be
+ * called from one thread at a time. An entity added while the sweep is
+ * passing its bucket may be reported up to one revolution of the wheel
+ * late.
+ */
+public class EntityExpiryWheel {
+    private static class Entry {
+        final Long deviceKey;
+        final Entity entity;
+
+        Entry(Long deviceKey, Entity entity) {
+            this.deviceKey = deviceKey;
+            this.entity = entity;
+        }
+    }
+
+    private final long timeoutMs;
+    private final long tickMs;
+    private final Queue<Entry>[] buckets;
+    private final int mask;
+    /*
+     * The last tick that has fully passed at the last sweep; entities are
+     * never added to a bucket at or before it
+     */
+    private volatile long lastTick;
+
+    /**
+     * @param timeoutMs how long after it was last seen an entity expires
+     * @param tickMs the time covered by each bucket
+     * @param nowMs the current time
+     */
+    @SuppressWarnings("unchecked")
+    public EntityExpiryWheel(long timeoutMs, long tickMs, long nowMs) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("Tick must be positive. Was " + tickMs);
+        }
+        this.timeoutMs = timeoutMs;
+        this.tickMs = tickMs;
+        /* Enough buckets that most entities expire within one revolution */
+        int size = 1;
+        while (size < timeoutMs / tickMs + 1) {
+            size <<= 1;
+        }
+        buckets = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<Entry>();
+        }
+        mask = size - 1;
+        lastTick = nowMs / tickMs;
+    }
+
+    /**
+     * Start tracking an entity of a device.
+     * @param deviceKey
+     * @param entity
+     */
+    public void add(Long deviceKey, Entity entity) {
+        long after = lastTick;
+        long due = dueTick(entity.getLastSeenTime(), after * tickMs, after);
+        buckets[(int) (due & mask)].add(new Entry(deviceKey, entity));
+    }
+
+    /**
+     * Find the entities that have expired since the last sweep, i.e. that
+     * were last seen more than the timeout before nowMs. Entities that were
+     * seen again in the meantime are moved to a later bucket.
+     * @param nowMs the current time
+     * @return the keys of the devices with expired entities
+     */
+    public Set<Long> sweep(long nowMs) {
+        Set<Long> expired = new LinkedHashSet<Long>();
+        long nowTick = nowMs / tickMs;
+        /*
+         * Include the bucket of the tick that has only partly passed, as it
+         * holds the entities added after they had already expired. A full
+         * revolution visits every bucket.
+         */
+        long from = lastTick + 1;
+        long to = Math.min(nowTick + 1, lastTick + buckets.length);
+        lastTick = Math.max(nowTick, lastTick);
+
+        List<Entry> later = new ArrayList<Entry>();
+        for (long tick = from; tick <= to; tick++) {
+            int bucket = (int) (tick & mask);
+            Queue<Entry> queue = buckets[bucket];
+            Entry e;
+            while ((e = queue.poll()) != null) {
+                long lastSeen = e.entity.getLastSeenTime();
+                if (lastSeen != Entity.NO_TIME && lastSeen + timeoutMs < nowMs) {
+                    expired.add(e.deviceKey);
+                    continue;
+                }
+                int next = (int) (dueTick(lastSeen, nowMs, nowTick) & mask);
+                if (next == bucket) {
+                    /* Due in a later revolution; put back once this bucket is drained */
+                    later.add(e);
+                } else {
+                    buckets[next].add(e);
+                }
+            }
+            queue.addAll(later);
+            later.clear();
+        }
+        return expired;
+    }
+
+    /**
+     * @return the number of entities tracked, including those whose device
+     * no longer has them. Takes time proportional to the number.
+     */
+    public int size() {
+        int n = 0;
+        for (Queue<Entry> q : buckets) {
+            n += q.size();
+        }
+        return n;
+    }
+
+    /*
+     * The first tick after afterTick by which an entity last seen at lastSeen
+     * has expired. Entities without a time do not expire, but may get a time
+     * later, so they are checked again one timeout from now.
+     */
+    private long dueTick(long lastSeen, long nowMs, long afterTick) {
+        long expires = (lastSeen == Entity.NO_TIME ? nowMs : lastSeen) + timeoutMs;
+        return Math.max(expires / tickMs + 1, afterTick + 1);
+    }
+}
@@ -0,0 +1,127 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+
+import org.projectfloodlight.openflow.types.VlanVid;
+
+import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+import net.floodlightcontroller.util.ConcurrentLongHashMap;
+
+/**
+ * A {@link DeviceUniqueIndex} for the default key fields, MAC and VLAN.
+ * Both fields are packed into a single long, so looking up an entity
+ * needs neither an {@link IndexedEntity} wrapper nor hashing of the key
+ * fields, and the index can be a {@link ConcurrentLongHashMap}. The index
+ * stores the device key objects it was given and returns them as is, so
+ * looking up a known device allocates nothing.
+ */
+public class MacVlanDeviceIndex extends DeviceUniqueIndex {
+    public static final EnumSet<DeviceField> KEY_FIELDS = EnumSet.of(DeviceField.MAC, DeviceField.VLAN);
+
+    /* A null VLAN means 'don't care' and must not match VlanVid.ZERO, i.e. untagged */
+    private static final long NO_VLAN = 0x1000;
+    private static final int MAC_SHIFT = 13;
+
+    private final ConcurrentLongHashMap<Long> index;
+
+    public MacVlanDeviceIndex() {
+        super(KEY_FIELDS);
+        index = new ConcurrentLongHashMap<Long>();
+    }
+
+    /**
+     * Create the primary index for the given key fields, using a
+     * {@link MacVlanDeviceIndex} if they are MAC and VLAN.
+     * @param keyFields the key fields to use
+     * @return the index
+     */
+    public static DeviceUniqueIndex create(EnumSet<DeviceField> keyFields) {
+        if (KEY_FIELDS.equals(keyFields)) {
+            return new MacVlanDeviceIndex();
+        }
+        return new DeviceUniqueIndex(keyFields);
+    }
+
+    /**
+     * @param entity
+     * @return the MAC address and VLAN of the entity packed into a long
+     */
+    static long pack(Entity entity) {
+        VlanVid vlan = entity.getVlan();
+        return (entity.getMacAddress().getLong() << MAC_SHIFT)
+                | (vlan == null ? NO_VLAN : vlan.getVlan());
+    }
+
+    // ***********
+    // DeviceIndex
+    // ***********
+
+    @Override
+    public Iterator<Long> queryByEntity(Entity entity) {
+        final Long deviceKey = findByEntity(entity);
+        if (deviceKey != null)
+            return Collections.<Long>singleton(deviceKey).iterator();
+
+        return Collections.<Long>emptySet().iterator();
+    }
+
+    @Override
+    public Iterator<Long> getAll() {
+        return index.values().iterator();
+    }
+
+    @Override
+    public boolean updateIndex(Device device, Long deviceKey) {
+        for (Entity e : device.entities) {
+            if (!IndexedEntity.hasNonZeroOrNonNullKeys(KEY_FIELDS, e)) continue;
+
+            Long ret = index.putIfAbsent(pack(e), deviceKey);
+            if (ret != null && !ret.equals(deviceKey)) {
+                // If the return value is non-null, then fail the insert
+                // (this implies that a device using this entity has
+                // already been created in another thread).
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean updateIndex(Entity entity, Long deviceKey) {
+        if (!IndexedEntity.hasNonZeroOrNonNullKeys(KEY_FIELDS, entity)) return false;
+        index.put(pack(entity), deviceKey);
+        return true;
+    }
+
+    @Override
+    public void removeEntity(Entity entity) {
+        index.remove(pack(entity));
+    }
+
+    @Override
+    public void removeEntity(Entity entity, Long deviceKey) {
+        index.remove(pack(entity), deviceKey);
+    }
+
+    @Override
+    public void removeEntityIfNeeded(Entity entity, Long deviceKey,
+                                     Collection<Entity> others) {
+        long key = pack(entity);
+        for (Entity o : others) {
+            if (pack(o) == key) return;
+        }
+        index.remove(key, deviceKey);
+    }
+
+    // **************
+    // Public Methods
+    // **************
+
+    @Override
+    public Long findByEntity(Entity entity) {
+        return index.get(pack(entity));
+    }
+}
@@ -0,0 +1,185 @@
+package net.floodlightcontroller.forwarding;
+
+import java.util.concurrent.ConcurrentMap;
+
+import net.floodlightcontroller.routing.Path;
+
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+
+/**
+ * A short-lived cache of the routes Forwarding has just pushed, keyed by
+ * the microflow that caused them: the switch and port a packet arrived on
+ * and the match built from it.
+ *
+ * Until a route's flow mods are installed, every further packet of the flow
+ * comes to the controller as well. Looking the flow up here lets Forwarding
+ * send those packets along the route it already computed, without looking
+ * up attachment points or paths again and without pushing the same flow
+ * mods again.
+ *
+ * A decision is only valid for the topology version it was made in and for
+ * a short time after it was made, so a device that moved is not routed to
+ * its old location for long. The cache holds at most a fixed number of
+ * decisions, evicting the least recently used.
+ */
+public class FlowDecisionCache {
+
+    /**
+     * The microflow a decision was made for.
+     */
+    public static class Key {
+        private final DatapathId dpid;
+        private final OFPort inPort;
+        private final Match match;
+        private final int hash;
+
+        public Key(DatapathId dpid, OFPort inPort, Match match) {
+            this.dpid = dpid;
+            this.inPort = inPort;
+            this.match = match;
+            this.hash = 31 * (31 * dpid.hashCode() + inPort.hashCode()) + match.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hash == other.hash && dpid.equals(other.dpid)
+                    && inPort.equals(other.inPort) && match.equals(other.match);
+        }
+
+        @Override
+        public String toString() {
+            return "Key [dpid=" + dpid + ", inPort=" + inPort + ", match=" + match + "]";
+        }
+    }
+
+    /**
+     * A route pushed for a microflow.
+     */
+    public static class Decision {
+        private final long topologyVersion;
+        private final long createdNs;
+        private final Path path;
+        private final U64 flowSetId;
+        private final U64 cookie;
+
+        public Decision(long topologyVersion, long createdNs, Path path, U64 flowSetId, U64 cookie) {
+            this.topologyVersion = topologyVersion;
+            this.createdNs = createdNs;
+            this.path = path;
+            this.flowSetId = flowSetId;
+            this.cookie = cookie;
+        }
+
+        public long getTopologyVersion() {
+            return topologyVersion;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public U64 getFlowSetId() {
+            return flowSetId;
+        }
+
+        public U64 getCookie() {
+            return cookie;
+        }
+
+        /**
+         * @return the port the route leaves the first switch on
+         */
+        public OFPort getFirstHopOutPort() {
+            return path.getPath().get(1).getPortId();
+        }
+    }
+
+    private final ConcurrentMap<Key, Decision> decisions;
+    private final long ttlNs;
+
+    /**
+     * @param capacity the maximum number of decisions to keep
+     * @param ttlMs how long a decision stays valid
+     */
+    public FlowDecisionCache(int capacity, long ttlMs) {
+        decisions = new ConcurrentLinkedHashMap.Builder<Key, Decision>()
+                .maximumWeightedCapacity(capacity)
+                .build();
+        ttlNs = ttlMs * 1000000L;
+    }
+
+    /**
+     * @param key
+     * @param topologyVersion the current topology version
+     * @param nowNs the current time, from {@link System#nanoTime()}
+     * @return the decision for the microflow, or null if there is none that
+     * is still valid
+     */
+    public Decision get(Key key, long topologyVersion, long nowNs) {
+        Decision d = decisions.get(key);
+        if (d == null) {
+            return null;
+        }
+        if (!isValid(d, topologyVersion, nowNs)) {
+            decisions.remove(key, d);
+            return null;
+        }
+        return d;
+    }
+
+    /**
+     * Add a decision unless another thread added a valid one for the same
+     * microflow first, in which case that one should be used instead.
+     * @param key
+     * @param decision
+     * @return the decision already in the cache, or null if this one was added
+     */
+    public Decision putIfAbsent(Key key, Decision decision) {
+        while (true) {
+            Decision prev = decisions.putIfAbsent(key, decision);
+            if (prev == null) {
+                return null;
+            }
+            if (isValid(prev, decision.topologyVersion, decision.createdNs)) {
+                return prev;
+            }
+            decisions.remove(key, prev);
+        }
+    }
+
+    /**
+     * Forget a decision, e.g. because its route could not be installed.
+     * @param key
+     * @param decision
+     */
+    public void remove(Key key, Decision decision) {
+        decisions.remove(key, decision);
+    }
+
+    private boolean isValid(Decision d, long topologyVersion, long nowNs) {
+        return d.topologyVersion == topologyVersion && nowNs - d.createdNs <= ttlNs;
+    }
+
+    public void clear() {
+        decisions.clear();
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+}
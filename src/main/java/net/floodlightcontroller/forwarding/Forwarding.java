@@ -20,13 +20,13 @@ package net.floodlightcontroller.forwarding;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -58,6 +58,8 @@ import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Path;
 import net.floodlightcontroller.topology.ITopologyService;
 import net.floodlightcontroller.util.FlowModUtils;
+import net.floodlightcontroller.util.LongHashMap;
+import net.floodlightcontroller.util.LongHashSet;
 import net.floodlightcontroller.util.OFDPAUtils;
 import net.floodlightcontroller.util.OFMessageUtils;
 import net.floodlightcontroller.util.OFPortMode;
@@ -66,11 +68,14 @@ import net.floodlightcontroller.util.ParseUtils;
 
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
 import org.projectfloodlight.openflow.protocol.OFFlowModCommand;
+import org.projectfloodlight.openflow.protocol.OFFlowModFlags;
+import org.projectfloodlight.openflow.protocol.OFFlowRemoved;
 import org.projectfloodlight.openflow.protocol.OFGroupType;
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFPacketIn;
 import org.projectfloodlight.openflow.protocol.OFPacketOut;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.protocol.match.Match;
@@ -95,6 +100,10 @@ import org.python.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class Forwarding extends ForwardingBase implements IFloodlightModule, IOFSwitchListener, ILinkDiscoveryListener, IRoutingDecisionChangedListener {
     protected static final Logger log = LoggerFactory.getLogger(Forwarding.class);
 
@@ -130,20 +139,42 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     private static final long FLOWSET_MAX = (long) (Math.pow(2, FLOWSET_BITS) - 1);
     protected static FlowSetIdRegistry flowSetIdRegistry;
 
+    /* Null if disabled */
+    protected FlowDecisionCache decisionCache;
+    private static int DECISION_CACHE_SIZE = 0;
+    private static int DECISION_CACHE_TTL_MS = 1000;
+
+    /**
+     * Tracks which flowsets use each switch port, so that the flows of every
+     * flowset crossing a port can be removed when the port or its link goes
+     * down, and which ports each flowset uses, so that a flowset can be
+     * forgotten once its flows are gone.
+     *
+     * Both directions are indexed: flowset IDs are kept as primitive longs
+     * per port, and ports are kept per flowset ID in a long-keyed map. All
+     * operations therefore cost time proportional to the flowsets and ports
+     * involved, not to the number of flowsets registered. Entries are
+     * removed when their port goes down and when the switch reports that a
+     * flowset's flows were removed, which bounds the memory used by the
+     * flows actually installed.
+     *
+     * Accessed from the packet-in threads and the link discovery thread;
+     * all methods are synchronized and do not block.
+     */
     protected static class FlowSetIdRegistry {
-        private volatile Map<NodePortTuple, Set<U64>> nptToFlowSetIds;
-        private volatile Map<U64, Set<NodePortTuple>> flowSetIdToNpts;
+        private final Map<NodePortTuple, LongHashSet> nptToFlowSetIds;
+        private final LongHashMap<List<NodePortTuple>> flowSetIdToNpts;
         
         private volatile long flowSetGenerator = -1;
 
         private static volatile FlowSetIdRegistry instance;
 
-        private FlowSetIdRegistry() {
-            nptToFlowSetIds = new ConcurrentHashMap<NodePortTuple, Set<U64>>();
-            flowSetIdToNpts = new ConcurrentHashMap<U64, Set<NodePortTuple>>();
+        FlowSetIdRegistry() {
+            nptToFlowSetIds = new HashMap<NodePortTuple, LongHashSet>();
+            flowSetIdToNpts = new LongHashMap<List<NodePortTuple>>();
         }
 
-        protected static FlowSetIdRegistry getInstance() {
+        protected static synchronized FlowSetIdRegistry getInstance() {
             if (instance == null) {
                 instance = new FlowSetIdRegistry();
             }
@@ -169,62 +200,155 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
             return id;
         }
 
-        private void registerFlowSetId(NodePortTuple npt, U64 flowSetId) {
-            if (nptToFlowSetIds.containsKey(npt)) {
-                Set<U64> ids = nptToFlowSetIds.get(npt);
-                ids.add(flowSetId);
-            } else {
-                Set<U64> ids = new HashSet<U64>();
-                ids.add(flowSetId);
+        /**
+         * Get the flowset ID from a cookie made by makeForwardingCookie().
+         * @param cookie
+         * @return the flowset ID
+         */
+        protected static U64 getFlowSetId(U64 cookie) {
+            return U64.of(cookie.getValue() & FLOWSET_MASK);
+        }
+
+        protected synchronized void registerFlowSetId(NodePortTuple npt, U64 flowSetId) {
+            long id = flowSetId.getValue();
+            LongHashSet ids = nptToFlowSetIds.get(npt);
+            if (ids == null) {
+                ids = new LongHashSet();
                 nptToFlowSetIds.put(npt, ids);
-            }  
+            }
+            if (!ids.add(id)) {
+                return; /* already registered */
+            }
 
-            if (flowSetIdToNpts.containsKey(flowSetId)) {
-                Set<NodePortTuple> npts = flowSetIdToNpts.get(flowSetId);
-                npts.add(npt);
-            } else {
-                Set<NodePortTuple> npts = new HashSet<NodePortTuple>();
-                npts.add(npt);
-                flowSetIdToNpts.put(flowSetId, npts);
+            List<NodePortTuple> npts = flowSetIdToNpts.get(id);
+            if (npts == null) {
+                npts = new ArrayList<NodePortTuple>(4);
+                flowSetIdToNpts.put(id, npts);
             }
+            npts.add(npt);
         }
 
-        private Set<U64> getFlowSetIds(NodePortTuple npt) {
-            return nptToFlowSetIds.get(npt);
+        protected synchronized void registerFlowSetId(Collection<NodePortTuple> npts, U64 flowSetId) {
+            for (NodePortTuple npt : npts) {
+                registerFlowSetId(npt, flowSetId);
+            }
         }
 
-        private Set<NodePortTuple> getNodePortTuples(U64 flowSetId) {
-            return flowSetIdToNpts.get(flowSetId);
+        /**
+         * @param npt
+         * @return a copy of the flowset IDs using the port
+         */
+        protected synchronized Set<U64> getFlowSetIds(NodePortTuple npt) {
+            LongHashSet ids = nptToFlowSetIds.get(npt);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            Set<U64> result = new HashSet<U64>();
+            for (long id : ids.toArray()) {
+                result.add(U64.of(id));
+            }
+            return result;
         }
 
-        private void removeNodePortTuple(NodePortTuple npt) {
-            nptToFlowSetIds.remove(npt);
+        /**
+         * @param flowSetId
+         * @return a copy of the ports used by the flowset
+         */
+        protected synchronized Set<NodePortTuple> getNodePortTuples(U64 flowSetId) {
+            List<NodePortTuple> npts = flowSetIdToNpts.get(flowSetId.getValue());
+            return npts == null ? Collections.<NodePortTuple>emptySet() : new HashSet<NodePortTuple>(npts);
+        }
 
-            Iterator<Set<NodePortTuple>> itr = flowSetIdToNpts.values().iterator();
-            while (itr.hasNext()) {
-                Set<NodePortTuple> npts = itr.next();
-                npts.remove(npt);
+        /**
+         * Forget a port, and every flowset using it, e.g. when the port
+         * goes down.
+         * @param npt
+         * @return the flowsets that used the port, with all the ports each used
+         */
+        protected synchronized Map<U64, Set<NodePortTuple>> removeNodePortTuple(NodePortTuple npt) {
+            LongHashSet ids = nptToFlowSetIds.remove(npt);
+            if (ids == null) {
+                return Collections.emptyMap();
+            }
+            Map<U64, Set<NodePortTuple>> removed = new HashMap<U64, Set<NodePortTuple>>();
+            for (long id : ids.toArray()) {
+                removed.put(U64.of(id), removeFlowSetId(id));
             }
+            return removed;
         }
 
-        private void removeExpiredFlowSetId(U64 flowSetId, NodePortTuple avoid, Iterator<U64> avoidItr) {
-            flowSetIdToNpts.remove(flowSetId);
+        /**
+         * Forget the ports of a flowset on one switch, e.g. when the switch
+         * reports the flowset's flows removed. The flowset is forgotten
+         * once it has no ports left.
+         * @param dpid
+         * @param flowSetId
+         */
+        protected synchronized void removeFlowSetId(DatapathId dpid, U64 flowSetId) {
+            long id = flowSetId.getValue();
+            List<NodePortTuple> npts = flowSetIdToNpts.get(id);
+            if (npts == null) {
+                return;
+            }
+            Iterator<NodePortTuple> i = npts.iterator();
+            while (i.hasNext()) {
+                NodePortTuple npt = i.next();
+                if (npt.getNodeId().equals(dpid)) {
+                    i.remove();
+                    removeFromNodePortTuple(npt, id);
+                }
+            }
+            if (npts.isEmpty()) {
+                flowSetIdToNpts.remove(id);
+            }
+        }
 
-            Iterator<Entry<NodePortTuple, Set<U64>>> itr = nptToFlowSetIds.entrySet().iterator();
-            boolean removed = false;
-            while (itr.hasNext()) {
-                Entry<NodePortTuple, Set<U64>> e = itr.next();
-                if (e.getKey().equals(avoid) && ! removed) {
-                    avoidItr.remove();
-                    removed = true;
-                } else {
-                    Set<U64> ids = e.getValue();
-                    ids.remove(flowSetId);
+        /**
+         * @return the number of flowsets registered
+         */
+        protected synchronized int getFlowSetCount() {
+            return flowSetIdToNpts.size();
+        }
+
+        private Set<NodePortTuple> removeFlowSetId(long id) {
+            List<NodePortTuple> npts = flowSetIdToNpts.remove(id);
+            if (npts == null) {
+                return Collections.emptySet();
+            }
+            for (NodePortTuple npt : npts) {
+                removeFromNodePortTuple(npt, id);
+            }
+            return new HashSet<NodePortTuple>(npts);
+        }
+
+        private void removeFromNodePortTuple(NodePortTuple npt, long id) {
+            LongHashSet ids = nptToFlowSetIds.get(npt);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    nptToFlowSetIds.remove(npt);
                 }
             }
         }
     }
 
+    @Override
+    public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+        if (msg.getType() == OFType.FLOW_REMOVED) {
+            U64 cookie = ((OFFlowRemoved) msg).getCookie();
+            if (AppCookie.extractApp(cookie) == FORWARDING_APP_ID) {
+                /*
+                 * The flowset's flows on this switch are gone; no need to remove them on port down.
+                 * Switches only send these with set-send-flow-rem-flag enabled; otherwise a
+                 * flowset is forgotten when a port it crosses goes down.
+                 */
+                flowSetIdRegistry.removeFlowSetId(sw.getId(), FlowSetIdRegistry.getFlowSetId(cookie));
+            }
+            return Command.CONTINUE;
+        }
+        return super.receive(sw, msg, cntx);
+    }
+
     @Override
     public Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx) {
         Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
@@ -300,6 +424,9 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
      */
     @Override
     public void routingDecisionChanged(Iterable<Masked<U64>> changedDecisions) {
+        if (decisionCache != null) {
+            decisionCache.clear();
+        }
         deleteFlowsByDescriptor(changedDecisions);
     }
 
@@ -408,6 +535,11 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         .setMatch(m)
         .setPriority(FLOWMOD_DEFAULT_PRIORITY);
 
+        if (FLOWMOD_DEFAULT_SET_SEND_FLOW_REM_FLAG) {
+            /* So the flowset can be forgotten when the flow expires */
+            fmb.setFlags(Collections.singleton(OFFlowModFlags.SEND_FLOW_REM));
+        }
+
         FlowModUtils.setActions(fmb, actions, sw);
 
         /* Configure for particular switch pipeline */
@@ -456,6 +588,25 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
             return; 
         }   
 
+        /*
+         * A packet of a microflow whose route was pushed moments ago; send it along the same route.
+         * Only packet-ins on edge ports get here; those inside the path were flooded above.
+         */
+        Match m = null;
+        FlowDecisionCache.Key decisionKey = null;
+        long topologyVersion = 0;
+        if (decisionCache != null) {
+            m = createMatchFromPacket(sw, srcPort, pi, cntx);
+            decisionKey = new FlowDecisionCache.Key(srcSw, srcPort, m);
+            topologyVersion = topologyService.getSnapshot().getVersion();
+            FlowDecisionCache.Decision cached = decisionCache.get(decisionKey, topologyVersion, System.nanoTime());
+            if (cached != null && cached.getCookie().equals(makeForwardingCookie(decision, cached.getFlowSetId()))) {
+                log.trace("Route for {} already pushed; sending packet out {}", decisionKey, cached.getFirstHopOutPort());
+                pushPacket(sw, pi, cached.getFirstHopOutPort(), true, cntx);
+                return;
+            }
+        }
+
         /* 
          * Search for the true attachment point. The true AP is
          * not an endpoint of a link. It is a switch port w/o an
@@ -500,9 +651,22 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                 dstAp.getNodeId(),
                 dstAp.getPortId());
 
-        Match m = createMatchFromPacket(sw, srcPort, pi, cntx);
+        if (m == null) {
+            m = createMatchFromPacket(sw, srcPort, pi, cntx);
+        }
 
         if (! path.getPath().isEmpty()) {
+            FlowDecisionCache.Decision pushed = null;
+            if (decisionCache != null) {
+                pushed = new FlowDecisionCache.Decision(topologyVersion, System.nanoTime(), path, flowSetId, cookie);
+                FlowDecisionCache.Decision other = decisionCache.putIfAbsent(decisionKey, pushed);
+                if (other != null) {
+                    /* Another thread pushed a route for this microflow while we computed ours */
+                    pushPacket(sw, pi, other.getFirstHopOutPort(), true, cntx);
+                    return;
+                }
+            }
+
             if (log.isDebugEnabled()) {
                 log.debug("pushRoute inPort={} route={} " +
                         "destination={}:{}",
@@ -512,16 +676,37 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                 log.debug("Creating flow rules on the route, match rule: {}", m);
             }
 
-            pushRoute(path, m, pi, sw.getId(), cookie, 
-                    cntx, requestFlowRemovedNotifn,
-                    OFFlowModCommand.ADD);	
-            
-            /* 
-             * Register this flowset with ingress and egress ports for link down
-             * flow removal. This is done after we push the path as it is blocking.
-             */
-            for (NodePortTuple npt : path.getPath()) {
-                flowSetIdRegistry.registerFlowSetId(npt, flowSetId);
+            if (PUSH_ROUTE_PARALLEL) {
+                /* Register first; a port could go down before the switches acknowledge */
+                flowSetIdRegistry.registerFlowSetId(path.getPath(), flowSetId);
+                ListenableFuture<List<OFMessage>> acks = pushRouteAsync(path, m, pi, sw.getId(), cookie,
+                        cntx, requestFlowRemovedNotifn,
+                        OFFlowModCommand.ADD, PUSH_ROUTE_USE_BUNDLES);
+                if (pushed != null) {
+                    final FlowDecisionCache.Key key = decisionKey;
+                    final FlowDecisionCache.Decision failed = pushed;
+                    Futures.addCallback(acks, new FutureCallback<List<OFMessage>>() {
+                        @Override
+                        public void onSuccess(List<OFMessage> replies) {
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            /* Let the next packet compute and push the route again */
+                            decisionCache.remove(key, failed);
+                        }
+                    });
+                }
+            } else {
+                pushRoute(path, m, pi, sw.getId(), cookie, 
+                        cntx, requestFlowRemovedNotifn,
+                        OFFlowModCommand.ADD);	
+
+                /* 
+                 * Register this flowset with ingress and egress ports for link down
+                 * flow removal. This is done after we push the path as it is blocking.
+                 */
+                flowSetIdRegistry.registerFlowSetId(path.getPath(), flowSetId);
             }
         } /* else no path was found */
     }
@@ -881,11 +1066,46 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         } else {
             log.info("Flows will not be removed on link/port down events");
         }
+
+        tmp = configParameters.get("decision-cache-size");
+        if (tmp != null) {
+            DECISION_CACHE_SIZE = ParseUtils.parseHexOrDecInt(tmp);
+        }
+        tmp = configParameters.get("decision-cache-ttl-ms");
+        if (tmp != null) {
+            DECISION_CACHE_TTL_MS = ParseUtils.parseHexOrDecInt(tmp);
+        }
+        if (DECISION_CACHE_SIZE > 0) {
+            decisionCache = new FlowDecisionCache(DECISION_CACHE_SIZE, DECISION_CACHE_TTL_MS);
+            log.info("Caching up to {} forwarding decisions for {}ms", DECISION_CACHE_SIZE, DECISION_CACHE_TTL_MS);
+        } else {
+            log.info("Forwarding decision cache disabled");
+        }
+
+        tmp = configParameters.get("push-route-mode");
+        if (tmp != null) {
+            tmp = tmp.trim().toLowerCase();
+            if (tmp.equals("parallel")) {
+                PUSH_ROUTE_PARALLEL = true;
+                PUSH_ROUTE_USE_BUNDLES = false;
+            } else if (tmp.equals("bundle")) {
+                PUSH_ROUTE_PARALLEL = true;
+                PUSH_ROUTE_USE_BUNDLES = true;
+            } else if (tmp.equals("hop-by-hop")) {
+                PUSH_ROUTE_PARALLEL = false;
+                PUSH_ROUTE_USE_BUNDLES = false;
+            } else {
+                log.error("Invalid push-route-mode '{}'. Expected hop-by-hop, parallel or bundle", tmp);
+            }
+        }
+        log.info("Routes will be pushed {}", PUSH_ROUTE_USE_BUNDLES ? "to all switches at once, in bundles where supported"
+                : PUSH_ROUTE_PARALLEL ? "to all switches at once" : "hop by hop");
     }
 
     @Override
     public void startUp(FloodlightModuleContext context) {
         super.startUp();
+        floodlightProviderService.addOFMessageListener(OFType.FLOW_REMOVED, this);
         switchService.addOFSwitchListener(this);
         routingEngineService.addRoutingDecisionChangedListener(this);
 
@@ -958,95 +1178,54 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
             if (u.getOperation() == UpdateOperation.LINK_REMOVED ||
                     u.getOperation() == UpdateOperation.PORT_DOWN ||
                     u.getOperation() == UpdateOperation.TUNNEL_PORT_REMOVED) {
-                Set<OFMessage> msgs = new HashSet<OFMessage>();
-
+                /* src side of link */
                 if (u.getSrc() != null && !u.getSrc().equals(DatapathId.NONE)) {
-                    IOFSwitch srcSw = switchService.getSwitch(u.getSrc());
-                    /* src side of link */
-                    if (srcSw != null) {
-                        Set<U64> ids = flowSetIdRegistry.getFlowSetIds(
-                                new NodePortTuple(u.getSrc(), u.getSrcPort()));
-                        if (ids != null) {
-                            Iterator<U64> i = ids.iterator();
-                            while (i.hasNext()) {
-                                U64 id = i.next();
-                                U64 cookie = id.or(DEFAULT_FORWARDING_COOKIE);
-                                U64 cookieMask = U64.of(FLOWSET_MASK).or(AppCookie.getAppFieldMask());
-
-                                /* Delete flows matching on src port and outputting to src port */
-                                msgs = buildDeleteFlows(u.getSrcPort(), msgs, srcSw, cookie, cookieMask);
-                                messageDamper.write(srcSw, msgs);
-                                log.debug("src: Removing flows to/from DPID={}, port={}", u.getSrc(), u.getSrcPort());
-                                log.debug("src: Cookie/mask {}/{}", cookie, cookieMask);
-
-                                /* 
-                                 * Now, for each ID on this particular failed link, remove
-                                 * all other flows in the network using this ID.
-                                 */
-                                Set<NodePortTuple> npts = flowSetIdRegistry.getNodePortTuples(id);
-                                if (npts != null) {
-                                    for (NodePortTuple npt : npts) {
-                                        msgs.clear();
-                                        IOFSwitch sw = switchService.getSwitch(npt.getNodeId());
-                                        if (sw != null) {
-
-                                            /* Delete flows matching on npt port and outputting to npt port*/
-                                            msgs = buildDeleteFlows(npt.getPortId(), msgs, sw, cookie, cookieMask);
-                                            messageDamper.write(sw, msgs);
-                                            log.debug("src: Removing same-cookie flows to/from DPID={}, port={}", npt.getNodeId(), npt.getPortId());
-                                            log.debug("src: Cookie/mask {}/{}", cookie, cookieMask);
-                                        }
-                                    }
-                                }
-                                flowSetIdRegistry.removeExpiredFlowSetId(id, new NodePortTuple(u.getSrc(), u.getSrcPort()), i);
-                            }
-                        }
-                    }
-                    flowSetIdRegistry.removeNodePortTuple(new NodePortTuple(u.getSrc(), u.getSrcPort()));
+                    removeFlowSetsOnPort(u.getSrc(), u.getSrcPort(), "src");
                 }
 
                 /* must be a link, not just a port down, if we have a dst switch */
                 if (u.getDst() != null && !u.getDst().equals(DatapathId.NONE)) {
-                    /* dst side of link */
-                    IOFSwitch dstSw = switchService.getSwitch(u.getDst());
-                    if (dstSw != null) {
-                        Set<U64> ids = flowSetIdRegistry.getFlowSetIds(
-                                new NodePortTuple(u.getDst(), u.getDstPort()));
-                        if (ids != null) {
-                            Iterator<U64> i = ids.iterator();
-                            while (i.hasNext()) {
-                                U64 id = i.next();
-                                U64 cookie = id.or(DEFAULT_FORWARDING_COOKIE);
-                                U64 cookieMask = U64.of(FLOWSET_MASK).or(AppCookie.getAppFieldMask());
-                                /* Delete flows matching on dst port and outputting to dst port */
-                                msgs = buildDeleteFlows(u.getDstPort(), msgs, dstSw, cookie, cookieMask);
-                                messageDamper.write(dstSw, msgs);
-                                log.debug("dst: Removing flows to/from DPID={}, port={}", u.getDst(), u.getDstPort());
-                                log.debug("dst: Cookie/mask {}/{}", cookie, cookieMask);
-
-                                /* 
-                                 * Now, for each ID on this particular failed link, remove
-                                 * all other flows in the network using this ID.
-                                 */
-                                Set<NodePortTuple> npts = flowSetIdRegistry.getNodePortTuples(id);
-                                if (npts != null) {
-                                    for (NodePortTuple npt : npts) {
-                                        msgs.clear();
-                                        IOFSwitch sw = switchService.getSwitch(npt.getNodeId());
-                                        if (sw != null) {
-                                            /* Delete flows matching on npt port and outputting on npt port */
-                                            msgs = buildDeleteFlows(npt.getPortId(), msgs, sw, cookie, cookieMask);
-                                            messageDamper.write(sw, msgs);
-                                            log.debug("dst: Removing same-cookie flows to/from DPID={}, port={}", npt.getNodeId(), npt.getPortId());
-                                            log.debug("dst: Cookie/mask {}/{}", cookie, cookieMask);
-                                        }
-                                    }
-                                }
-                                flowSetIdRegistry.removeExpiredFlowSetId(id, new NodePortTuple(u.getDst(), u.getDstPort()), i);
-                            }
-                        }
-                    }
-                    flowSetIdRegistry.removeNodePortTuple(new NodePortTuple(u.getDst(), u.getDstPort()));
+                    removeFlowSetsOnPort(u.getDst(), u.getDstPort(), "dst");
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the flows of each flowset using a port that went down, on every
+     * switch the flowset crosses, and forget those flowsets.
+     * @param dpid the switch of the failed port
+     * @param port the failed port
+     * @param side "src" or "dst" side of the link, for logging
+     */
+    private void removeFlowSetsOnPort(DatapathId dpid, OFPort port, String side) {
+        Map<U64, Set<NodePortTuple>> flowSets = flowSetIdRegistry.removeNodePortTuple(new NodePortTuple(dpid, port));
+        /*
+         * The flowsets are already forgotten, so their flows on the other
+         * switches must be deleted even if the failed switch itself is gone.
+         */
+        IOFSwitch failedSw = switchService.getSwitch(dpid);
+        U64 cookieMask = U64.of(FLOWSET_MASK).or(AppCookie.getAppFieldMask());
+        for (Entry<U64, Set<NodePortTuple>> e : flowSets.entrySet()) {
+            U64 cookie = e.getKey().or(DEFAULT_FORWARDING_COOKIE);
+
+            /* Delete flows matching on the failed port and outputting to the failed port */
+            if (failedSw != null) {
+                messageDamper.write(failedSw, buildDeleteFlows(port, new HashSet<OFMessage>(), failedSw, cookie, cookieMask));
+                log.debug("{}: Removing flows to/from DPID={}, port={}", new Object[] { side, dpid, port });
+                log.debug("{}: Cookie/mask {}/{}", new Object[] { side, cookie, cookieMask });
+            }
+
+            /* 
+             * Now, for each ID on this particular failed link, remove
+             * all other flows in the network using this ID.
+             */
+            for (NodePortTuple npt : e.getValue()) {
+                IOFSwitch sw = switchService.getSwitch(npt.getNodeId());
+                if (sw != null) {
+                    /* Delete flows matching on npt port and outputting to npt port */
+                    messageDamper.write(sw, buildDeleteFlows(npt.getPortId(), new HashSet<OFMessage>(), sw, cookie, cookieMask));
+                    log.debug("{}: Removing same-cookie flows to/from DPID={}, port={}", new Object[] { side, npt.getNodeId(), npt.getPortId() });
                 }
             }
         }
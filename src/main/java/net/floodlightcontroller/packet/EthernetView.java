@@ -0,0 +1,322 @@
+package net.floodlightcontroller.packet;
+
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+/**
+ * A read-only view of an Ethernet frame that decodes header fields straight
+ * from the original buffer when they are asked for. Nothing is copied, and
+ * the IPv4 and TCP/UDP headers are only located if one of their fields is
+ * read. Covers what most listeners look at: MAC addresses, VLAN, ethertype,
+ * and the IPv4 5-tuple.
+ *
+ * Code that needs the full packet can get it from {@link #toEthernet()},
+ * which deserializes the buffer into an {@link Ethernet} the first time it
+ * is called and returns the same object after that.
+ *
+ * The buffer must not be modified while the view is in use. A view is not
+ * thread-safe.
+ */
+public class EthernetView {
+    private static final int MAC_LENGTH = 6;
+    private static final int MIN_LENGTH = 14;
+    private static final int IPV4_MIN_HEADER_LENGTH = 20;
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    /* Layer 2; -1 until parsed */
+    private int l3Offset = -1;
+    private int etherType;
+    private int vlanTci; /* -1 if untagged */
+
+    /* Layer 3 and 4; only valid if ipParsed */
+    private boolean ipParsed;
+    private boolean ipValid;
+    private int l4Offset; /* -1 if fragment or truncated */
+    private int ipProtocol;
+
+    private Ethernet ethernet;
+
+    /**
+     * @param data the frame, starting with the destination MAC address
+     */
+    public EthernetView(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public EthernetView(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid offset " + offset + " and length " + length
+                    + " for buffer of length " + data.length);
+        }
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return true if the buffer is long enough to hold an Ethernet header
+     */
+    public boolean isValid() {
+        parseL2();
+        return l3Offset <= offset + length;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    // **********
+    // Ethernet
+    // **********
+
+    /**
+     * @return the destination MAC address, or null if the frame is too
+     * short to hold one
+     */
+    public MacAddress getDestinationMACAddress() {
+        if (length < MAC_LENGTH) return null;
+        return MacAddress.of(getLong48(offset));
+    }
+
+    /**
+     * @return the source MAC address, or null if the frame is too short
+     * to hold one
+     */
+    public MacAddress getSourceMACAddress() {
+        if (length < 2 * MAC_LENGTH) return null;
+        return MacAddress.of(getLong48(offset + MAC_LENGTH));
+    }
+
+    /**
+     * @return the ethertype of the payload, after any VLAN tag
+     */
+    public EthType getEtherType() {
+        parseL2();
+        return EthType.of(etherType);
+    }
+
+    public boolean isVlanTagged() {
+        parseL2();
+        return vlanTci >= 0;
+    }
+
+    /**
+     * @return the VLAN ID, or {@link Ethernet#VLAN_UNTAGGED} if untagged
+     */
+    public short getVlanID() {
+        parseL2();
+        return vlanTci < 0 ? Ethernet.VLAN_UNTAGGED : (short) (vlanTci & 0x0fff);
+    }
+
+    public VlanVid getVlanVid() {
+        return VlanVid.ofVlan(getVlanID());
+    }
+
+    public byte getPriorityCode() {
+        parseL2();
+        return vlanTci < 0 ? 0 : (byte) ((vlanTci >> 13) & 0x07);
+    }
+
+    public boolean isBroadcast() {
+        return length >= MAC_LENGTH && getLong48(offset) == 0xffffffffffffL;
+    }
+
+    public boolean isMulticast() {
+        return length > 0 && (data[offset] & 0x01) != 0;
+    }
+
+    // **********
+    // IPv4
+    // **********
+
+    /**
+     * @return true if this is an IPv4 packet with a complete IPv4 header
+     */
+    public boolean isIPv4() {
+        parseL3();
+        return ipValid;
+    }
+
+    public IPv4Address getIPv4Source() {
+        checkIPv4();
+        return IPv4Address.of(getInt(l3Offset + 12));
+    }
+
+    public IPv4Address getIPv4Destination() {
+        checkIPv4();
+        return IPv4Address.of(getInt(l3Offset + 16));
+    }
+
+    public IpProtocol getIpProtocol() {
+        checkIPv4();
+        return IpProtocol.of((short) ipProtocol);
+    }
+
+    public byte getDiffServ() {
+        checkIPv4();
+        return data[l3Offset + 1];
+    }
+
+    public byte getTtl() {
+        checkIPv4();
+        return data[l3Offset + 8];
+    }
+
+    /**
+     * @return true if this is a fragment, in which case there are no ports
+     */
+    public boolean isFragment() {
+        checkIPv4();
+        int flagsAndOffset = getShort(l3Offset + 6);
+        int flags = flagsAndOffset >>> IPv4.IPV4_FLAGS_SHIFT;
+        return (flags & IPv4.IPV4_FLAGS_DONTFRAG) == 0 &&
+                ((flags & IPv4.IPV4_FLAGS_MOREFRAG) != 0 || (flagsAndOffset & IPv4.IPV4_OFFSET_MASK) != 0);
+    }
+
+    // **********
+    // TCP/UDP
+    // **********
+
+    /**
+     * @return true if this is an unfragmented IPv4 TCP or UDP packet with
+     * room for the ports
+     */
+    public boolean hasTransportPorts() {
+        parseL3();
+        return ipValid && l4Offset >= 0 && l4Offset + 4 <= offset + length
+                && (ipProtocol == IpProtocol.TCP.getIpProtocolNumber()
+                || ipProtocol == IpProtocol.UDP.getIpProtocolNumber());
+    }
+
+    public TransportPort getTransportSource() {
+        checkTransport();
+        return TransportPort.of(getShort(l4Offset));
+    }
+
+    public TransportPort getTransportDestination() {
+        checkTransport();
+        return TransportPort.of(getShort(l4Offset + 2));
+    }
+
+    /**
+     * @return the TCP flags
+     * @throws IllegalStateException if this is not a TCP packet
+     */
+    public short getTcpFlags() {
+        checkTransport();
+        if (ipProtocol != IpProtocol.TCP.getIpProtocolNumber() || l4Offset + 14 > offset + length) {
+            throw new IllegalStateException("Not a TCP packet");
+        }
+        return (short) (getShort(l4Offset + 12) & 0x1ff);
+    }
+
+    // **********
+    // Legacy
+    // **********
+
+    /**
+     * Get the packet as an {@link Ethernet} object tree. It is deserialized
+     * on the first call.
+     * @return the packet
+     */
+    public Ethernet toEthernet() {
+        if (ethernet == null) {
+            Ethernet eth = new Ethernet();
+            eth.deserialize(data, offset, length);
+            ethernet = eth;
+        }
+        return ethernet;
+    }
+
+    /**
+     * @return true if {@link #toEthernet()} has been called
+     */
+    public boolean isMaterialized() {
+        return ethernet != null;
+    }
+
+    // **********
+    // Parsing
+    // **********
+
+    private void parseL2() {
+        if (l3Offset >= 0) return;
+        if (length < MIN_LENGTH) {
+            etherType = 0;
+            vlanTci = -1;
+            l3Offset = Integer.MAX_VALUE; /* never valid */
+            return;
+        }
+        int pos = offset + 12;
+        int type = getShort(pos);
+        pos += 2;
+        if (type == EthType.VLAN_FRAME.getValue() && pos + 4 <= offset + length) {
+            vlanTci = getShort(pos);
+            type = getShort(pos + 2);
+            pos += 4;
+        } else {
+            vlanTci = -1;
+        }
+        etherType = type;
+        l3Offset = pos;
+    }
+
+    private void parseL3() {
+        if (ipParsed) return;
+        ipParsed = true;
+        parseL2();
+        int end = offset + length;
+        if (etherType != Ethernet.TYPE_IPv4 || l3Offset + IPV4_MIN_HEADER_LENGTH > end) {
+            ipValid = false;
+            return;
+        }
+        int headerLength = (data[l3Offset] & 0x0f) * 4;
+        if (headerLength < IPV4_MIN_HEADER_LENGTH) {
+            ipValid = false;
+            return;
+        }
+        ipValid = true;
+        ipProtocol = data[l3Offset + 9] & 0xff;
+        l4Offset = (isFragment() || l3Offset + headerLength > end) ? -1 : l3Offset + headerLength;
+    }
+
+    private void checkIPv4() {
+        parseL3();
+        if (!ipValid) {
+            throw new IllegalStateException("Not an IPv4 packet");
+        }
+    }
+
+    private void checkTransport() {
+        if (!hasTransportPorts()) {
+            throw new IllegalStateException("Not an unfragmented TCP or UDP packet");
+        }
+    }
+
+    private int getShort(int pos) {
+        return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+    }
+
+    private int getInt(int pos) {
+        return (getShort(pos) << 16) | getShort(pos + 2);
+    }
+
+    private long getLong48(int pos) {
+        return ((long) getShort(pos) << 32) | (getInt(pos + 2) & 0xffffffffL);
+    }
+}
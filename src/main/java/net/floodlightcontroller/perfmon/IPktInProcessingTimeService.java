@@ -28,14 +28,15 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 public interface IPktInProcessingTimeService extends IFloodlightService {
 
     /**
-     * Creates time buckets for a set of modules to measure their performance
-     * @param listeners The message listeners to create time buckets for
+     * Registers a set of modules to measure their performance. Cheap if
+     * the same list was registered before.
+     * @param listeners The message listeners to record latencies for
      */
     public void bootstrap(List<IOFMessageListener> listeners);
     
     /**
-     * Stores a timestamp in ns. Used right before a service handles an
-     * OF message. Only stores if the service is enabled.
+     * Stores a timestamp in ns for the calling thread. Used right before a
+     * service handles an OF message. Only stores if the service is enabled.
      */
     public void recordStartTimeComp(IOFMessageListener listener);
     
@@ -48,6 +49,36 @@ public interface IPktInProcessingTimeService extends IFloodlightService {
     public boolean isEnabled();
     
     public void setEnabled(boolean enabled);
-    
-    public CumulativeTimeBucket getCtb();
+
+    /**
+     * Discard all latencies recorded so far
+     */
+    public void reset();
+
+    /**
+     * @return the time in ms of the last enable or reset, as in
+     * {@link System#currentTimeMillis()}
+     */
+    public long getStartTime();
+
+    /**
+     * @return the longest window, in seconds, latencies can be reported for
+     */
+    public int getMaxWindowSeconds();
+
+    /**
+     * Latency of the whole listener chain over a recent window
+     * @param windowSeconds length of the window, rounded up to whole
+     * buckets and capped at {@link #getMaxWindowSeconds()}
+     * @return the latency summary
+     */
+    public LatencyStats getChainLatency(int windowSeconds);
+
+    /**
+     * Latency of each listener over a recent window
+     * @param windowSeconds length of the window, rounded up to whole
+     * buckets and capped at {@link #getMaxWindowSeconds()}
+     * @return the latency summary of each listener that has seen packets
+     */
+    public List<LatencyStats> getListenerLatency(int windowSeconds);
 }
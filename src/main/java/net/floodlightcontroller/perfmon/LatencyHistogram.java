@@ -0,0 +1,155 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of latencies in nanoseconds, laid out the way
+ * HdrHistogram does it: values are grouped in buckets whose width doubles
+ * with the magnitude of the value, and each bucket is split into the same
+ * number of linear sub-buckets. This keeps the relative error of any
+ * reported value under about 3% from 128ns up to {@link #HIGHEST_TRACKABLE_NS}
+ * in a few hundred counters. Larger values are recorded as
+ * {@link #HIGHEST_TRACKABLE_NS}.
+ *
+ * A histogram has a single writer. {@link #record(long)} and {@link #reset()}
+ * must only be called from one thread at a time, and never allocate. Any
+ * thread may read a histogram, or {@link #add(LatencyHistogram)} it to
+ * another, while it is being written, in which case the result may be
+ * missing the most recent few values.
+ */
+public class LatencyHistogram {
+    public static final long HIGHEST_TRACKABLE_NS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final int UNIT_MAGNITUDE = 7; /* 128ns resolution for the smallest values */
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = SUB_BUCKET_BITS - 1;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+    private static final long SUB_BUCKET_MASK = ((1L << SUB_BUCKET_BITS) - 1) << UNIT_MAGNITUDE;
+    private static final int LEADING_ZERO_COUNT_BASE = 64 - UNIT_MAGNITUDE - SUB_BUCKET_HALF_COUNT_MAGNITUDE - 1;
+    private static final int COUNTS_LENGTH = countsIndex(HIGHEST_TRACKABLE_NS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(COUNTS_LENGTH);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one value. Only to be called by the writer of this histogram.
+     * @param valueNs latency in nanoseconds
+     */
+    public void record(long valueNs) {
+        long v = valueNs < 0 ? 0 : Math.min(valueNs, HIGHEST_TRACKABLE_NS);
+        int i = countsIndex(v);
+        /* Single writer, so an ordered store is enough to publish the increments */
+        counts.lazySet(i, counts.get(i) + 1);
+        sum.lazySet(sum.get() + v);
+        if (v < min.get()) {
+            min.lazySet(v);
+        }
+        if (v > max.get()) {
+            max.lazySet(v);
+        }
+        totalCount.lazySet(totalCount.get() + 1);
+    }
+
+    /**
+     * Clear all values. Only to be called by the writer of this histogram.
+     */
+    public void reset() {
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            counts.lazySet(i, 0);
+        }
+        sum.lazySet(0);
+        min.lazySet(Long.MAX_VALUE);
+        max.lazySet(0);
+        totalCount.lazySet(0);
+    }
+
+    /**
+     * Add the values of another histogram to this one. The caller must be
+     * the writer of this histogram.
+     * @param other
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.lazySet(i, counts.get(i) + c);
+            }
+        }
+        sum.lazySet(sum.get() + other.sum.get());
+        long otherMin = other.min.get();
+        if (otherMin < min.get()) {
+            min.lazySet(otherMin);
+        }
+        long otherMax = other.max.get();
+        if (otherMax > max.get()) {
+            max.lazySet(otherMax);
+        }
+        totalCount.lazySet(totalCount.get() + other.totalCount.get());
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return the smallest value recorded, or 0 if there are none
+     */
+    public long getMin() {
+        long m = min.get();
+        return m == Long.MAX_VALUE ? 0 : m;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long n = totalCount.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * Get the value at a percentile. The result is the largest value that
+     * falls into the same sub-bucket as the percentile, so it is never lower
+     * than the exact answer.
+     * @param percentile between 0 and 100
+     * @return the value in nanoseconds, or 0 if there are no values
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < COUNTS_LENGTH; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int countsIndex(long value) {
+        int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+        int subBucketIndex = (int) (value >>> (bucketIndex + UNIT_MAGNITUDE));
+        return ((bucketIndex + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE) + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+    }
+
+    private static long highestEquivalentValue(int index) {
+        int bucketIndex = (index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+        int subBucketIndex = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        if (bucketIndex < 0) {
+            subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+            bucketIndex = 0;
+        }
+        int shift = bucketIndex + UNIT_MAGNITUDE;
+        return ((long) subBucketIndex << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,69 @@
+package net.floodlightcontroller.perfmon;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Latency summary of one module, or of the whole listener chain, over a
+ * window of time. All times are in nanoseconds.
+ */
+public class LatencyStats {
+    private final String compName;
+    private final long pktCnt;
+    private final long minProcTimeNs;
+    private final long maxProcTimeNs;
+    private final long avgProcTimeNs;
+    private final long p50ProcTimeNs;
+    private final long p99ProcTimeNs;
+    private final long p999ProcTimeNs;
+
+    public LatencyStats(String compName, LatencyHistogram h) {
+        this.compName = compName;
+        this.pktCnt = h.getTotalCount();
+        this.minProcTimeNs = h.getMin();
+        this.maxProcTimeNs = h.getMax();
+        this.avgProcTimeNs = h.getMean();
+        this.p50ProcTimeNs = h.getValueAtPercentile(50);
+        this.p99ProcTimeNs = h.getValueAtPercentile(99);
+        this.p999ProcTimeNs = h.getValueAtPercentile(99.9);
+    }
+
+    @JsonProperty("module-name")
+    public String getCompName() {
+        return compName;
+    }
+
+    @JsonProperty("num-packets")
+    public long getPktCnt() {
+        return pktCnt;
+    }
+
+    @JsonProperty("min")
+    public long getMinProcTimeNs() {
+        return minProcTimeNs;
+    }
+
+    @JsonProperty("max")
+    public long getMaxProcTimeNs() {
+        return maxProcTimeNs;
+    }
+
+    @JsonProperty("average")
+    public long getAvgProcTimeNs() {
+        return avgProcTimeNs;
+    }
+
+    @JsonProperty("p50")
+    public long getP50ProcTimeNs() {
+        return p50ProcTimeNs;
+    }
+
+    @JsonProperty("p99")
+    public long getP99ProcTimeNs() {
+        return p99ProcTimeNs;
+    }
+
+    @JsonProperty("p999")
+    public long getP999ProcTimeNs() {
+        return p999ProcTimeNs;
+    }
+}
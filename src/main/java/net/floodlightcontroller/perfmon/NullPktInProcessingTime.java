@@ -18,6 +18,7 @@ package net.floodlightcontroller.perfmon;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,9 +43,6 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 public class NullPktInProcessingTime 
     implements IFloodlightModule, IPktInProcessingTimeService {
     
-    private CumulativeTimeBucket ctb;
-    private boolean inited = false;
-    
     public Collection<Class<? extends IFloodlightService>> getModuleServices() {
         Collection<Class<? extends IFloodlightService>> l = 
                 new ArrayList<Class<? extends IFloodlightService>>();
@@ -88,8 +86,7 @@ public class NullPktInProcessingTime
 
     @Override
     public void bootstrap(List<IOFMessageListener> listeners) {
-        if (!inited)
-            ctb = new CumulativeTimeBucket(listeners);
+
     }
 
     @Override
@@ -119,7 +116,27 @@ public class NullPktInProcessingTime
     }
 
     @Override
-    public CumulativeTimeBucket getCtb() {
-        return ctb;
+    public void reset() {
+
+    }
+
+    @Override
+    public long getStartTime() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxWindowSeconds() {
+        return 0;
+    }
+
+    @Override
+    public LatencyStats getChainLatency(int windowSeconds) {
+        return new LatencyStats("all", new LatencyHistogram());
+    }
+
+    @Override
+    public List<LatencyStats> getListenerLatency(int windowSeconds) {
+        return Collections.emptyList();
     }
 }
@@ -16,22 +16,29 @@
 
 package net.floodlightcontroller.perfmon;
 
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.restlet.data.Status;
 import org.restlet.resource.Get;
 import org.restlet.resource.ServerResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-
 /**
- * Return the performance monitoring data for the get rest api call
- * @author subrata
+ * Packet-in processing latencies of the whole listener chain and of each
+ * listener, over the last 10 seconds and over the longest window kept.
+ * A window in seconds can be requested instead with ?window=N.
  */
 public class PerfMonDataResource extends ServerResource {
     protected static Logger logger = LoggerFactory.getLogger(PerfMonDataResource.class);  
     
+    protected static final int SHORT_WINDOW_SECONDS = 10;
+
     @Get("json")
-    public CumulativeTimeBucket handleApiQuery() {        
+    public Map<String, Object> handleApiQuery() {        
         IPktInProcessingTimeService pktinProcTime = 
             (IPktInProcessingTimeService)getContext().getAttributes().
                 get(IPktInProcessingTimeService.class.getCanonicalName());
@@ -43,13 +50,38 @@ public class PerfMonDataResource extends ServerResource {
         	pktinProcTime.setEnabled(true);
         	logger.warn("Requesting performance monitor data when performance monitor is disabled. Turning it on");
         }
-        // Allocate output object
-        if (pktinProcTime.isEnabled()) {
-            CumulativeTimeBucket ctb = pktinProcTime.getCtb();
-            ctb.computeAverages();
-            return ctb;
+        if (!pktinProcTime.isEnabled()) {
+            return null;
         }
-        
-        return null;
+
+        Map<String, Object> windows = new LinkedHashMap<String, Object>();
+        String window = getQueryValue("window");
+        if (window != null) {
+            int windowSeconds;
+            try {
+                windowSeconds = Integer.parseInt(window);
+            } catch (NumberFormatException e) {
+                setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Window must be a number of seconds");
+                return null;
+            }
+            addWindow(windows, pktinProcTime, windowSeconds);
+        } else {
+            addWindow(windows, pktinProcTime, SHORT_WINDOW_SECONDS);
+            addWindow(windows, pktinProcTime, pktinProcTime.getMaxWindowSeconds());
+        }
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("start-time", new Timestamp(pktinProcTime.getStartTime()).toString());
+        result.put("current-time", new Timestamp(System.currentTimeMillis()).toString());
+        result.put("windows", windows);
+        return result;
+    }
+
+    private static void addWindow(Map<String, Object> windows, IPktInProcessingTimeService pktinProcTime,
+            int windowSeconds) {
+        Map<String, Object> w = new HashMap<String, Object>();
+        w.put("all", pktinProcTime.getChainLatency(windowSeconds));
+        w.put("modules", pktinProcTime.getListenerLatency(windowSeconds));
+        windows.put(windowSeconds + "s", w);
     }
-}
\ No newline at end of file
+}
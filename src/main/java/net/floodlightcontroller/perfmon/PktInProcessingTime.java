@@ -20,10 +20,14 @@
 package net.floodlightcontroller.perfmon;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -41,13 +45,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class contains a set of buckets (called time buckets as the
- * primarily contain 'times' that are used in a circular way to 
- * store information on packet in processing time.
- * Each bucket is meant to store the various processing time 
- * related data for a fixed duration.
- * Buckets are reused to reduce garbage generation! Once the
- * last bucket is used up the LRU bucket is reused.
+ * Records packet-in processing latencies, for the whole listener chain and
+ * for each listener, in {@link LatencyHistogram}s.
+ *
+ * Every thread that handles packet-ins records into its own histograms, so
+ * recording takes no locks, shares no state with other threads and does not
+ * allocate. Each thread keeps a ring of BUCKET_SET_SIZE histograms per
+ * listener, each holding the latencies of one ONE_BUCKET_DURATION_SECONDS
+ * interval; the oldest one is cleared and reused when a new interval starts.
+ * Reading merges the histograms of the intervals in the requested window
+ * across all threads.
  * 
  * Naming convention for variable or constants
  * variable_s : value in seconds
@@ -56,12 +63,8 @@ import org.slf4j.LoggerFactory;
  * variable_ns: value in nanoseconds
  * 
  * Key Constants:
- * ONE_BUCKET_DURATION_SECONDS_INT:  time duration of each bucket
+ * ONE_BUCKET_DURATION_SECONDS:  time duration of each bucket
  * BUCKET_SET_SIZE: Number of buckets
- * TOT_PROC_TIME_WARN_THRESHOLD_US: if processing time for a packet
- *    exceeds this threshold then a warning LOG message is generated
- * TOT_PROC_TIME_ALERT_THRESHOLD_US: same as above but an alert level
- *    syslog is generated instead
  * 
  */
 public class PktInProcessingTime
@@ -82,24 +85,142 @@ public class PktInProcessingTime
     protected static  Logger  logger = 
         LoggerFactory.getLogger(PktInProcessingTime.class);
     
-    protected boolean isEnabled = false;
-    protected boolean isInited = false;
-    // Maintains the time when the last packet was processed
-    protected long lastPktTime_ns;
-    private CumulativeTimeBucket ctb = null;
+    protected volatile boolean isEnabled = false;
+    private volatile long startTime_ms = System.currentTimeMillis();
 
-    
     /***
      * BUCKET_SET_SIZE buckets each holding 10s of processing time data, a total
-     * of 30*10s = 5mins of processing time data is maintained
+     * of 6*10s = 1min of processing time data is maintained
      */
     protected static final int ONE_BUCKET_DURATION_SECONDS = 10;// seconds
     protected static final long ONE_BUCKET_DURATION_NANOSECONDS  =
-                                ONE_BUCKET_DURATION_SECONDS * 1000000000;
-    
+                                ONE_BUCKET_DURATION_SECONDS * 1000000000L;
+    protected static final int BUCKET_SET_SIZE = 6;
+
+    /* Listeners are numbered in the order they are first seen */
+    private final Map<IOFMessageListener, Integer> listenerIds =
+            new ConcurrentHashMap<IOFMessageListener, Integer>();
+    private final List<IOFMessageListener> listenersById =
+            new CopyOnWriteArrayList<IOFMessageListener>();
+    private volatile List<IOFMessageListener> lastBootstrapped;
+
+    /* Bumped on reset; recorders clear themselves when they see a new generation */
+    private volatile int generation;
+    private final List<ThreadRecorder> recorders = new CopyOnWriteArrayList<ThreadRecorder>();
+    private final ThreadLocal<ThreadRecorder> recorder = new ThreadLocal<ThreadRecorder>() {
+        @Override
+        protected ThreadRecorder initialValue() {
+            ThreadRecorder r = new ThreadRecorder();
+            recorders.add(r);
+            return r;
+        }
+    };
+
+    /**
+     * A ring of BUCKET_SET_SIZE histograms, one per interval. Written by a
+     * single thread.
+     */
+    private static class WindowedHistogram {
+        private static final long NO_INTERVAL = Long.MIN_VALUE;
+        private final LatencyHistogram[] buckets = new LatencyHistogram[BUCKET_SET_SIZE];
+        private final AtomicLongArray intervals = new AtomicLongArray(BUCKET_SET_SIZE);
+
+        private WindowedHistogram() {
+            for (int i = 0; i < BUCKET_SET_SIZE; i++) {
+                buckets[i] = new LatencyHistogram();
+                intervals.set(i, NO_INTERVAL);
+            }
+        }
+
+        private void record(long procTimeNs, long interval) {
+            int i = (int) Math.floorMod(interval, (long) BUCKET_SET_SIZE);
+            if (intervals.get(i) != interval) {
+                buckets[i].reset();
+                intervals.lazySet(i, interval);
+            }
+            buckets[i].record(procTimeNs);
+        }
+
+        private void addTo(LatencyHistogram h, long oldestInterval, long newestInterval) {
+            for (int i = 0; i < BUCKET_SET_SIZE; i++) {
+                long interval = intervals.get(i);
+                if (interval >= oldestInterval && interval <= newestInterval) {
+                    h.add(buckets[i]);
+                }
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKET_SET_SIZE; i++) {
+                intervals.lazySet(i, NO_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Start times and histograms of one packet processing thread
+     */
+    private class ThreadRecorder {
+        private long startTimePktNs;
+        private long startTimeCompNs;
+        private volatile int recorderGeneration = generation;
+        private final WindowedHistogram chain = new WindowedHistogram();
+        private volatile WindowedHistogram[] components = new WindowedHistogram[0];
+
+        private void checkGeneration() {
+            int g = generation;
+            if (recorderGeneration != g) {
+                chain.reset();
+                for (WindowedHistogram wh : components) {
+                    if (wh != null) {
+                        wh.reset();
+                    }
+                }
+                recorderGeneration = g;
+            }
+        }
+
+        private WindowedHistogram getComponent(int id) {
+            WindowedHistogram[] c = components;
+            if (id >= c.length) {
+                c = Arrays.copyOf(c, id + 1);
+                c[id] = new WindowedHistogram();
+                components = c;
+            } else if (c[id] == null) {
+                /* Only after a listener is registered late by another thread's chain */
+                WindowedHistogram[] grown = c.clone();
+                grown[id] = new WindowedHistogram();
+                components = c = grown;
+            }
+            return c[id];
+        }
+    }
+
     @Override
     public void bootstrap(List<IOFMessageListener> listeners) {
-            ctb = new CumulativeTimeBucket(listeners);
+        if (listeners == null || listeners == lastBootstrapped) {
+            return;
+        }
+        for (IOFMessageListener l : listeners) {
+            getListenerId(l);
+        }
+        lastBootstrapped = listeners;
+    }
+
+    private int getListenerId(IOFMessageListener listener) {
+        Integer id = listenerIds.get(listener);
+        if (id != null) {
+            return id;
+        }
+        synchronized (listenersById) {
+            id = listenerIds.get(listener);
+            if (id == null) {
+                id = listenersById.size();
+                listenersById.add(listener);
+                listenerIds.put(listener, id);
+            }
+            return id;
+        }
     }
     
     @Override
@@ -109,47 +230,66 @@ public class PktInProcessingTime
     
     @Override
     public void setEnabled(boolean enabled) {
-    	if(enabled){
+    	if (enabled && !isEnabled) {
     		bootstrap(floodlightProvider.getListeners().get(OFType.PACKET_IN));
+    		reset();
     	}
         this.isEnabled = enabled;
         logger.debug("Setting module to " + isEnabled);
     }
-    
+
     @Override
-    public CumulativeTimeBucket getCtb() {
-        return ctb;
+    public void reset() {
+        generation++;
+        startTime_ms = System.currentTimeMillis();
+    }
+
+    @Override
+    public long getStartTime() {
+        return startTime_ms;
     }
     
-    private long startTimePktNs;
-    private long startTimeCompNs;
     @Override
     public void recordStartTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            startTimeCompNs = System.nanoTime();
+            recorder.get().startTimeCompNs = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            long procTime = System.nanoTime() - startTimeCompNs;
-            ctb.updateOneComponent(listener, procTime);
+            long now = System.nanoTime();
+            ThreadRecorder r = recorder.get();
+            if (r.startTimeCompNs == 0) {
+                return; /* Enabled while the listener was running */
+            }
+            long procTimeNs = now - r.startTimeCompNs;
+            r.startTimeCompNs = 0;
+            r.checkGeneration();
+            r.getComponent(getListenerId(listener)).record(procTimeNs, getInterval(now));
         }
     }
     
     @Override
     public void recordStartTimePktIn() {
         if (isEnabled()) {
-            startTimePktNs = System.nanoTime();
+            recorder.get().startTimePktNs = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
         if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
-            ctb.updatePerPacketCounters(procTimeNs);
+            long now = System.nanoTime();
+            ThreadRecorder r = recorder.get();
+            if (r.startTimePktNs == 0) {
+                return;
+            }
+            long procTimeNs = now - r.startTimePktNs;
+            r.startTimePktNs = 0;
+            r.checkGeneration();
+            r.chain.record(procTimeNs, getInterval(now));
             
             if (ptWarningThresholdInNano > 0 && 
                     procTimeNs > ptWarningThresholdInNano) {
@@ -158,6 +298,55 @@ public class PktInProcessingTime
             }
         }
     }
+
+    @Override
+    public int getMaxWindowSeconds() {
+        return BUCKET_SET_SIZE * ONE_BUCKET_DURATION_SECONDS;
+    }
+
+    @Override
+    public LatencyStats getChainLatency(int windowSeconds) {
+        long newest = getInterval(System.nanoTime());
+        long oldest = newest - getWindowBuckets(windowSeconds) + 1;
+        int g = generation;
+        LatencyHistogram h = new LatencyHistogram();
+        for (ThreadRecorder r : recorders) {
+            if (r.recorderGeneration == g) {
+                r.chain.addTo(h, oldest, newest);
+            }
+        }
+        return new LatencyStats("all", h);
+    }
+
+    @Override
+    public List<LatencyStats> getListenerLatency(int windowSeconds) {
+        long newest = getInterval(System.nanoTime());
+        long oldest = newest - getWindowBuckets(windowSeconds) + 1;
+        int g = generation;
+        List<LatencyStats> stats = new ArrayList<LatencyStats>();
+        for (int id = 0; id < listenersById.size(); id++) {
+            LatencyHistogram h = new LatencyHistogram();
+            for (ThreadRecorder r : recorders) {
+                WindowedHistogram[] c = r.components;
+                if (r.recorderGeneration == g && id < c.length && c[id] != null) {
+                    c[id].addTo(h, oldest, newest);
+                }
+            }
+            if (h.getTotalCount() > 0) {
+                stats.add(new LatencyStats(listenersById.get(id).getClass().getCanonicalName(), h));
+            }
+        }
+        return stats;
+    }
+
+    private static long getInterval(long timeNs) {
+        return Math.floorDiv(timeNs, ONE_BUCKET_DURATION_NANOSECONDS);
+    }
+
+    private static int getWindowBuckets(int windowSeconds) {
+        int buckets = (windowSeconds + ONE_BUCKET_DURATION_SECONDS - 1) / ONE_BUCKET_DURATION_SECONDS;
+        return Math.max(1, Math.min(buckets, BUCKET_SET_SIZE));
+    }
     
     // IFloodlightModule methods
     
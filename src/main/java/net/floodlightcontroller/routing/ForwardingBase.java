@@ -19,6 +19,7 @@ package net.floodlightcontroller.routing;
 
 import java.util.EnumSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -28,6 +29,7 @@ import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.SwitchDisconnectedException;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.core.util.AppCookie;
@@ -63,6 +65,10 @@ import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Abstract base class for implementing a forwarding module.  Forwarding is
  * responsible for programming flows to a switch in response to a policy
@@ -97,6 +103,10 @@ public abstract class ForwardingBase implements IOFMessageListener {
 
     protected static boolean REMOVE_FLOWS_ON_LINK_OR_PORT_DOWN = true;
 
+    /* Push routes with pushRouteAsync(), optionally in bundles, rather than hop by hop */
+    protected static boolean PUSH_ROUTE_PARALLEL = false;
+    protected static boolean PUSH_ROUTE_USE_BUNDLES = false;
+
     protected IFloodlightProviderService floodlightProviderService;
     protected IOFSwitchService switchService;
     protected IDeviceService deviceManagerService;
@@ -195,69 +205,18 @@ public abstract class ForwardingBase implements IOFMessageListener {
                 return packetOutSent;
             }
 
-            // need to build flow mod based on what type it is. Cannot set command later
-            OFFlowMod.Builder fmb;
-            switch (flowModCommand) {
-            case ADD:
-                fmb = sw.getOFFactory().buildFlowAdd();
-                break;
-            case DELETE:
-                fmb = sw.getOFFactory().buildFlowDelete();
-                break;
-            case DELETE_STRICT:
-                fmb = sw.getOFFactory().buildFlowDeleteStrict();
-                break;
-            case MODIFY:
-                fmb = sw.getOFFactory().buildFlowModify();
-                break;
-            default:
-                log.error("Could not decode OFFlowModCommand. Using MODIFY_STRICT. (Should another be used as the default?)");        
-            case MODIFY_STRICT:
-                fmb = sw.getOFFactory().buildFlowModifyStrict();
-                break;			
-            }
-
-            OFActionOutput.Builder aob = sw.getOFFactory().actions().buildOutput();
-            List<OFAction> actions = new ArrayList<OFAction>();	
-            Match.Builder mb = MatchUtils.convertToVersion(match, sw.getOFFactory().getVersion());
-
             // set input and output ports on the switch
             OFPort outPort = switchPortList.get(indx).getPortId();
             OFPort inPort = switchPortList.get(indx - 1).getPortId();
-            if (FLOWMOD_DEFAULT_MATCH_IN_PORT) {
-                mb.setExact(MatchField.IN_PORT, inPort);
-            }
-            aob.setPort(outPort);
-            aob.setMaxLen(Integer.MAX_VALUE);
-            actions.add(aob.build());
-
-            if (FLOWMOD_DEFAULT_SET_SEND_FLOW_REM_FLAG || requestFlowRemovedNotification) {
-                Set<OFFlowModFlags> flags = new HashSet<>();
-                flags.add(OFFlowModFlags.SEND_FLOW_REM);
-                fmb.setFlags(flags);
-            }
-
-            fmb.setMatch(mb.build())
-            .setIdleTimeout(FLOWMOD_DEFAULT_IDLE_TIMEOUT)
-            .setHardTimeout(FLOWMOD_DEFAULT_HARD_TIMEOUT)
-            .setBufferId(OFBufferId.NO_BUFFER)
-            .setCookie(cookie)
-            .setOutPort(outPort)
-            .setPriority(FLOWMOD_DEFAULT_PRIORITY);
-
-            FlowModUtils.setActions(fmb, actions, sw);
-
-            /* Configure for particular switch pipeline */
-            if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) != 0) {
-                fmb.setTableId(FLOWMOD_DEFAULT_TABLE_ID);
-            }
+            OFFlowMod fm = buildRouteFlowMod(sw, match, inPort, outPort, cookie,
+                    requestFlowRemovedNotification, flowModCommand);
                         
             if (log.isTraceEnabled()) {
                 log.trace("Pushing Route flowmod routeIndx={} " +
                         "sw={} inPort={} outPort={}",
                         new Object[] {indx,
                                 sw,
-                                fmb.getMatch().get(MatchField.IN_PORT),
+                                fm.getMatch().get(MatchField.IN_PORT),
                                 outPort });
             }
 
@@ -266,17 +225,17 @@ public abstract class ForwardingBase implements IOFMessageListener {
                         FLOWMOD_DEFAULT_PRIORITY, 
                         FLOWMOD_DEFAULT_HARD_TIMEOUT,
                         FLOWMOD_DEFAULT_IDLE_TIMEOUT,
-                        fmb.getMatch(), 
+                        fm.getMatch(), 
                         null, // TODO how to determine output VLAN for lookup of L2 interface group
                         outPort);
             } else {
-                messageDamper.write(sw, fmb.build());
+                messageDamper.write(sw, fm);
             }
 
             /* Push the packet out the first hop switch */
             if (sw.getId().equals(pinSwitch) &&
-                    !fmb.getCommand().equals(OFFlowModCommand.DELETE) &&
-                    !fmb.getCommand().equals(OFFlowModCommand.DELETE_STRICT)) {
+                    !fm.getCommand().equals(OFFlowModCommand.DELETE) &&
+                    !fm.getCommand().equals(OFFlowModCommand.DELETE_STRICT)) {
                 /* Use the buffered packet at the switch, if there's one stored */
                 pushPacket(sw, pi, outPort, true, cntx);
                 packetOutSent = true;
@@ -286,6 +245,171 @@ public abstract class ForwardingBase implements IOFMessageListener {
         return packetOutSent;
     }
 
+    /**
+     * Push a route to all of its switches at once, rather than hop by hop,
+     * and without waiting for the switches. Each switch gets its flow mods
+     * in one write followed by a barrier, or in a bundle, so the whole route
+     * is installed in about one round trip. The packet out on the first hop
+     * switch is sent once every switch has acknowledged its flow mods, so
+     * the packet does not overtake the route and cause further packet-ins.
+     *
+     * Nothing is sent if any switch on the route is not connected.
+     *
+     * @param route Route to push
+     * @param match OpenFlow fields to match on
+     * @param pi the packet-in to send out the first hop, or null
+     * @param pinSwitch the switch of the packet-in
+     * @param cookie The cookie to set in each flow_mod
+     * @param cntx The floodlight context
+     * @param requestFlowRemovedNotification if set to true then the switch would
+     *        send a flow mod removal notification when the flow mod expires
+     * @param flowModCommand flow mod. command to use
+     * @param useBundles install each switch's flow mods in an atomic bundle,
+     *        on switches with OpenFlow 1.4 or later
+     * @return the barrier or bundle commit replies, one per switch; fails
+     *        if any switch fails to acknowledge
+     */
+    public ListenableFuture<List<OFMessage>> pushRouteAsync(final Path route, Match match, final OFPacketIn pi,
+            DatapathId pinSwitch, U64 cookie, final FloodlightContext cntx,
+            boolean requestFlowRemovedNotification, OFFlowModCommand flowModCommand, boolean useBundles) {
+
+        List<NodePortTuple> switchPortList = route.getPath();
+
+        /* Resolve every switch before writing anything, so a route is not left half installed */
+        List<IOFSwitch> switches = new ArrayList<IOFSwitch>();
+        for (int indx = switchPortList.size() - 1; indx > 0; indx -= 2) {
+            DatapathId switchDPID = switchPortList.get(indx).getNodeId();
+            IOFSwitch sw = switchService.getSwitch(switchDPID);
+            if (sw == null) {
+                log.warn("Unable to push route, switch at DPID {} not available", switchDPID);
+                return Futures.immediateFailedFuture(new SwitchDisconnectedException(switchDPID));
+            }
+            switches.add(sw);
+        }
+
+        List<ListenableFuture<OFMessage>> acks = new ArrayList<ListenableFuture<OFMessage>>(switches.size());
+        IOFSwitch firstHop = null;
+        OFPort firstHopOutPort = null;
+        int indx = switchPortList.size() - 1;
+        for (IOFSwitch sw : switches) {
+            OFPort outPort = switchPortList.get(indx).getPortId();
+            OFPort inPort = switchPortList.get(indx - 1).getPortId();
+            OFFlowMod fm = buildRouteFlowMod(sw, match, inPort, outPort, cookie,
+                    requestFlowRemovedNotification, flowModCommand);
+
+            if (OFDPAUtils.isOFDPASwitch(sw)) {
+                OFDPAUtils.addLearningSwitchFlow(sw, cookie, 
+                        FLOWMOD_DEFAULT_PRIORITY, 
+                        FLOWMOD_DEFAULT_HARD_TIMEOUT,
+                        FLOWMOD_DEFAULT_IDLE_TIMEOUT,
+                        fm.getMatch(), 
+                        null, // TODO how to determine output VLAN for lookup of L2 interface group
+                        outPort);
+                acks.add(OFMessageBatch.writeWithBarrier(sw, Collections.<OFMessage>emptyList()));
+            } else {
+                acks.add(OFMessageBatch.write(sw, Collections.singletonList(fm), useBundles));
+            }
+
+            if (sw.getId().equals(pinSwitch) &&
+                    !fm.getCommand().equals(OFFlowModCommand.DELETE) &&
+                    !fm.getCommand().equals(OFFlowModCommand.DELETE_STRICT)) {
+                firstHop = sw;
+                firstHopOutPort = outPort;
+            }
+            indx -= 2;
+        }
+
+        ListenableFuture<List<OFMessage>> all = Futures.allAsList(acks);
+        if (firstHop != null && pi != null) {
+            final IOFSwitch sw = firstHop;
+            final OFPort outPort = firstHopOutPort;
+            Futures.addCallback(all, new FutureCallback<List<OFMessage>>() {
+                @Override
+                public void onSuccess(List<OFMessage> replies) {
+                    pushPacket(sw, pi, outPort, true, cntx);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    /* Forward the packet anyway; at worst it comes back as another packet-in */
+                    log.warn("Route {} was not acknowledged by every switch: {}", route.getId(), t.toString());
+                    pushPacket(sw, pi, outPort, true, cntx);
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * Build the flow mod for one hop of a route.
+     * @param sw the switch of the hop
+     * @param match OpenFlow fields to match on
+     * @param inPort the hop's ingress port
+     * @param outPort the hop's egress port
+     * @param cookie The cookie to set in the flow_mod
+     * @param requestFlowRemovedNotification if set to true then the switch would
+     *        send a flow mod removal notification when the flow mod expires
+     * @param flowModCommand flow mod. command to use
+     * @return the flow mod
+     */
+    protected OFFlowMod buildRouteFlowMod(IOFSwitch sw, Match match, OFPort inPort, OFPort outPort,
+            U64 cookie, boolean requestFlowRemovedNotification, OFFlowModCommand flowModCommand) {
+        // need to build flow mod based on what type it is. Cannot set command later
+        OFFlowMod.Builder fmb;
+        switch (flowModCommand) {
+        case ADD:
+            fmb = sw.getOFFactory().buildFlowAdd();
+            break;
+        case DELETE:
+            fmb = sw.getOFFactory().buildFlowDelete();
+            break;
+        case DELETE_STRICT:
+            fmb = sw.getOFFactory().buildFlowDeleteStrict();
+            break;
+        case MODIFY:
+            fmb = sw.getOFFactory().buildFlowModify();
+            break;
+        default:
+            log.error("Could not decode OFFlowModCommand. Using MODIFY_STRICT. (Should another be used as the default?)");        
+        case MODIFY_STRICT:
+            fmb = sw.getOFFactory().buildFlowModifyStrict();
+            break;			
+        }
+
+        OFActionOutput.Builder aob = sw.getOFFactory().actions().buildOutput();
+        List<OFAction> actions = new ArrayList<OFAction>();	
+        Match.Builder mb = MatchUtils.convertToVersion(match, sw.getOFFactory().getVersion());
+
+        if (FLOWMOD_DEFAULT_MATCH_IN_PORT) {
+            mb.setExact(MatchField.IN_PORT, inPort);
+        }
+        aob.setPort(outPort);
+        aob.setMaxLen(Integer.MAX_VALUE);
+        actions.add(aob.build());
+
+        if (FLOWMOD_DEFAULT_SET_SEND_FLOW_REM_FLAG || requestFlowRemovedNotification) {
+            Set<OFFlowModFlags> flags = new HashSet<>();
+            flags.add(OFFlowModFlags.SEND_FLOW_REM);
+            fmb.setFlags(flags);
+        }
+
+        fmb.setMatch(mb.build())
+        .setIdleTimeout(FLOWMOD_DEFAULT_IDLE_TIMEOUT)
+        .setHardTimeout(FLOWMOD_DEFAULT_HARD_TIMEOUT)
+        .setBufferId(OFBufferId.NO_BUFFER)
+        .setCookie(cookie)
+        .setOutPort(outPort)
+        .setPriority(FLOWMOD_DEFAULT_PRIORITY);
+
+        FlowModUtils.setActions(fmb, actions, sw);
+
+        /* Configure for particular switch pipeline */
+        if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) != 0) {
+            fmb.setTableId(FLOWMOD_DEFAULT_TABLE_ID);
+        }
+        return fmb.build();
+    }
+
     /**
      * Pushes a packet-out to a switch. The assumption here is that
      * the packet-in was also generated from the same switch. Thus, if the input
@@ -0,0 +1,91 @@
+package net.floodlightcontroller.statistics;
+
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Identifies a flow in a switch's flow stats replies: a flow entry is unique
+ * by table, priority and match. The cookie is included so that a flow
+ * replaced by another application with the same match starts a new history.
+ */
+public class FlowStatsKey {
+	private final TableId tableId;
+	private final int priority;
+	private final Match match;
+	private final U64 cookie;
+
+	public FlowStatsKey(TableId tableId, int priority, Match match, U64 cookie) {
+		this.tableId = tableId;
+		this.priority = priority;
+		this.match = match;
+		this.cookie = cookie;
+	}
+
+	public static FlowStatsKey of(OFFlowStatsEntry e) {
+		return new FlowStatsKey(e.getTableId(), e.getPriority(), e.getMatch(), e.getCookie());
+	}
+
+	public TableId getTableId() {
+		return tableId;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public Match getMatch() {
+		return match;
+	}
+
+	public U64 getCookie() {
+		return cookie;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((cookie == null) ? 0 : cookie.hashCode());
+		result = prime * result + ((match == null) ? 0 : match.hashCode());
+		result = prime * result + priority;
+		result = prime * result + ((tableId == null) ? 0 : tableId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		FlowStatsKey other = (FlowStatsKey) obj;
+		if (priority != other.priority)
+			return false;
+		if (tableId == null) {
+			if (other.tableId != null)
+				return false;
+		} else if (!tableId.equals(other.tableId))
+			return false;
+		if (cookie == null) {
+			if (other.cookie != null)
+				return false;
+		} else if (!cookie.equals(other.cookie))
+			return false;
+		if (match == null) {
+			if (other.match != null)
+				return false;
+		} else if (!match.equals(other.match))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "FlowStatsKey [tableId=" + tableId + ", priority=" + priority
+				+ ", match=" + match + ", cookie=" + cookie + "]";
+	}
+}
@@ -4,7 +4,9 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
 
+import java.util.List;
 import java.util.Map;
 
 public interface IStatisticsService extends IFloodlightService {
@@ -13,5 +15,31 @@ public interface IStatisticsService extends IFloodlightService {
 		
 	public Map<NodePortTuple, SwitchPortBandwidth> getBandwidthConsumption();
 	
+	/**
+	 * Get the recent flow rates of a switch from the collected history,
+	 * without polling the switch.
+	 * @param dpid
+	 * @param windowMs how far back to look
+	 * @return the samples of each flow in the window, oldest first;
+	 * {@link RateSample#over(List)} combines them into the window's average
+	 */
+	public Map<FlowStatsKey, List<RateSample>> getFlowRates(DatapathId dpid, long windowMs);
+
+	/**
+	 * Get the recent flow table lookup and match rates of a switch.
+	 * @param dpid
+	 * @param windowMs how far back to look
+	 * @return the samples of each table in the window, oldest first
+	 */
+	public Map<TableId, List<TableRateSample>> getTableRates(DatapathId dpid, long windowMs);
+
+	/**
+	 * Get the recent queue transmit rates of a switch.
+	 * @param dpid
+	 * @param windowMs how far back to look
+	 * @return the samples of each queue in the window, oldest first
+	 */
+	public Map<QueueStatsKey, List<RateSample>> getQueueRates(DatapathId dpid, long windowMs);
+	
 	public void collectStatistics(boolean collect);
 }
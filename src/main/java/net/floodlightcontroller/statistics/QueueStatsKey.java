@@ -0,0 +1,57 @@
+package net.floodlightcontroller.statistics;
+
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * Identifies a queue in a switch's queue stats replies.
+ */
+public class QueueStatsKey {
+	private final OFPort port;
+	private final long queueId;
+
+	public QueueStatsKey(OFPort port, long queueId) {
+		this.port = port;
+		this.queueId = queueId;
+	}
+
+	public OFPort getPort() {
+		return port;
+	}
+
+	public long getQueueId() {
+		return queueId;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((port == null) ? 0 : port.hashCode());
+		result = prime * result + (int) (queueId ^ (queueId >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		QueueStatsKey other = (QueueStatsKey) obj;
+		if (queueId != other.queueId)
+			return false;
+		if (port == null) {
+			if (other.port != null)
+				return false;
+		} else if (!port.equals(other.port))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "QueueStatsKey [port=" + port + ", queueId=" + queueId + "]";
+	}
+}
@@ -0,0 +1,77 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.List;
+
+/**
+ * Packet and byte rates of a flow or queue between two consecutive stats
+ * replies.
+ */
+public class RateSample extends StatsSample {
+	private final long packetCount;
+	private final long byteCount;
+	private final long packetDelta;
+	private final long byteDelta;
+
+	public RateSample(long timeMs, long elapsedNs, long packetCount, long byteCount,
+			long packetDelta, long byteDelta) {
+		super(timeMs, elapsedNs);
+		this.packetCount = packetCount;
+		this.byteCount = byteCount;
+		this.packetDelta = packetDelta;
+		this.byteDelta = byteDelta;
+	}
+
+	/**
+	 * Combine consecutive samples into one that covers all of them, e.g. to
+	 * get the average rate over a time window.
+	 * @param samples oldest first
+	 * @return the combined sample, or null if there are no samples
+	 */
+	public static RateSample over(List<RateSample> samples) {
+		if (samples.isEmpty()) {
+			return null;
+		}
+		long elapsedNs = 0;
+		long packetDelta = 0;
+		long byteDelta = 0;
+		for (RateSample s : samples) {
+			elapsedNs += s.getElapsedNs();
+			packetDelta += s.packetDelta;
+			byteDelta += s.byteDelta;
+		}
+		RateSample last = samples.get(samples.size() - 1);
+		return new RateSample(last.getTimeMs(), elapsedNs, last.packetCount, last.byteCount,
+				packetDelta, byteDelta);
+	}
+
+	public long getPacketCount() {
+		return packetCount;
+	}
+
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	public long getPacketDelta() {
+		return packetDelta;
+	}
+
+	public long getByteDelta() {
+		return byteDelta;
+	}
+
+	public double getPacketsPerSecond() {
+		return perSecond(packetDelta, getElapsedNs());
+	}
+
+	public double getBytesPerSecond() {
+		return perSecond(byteDelta, getElapsedNs());
+	}
+
+	@Override
+	public String toString() {
+		return "RateSample [timeMs=" + getTimeMs() + ", elapsedNs=" + getElapsedNs()
+				+ ", packetCount=" + packetCount + ", byteCount=" + byteCount
+				+ ", packetDelta=" + packetDelta + ", byteDelta=" + byteDelta + "]";
+	}
+}
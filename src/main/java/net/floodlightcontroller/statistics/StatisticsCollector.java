@@ -1,7 +1,6 @@
 package net.floodlightcontroller.statistics;
 
 import com.google.common.primitives.UnsignedLong;
-import com.google.common.util.concurrent.ListenableFuture;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
@@ -22,9 +21,9 @@ import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.Thread.State;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -43,11 +42,27 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	private static final long BITS_PER_BYTE = 8;
 	private static final long MILLIS_PER_SEC = 1000;
 	
+	private static final int DEFAULT_MAX_OUTSTANDING_REQUESTS = 100;
+	private static int maxOutstandingRequests = DEFAULT_MAX_OUTSTANDING_REQUESTS;
+	private static long requestTimeoutMs = 0; /* 0 is half the collection interval */
+	private static StatsPoller portStatsPoller;
+
+	private static int flowStatsInterval = 10;
+	private static int statsHistorySize = 30;
+	private static final List<ScheduledFuture<?>> switchStatsCollectors = new ArrayList<ScheduledFuture<?>>();
+	private static final List<StatsPoller> switchStatsPollers = new ArrayList<StatsPoller>();
+
 	private static final String INTERVAL_PORT_STATS_STR = "collectionIntervalPortStatsSeconds";
 	private static final String ENABLED_STR = "enable";
+	private static final String MAX_OUTSTANDING_REQUESTS_STR = "maxOutstandingRequests";
+	private static final String REQUEST_TIMEOUT_STR = "requestTimeoutMs";
+	private static final String INTERVAL_FLOW_STATS_STR = "collectionIntervalFlowStatsSeconds";
+	private static final String HISTORY_SIZE_STR = "statsHistorySize";
 
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> portStats = new HashMap<NodePortTuple, SwitchPortBandwidth>();
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> tentativePortStats = new HashMap<NodePortTuple, SwitchPortBandwidth>();
+	/* Updated from the threads that complete the stats requests; at most one per switch at a time */
+	private static final Map<NodePortTuple, SwitchPortBandwidth> portStats = new ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth>();
+	private static final Map<NodePortTuple, SwitchPortBandwidth> tentativePortStats = new ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth>();
+	private static final ConcurrentMap<DatapathId, SwitchStatsHistory> switchStats = new ConcurrentHashMap<DatapathId, SwitchStatsHistory>();
 
 	/**
 	 * Run periodically to collect all port statistics. This only collects
@@ -68,57 +83,60 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 * @author Ryan Izard, ryan.izard@bigswitch.com, rizard@g.clemson.edu
 	 *
 	 */
-	protected class PortStatsCollector implements Runnable {
+	protected class PortStatsCollector implements Runnable, StatsPoller.IStatsReplyHandler {
 
 		@Override
 		public void run() {
-			Map<DatapathId, List<OFStatsReply>> replies = getSwitchStatistics(switchService.getAllSwitchDpids(), OFStatsType.PORT);
-			for (Entry<DatapathId, List<OFStatsReply>> e : replies.entrySet()) {
-				for (OFStatsReply r : e.getValue()) {
-					OFPortStatsReply psr = (OFPortStatsReply) r;
-					for (OFPortStatsEntry pse : psr.getEntries()) {
-						NodePortTuple npt = new NodePortTuple(e.getKey(), pse.getPortNo());
-						SwitchPortBandwidth spb;
-						if (portStats.containsKey(npt) || tentativePortStats.containsKey(npt)) {
-							if (portStats.containsKey(npt)) { /* update */
-								spb = portStats.get(npt);
-							} else if (tentativePortStats.containsKey(npt)) { /* finish */
-								spb = tentativePortStats.get(npt);
-								tentativePortStats.remove(npt);
-							} else {
-								log.error("Inconsistent state between tentative and official port stats lists.");
-								return;
-							}
-
-							/* Get counted bytes over the elapsed period. Check for counter overflow. */
-							U64 rxBytesCounted;
-							U64 txBytesCounted;
-							if (spb.getPriorByteValueRx().compareTo(pse.getRxBytes()) > 0) { /* overflow */
-								U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueRx());
-								U64 lower = pse.getRxBytes();
-								rxBytesCounted = upper.add(lower);
-							} else {
-								rxBytesCounted = pse.getRxBytes().subtract(spb.getPriorByteValueRx());
-							}
-							if (spb.getPriorByteValueTx().compareTo(pse.getTxBytes()) > 0) { /* overflow */
-								U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueTx());
-								U64 lower = pse.getTxBytes();
-								txBytesCounted = upper.add(lower);
-							} else {
-								txBytesCounted = pse.getTxBytes().subtract(spb.getPriorByteValueTx());
-							}
-							long speed = getSpeed(npt);
-							long timeDifSec = (System.currentTimeMillis() - spb.getUpdateTime()) / MILLIS_PER_SEC;
-							portStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), 
-									U64.ofRaw(speed),
-									U64.ofRaw((rxBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec), 
-									U64.ofRaw((txBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec), 
-									pse.getRxBytes(), pse.getTxBytes())
-									);
-							
-						} else { /* initialize */
-							tentativePortStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), U64.ZERO, U64.ZERO, U64.ZERO, pse.getRxBytes(), pse.getTxBytes()));
+			portStatsPoller.pollAll(switchService.getAllSwitchDpids(), portStatsInterval * MILLIS_PER_SEC);
+		}
+
+		@Override
+		public void onReply(DatapathId dpid, List<OFStatsReply> replies) {
+			for (OFStatsReply r : replies) {
+				OFPortStatsReply psr = (OFPortStatsReply) r;
+				for (OFPortStatsEntry pse : psr.getEntries()) {
+					NodePortTuple npt = new NodePortTuple(dpid, pse.getPortNo());
+					SwitchPortBandwidth spb;
+					if (portStats.containsKey(npt) || tentativePortStats.containsKey(npt)) {
+						if (portStats.containsKey(npt)) { /* update */
+							spb = portStats.get(npt);
+						} else if (tentativePortStats.containsKey(npt)) { /* finish */
+							spb = tentativePortStats.get(npt);
+							tentativePortStats.remove(npt);
+						} else {
+							log.error("Inconsistent state between tentative and official port stats lists.");
+							return;
+						}
+
+						/* Get counted bytes over the elapsed period. Check for counter overflow. */
+						U64 rxBytesCounted;
+						U64 txBytesCounted;
+						if (spb.getPriorByteValueRx().compareTo(pse.getRxBytes()) > 0) { /* overflow */
+							U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueRx());
+							U64 lower = pse.getRxBytes();
+							rxBytesCounted = upper.add(lower);
+						} else {
+							rxBytesCounted = pse.getRxBytes().subtract(spb.getPriorByteValueRx());
+						}
+						if (spb.getPriorByteValueTx().compareTo(pse.getTxBytes()) > 0) { /* overflow */
+							U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueTx());
+							U64 lower = pse.getTxBytes();
+							txBytesCounted = upper.add(lower);
+						} else {
+							txBytesCounted = pse.getTxBytes().subtract(spb.getPriorByteValueTx());
 						}
+						long speed = getSpeed(npt);
+						/* Replies can come in less than a second apart if a switch was slow to reply last time */
+						long timeDifMs = Math.max(1, System.currentTimeMillis() - spb.getUpdateTime());
+						portStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), 
+								U64.ofRaw(speed),
+								U64.ofRaw((rxBytesCounted.getValue() * BITS_PER_BYTE * MILLIS_PER_SEC) / timeDifMs), 
+								U64.ofRaw((txBytesCounted.getValue() * BITS_PER_BYTE * MILLIS_PER_SEC) / timeDifMs), 
+								pse.getRxBytes(), pse.getTxBytes())
+								);
+						
+					} else { /* initialize */
+						tentativePortStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), U64.ZERO, U64.ZERO, U64.ZERO, pse.getRxBytes(), pse.getTxBytes()));
 					}
 				}
 			}
@@ -164,37 +182,52 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	}
 
 	/**
-	 * Single thread for collecting switch statistics and
-	 * containing the reply.
-	 * 
-	 * @author Ryan Izard, ryan.izard@bigswitch.com, rizard@g.clemson.edu
-	 *
+	 * Run periodically to collect the flow, table or queue statistics of
+	 * all switches into their {@link SwitchStatsHistory}. One instance
+	 * per type of statistics, each with its own {@link StatsPoller}.
 	 */
-	private class GetStatisticsThread extends Thread {
-		private List<OFStatsReply> statsReply;
-		private DatapathId switchId;
-		private OFStatsType statType;
-
-		public GetStatisticsThread(DatapathId switchId, OFStatsType statType) {
-			this.switchId = switchId;
-			this.statType = statType;
-			this.statsReply = null;
-		}
+	protected class SwitchStatsCollector implements Runnable, StatsPoller.IStatsReplyHandler {
+		private final OFStatsType statsType;
+		private StatsPoller poller;
 
-		public List<OFStatsReply> getStatisticsReply() {
-			return statsReply;
+		protected SwitchStatsCollector(OFStatsType statsType) {
+			this.statsType = statsType;
 		}
 
-		public DatapathId getSwitchId() {
-			return switchId;
+		@Override
+		public void run() {
+			Set<DatapathId> dpids = switchService.getAllSwitchDpids();
+			switchStats.keySet().retainAll(dpids); /* forget switches that disconnected */
+			poller.pollAll(dpids, flowStatsInterval * MILLIS_PER_SEC);
 		}
 
 		@Override
-		public void run() {
-			statsReply = getSwitchStatistics(switchId, statType);
+		public void onReply(DatapathId dpid, List<OFStatsReply> replies) {
+			SwitchStatsHistory history = switchStats.get(dpid);
+			if (history == null) {
+				history = new SwitchStatsHistory(statsHistorySize);
+				SwitchStatsHistory existing = switchStats.putIfAbsent(dpid, history);
+				if (existing != null) {
+					history = existing;
+				}
+			}
+			switch (statsType) {
+			case FLOW:
+				history.updateFlows(replies, System.currentTimeMillis());
+				break;
+			case TABLE:
+				history.updateTables(replies, System.currentTimeMillis(), System.nanoTime());
+				break;
+			case QUEUE:
+				history.updateQueues(replies, System.currentTimeMillis(), System.nanoTime());
+				break;
+			default:
+				log.error("Stats history for type {} not implemented", statsType);
+				break;
+			}
 		}
 	}
-	
+
 	/*
 	 * IFloodlightModule implementation
 	 */
@@ -250,6 +283,50 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 			}
 		}
 		log.info("Port statistics collection interval set to {}s", portStatsInterval);
+
+		if (config.containsKey(MAX_OUTSTANDING_REQUESTS_STR)) {
+			try {
+				maxOutstandingRequests = Integer.parseInt(config.get(MAX_OUTSTANDING_REQUESTS_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", MAX_OUTSTANDING_REQUESTS_STR, maxOutstandingRequests);
+			}
+			if (maxOutstandingRequests < 1) {
+				log.warn("'{}' must be at least 1. Was {}. Using default of {}",
+						new Object[] { MAX_OUTSTANDING_REQUESTS_STR, maxOutstandingRequests, DEFAULT_MAX_OUTSTANDING_REQUESTS });
+				maxOutstandingRequests = DEFAULT_MAX_OUTSTANDING_REQUESTS;
+			}
+		}
+		if (config.containsKey(REQUEST_TIMEOUT_STR)) {
+			try {
+				requestTimeoutMs = Long.parseLong(config.get(REQUEST_TIMEOUT_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", REQUEST_TIMEOUT_STR, requestTimeoutMs);
+			}
+			if (requestTimeoutMs < 0) {
+				log.warn("'{}' must not be negative. Was {}. Using half the collection interval",
+						REQUEST_TIMEOUT_STR, requestTimeoutMs);
+				requestTimeoutMs = 0;
+			}
+		}
+		if (config.containsKey(INTERVAL_FLOW_STATS_STR)) {
+			try {
+				flowStatsInterval = Integer.parseInt(config.get(INTERVAL_FLOW_STATS_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", INTERVAL_FLOW_STATS_STR, flowStatsInterval);
+			}
+		}
+		if (config.containsKey(HISTORY_SIZE_STR)) {
+			try {
+				statsHistorySize = Integer.parseInt(config.get(HISTORY_SIZE_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", HISTORY_SIZE_STR, statsHistorySize);
+			}
+		}
+		log.info("Flow, table and queue statistics collection interval set to {}s, keeping {} samples",
+				flowStatsInterval, statsHistorySize);
+
+		log.info("At most {} statistics requests outstanding, {} timeout", maxOutstandingRequests,
+				requestTimeoutMs > 0 ? requestTimeoutMs + "ms" : "half-interval");
 	}
 
 	@Override
@@ -276,6 +353,27 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		return Collections.unmodifiableMap(portStats);
 	}
 
+	@Override
+	public Map<FlowStatsKey, List<RateSample>> getFlowRates(DatapathId dpid, long windowMs) {
+		SwitchStatsHistory history = switchStats.get(dpid);
+		return history == null ? Collections.<FlowStatsKey, List<RateSample>>emptyMap()
+				: history.getFlowSamples(System.currentTimeMillis() - windowMs);
+	}
+
+	@Override
+	public Map<TableId, List<TableRateSample>> getTableRates(DatapathId dpid, long windowMs) {
+		SwitchStatsHistory history = switchStats.get(dpid);
+		return history == null ? Collections.<TableId, List<TableRateSample>>emptyMap()
+				: history.getTableSamples(System.currentTimeMillis() - windowMs);
+	}
+
+	@Override
+	public Map<QueueStatsKey, List<RateSample>> getQueueRates(DatapathId dpid, long windowMs) {
+		SwitchStatsHistory history = switchStats.get(dpid);
+		return history == null ? Collections.<QueueStatsKey, List<RateSample>>emptyMap()
+				: history.getQueueSamples(System.currentTimeMillis() - windowMs);
+	}
+
 	@Override
 	public synchronized void collectStatistics(boolean collect) {
 		if (collect && !isEnabled) {
@@ -296,7 +394,21 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 * Start all stats threads.
 	 */
 	private void startStatisticsCollection() {
-		portStatsCollector = threadPoolService.getScheduledExecutor().scheduleAtFixedRate(new PortStatsCollector(), portStatsInterval, portStatsInterval, TimeUnit.SECONDS);
+		long timeoutMs = requestTimeoutMs > 0 ? requestTimeoutMs : portStatsInterval * MILLIS_PER_SEC / 2;
+		PortStatsCollector collector = new PortStatsCollector();
+		portStatsPoller = new StatsPoller(OFStatsType.PORT, collector, switchService,
+				threadPoolService.getScheduledExecutor(), maxOutstandingRequests, timeoutMs);
+		portStatsCollector = threadPoolService.getScheduledExecutor().scheduleAtFixedRate(collector, portStatsInterval, portStatsInterval, TimeUnit.SECONDS);
+		if (flowStatsInterval > 0) {
+			long switchStatsTimeoutMs = requestTimeoutMs > 0 ? requestTimeoutMs : flowStatsInterval * MILLIS_PER_SEC / 2;
+			for (OFStatsType type : new OFStatsType[] { OFStatsType.FLOW, OFStatsType.TABLE, OFStatsType.QUEUE }) {
+				SwitchStatsCollector c = new SwitchStatsCollector(type);
+				c.poller = new StatsPoller(type, c, switchService,
+						threadPoolService.getScheduledExecutor(), maxOutstandingRequests, switchStatsTimeoutMs);
+				switchStatsPollers.add(c.poller);
+				switchStatsCollectors.add(threadPoolService.getScheduledExecutor().scheduleAtFixedRate(c, flowStatsInterval, flowStatsInterval, TimeUnit.SECONDS));
+			}
+		}
 		tentativePortStats.clear(); /* must clear out, otherwise might have huge BW result if present and wait a long time before re-enabling stats */
 		log.warn("Statistics collection thread(s) started");
 	}
@@ -305,190 +417,137 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 * Stop all stats threads.
 	 */
 	private void stopStatisticsCollection() {
-		if (!portStatsCollector.cancel(false)) {
+		boolean cancelled = portStatsCollector.cancel(false);
+		if (!cancelled) {
 			log.error("Could not cancel port stats thread");
-		} else {
+		}
+		/* Cancel the per-switch polls already scheduled for this interval */
+		portStatsPoller.stop();
+		for (StatsPoller p : switchStatsPollers) {
+			p.stop();
+		}
+		switchStatsPollers.clear();
+		for (ScheduledFuture<?> f : switchStatsCollectors) {
+			if (!f.cancel(false)) {
+				log.error("Could not cancel flow, table or queue stats thread");
+				cancelled = false;
+			}
+		}
+		switchStatsCollectors.clear();
+		if (cancelled) {
 			log.warn("Statistics collection thread(s) stopped");
 		}
 	}
 
 	/**
-	 * Retrieve the statistics from all switches in parallel.
-	 * @param dpids
+	 * Build a statistics request for a switch.
+	 * @param sw
 	 * @param statsType
-	 * @return
+	 * @return the request, or null if the switch's OpenFlow version does not
+	 * support the type
 	 */
-	private Map<DatapathId, List<OFStatsReply>> getSwitchStatistics(Set<DatapathId> dpids, OFStatsType statsType) {
-		HashMap<DatapathId, List<OFStatsReply>> model = new HashMap<DatapathId, List<OFStatsReply>>();
-
-		List<GetStatisticsThread> activeThreads = new ArrayList<GetStatisticsThread>(dpids.size());
-		List<GetStatisticsThread> pendingRemovalThreads = new ArrayList<GetStatisticsThread>();
-		GetStatisticsThread t;
-		for (DatapathId d : dpids) {
-			t = new GetStatisticsThread(d, statsType);
-			activeThreads.add(t);
-			t.start();
-		}
-
-		/* Join all the threads after the timeout. Set a hard timeout
-		 * of 12 seconds for the threads to finish. If the thread has not
-		 * finished the switch has not replied yet and therefore we won't
-		 * add the switch's stats to the reply.
-		 */
-		for (int iSleepCycles = 0; iSleepCycles < portStatsInterval; iSleepCycles++) {
-			for (GetStatisticsThread curThread : activeThreads) {
-				if (curThread.getState() == State.TERMINATED) {
-					model.put(curThread.getSwitchId(), curThread.getStatisticsReply());
-					pendingRemovalThreads.add(curThread);
-				}
+	static OFStatsRequest<?> buildStatsRequest(IOFSwitch sw, OFStatsType statsType) {
+		Match match;
+		OFStatsRequest<?> req = null;
+		switch (statsType) {
+		case FLOW:
+			match = sw.getOFFactory().buildMatch().build();
+			req = sw.getOFFactory().buildFlowStatsRequest()
+					.setMatch(match)
+					.setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL)
+					.build();
+			break;
+		case AGGREGATE:
+			match = sw.getOFFactory().buildMatch().build();
+			req = sw.getOFFactory().buildAggregateStatsRequest()
+					.setMatch(match)
+					.setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL)
+					.build();
+			break;
+		case PORT:
+			req = sw.getOFFactory().buildPortStatsRequest()
+			.setPortNo(OFPort.ANY)
+			.build();
+			break;
+		case QUEUE:
+			req = sw.getOFFactory().buildQueueStatsRequest()
+			.setPortNo(OFPort.ANY)
+			.setQueueId(UnsignedLong.MAX_VALUE.longValue())
+			.build();
+			break;
+		case DESC:
+			req = sw.getOFFactory().buildDescStatsRequest()
+			.build();
+			break;
+		case GROUP:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupStatsRequest()				
+						.build();
 			}
+			break;
 
-			/* remove the threads that have completed the queries to the switches */
-			for (GetStatisticsThread curThread : pendingRemovalThreads) {
-				activeThreads.remove(curThread);
+		case METER:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterStatsRequest()
+						.setMeterId(OFMeterSerializerVer13.ALL_VAL)
+						.build();
 			}
-			
-			/* clear the list so we don't try to double remove them */
-			pendingRemovalThreads.clear();
+			break;
 
-			/* if we are done finish early */
-			if (activeThreads.isEmpty()) {
-				break;
+		case GROUP_DESC:			
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupDescStatsRequest()			
+						.build();
 			}
+			break;
 
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.error("Interrupted while waiting for statistics", e);
+		case GROUP_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
+						.build();
 			}
-		}
+			break;
 
-		return model;
-	}
-
-	/**
-	 * Get statistics from a switch.
-	 * @param switchId
-	 * @param statsType
-	 * @return
-	 */
-	@SuppressWarnings("unchecked")
-	protected List<OFStatsReply> getSwitchStatistics(DatapathId switchId, OFStatsType statsType) {
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		ListenableFuture<?> future;
-		List<OFStatsReply> values = null;
-		Match match;
-		if (sw != null) {
-			OFStatsRequest<?> req = null;
-			switch (statsType) {
-			case FLOW:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildFlowStatsRequest()
-						.setMatch(match)
-						.setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL)
+		case METER_CONFIG:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterConfigStatsRequest()
 						.build();
-				break;
-			case AGGREGATE:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildAggregateStatsRequest()
-						.setMatch(match)
-						.setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL)
-						.build();
-				break;
-			case PORT:
-				req = sw.getOFFactory().buildPortStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.build();
-				break;
-			case QUEUE:
-				req = sw.getOFFactory().buildQueueStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.setQueueId(UnsignedLong.MAX_VALUE.longValue())
-				.build();
-				break;
-			case DESC:
-				req = sw.getOFFactory().buildDescStatsRequest()
-				.build();
-				break;
-			case GROUP:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupStatsRequest()				
-							.build();
-				}
-				break;
-
-			case METER:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterStatsRequest()
-							.setMeterId(OFMeterSerializerVer13.ALL_VAL)
-							.build();
-				}
-				break;
-
-			case GROUP_DESC:			
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupDescStatsRequest()			
-							.build();
-				}
-				break;
-
-			case GROUP_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
-							.build();
-				}
-				break;
-
-			case METER_CONFIG:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterConfigStatsRequest()
-							.build();
-				}
-				break;
-
-			case METER_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
-							.build();
-				}
-				break;
+			}
+			break;
 
-			case TABLE:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableStatsRequest()
-							.build();
-				}
-				break;
+		case METER_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
+						.build();
+			}
+			break;
 
-			case TABLE_FEATURES:	
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableFeaturesStatsRequest()
-							.build();		
-				}
-				break;
-			case PORT_DESC:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildPortDescStatsRequest()
-							.build();
-				}
-				break;
-			case EXPERIMENTER:		
-			default:
-				log.error("Stats Request Type {} not implemented yet", statsType.name());
-				break;
+		case TABLE:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildTableStatsRequest()
+						.build();
 			}
+			break;
 
-			try {
-				if (req != null) {
-					future = sw.writeStatsRequest(req); 
-					values = (List<OFStatsReply>) future.get(portStatsInterval*1000 / 2, TimeUnit.MILLISECONDS);
-				}
-			} catch (Exception e) {
-				log.error("Failure retrieving statistics from switch {}. {}", sw, e);
+		case TABLE_FEATURES:	
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildTableFeaturesStatsRequest()
+						.build();		
+			}
+			break;
+		case PORT_DESC:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildPortDescStatsRequest()
+						.build();
 			}
+			break;
+		case EXPERIMENTER:		
+		default:
+			log.error("Stats Request Type {} not implemented yet", statsType.name());
+			break;
 		}
-		return values;
+		return req;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,268 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Polls switches for one type of statistics without blocking any thread
+ * on the replies. Each request is sent with
+ * {@link IOFSwitch#writeStatsRequest(OFStatsRequest)} and the reply is handed
+ * to an {@link IStatsReplyHandler} when its future completes.
+ *
+ * To avoid sending a burst of requests to every switch at the start of each
+ * interval, {@link #pollAll(Collection, long)} sends the request to each
+ * switch at a fixed offset into the interval, derived from its DPID. At most
+ * maxOutstanding requests are waiting for a reply at any time; requests
+ * beyond that wait in a queue until an earlier one completes. A switch that
+ * does not reply within the timeout is skipped for this round, and a switch
+ * that still has a request outstanding is not polled again. Once
+ * {@link #stop()} is called no further requests are sent.
+ */
+public class StatsPoller {
+    private static final Logger log = LoggerFactory.getLogger(StatsPoller.class);
+
+    /**
+     * Receives the statistics replies of one switch. Called from the thread
+     * that completed the request, usually a Netty I/O thread, so it must not
+     * block. Calls for the same switch never overlap.
+     */
+    public interface IStatsReplyHandler {
+        void onReply(DatapathId dpid, List<OFStatsReply> replies);
+    }
+
+    private final OFStatsType statsType;
+    private final IStatsReplyHandler handler;
+    private final IOFSwitchService switchService;
+    private final ScheduledExecutorService executor;
+    private final int maxOutstanding;
+    private final long timeoutMs;
+
+    private final Queue<DatapathId> waiting = new ConcurrentLinkedQueue<DatapathId>();
+    /* Switches that are waiting or have a request outstanding */
+    private final Set<DatapathId> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    /* Delayed polls of the current round, cancelled on stop() */
+    private final Set<ScheduledFuture<?>> scheduled = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopped;
+
+    /**
+     * @param statsType the type of statistics to request
+     * @param handler receives the replies
+     * @param switchService to look up switches
+     * @param executor runs the delayed requests and the timeouts
+     * @param maxOutstanding maximum number of requests waiting for a reply
+     * @param timeoutMs how long to wait for a switch to reply
+     */
+    public StatsPoller(OFStatsType statsType, IStatsReplyHandler handler, IOFSwitchService switchService,
+            ScheduledExecutorService executor, int maxOutstanding, long timeoutMs) {
+        if (maxOutstanding < 1) {
+            throw new IllegalArgumentException("Maximum outstanding requests must be at least 1. Was " + maxOutstanding);
+        }
+        this.statsType = statsType;
+        this.handler = handler;
+        this.switchService = switchService;
+        this.executor = executor;
+        this.maxOutstanding = maxOutstanding;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Poll each switch once, spread over the next intervalMs. Returns
+     * immediately.
+     * @param dpids the switches to poll
+     * @param intervalMs the time to spread the requests over
+     */
+    public void pollAll(Collection<DatapathId> dpids, long intervalMs) {
+        /* The polls of the previous round have run by now */
+        for (Iterator<ScheduledFuture<?>> it = scheduled.iterator(); it.hasNext();) {
+            if (it.next().isDone()) {
+                it.remove();
+            }
+        }
+        for (final DatapathId dpid : dpids) {
+            if (stopped) {
+                return;
+            }
+            long delayMs = getOffset(dpid, intervalMs);
+            if (delayMs == 0) {
+                poll(dpid);
+            } else {
+                scheduled.add(executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        poll(dpid);
+                    }
+                }, delayMs, TimeUnit.MILLISECONDS));
+            }
+        }
+        if (stopped) {
+            cancelScheduled();
+        }
+    }
+
+    /**
+     * Stop polling. Delayed polls and queued requests are dropped; requests
+     * already sent still complete and are handed to the handler.
+     */
+    public void stop() {
+        stopped = true;
+        cancelScheduled();
+        DatapathId dpid;
+        while ((dpid = waiting.poll()) != null) {
+            pending.remove(dpid);
+        }
+    }
+
+    /**
+     * @return true once {@link #stop()} has been called
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private void cancelScheduled() {
+        for (Iterator<ScheduledFuture<?>> it = scheduled.iterator(); it.hasNext();) {
+            it.next().cancel(false);
+            it.remove();
+        }
+    }
+
+    /**
+     * Poll a switch as soon as fewer than maxOutstanding requests are
+     * outstanding. Does nothing if the switch is already being polled.
+     * @param dpid
+     */
+    public void poll(DatapathId dpid) {
+        if (stopped) {
+            return;
+        }
+        if (!pending.add(dpid)) {
+            log.debug("Skipping {} stats request to {}; previous request still outstanding", statsType, dpid);
+            return;
+        }
+        waiting.add(dpid);
+        sendWaiting();
+    }
+
+    /**
+     * @return the number of requests waiting for a reply
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the number of switches with a request outstanding or queued
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    static long getOffset(DatapathId dpid, long intervalMs) {
+        if (intervalMs <= 0) {
+            return 0;
+        }
+        long h = dpid.getLong() * 0x9E3779B97F4A7C15L; /* spread sequential DPIDs */
+        return Math.floorMod(h ^ (h >>> 32), intervalMs);
+    }
+
+    /*
+     * Called after adding to the queue and after a request completes, so a
+     * queued switch is never left behind without a request that will
+     * complete and send it.
+     */
+    private void sendWaiting() {
+        while (!stopped && !waiting.isEmpty()) {
+            int n = outstanding.get();
+            if (n >= maxOutstanding) {
+                return;
+            }
+            if (!outstanding.compareAndSet(n, n + 1)) {
+                continue;
+            }
+            DatapathId dpid = waiting.poll();
+            if (dpid == null) {
+                outstanding.decrementAndGet();
+                continue;
+            }
+            send(dpid);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void send(final DatapathId dpid) {
+        ListenableFuture<List<OFStatsReply>> future = null;
+        try {
+            IOFSwitch sw = switchService.getSwitch(dpid);
+            OFStatsRequest<?> req = sw == null ? null : StatisticsCollector.buildStatsRequest(sw, statsType);
+            if (req != null) {
+                future = (ListenableFuture<List<OFStatsReply>>) (ListenableFuture<?>) sw.writeStatsRequest(req);
+            }
+        } catch (Exception e) {
+            log.error("Failure sending {} stats request to switch {}. {}", new Object[] { statsType, dpid, e });
+        }
+        if (future == null) {
+            /* Not complete(); the caller's loop goes on to the next switch */
+            pending.remove(dpid);
+            outstanding.decrementAndGet();
+            return;
+        }
+
+        Futures.addCallback(Futures.withTimeout(future, timeoutMs, TimeUnit.MILLISECONDS, executor),
+                new FutureCallback<List<OFStatsReply>>() {
+            @Override
+            public void onSuccess(List<OFStatsReply> replies) {
+                try {
+                    if (replies != null) {
+                        handler.onReply(dpid, replies);
+                    }
+                } catch (Exception e) {
+                    log.error("Failure handling " + statsType + " stats reply from switch " + dpid, e);
+                } finally {
+                    complete(dpid);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof TimeoutException) {
+                    log.debug("Timed out after {}ms waiting for {} stats from switch {}",
+                            new Object[] { timeoutMs, statsType, dpid });
+                } else {
+                    log.error("Failure retrieving {} stats from switch {}. {}", new Object[] { statsType, dpid, t });
+                }
+                complete(dpid);
+            }
+        });
+    }
+
+    private void complete(DatapathId dpid) {
+        pending.remove(dpid);
+        outstanding.decrementAndGet();
+        sendWaiting();
+    }
+}
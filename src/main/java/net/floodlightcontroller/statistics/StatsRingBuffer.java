@@ -0,0 +1,80 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size history of samples, oldest overwritten first. There must be
+ * only one writer at a time, but any number of threads may read while it
+ * writes; readers never block the writer and always see whole samples in
+ * the order they were added.
+ */
+public class StatsRingBuffer<T extends StatsSample> {
+	/* One slot more than the capacity, for the sample being written */
+	private final AtomicReferenceArray<T> slots;
+	private final int capacity;
+	/* Number of samples ever added; published after the slot is written */
+	private volatile long added;
+
+	public StatsRingBuffer(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1. Was " + capacity);
+		}
+		this.capacity = capacity;
+		slots = new AtomicReferenceArray<T>(capacity + 1);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Add a sample, overwriting the oldest if full. Not safe to call
+	 * from more than one thread at a time.
+	 * @param sample
+	 */
+	public void add(T sample) {
+		long n = added;
+		slots.set(index(n), sample);
+		added = n + 1;
+	}
+
+	/**
+	 * @return the most recently added sample, or null if empty
+	 */
+	public T getLatest() {
+		long n = added;
+		return n == 0 ? null : slots.get(index(n - 1));
+	}
+
+	/**
+	 * @param sinceMs
+	 * @return the samples with a time at or after sinceMs, oldest first
+	 */
+	public List<T> getSince(long sinceMs) {
+		long end = added;
+		long start = Math.max(0, end - capacity);
+		List<T> copy = new ArrayList<T>((int) (end - start));
+		for (long i = start; i < end; i++) {
+			copy.add(slots.get(index(i)));
+		}
+		/*
+		 * Samples the writer overwrote while we copied are newer ones out of
+		 * order; drop them. The slot after the last published one may be
+		 * mid-write, so count it as overwritten too.
+		 */
+		long overwritten = Math.min(end, added + 1 - slots.length()) - start;
+		List<T> result = new ArrayList<T>(copy.size());
+		for (int i = (int) Math.max(0, overwritten); i < copy.size(); i++) {
+			if (copy.get(i).getTimeMs() >= sinceMs) {
+				result.add(copy.get(i));
+			}
+		}
+		return result;
+	}
+
+	private int index(long n) {
+		return (int) (n % slots.length());
+	}
+}
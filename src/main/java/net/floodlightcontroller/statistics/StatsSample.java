@@ -0,0 +1,33 @@
+package net.floodlightcontroller.statistics;
+
+/**
+ * One sample in a {@link StatsRingBuffer}: the statistics computed from two
+ * consecutive replies of a switch. Samples are immutable.
+ */
+public abstract class StatsSample {
+	private final long timeMs;
+	private final long elapsedNs;
+
+	protected StatsSample(long timeMs, long elapsedNs) {
+		this.timeMs = timeMs;
+		this.elapsedNs = elapsedNs;
+	}
+
+	/**
+	 * @return when the later of the two replies was received, in ms since the epoch
+	 */
+	public long getTimeMs() {
+		return timeMs;
+	}
+
+	/**
+	 * @return the time between the two replies in ns
+	 */
+	public long getElapsedNs() {
+		return elapsedNs;
+	}
+
+	protected static double perSecond(long delta, long elapsedNs) {
+		return elapsedNs <= 0 ? 0 : delta * 1000000000.0 / elapsedNs;
+	}
+}
@@ -0,0 +1,206 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFQueueStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFQueueStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFTableStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFTableStatsReply;
+import org.projectfloodlight.openflow.types.TableId;
+
+/**
+ * The recent flow, table and queue statistics of one switch. Each reply is
+ * compared with the previous one for the same flow, table or queue, and the
+ * difference is added as a sample to that flow's, table's or queue's
+ * {@link StatsRingBuffer}. Queries read the buffers, so they never cause a
+ * request to the switch.
+ *
+ * Flow rates use the flow durations reported by the switch, so they are not
+ * skewed by the time the reply spent in transit. Tables and queues use the
+ * time the reply was received. A flow that is no longer in a reply is
+ * forgotten, so the history is bounded by the size of the switch's flow
+ * table times the buffer capacity. If a counter goes backwards, the flow,
+ * table or queue was reset, and the reply starts over as the baseline for
+ * the next sample.
+ *
+ * Each type of statistics may be updated by one thread at a time, and
+ * may be queried from any number of threads.
+ */
+public class SwitchStatsHistory {
+	/* Baseline counters and samples of one flow, table or queue */
+	private static class Series<T extends StatsSample> {
+		private final StatsRingBuffer<T> samples;
+		/* Time and counters of the last reply; only used by the updating thread */
+		private long lastNs = -1;
+		private long lastA;
+		private long lastB;
+
+		private Series(int capacity) {
+			samples = new StatsRingBuffer<T>(capacity);
+		}
+
+		/**
+		 * Move the baseline to the given reply.
+		 * @return true if the previous baseline is valid for a sample
+		 */
+		private boolean advance(long ns, long a, long b) {
+			boolean valid = lastNs >= 0 && ns > lastNs && a >= lastA && b >= lastB;
+			lastNs = ns;
+			lastA = a;
+			lastB = b;
+			return valid;
+		}
+	}
+
+	private final int capacity;
+	private final Map<FlowStatsKey, Series<RateSample>> flows = new ConcurrentHashMap<FlowStatsKey, Series<RateSample>>();
+	private final Map<TableId, Series<TableRateSample>> tables = new ConcurrentHashMap<TableId, Series<TableRateSample>>();
+	private final Map<QueueStatsKey, Series<RateSample>> queues = new ConcurrentHashMap<QueueStatsKey, Series<RateSample>>();
+
+	/**
+	 * @param capacity the number of samples to keep per flow, table and queue
+	 */
+	public SwitchStatsHistory(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Add the samples for a complete flow stats reply.
+	 * @param replies all parts of the reply
+	 * @param timeMs when the reply was received
+	 */
+	public void updateFlows(List<OFStatsReply> replies, long timeMs) {
+		Set<FlowStatsKey> seen = new HashSet<FlowStatsKey>();
+		replies:
+		for (OFStatsReply r : replies) {
+			for (OFFlowStatsEntry e : ((OFFlowStatsReply) r).getEntries()) {
+				long packets;
+				long bytes;
+				long durationNs;
+				try {
+					packets = e.getPacketCount().getValue();
+					bytes = e.getByteCount().getValue();
+					durationNs = e.getDurationSec() * 1000000000L + e.getDurationNsec();
+				} catch (UnsupportedOperationException ex) {
+					break replies; /* OpenFlow 1.5 reports these as OXS stats instead */
+				}
+				FlowStatsKey key = FlowStatsKey.of(e);
+				seen.add(key);
+				Series<RateSample> s = getSeries(flows, key);
+				long lastNs = s.lastNs;
+				long lastPackets = s.lastA;
+				long lastBytes = s.lastB;
+				if (s.advance(durationNs, packets, bytes)) {
+					s.samples.add(new RateSample(timeMs, durationNs - lastNs, packets, bytes,
+							packets - lastPackets, bytes - lastBytes));
+				}
+			}
+		}
+		flows.keySet().retainAll(seen);
+	}
+
+	/**
+	 * Add the samples for a complete table stats reply.
+	 * @param replies all parts of the reply
+	 * @param timeMs when the reply was received
+	 * @param timeNs when the reply was received, from {@link System#nanoTime()}
+	 */
+	public void updateTables(List<OFStatsReply> replies, long timeMs, long timeNs) {
+		for (OFStatsReply r : replies) {
+			for (OFTableStatsEntry e : ((OFTableStatsReply) r).getEntries()) {
+				long lookups = e.getLookupCount().getValue();
+				long matched = e.getMatchedCount().getValue();
+				Series<TableRateSample> s = getSeries(tables, e.getTableId());
+				long lastNs = s.lastNs;
+				long lastLookups = s.lastA;
+				long lastMatched = s.lastB;
+				if (s.advance(timeNs, lookups, matched)) {
+					s.samples.add(new TableRateSample(timeMs, timeNs - lastNs, e.getActiveCount(),
+							lookups, matched, lookups - lastLookups, matched - lastMatched));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the samples for a complete queue stats reply.
+	 * @param replies all parts of the reply
+	 * @param timeMs when the reply was received
+	 * @param timeNs when the reply was received, from {@link System#nanoTime()}
+	 */
+	public void updateQueues(List<OFStatsReply> replies, long timeMs, long timeNs) {
+		Set<QueueStatsKey> seen = new HashSet<QueueStatsKey>();
+		for (OFStatsReply r : replies) {
+			for (OFQueueStatsEntry e : ((OFQueueStatsReply) r).getEntries()) {
+				long packets = e.getTxPackets().getValue();
+				long bytes = e.getTxBytes().getValue();
+				QueueStatsKey key = new QueueStatsKey(e.getPortNo(), e.getQueueId());
+				seen.add(key);
+				Series<RateSample> s = getSeries(queues, key);
+				long lastNs = s.lastNs;
+				long lastPackets = s.lastA;
+				long lastBytes = s.lastB;
+				if (s.advance(timeNs, packets, bytes)) {
+					s.samples.add(new RateSample(timeMs, timeNs - lastNs, packets, bytes,
+							packets - lastPackets, bytes - lastBytes));
+				}
+			}
+		}
+		queues.keySet().retainAll(seen);
+	}
+
+	/**
+	 * @param sinceMs
+	 * @return the samples of each flow since the given time, oldest first;
+	 * flows without samples are left out
+	 */
+	public Map<FlowStatsKey, List<RateSample>> getFlowSamples(long sinceMs) {
+		return getSince(flows, sinceMs);
+	}
+
+	/**
+	 * @param sinceMs
+	 * @return the samples of each table since the given time, oldest first;
+	 * tables without samples are left out
+	 */
+	public Map<TableId, List<TableRateSample>> getTableSamples(long sinceMs) {
+		return getSince(tables, sinceMs);
+	}
+
+	/**
+	 * @param sinceMs
+	 * @return the samples of each queue since the given time, oldest first;
+	 * queues without samples are left out
+	 */
+	public Map<QueueStatsKey, List<RateSample>> getQueueSamples(long sinceMs) {
+		return getSince(queues, sinceMs);
+	}
+
+	private <K, T extends StatsSample> Series<T> getSeries(Map<K, Series<T>> m, K key) {
+		Series<T> s = m.get(key);
+		if (s == null) {
+			s = new Series<T>(capacity);
+			m.put(key, s); /* only the updating thread adds */
+		}
+		return s;
+	}
+
+	private static <K, T extends StatsSample> Map<K, List<T>> getSince(Map<K, Series<T>> m, long sinceMs) {
+		Map<K, List<T>> result = new HashMap<K, List<T>>();
+		for (Map.Entry<K, Series<T>> e : m.entrySet()) {
+			List<T> samples = e.getValue().samples.getSince(sinceMs);
+			if (!samples.isEmpty()) {
+				result.put(e.getKey(), samples);
+			}
+		}
+		return result;
+	}
+}
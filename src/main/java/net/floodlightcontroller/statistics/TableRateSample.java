@@ -0,0 +1,83 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.List;
+
+/**
+ * Lookup and match rates of a flow table between two consecutive stats
+ * replies. The active entry count is the one reported in the later reply.
+ */
+public class TableRateSample extends StatsSample {
+	private final long activeCount;
+	private final long lookupCount;
+	private final long matchedCount;
+	private final long lookupDelta;
+	private final long matchedDelta;
+
+	public TableRateSample(long timeMs, long elapsedNs, long activeCount, long lookupCount,
+			long matchedCount, long lookupDelta, long matchedDelta) {
+		super(timeMs, elapsedNs);
+		this.activeCount = activeCount;
+		this.lookupCount = lookupCount;
+		this.matchedCount = matchedCount;
+		this.lookupDelta = lookupDelta;
+		this.matchedDelta = matchedDelta;
+	}
+
+	/**
+	 * Combine consecutive samples into one that covers all of them.
+	 * @param samples oldest first
+	 * @return the combined sample, or null if there are no samples
+	 */
+	public static TableRateSample over(List<TableRateSample> samples) {
+		if (samples.isEmpty()) {
+			return null;
+		}
+		long elapsedNs = 0;
+		long lookupDelta = 0;
+		long matchedDelta = 0;
+		for (TableRateSample s : samples) {
+			elapsedNs += s.getElapsedNs();
+			lookupDelta += s.lookupDelta;
+			matchedDelta += s.matchedDelta;
+		}
+		TableRateSample last = samples.get(samples.size() - 1);
+		return new TableRateSample(last.getTimeMs(), elapsedNs, last.activeCount,
+				last.lookupCount, last.matchedCount, lookupDelta, matchedDelta);
+	}
+
+	public long getActiveCount() {
+		return activeCount;
+	}
+
+	public long getLookupCount() {
+		return lookupCount;
+	}
+
+	public long getMatchedCount() {
+		return matchedCount;
+	}
+
+	public long getLookupDelta() {
+		return lookupDelta;
+	}
+
+	public long getMatchedDelta() {
+		return matchedDelta;
+	}
+
+	public double getLookupsPerSecond() {
+		return perSecond(lookupDelta, getElapsedNs());
+	}
+
+	public double getMatchesPerSecond() {
+		return perSecond(matchedDelta, getElapsedNs());
+	}
+
+	@Override
+	public String toString() {
+		return "TableRateSample [timeMs=" + getTimeMs() + ", elapsedNs=" + getElapsedNs()
+				+ ", activeCount=" + activeCount + ", lookupCount=" + lookupCount
+				+ ", matchedCount=" + matchedCount + ", lookupDelta=" + lookupDelta
+				+ ", matchedDelta=" + matchedDelta + "]";
+	}
+}
@@ -51,6 +51,16 @@ public interface ITopologyService extends IFloodlightService  {
 	 */
 	public Date getLastUpdateTime();
 
+	/**
+	 * Get the current topology. The snapshot does not change, even when
+	 * the topology is recomputed, so a caller that needs a consistent view
+	 * across several queries should get one snapshot and use it for all of
+	 * them. Compare {@link ITopologySnapshot#getVersion()} to tell whether
+	 * the topology has changed since an earlier snapshot.
+	 * @return the current topology snapshot
+	 */
+	public ITopologySnapshot getSnapshot();
+
 	/*******************************************************
 	 * PORT FUNCTIONS
 	 *******************************************************/
@@ -0,0 +1,108 @@
+package net.floodlightcontroller.topology;
+
+import java.util.List;
+import java.util.Set;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.Path;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * A read-only view of one computed topology. A snapshot never changes once
+ * it has been published, so code that makes several topology queries for a
+ * single decision (e.g. while handling a PacketIn) can get one snapshot from
+ * {@link ITopologyService#getSnapshot()} and run all of its queries against
+ * it, instead of possibly seeing two different topologies through
+ * {@link ITopologyService}.
+ *
+ * Each snapshot has a version that is larger than that of any snapshot
+ * published before it. Anything cached from a snapshot can be tagged with the
+ * version and is stale once {@link ITopologyService#getSnapshot()} returns a
+ * snapshot with a different version.
+ */
+public interface ITopologySnapshot {
+
+    /**
+     * @return the version of this snapshot. Versions increase with each
+     * new topology computed.
+     */
+    public long getVersion();
+
+    /**
+     * @see ITopologyService#isEdge(DatapathId, OFPort)
+     */
+    public boolean isEdge(DatapathId sw, OFPort p);
+
+    /**
+     * Whether the switch port is not part of a link within a cluster. Unlike
+     * {@link ITopologyService#isAttachmentPointPort(DatapathId, OFPort)}, this
+     * does not look at the state of the switch or the type of the port.
+     */
+    public boolean isAttachmentPointPort(DatapathId sw, OFPort p);
+
+    /**
+     * @see ITopologyService#getSwitchBroadcastPorts(DatapathId)
+     */
+    public Set<OFPort> swBroadcastPorts(DatapathId sw);
+
+    /**
+     * @see ITopologyService#isBroadcastAllowed(DatapathId, OFPort)
+     */
+    public boolean isBroadcastAllowedOnSwitchPort(DatapathId sw, OFPort p);
+
+    /**
+     * @see ITopologyService#getBroadcastPorts(DatapathId, DatapathId, OFPort)
+     */
+    public Set<OFPort> getBroadcastPorts(DatapathId targetSw, DatapathId src, OFPort srcPort);
+
+    public Set<NodePortTuple> getAllBroadcastPorts();
+
+    public Set<NodePortTuple> getBroadcastPortsInArchipelago(DatapathId sw);
+
+    public Set<NodePortTuple> getBlockedPorts();
+
+    public boolean isNotBlocked(DatapathId sw, OFPort p);
+
+    /**
+     * @see ITopologyService#isConsistent(DatapathId, OFPort, DatapathId, OFPort)
+     */
+    public boolean isConsistent(DatapathId oldSw, OFPort oldPort, DatapathId newSw, OFPort newPort);
+
+    public Set<DatapathId> getSwitches();
+
+    public Set<OFPort> getPortsWithLinks(DatapathId sw);
+
+    public Set<Link> getInternalInterClusterLinks();
+
+    public DatapathId getClusterId(DatapathId sw);
+
+    public Set<DatapathId> getSwitchesInCluster(DatapathId sw);
+
+    public boolean isInSameCluster(DatapathId s1, DatapathId s2);
+
+    public DatapathId getArchipelagoId(DatapathId sw);
+
+    public Set<DatapathId> getArchipelagoIds();
+
+    public Set<DatapathId> getClusterIdsInArchipelago(DatapathId sw);
+
+    public boolean isInSameArchipelago(DatapathId s1, DatapathId s2);
+
+    /**
+     * @see net.floodlightcontroller.routing.IRoutingService#getPath(DatapathId, DatapathId)
+     */
+    public Path getPath(DatapathId src, DatapathId dst);
+
+    /**
+     * @see net.floodlightcontroller.routing.IRoutingService#getPath(DatapathId, OFPort, DatapathId, OFPort)
+     */
+    public Path getPath(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort);
+
+    /**
+     * @see net.floodlightcontroller.routing.IRoutingService#getPathsFast(DatapathId, DatapathId, int)
+     */
+    public List<Path> getPathsFast(DatapathId src, DatapathId dst, int k);
+}
@@ -0,0 +1,312 @@
+package net.floodlightcontroller.topology;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.BroadcastTree;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact representation of the switch graph of a {@link TopologyInstance},
+ * built once per instance for path computation. Switches are numbered densely
+ * in DPID order and the links into each switch are stored in compressed
+ * sparse row form, so that Dijkstra's algorithm only ever touches int arrays.
+ *
+ * The graph itself is immutable and may be shared between threads. All state
+ * of a shortest path computation lives in a {@link Search}, which is meant to
+ * be reused for the many runs of a single Yen's computation.
+ */
+class SwitchGraph {
+    private final DatapathId[] switches;
+    private final Map<DatapathId, Integer> switchIndex;
+
+    /* Links, by link index */
+    private final Link[] links;
+    private final int[] linkSrc;
+    private final int[] linkDst;
+
+    /* Links into switch i are inLinks[inStart[i]] .. inLinks[inStart[i + 1] - 1] */
+    private final int[] inStart;
+    private final int[] inLinks;
+
+    /* Links by the switch port they point to */
+    private final Map<NodePortTuple, int[]> linksIntoPort;
+
+    /**
+     * @param sws all switches in the topology
+     * @param linksPerSwitch the links incident on each switch
+     */
+    SwitchGraph(Set<DatapathId> sws, Map<DatapathId, Set<Link>> linksPerSwitch) {
+        switches = sws.toArray(new DatapathId[sws.size()]);
+        Arrays.sort(switches);
+        switchIndex = new HashMap<DatapathId, Integer>();
+        for (int i = 0; i < switches.length; i++) {
+            switchIndex.put(switches[i], i);
+        }
+
+        /* Only links pointing at a switch are relevant to reach it */
+        List<Link> linkList = new ArrayList<Link>();
+        int[] inDegree = new int[switches.length];
+        for (DatapathId sw : switches) {
+            Set<Link> ls = linksPerSwitch.get(sw);
+            if (ls == null) continue;
+            for (Link l : ls) {
+                if (!l.getDst().equals(sw) || l.getSrc().equals(sw)) continue;
+                if (!switchIndex.containsKey(l.getSrc())) continue;
+                linkList.add(l);
+                inDegree[switchIndex.get(sw)]++;
+            }
+        }
+
+        links = linkList.toArray(new Link[linkList.size()]);
+        linkSrc = new int[links.length];
+        linkDst = new int[links.length];
+        inStart = new int[switches.length + 1];
+        inLinks = new int[links.length];
+        for (int i = 0; i < switches.length; i++) {
+            inStart[i + 1] = inStart[i] + inDegree[i];
+        }
+
+        int[] fill = Arrays.copyOf(inStart, switches.length);
+        Map<NodePortTuple, List<Integer>> byPort = new HashMap<NodePortTuple, List<Integer>>();
+        for (int e = 0; e < links.length; e++) {
+            linkSrc[e] = switchIndex.get(links[e].getSrc());
+            linkDst[e] = switchIndex.get(links[e].getDst());
+            inLinks[fill[linkDst[e]]++] = e;
+
+            NodePortTuple npt = new NodePortTuple(links[e].getDst(), links[e].getDstPort());
+            if (!byPort.containsKey(npt)) {
+                byPort.put(npt, new ArrayList<Integer>(2));
+            }
+            byPort.get(npt).add(e);
+        }
+
+        linksIntoPort = new HashMap<NodePortTuple, int[]>();
+        for (Map.Entry<NodePortTuple, List<Integer>> entry : byPort.entrySet()) {
+            int[] es = new int[entry.getValue().size()];
+            for (int i = 0; i < es.length; i++) {
+                es[i] = entry.getValue().get(i);
+            }
+            linksIntoPort.put(entry.getKey(), es);
+        }
+    }
+
+    /**
+     * Get the index of a switch.
+     * @param sw
+     * @return the index, or -1 if the switch is not part of the graph
+     */
+    int getIndex(DatapathId sw) {
+        Integer i = switchIndex.get(sw);
+        return i == null ? -1 : i;
+    }
+
+    int getSwitchCount() {
+        return switches.length;
+    }
+
+    /**
+     * Translate a cost per link into a cost per link index. Links
+     * without a cost are assigned a cost of 1.
+     * @param linkCost
+     * @return
+     */
+    int[] getCosts(Map<Link, Integer> linkCost) {
+        int[] costs = new int[links.length];
+        for (int e = 0; e < links.length; e++) {
+            Integer c = linkCost == null ? null : linkCost.get(links[e]);
+            costs[e] = c == null ? 1 : c;
+        }
+        return costs;
+    }
+
+    Search newSearch() {
+        return new Search();
+    }
+
+    /**
+     * Scratch space for destination rooted shortest path computations
+     * over the graph, with the ability to leave out switches and links.
+     * Not thread-safe.
+     */
+    class Search {
+        private final int[] dist;
+        private final int[] nextLink; /* link towards the root, or -1 */
+        private final boolean[] settled;
+        private final boolean[] switchRemoved;
+        private final boolean[] linkRemoved;
+
+        /* Binary min-heap of switch indices, with the heap position of each switch */
+        private final int[] heap;
+        private final int[] heapPos;
+        private int heapSize;
+
+        private Search() {
+            dist = new int[switches.length];
+            nextLink = new int[switches.length];
+            settled = new boolean[switches.length];
+            switchRemoved = new boolean[switches.length];
+            linkRemoved = new boolean[links.length];
+            heap = new int[switches.length];
+            heapPos = new int[switches.length];
+        }
+
+        /**
+         * Put all switches and links previously removed back into the graph.
+         */
+        void restore() {
+            Arrays.fill(switchRemoved, false);
+            Arrays.fill(linkRemoved, false);
+        }
+
+        void removeSwitch(DatapathId sw) {
+            int i = getIndex(sw);
+            if (i >= 0) {
+                switchRemoved[i] = true;
+            }
+        }
+
+        /**
+         * Remove all links that point to the given switch port.
+         * @param npt
+         */
+        void removeLinksInto(NodePortTuple npt) {
+            int[] es = linksIntoPort.get(npt);
+            if (es == null) return;
+            for (int e : es) {
+                linkRemoved[e] = true;
+            }
+        }
+
+        /**
+         * Run Dijkstra's algorithm towards the root switch.
+         * @param root index of the root switch
+         * @param costs cost of each link index
+         */
+        void run(int root, int[] costs) {
+            Arrays.fill(dist, TopologyInstance.MAX_PATH_WEIGHT);
+            Arrays.fill(nextLink, -1);
+            Arrays.fill(settled, false);
+            Arrays.fill(heapPos, -1);
+            heapSize = 0;
+
+            dist[root] = 0;
+            push(root);
+
+            while (heapSize > 0) {
+                int u = pop();
+                if (dist[u] >= TopologyInstance.MAX_PATH_WEIGHT) break;
+                settled[u] = true;
+
+                for (int j = inStart[u]; j < inStart[u + 1]; j++) {
+                    int e = inLinks[j];
+                    int v = linkSrc[e];
+                    if (linkRemoved[e] || switchRemoved[v] || settled[v]) continue;
+
+                    int d = dist[u] + costs[e];
+                    if (d < dist[v]) {
+                        dist[v] = d;
+                        nextLink[v] = e;
+                        if (heapPos[v] < 0) {
+                            push(v);
+                        } else {
+                            siftUp(heapPos[v]); /* decrease-key */
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Get the switch ports along the path from a switch to the root
+         * of the last run.
+         * @param src
+         * @return the ports, or an empty list if there is no path
+         */
+        List<NodePortTuple> getPathFrom(DatapathId src) {
+            List<NodePortTuple> ports = new ArrayList<NodePortTuple>();
+            int u = getIndex(src);
+            if (u < 0) return ports;
+
+            while (nextLink[u] >= 0) {
+                Link l = links[nextLink[u]];
+                ports.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+                ports.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+                u = linkDst[nextLink[u]];
+            }
+            return ports;
+        }
+
+        /**
+         * Get the result of the last run as a tree of links.
+         * @return
+         */
+        BroadcastTree toBroadcastTree() {
+            HashMap<DatapathId, Link> treeLinks = new HashMap<DatapathId, Link>();
+            HashMap<DatapathId, Integer> treeCosts = new HashMap<DatapathId, Integer>();
+            for (int i = 0; i < switches.length; i++) {
+                treeLinks.put(switches[i], nextLink[i] < 0 ? null : links[nextLink[i]]);
+                treeCosts.put(switches[i], dist[i]);
+            }
+            return new BroadcastTree(treeLinks, treeCosts);
+        }
+
+        /* Ties are broken on the lower DPID, i.e. the lower index */
+        private boolean less(int a, int b) {
+            return dist[a] < dist[b] || (dist[a] == dist[b] && a < b);
+        }
+
+        private void push(int v) {
+            heap[heapSize] = v;
+            heapPos[v] = heapSize;
+            siftUp(heapSize++);
+        }
+
+        private int pop() {
+            int top = heap[0];
+            heapPos[top] = -1;
+            if (--heapSize > 0) {
+                heap[0] = heap[heapSize];
+                heapPos[heap[0]] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftUp(int pos) {
+            int v = heap[pos];
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!less(v, heap[parent])) break;
+                heap[pos] = heap[parent];
+                heapPos[heap[pos]] = pos;
+                pos = parent;
+            }
+            heap[pos] = v;
+            heapPos[v] = pos;
+        }
+
+        private void siftDown(int pos) {
+            int v = heap[pos];
+            int half = heapSize >>> 1;
+            while (pos < half) {
+                int child = 2 * pos + 1;
+                if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!less(heap[child], v)) break;
+                heap[pos] = heap[child];
+                heapPos[heap[pos]] = pos;
+                pos = child;
+            }
+            heap[pos] = v;
+            heapPos[v] = pos;
+        }
+    }
+}
@@ -21,10 +21,12 @@ import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.linkdiscovery.Link;
 import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
 import net.floodlightcontroller.routing.Path;
 import net.floodlightcontroller.routing.PathId;
 import net.floodlightcontroller.statistics.SwitchPortBandwidth;
 import net.floodlightcontroller.util.ClusterDFS;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
@@ -35,13 +37,20 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
 /**
  * A representation of a network topology. Used internally by
- * {@link TopologyManager}
+ * {@link TopologyManager}. Once computed and published, an instance is
+ * not modified, and is handed out as the {@link ITopologySnapshot}.
  */
-public class TopologyInstance {
+public class TopologyInstance implements ITopologySnapshot {
 
     public static final short LT_SH_LINK = 1;
     public static final short LT_BD_LINK = 2;
@@ -80,21 +89,39 @@ public class TopologyInstance {
     private Map<Cluster, Archipelago>           archipelagoFromCluster;
     private Map<DatapathId, Set<NodePortTuple>> portsBroadcastPerArchipelago; /* broadcast ports in each archipelago ID */
     private Map<PathId, List<Path>>             pathcache; /* contains computed paths ordered best to worst */
+    private final SwitchGraph                   graph; /* compact form of the topology for path computation */
+    private ConcurrentMap<PathId, FutureTask<List<Path>>> pathsInFlight; /* lazy path computations in progress */
+    private final ForkJoinPool pathComputationPool; /* null to compute all paths on the calling thread */
 
-    protected TopologyInstance(Map<DatapathId, Set<OFPort>> portsWithLinks,
+    /* Path computation parameters this instance was computed with */
+    private final PATH_METRIC                   pathMetric;
+    private final int                           maxPathsToCompute;
+    private final boolean                       lazyPaths;
+
+    private final long                          version;
+
+    protected TopologyInstance(long version,
+            Map<DatapathId, Set<OFPort>> portsWithLinks,
             Set<NodePortTuple> portsBlocked,
             Map<NodePortTuple, Set<Link>> linksNonBcastNonTunnel,
             Set<NodePortTuple> portsWithMoreThanTwoLinks,
             Set<NodePortTuple> portsTunnel, 
             Map<NodePortTuple, Set<Link>> links,
             Map<DatapathId, Set<OFPort>> portsPerSwitch,
-            Map<NodePortTuple, Set<Link>> linksExternal) {
+            Map<NodePortTuple, Set<Link>> linksExternal,
+            ForkJoinPool pathComputationPool) {
 
-        this.switches = new HashSet<DatapathId>(portsWithLinks.keySet());
-        this.portsWithLinks = new HashMap<DatapathId, Set<OFPort>>();
+        /* 
+         * The switches, ports and links never change once the instance is
+         * created. They are read concurrently during parallel and lazy path
+         * computation, so make sure they stay that way.
+         */
+        this.switches = Collections.unmodifiableSet(new HashSet<DatapathId>(portsWithLinks.keySet()));
+        Map<DatapathId, Set<OFPort>> pwl = new HashMap<DatapathId, Set<OFPort>>();
         for (DatapathId sw : portsWithLinks.keySet()) {
-            this.portsWithLinks.put(sw, new HashSet<OFPort>(portsWithLinks.get(sw)));
+            pwl.put(sw, new HashSet<OFPort>(portsWithLinks.get(sw)));
         }
+        this.portsWithLinks = Collections.unmodifiableMap(pwl);
 
         this.portsPerSwitch = new HashMap<DatapathId, Set<OFPort>>();
         for (DatapathId sw : portsPerSwitch.keySet()) {
@@ -107,10 +134,11 @@ public class TopologyInstance {
             this.linksNonBcastNonTunnel.put(npt, new HashSet<Link>(linksNonBcastNonTunnel.get(npt)));
         }
 
-        this.links = new HashMap<NodePortTuple, Set<Link>>();
+        Map<NodePortTuple, Set<Link>> l = new HashMap<NodePortTuple, Set<Link>>();
         for (NodePortTuple npt : links.keySet()) {
-            this.links.put(npt, new HashSet<Link>(links.get(npt)));
+            l.put(npt, new HashSet<Link>(links.get(npt)));
         }
+        this.links = Collections.unmodifiableMap(l);
 
         this.linksExternal = new HashMap<NodePortTuple, Set<Link>>();
         for (NodePortTuple npt : linksExternal.keySet()) {
@@ -130,14 +158,50 @@ public class TopologyInstance {
         this.portsBroadcastAll= new HashSet<NodePortTuple>();
         this.portsBroadcastPerSwitch = new HashMap<DatapathId,Set<OFPort>>();
 
-        this.pathcache = new HashMap<PathId, List<Path>>();
+        this.lazyPaths = TopologyManager.isLazyPathComputationInternal();
+        if (lazyPaths) {
+            /* Bounded LRU, since it is populated from the packet processing threads */
+            this.pathcache = new ConcurrentLinkedHashMap.Builder<PathId, List<Path>>()
+                    .maximumWeightedCapacity(TopologyManager.getPathCacheSizeInternal())
+                    .build();
+        } else {
+            this.pathcache = new HashMap<PathId, List<Path>>();
+        }
+        this.pathsInFlight = new ConcurrentHashMap<PathId, FutureTask<List<Path>>>();
+        this.pathComputationPool = pathComputationPool;
 
         this.portsBroadcastPerArchipelago = new HashMap<DatapathId, Set<NodePortTuple>>();
 
         this.archipelagoFromCluster = new HashMap<Cluster, Archipelago>();
+
+        this.graph = new SwitchGraph(this.switches, buildLinkDpidMap(this.switches, this.portsWithLinks, this.links));
+
+        this.pathMetric = TopologyManager.getPathMetricInternal();
+        this.maxPathsToCompute = TopologyManager.getMaxPathsToComputeInternal();
+        this.version = version;
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
     }
 
     protected void compute() {
+        compute(null, Collections.<Link>emptySet(), Collections.<Link>emptySet());
+    }
+
+    /**
+     * Compute this instance as a delta against a previously computed instance.
+     * Clusters and archipelagos are always recomputed (linear in the size of
+     * the topology), but the k-shortest paths of the previous instance are
+     * carried over for every switch pair that cannot have been affected by
+     * the links that were added, updated or removed in between.
+     *
+     * @param previous the last instance computed, or null to compute from scratch
+     * @param linksUpdated links added or updated since previous was computed
+     * @param linksRemoved links removed since previous was computed
+     */
+    protected void compute(TopologyInstance previous, Set<Link> linksUpdated, Set<Link> linksRemoved) {
         /*
          * Step 1: Compute clusters ignoring ports with > 2 links and 
          * blocked links.
@@ -163,9 +227,18 @@ public class TopologyInstance {
          * Step 4: Use Yens algorithm to permute through each node combination
          * within each archipelago and compute multiple paths. The shortest
          * path located (i.e. first run of dijkstra's algorithm) will be used 
-         * as the broadcast tree for the archipelago.
+         * as the broadcast tree for the archipelago. If we have a previous
+         * instance to work from, only recompute the paths the delta touches.
+         * In lazy mode, paths are computed upon first request instead; only
+         * the broadcast trees and any reusable paths are set up here.
          */
-        computeOrderedPaths();
+        if (lazyPaths) {
+            computeBroadcastTrees(isPathDeltaApplicable(previous) ? previous : null, linksUpdated, linksRemoved);
+        } else if (isPathDeltaApplicable(previous)) {
+            computeOrderedPaths(previous, linksUpdated, linksRemoved);
+        } else {
+            computeOrderedPaths();
+        }
 
         /*
          * Step 5: Determine the broadcast ports for each archipelago. These are
@@ -441,60 +514,6 @@ public class TopologyInstance {
         return portsBroadcastAll.contains(npt);
     }
 
-    private class NodeDist implements Comparable<NodeDist> {
-        private final DatapathId node;
-        public DatapathId getNode() {
-            return node;
-        }
-
-        private final int dist;
-        public int getDist() {
-            return dist;
-        }
-
-        public NodeDist(DatapathId node, int dist) {
-            this.node = node;
-            this.dist = dist;
-        }
-
-        @Override
-        public int compareTo(NodeDist o) {
-            if (o.dist == this.dist) {
-                return (int)(this.node.getLong() - o.node.getLong());
-            }
-            return this.dist - o.dist;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            NodeDist other = (NodeDist) obj;
-            if (!getOuterType().equals(other.getOuterType()))
-                return false;
-            if (node == null) {
-                if (other.node != null)
-                    return false;
-            } else if (!node.equals(other.node))
-                return false;
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            assert false : "hashCode not designed";
-        return 42;
-        }
-
-        private TopologyInstance getOuterType() {
-            return TopologyInstance.this;
-        }
-    }
-
     protected void identifyArchipelagos() {
         // Iterate through each external link and create/merge archipelagos based on the
         // islands that each link is connected to
@@ -562,85 +581,6 @@ public class TopologyInstance {
     }
     
 
-    /*
-     * Dijkstra that calculates destination rooted trees over the entire topology.
-     */
-    private BroadcastTree dijkstra(Map<DatapathId, Set<Link>> links, DatapathId root,
-            Map<Link, Integer> linkCost,
-            boolean isDstRooted) {
-        HashMap<DatapathId, Link> nexthoplinks = new HashMap<DatapathId, Link>();
-        HashMap<DatapathId, Integer> cost = new HashMap<DatapathId, Integer>();
-        int w;
-
-        for (DatapathId node : links.keySet()) {
-            nexthoplinks.put(node, null);
-            cost.put(node, MAX_PATH_WEIGHT);
-            //log.debug("Added max cost to {}", node);
-        }
-
-        HashMap<DatapathId, Boolean> seen = new HashMap<DatapathId, Boolean>();
-        PriorityQueue<NodeDist> nodeq = new PriorityQueue<NodeDist>();
-        nodeq.add(new NodeDist(root, 0));
-        cost.put(root, 0);
-
-        //log.debug("{}", links);
-
-        while (nodeq.peek() != null) {
-            NodeDist n = nodeq.poll();
-            DatapathId cnode = n.getNode();
-            int cdist = n.getDist();
-
-            if (cdist >= MAX_PATH_WEIGHT) break;
-            if (seen.containsKey(cnode)) continue;
-            seen.put(cnode, true);
-
-            //log.debug("cnode {} and links {}", cnode, links.get(cnode));
-            if (links.get(cnode) == null) continue;
-            for (Link link : links.get(cnode)) {
-                DatapathId neighbor;
-
-                if (isDstRooted == true) {
-                    neighbor = link.getSrc();
-                } else {
-                    neighbor = link.getDst();
-                }
-
-                // links directed toward cnode will result in this condition
-                if (neighbor.equals(cnode)) continue;
-
-                if (seen.containsKey(neighbor)) continue;
-
-                if (linkCost == null || linkCost.get(link) == null) {
-                    w = 1;
-                } else {
-                    w = linkCost.get(link);
-                }
-
-                int ndist = cdist + w; // the weight of the link, always 1 in current version of floodlight.
-                log.debug("Neighbor: {}", neighbor);
-                log.debug("Cost: {}", cost);
-                log.debug("Neighbor cost: {}", cost.get(neighbor));
-
-                if (ndist < cost.get(neighbor)) {
-                    cost.put(neighbor, ndist);
-                    nexthoplinks.put(neighbor, link);
-
-                    NodeDist ndTemp = new NodeDist(neighbor, ndist);
-                    // Remove an object that's already in there.
-                    // Note that the comparison is based on only the node id,
-                    // and not node id and distance.
-                    nodeq.remove(ndTemp);
-                    // add the current object to the queue.
-                    nodeq.add(ndTemp);
-                }
-            }
-        }
-
-        BroadcastTree ret = new BroadcastTree(nexthoplinks, cost);
-
-        return ret;
-    }
-
     /*
      * Creates a map of links and the cost associated with each link
      */
@@ -774,39 +714,293 @@ public class TopologyInstance {
      * in the pathcache.
      */
     private void computeOrderedPaths() {
-        List<Path> paths;
-        PathId pathId;
         pathcache.clear();
 
         for (Archipelago a : archipelagos) { /* for each archipelago */
-            Set<DatapathId> srcSws = a.getSwitches();
-            Set<DatapathId> dstSws = a.getSwitches();
-            log.debug("SRC {}", srcSws);
-            log.debug("DST {}", dstSws);
+            computeOrderedPaths(a);
+        }
+    }
+
+    private void computeOrderedPaths(Archipelago a) {
+        Set<DatapathId> srcSws = a.getSwitches();
+        Set<DatapathId> dstSws = a.getSwitches();
+        log.debug("SRC {}", srcSws);
+        log.debug("DST {}", dstSws);
+
+        /* Split the work per source switch across the pool, if there is one */
+        List<DatapathId> srcList = new ArrayList<DatapathId>(srcSws);
+        List<DatapathId> dstList = new ArrayList<DatapathId>(dstSws);
+        PathComputationTask task = new PathComputationTask(a, srcList, dstList, 0, srcList.size());
+        if (pathComputationPool != null && srcList.size() > 1) {
+            pathcache.putAll(pathComputationPool.invoke(task));
+        } else {
+            pathcache.putAll(task.compute());
+        }
+
+        if (!dstList.isEmpty()) {
+            a.setBroadcastTree(computeBroadcastTree(getBroadcastTreeRoot(a)));
+        }
+    }
+
+    /*
+     * The shortest path tree towards the last destination is the archipelago's
+     * broadcast tree. Every variant of the path computation must root it at the
+     * same switch, or flooding would take a different tree depending on the mode.
+     */
+    private static DatapathId getBroadcastTreeRoot(Archipelago a) {
+        DatapathId root = null;
+        for (DatapathId sw : a.getSwitches()) {
+            root = sw;
+        }
+        return root;
+    }
+
+    /*
+     * Paths of a previous instance can only be carried over if they were
+     * computed with the same parameters and every link the two instances
+     * share still costs the same. The tunnel weight grows with the number
+     * of ports with links and latencies are refreshed in place, so either
+     * can reprice a link without it being added or removed.
+     */
+    private boolean isPathDeltaApplicable(TopologyInstance previous) {
+        if (previous == null) {
+            return false;
+        }
+        if (previous.pathMetric != pathMetric || previous.maxPathsToCompute != maxPathsToCompute) {
+            return false;
+        }
+        if (pathMetric == PATH_METRIC.UTILIZATION || pathMetric == PATH_METRIC.LINK_SPEED) {
+            return false; /* costs change without any link update */
+        }
+        if (!previous.portsTunnel.equals(portsTunnel) 
+                || !previous.portsBlocked.equals(portsBlocked)
+                || !previous.portsWithMoreThanTwoLinks.equals(portsWithMoreThanTwoLinks)) {
+            return false;
+        }
+        return !isLinkCostChanged(previous);
+    }
+
+    private boolean isLinkCostChanged(TopologyInstance previous) {
+        Map<Link, Integer> cost = initLinkCostMap();
+        Map<Link, Integer> previousCost = previous.initLinkCostMap();
+        for (Set<Link> ls : links.values()) {
+            if (ls == null) {
+                continue;
+            }
+            for (Link link : ls) {
+                Set<Link> previousLinks = previous.links.get(new NodePortTuple(link.getSrc(), link.getSrcPort()));
+                if (previousLinks == null || !previousLinks.contains(link)) {
+                    continue; /* added links are handled as a delta */
+                }
+                /* SwitchGraph prices links without an entry at 1 */
+                Integer c = cost.get(link);
+                Integer pc = previousCost.get(link);
+                if ((c == null ? 1 : c) != (pc == null ? 1 : pc)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Incremental variant of computeOrderedPaths(). An archipelago with the
+     * same member switches as in the previous instance, and without any added
+     * or updated links, can only have lost links. Removing links never makes
+     * a path shorter, so any previously computed list of k-shortest paths that
+     * does not cross a removed link is still the correct one and is shared
+     * with the previous instance as is. All other pairs are run through Yen's.
+     */
+    private void computeOrderedPaths(TopologyInstance previous, Set<Link> linksUpdated, Set<Link> linksRemoved) {
+        pathcache.clear();
+
+        Set<NodePortTuple> portsRemoved = new HashSet<NodePortTuple>();
+        for (Link l : linksRemoved) {
+            portsRemoved.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+            portsRemoved.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+        }
+
+        int reused = 0;
+        int recomputed = 0;
+        for (Archipelago a : archipelagos) {
+            Set<DatapathId> sws = a.getSwitches();
+            Archipelago previousA = previous.getArchipelago(a.getId());
+
+            boolean reusable = previousA != null && previousA.getSwitches().equals(sws);
+            for (Link l : linksUpdated) {
+                if (!reusable) break;
+                if (sws.contains(l.getSrc()) || sws.contains(l.getDst())) {
+                    reusable = false;
+                }
+            }
+
+            if (!reusable) {
+                computeOrderedPaths(a);
+                recomputed = recomputed + sws.size() * sws.size();
+                continue;
+            }
+
+            for (DatapathId src : sws) {
+                for (DatapathId dst : sws) {
+                    PathId pathId = new PathId(src, dst);
+                    List<Path> paths = previous.pathcache.get(pathId);
+                    if (paths == null || crossesAny(paths, portsRemoved)) {
+                        paths = yens(src, dst, maxPathsToCompute, a, a);
+                        recomputed++;
+                    } else {
+                        reused++;
+                    }
+                    pathcache.put(pathId, paths);
+                }
+            }
+
+            /* Keep the previous broadcast tree unless it used a removed link */
+            BroadcastTree bt = previousA.getBroadcastTree();
+            if (bt == null || crossesAny(bt, linksRemoved)) {
+                bt = computeBroadcastTree(getBroadcastTreeRoot(a));
+            }
+            a.setBroadcastTree(bt);
+        }
+        log.debug("Incremental path computation reused {} and recomputed {} switch pairs", reused, recomputed);
+    }
+
+    /*
+     * Lazy variant of computeOrderedPaths(). Only the broadcast tree of each
+     * archipelago is computed, rooted where the eager one would be. Paths of the
+     * previous instance that are still valid (see the incremental variant
+     * above) are carried over, so that they need not be computed again.
+     */
+    private void computeBroadcastTrees(TopologyInstance previous, Set<Link> linksUpdated, Set<Link> linksRemoved) {
+        pathcache.clear();
+
+        Set<NodePortTuple> portsRemoved = new HashSet<NodePortTuple>();
+        for (Link l : linksRemoved) {
+            portsRemoved.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+            portsRemoved.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+        }
+
+        for (Archipelago a : archipelagos) {
+            a.setBroadcastTree(computeBroadcastTree(getBroadcastTreeRoot(a)));
+            if (previous == null) continue;
+
+            Set<DatapathId> sws = a.getSwitches();
+            Archipelago previousA = previous.getArchipelago(a.getId());
+            if (previousA == null || !previousA.getSwitches().equals(sws)) continue;
+
+            boolean reusable = true;
+            for (Link l : linksUpdated) {
+                if (sws.contains(l.getSrc()) || sws.contains(l.getDst())) {
+                    reusable = false;
+                    break;
+                }
+            }
+            if (!reusable) continue;
+
+            for (DatapathId src : sws) {
+                for (DatapathId dst : sws) {
+                    PathId pathId = new PathId(src, dst);
+                    List<Path> paths = previous.pathcache.get(pathId);
+                    if (paths != null && !crossesAny(paths, portsRemoved)) {
+                        pathcache.put(pathId, paths);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Dijkstra that calculates a destination rooted tree over the entire topology.
+     */
+    private BroadcastTree computeBroadcastTree(DatapathId root) {
+        int r = graph.getIndex(root);
+        if (r < 0) {
+            return new BroadcastTree();
+        }
+        SwitchGraph.Search search = graph.newSearch();
+        search.run(r, graph.getCosts(initLinkCostMap()));
+        return search.toBroadcastTree();
+    }
+
+    private static boolean crossesAny(List<Path> paths, Set<NodePortTuple> ports) {
+        if (ports.isEmpty()) {
+            return false;
+        }
+        for (Path p : paths) {
+            for (NodePortTuple npt : p.getPath()) {
+                if (ports.contains(npt)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean crossesAny(BroadcastTree bt, Set<Link> links) {
+        for (Link l : bt.getLinks().values()) {
+            if (l != null && links.contains(l)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Computes the paths from a range of source switches to all destination
+     * switches of an archipelago, splitting the range in half until a single
+     * source is left. Results are merged into a new map, so that the task only
+     * ever reads from the (immutable) topology of this instance.
+     */
+    private class PathComputationTask extends RecursiveTask<Map<PathId, List<Path>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Archipelago a;
+        private final List<DatapathId> srcSws;
+        private final List<DatapathId> dstSws;
+        private final int from;
+        private final int to;
 
-            for (DatapathId src : srcSws) { /* permute all member switches */
+        PathComputationTask(Archipelago a, List<DatapathId> srcSws, List<DatapathId> dstSws, int from, int to) {
+            this.a = a;
+            this.srcSws = srcSws;
+            this.dstSws = dstSws;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<PathId, List<Path>> compute() {
+            if (to - from > 1 && inForkJoinPool()) {
+                int mid = (from + to) >>> 1;
+                PathComputationTask left = new PathComputationTask(a, srcSws, dstSws, from, mid);
+                PathComputationTask right = new PathComputationTask(a, srcSws, dstSws, mid, to);
+                left.fork();
+                Map<PathId, List<Path>> result = right.compute();
+                result.putAll(left.join());
+                return result;
+            }
+
+            Map<PathId, List<Path>> result = new HashMap<PathId, List<Path>>();
+            for (int i = from; i < to; i++) { /* permute all member switches */
+                DatapathId src = srcSws.get(i);
                 for (DatapathId dst : dstSws) {
                     log.debug("Calling Yens {} {}", src, dst);
-                    paths = yens(src, dst, TopologyManager.getMaxPathsToComputeInternal(),
-                            getArchipelago(src), getArchipelago(dst));
-                    pathId = new PathId(src, dst);
-                    pathcache.put(pathId, paths);
+                    List<Path> paths = yens(src, dst, maxPathsToCompute, a, a);
+                    result.put(new PathId(src, dst), paths);
                     log.debug("Adding paths {}", paths);
                 }
             }
+            return result;
         }
     }
 
-    private Path buildPath(PathId id, BroadcastTree tree) {
-        NodePortTuple npt;
+    /*
+     * Builds the path from the source of the given ID along the shortest
+     * path tree last computed by the search, which must be rooted at the
+     * destination of the ID.
+     */
+    private Path buildPath(PathId id, SwitchGraph.Search search) {
         DatapathId srcId = id.getSrc();
         DatapathId dstId = id.getDst();
-        //set of NodePortTuples on the route
-        LinkedList<NodePortTuple> sPorts = new LinkedList<NodePortTuple>();
-
-        if (tree == null) return new Path(id, ImmutableList.of()); /* empty route */
-
-        Map<DatapathId, Link> nexthoplinks = tree.getLinks();
 
         if (!switches.contains(srcId) || !switches.contains(dstId)) {
             // This is a switch that is not connected to any other switch
@@ -816,26 +1010,15 @@ public class TopologyInstance {
 
             // The only possible non-null path for this case is
             // if srcId equals dstId --- and that too is an 'empty' path []
-
-        } else if ((nexthoplinks != null) && (nexthoplinks.get(srcId) != null)) {
-            while (!srcId.equals(dstId)) {
-                Link l = nexthoplinks.get(srcId);
-                npt = new NodePortTuple(l.getSrc(), l.getSrcPort());
-                sPorts.addLast(npt);
-                npt = new NodePortTuple(l.getDst(), l.getDstPort());
-                sPorts.addLast(npt);
-                srcId = nexthoplinks.get(srcId).getDst();
-            }
+            return new Path(id, ImmutableList.of());
         }
-        // else, no path exists, and path equals null
 
-        Path result = null;
-        if (sPorts != null && !sPorts.isEmpty()) {
-            result = new Path(id, sPorts);
+        // if no path exists, the list of ports is empty
+        List<NodePortTuple> sPorts = search.getPathFrom(srcId);
 
-        }
+        Path result = sPorts.isEmpty() ? new Path(id, ImmutableList.of()) : new Path(id, sPorts);
         log.trace("buildpath: {}", result);
-        return result == null ? new Path(id, ImmutableList.of()) : result;
+        return result;
     }
 
     /*
@@ -899,7 +1082,7 @@ public class TopologyInstance {
      */
     public List<Path> getPathsFast(DatapathId src, DatapathId dst, int k) {
         PathId routeId = new PathId(src, dst);
-        List<Path> routes = pathcache.get(routeId);
+        List<Path> routes = getCachedPaths(routeId);
 
         if (routes == null || k < 1) {
             return ImmutableList.of();
@@ -926,7 +1109,7 @@ public class TopologyInstance {
      */
     public List<Path> getPathsSlow(DatapathId src, DatapathId dst, int k) {
         PathId pathId = new PathId(src, dst);
-        List<Path> paths = pathcache.get(pathId);
+        List<Path> paths = getCachedPaths(pathId);
 
         if (paths == null || k < 1) return ImmutableList.of();
 
@@ -938,6 +1121,52 @@ public class TopologyInstance {
         }
     }
 
+    /*
+     * Returns the paths stored in the pathcache. In lazy mode, paths not yet
+     * in the cache are computed and added to it. Concurrent requests for the
+     * same pair wait for the single computation in progress. A computation
+     * adds its result to the cache before it leaves pathsInFlight, so the
+     * cache is checked again once a request owns the pair; a request that
+     * missed the cache just before the previous computation finished then
+     * uses that result instead of computing the paths again.
+     */
+    private List<Path> getCachedPaths(PathId id) {
+        List<Path> paths = pathcache.get(id);
+        if (paths != null || !lazyPaths) {
+            return paths;
+        }
+
+        FutureTask<List<Path>> task = new FutureTask<List<Path>>(() -> {
+            List<Path> cached = pathcache.get(id);
+            if (cached != null) {
+                return cached;
+            }
+            List<Path> computed = yens(id.getSrc(), id.getDst(), maxPathsToCompute,
+                    getArchipelago(id.getSrc()), getArchipelago(id.getDst()));
+            pathcache.put(id, computed);
+            return computed;
+        });
+        FutureTask<List<Path>> inFlight = pathsInFlight.putIfAbsent(id, task);
+        if (inFlight == null) {
+            inFlight = task;
+            try {
+                task.run();
+            } finally {
+                pathsInFlight.remove(id, task);
+            }
+        }
+
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for paths from {} to {}", id.getSrc(), id.getDst());
+        } catch (ExecutionException e) {
+            log.error("Could not compute paths from {} to {}", id.getSrc(), id.getDst(), e.getCause());
+        }
+        return null;
+    }
+
     private Archipelago getArchipelago(DatapathId d) {
         for (Archipelago a : archipelagos) {
             if (a.getSwitches().contains(d)) {
@@ -981,10 +1210,11 @@ public class TopologyInstance {
 
         // Find link costs
         Map<Link, Integer> linkCost = initLinkCostMap();
+        int[] costs = graph.getCosts(linkCost);
 
-        Map<DatapathId, Set<Link>> linkDpidMap = buildLinkDpidMap(switches, portsWithLinks, links);
-
-        Map<DatapathId, Set<Link>> copyOfLinkDpidMap = new HashMap<DatapathId, Set<Link>>(linkDpidMap);
+        // All Dijkstra runs below are towards dst and share the same scratch space
+        int root = graph.getIndex(dst);
+        SwitchGraph.Search search = graph.newSearch();
 
         // A is the list of shortest paths. The number in the list at the end should be less than or equal to K
         // B is the list of possible shortest paths found in this function.
@@ -1007,13 +1237,15 @@ public class TopologyInstance {
             return A;
         }
 
+        if (root < 0) {
+            log.debug("No paths found in Yen's!");
+            return A;
+        }
+
         /* Use Dijkstra's to find the shortest path, which will also be the first path in A */
-        BroadcastTree bt = dijkstra(copyOfLinkDpidMap, dst, linkCost, true);
-        /* add this initial tree as our archipelago's broadcast tree (aSrc == aDst) */
-        aSrc.setBroadcastTree(bt);
+        search.run(root, costs);
         /* now add the shortest path */
-        log.debug("src {} dst {} tree {}", new Object[] {src, dst, bt});
-        Path newroute = buildPath(new PathId(src, dst), bt); /* guaranteed to be in same tree */
+        Path newroute = buildPath(new PathId(src, dst), search); /* guaranteed to be in same tree */
 
         if (newroute != null && !newroute.getPath().isEmpty()) { /* should never be null, but might be empty */
             setPathCosts(newroute);
@@ -1043,29 +1275,26 @@ public class TopologyInstance {
                         path.subList(0, i));
 
 
-                Map<NodePortTuple, Set<Link>> allLinksCopy = new HashMap<NodePortTuple, Set<Link>>(links);
+                search.restore();
                 // Remove the links after the spur node that are part of other paths in A so that new paths
                 // found are unique
                 for (Path r : A) {
                     if (r.getPath().size() > (i + 1) && r.getPath().subList(0, i).equals(rootPath.getPath())) {
-                        allLinksCopy.remove(r.getPath().get(i));
-                        allLinksCopy.remove(r.getPath().get(i+1));
+                        search.removeLinksInto(r.getPath().get(i));
+                        search.removeLinksInto(r.getPath().get(i+1));
                     }
                 }
 
                 // Removes the root path so Dijkstra's doesn't try to go through it to find a path
-                Set<DatapathId> switchesCopy = new HashSet<DatapathId>(switches);
                 for (NodePortTuple npt : rootPath.getPath()) {
                     if (!npt.getNodeId().equals(spurNode)) {
-                        switchesCopy.remove(npt.getNodeId());
+                        search.removeSwitch(npt.getNodeId());
                     }
                 }
 
-                // Builds the new topology without the parts we want removed
-                copyOfLinkDpidMap = buildLinkDpidMap(switchesCopy, portsWithLinks, allLinksCopy);
-
                 // Uses Dijkstra's to try to find a shortest path from the spur node to the destination
-                Path spurPath = buildPath(new PathId(spurNode, dst), dijkstra(copyOfLinkDpidMap, dst, linkCost, true));
+                search.run(root, costs);
+                Path spurPath = buildPath(new PathId(spurNode, dst), search);
                 if (spurPath == null || spurPath.getPath().isEmpty()) {
                     log.debug("spurPath is null");
                     continue;
@@ -1227,8 +1456,9 @@ public class TopologyInstance {
         Path result = null;
 
         try {
-            if (!pathcache.get(id).isEmpty()) {
-                result = pathcache.get(id).get(0);
+            List<Path> paths = getCachedPaths(id);
+            if (!paths.isEmpty()) {
+                result = paths.get(0);
             }
         } catch (Exception e) {
             log.warn("Could not find route from {} to {}. If the path exists, wait for the topology to settle, and it will be detected", srcId, dstId);
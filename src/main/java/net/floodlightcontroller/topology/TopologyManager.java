@@ -53,6 +53,7 @@ import com.google.common.collect.ImmutableSet;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -74,6 +75,28 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
      */
     private static volatile int maxPathsToCompute = 3;
 
+    /**
+     * Apply link updates as a delta against the current topology instance
+     * instead of recomputing all paths from scratch.
+     */
+    private static volatile boolean incrementalPathComputation = false;
+
+    /**
+     * Compute paths upon first request rather than for all switch pairs
+     * upon topology updates, and the number of switch pairs to keep
+     * paths for in that case.
+     */
+    private static volatile boolean lazyPathComputation = false;
+    private static volatile int pathCacheSize = TopologyInstance.PATH_CACHE_SIZE;
+
+    /**
+     * Number of threads to compute paths for all switch pairs with.
+     * The pool is only created if more than one thread is configured,
+     * and is shut down with the controller.
+     */
+    private static volatile int pathComputationThreads = 1;
+    private volatile ForkJoinPool pathComputationPool;
+
     /**
      * Role of the controller.
      */
@@ -104,6 +127,19 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
      */
     protected Set<NodePortTuple> tunnelPorts;
 
+    /**
+     * Links added/updated and removed since the current topology
+     * instance was computed
+     */
+    protected Set<Link> linksUpdatedSinceLastInstance;
+    protected Set<Link> linksRemovedSinceLastInstance;
+
+    /**
+     * Flag that indicates if the links above fully describe the changes
+     * made since the current topology instance was computed.
+     */
+    protected boolean linkDeltaValid;
+
     protected static ILinkDiscoveryService linkDiscoveryService;
     protected static IThreadPoolService threadPoolService;
     protected static IFloodlightProviderService floodlightProviderService;
@@ -118,7 +154,9 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
     protected BlockingQueue<LDUpdate> ldUpdates;
 
     // These must be accessed using getCurrentInstance(), not directly
-    protected TopologyInstance currentInstance;
+    protected volatile TopologyInstance currentInstance;
+    /* Version of the last instance created. Only touched when creating instances */
+    private long instanceVersion;
 
     protected SingletonTask newInstanceTask;
     private Date lastUpdateTime;
@@ -266,6 +304,11 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return ti.swBroadcastPorts(sw);
     }
 
+    @Override
+    public ITopologySnapshot getSnapshot() {
+        return getCurrentInstance();
+    }
+
     @Override
     public Date getLastUpdateTime() {
         return lastUpdateTime;
@@ -355,6 +398,30 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return maxPathsToCompute;
     }
 
+    protected static void setIncrementalPathComputationInternal(boolean enable) {
+        incrementalPathComputation = enable;
+    }
+
+    protected static boolean isLazyPathComputationInternal() {
+        return lazyPathComputation;
+    }
+
+    protected static void setLazyPathComputationInternal(boolean enable) {
+        lazyPathComputation = enable;
+    }
+
+    protected static int getPathCacheSizeInternal() {
+        return pathCacheSize;
+    }
+
+    protected ForkJoinPool getPathComputationPoolInternal() {
+        return pathComputationPool;
+    }
+
+    protected void setPathComputationPoolInternal(ForkJoinPool pool) {
+        pathComputationPool = pool;
+    }
+
     @Override
     public int getMaxPathsToCompute() {
         return maxPathsToCompute;
@@ -512,6 +579,21 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return Command.CONTINUE;
     }
 
+    // *****************
+    // IShutdownListener
+    // *****************
+
+    private class ShutdownListenerDelegate implements IShutdownListener {
+        @Override
+        public void floodlightIsShuttingDown() {
+            ForkJoinPool pool = pathComputationPool;
+            pathComputationPool = null;
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
     // ***************
     // IHAListener
     // ***************
@@ -589,6 +671,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         l.add(IOFSwitchService.class);
         l.add(IDebugCounterService.class);
         l.add(IRestApiService.class);
+        l.add(IShutdownService.class);
         return l;
     }
 
@@ -608,6 +691,8 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         directLinks = new HashMap<NodePortTuple, Set<Link>>();
         interClusterLinks = new HashMap<NodePortTuple, Set<Link>>();
         tunnelPorts = new HashSet<NodePortTuple>();
+        linksUpdatedSinceLastInstance = new HashSet<Link>();
+        linksRemovedSinceLastInstance = new HashSet<Link>();
         topologyAware = new ArrayList<ITopologyListener>();
         ldUpdates = new LinkedBlockingQueue<LDUpdate>();
         haListener = new HAListenerDelegate();
@@ -652,6 +737,43 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                     }
                 }
                 log.info("Will compute a max of {} paths upon topology updates", maxPathsToCompute);
+
+                String incremental = configOptions.get("incrementalPathComputation");
+                if (incremental != null) {
+                    incrementalPathComputation = Boolean.parseBoolean(incremental.trim());
+                }
+                log.info("Incremental path computation upon topology updates is {}", 
+                        incrementalPathComputation ? "enabled" : "disabled");
+
+                String lazy = configOptions.get("lazyPathComputation");
+                if (lazy != null) {
+                    lazyPathComputation = Boolean.parseBoolean(lazy.trim());
+                }
+                String cacheSize = configOptions.get("pathCacheSize") != null 
+                        ? configOptions.get("pathCacheSize").trim() : null;
+                if (cacheSize != null) {
+                    try {
+                        pathCacheSize = Integer.parseInt(cacheSize);
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'pathCacheSize'. Using default {}", pathCacheSize);
+                    }
+                }
+                if (lazyPathComputation) {
+                    log.info("Will compute paths upon request and cache them for up to {} switch pairs", pathCacheSize);
+                }
+
+                String threads = configOptions.get("pathComputationThreads") != null 
+                        ? configOptions.get("pathComputationThreads").trim() : null;
+                if (threads != null) {
+                    try {
+                        pathComputationThreads = Integer.parseInt(threads);
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'pathComputationThreads'. Using default {}", pathComputationThreads);
+                    }
+                }
+                if (pathComputationThreads > 1) {
+                    log.info("Will compute paths upon topology updates using {} threads", pathComputationThreads);
+                }
     }
 
     @Override
@@ -660,6 +782,14 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         // Initialize role to floodlight provider role.
         this.role = floodlightProviderService.getRole();
 
+        if (pathComputationThreads > 1 && pathComputationPool == null) {
+            pathComputationPool = new ForkJoinPool(pathComputationThreads);
+        }
+        IShutdownService shutdownService = context.getServiceImpl(IShutdownService.class);
+        if (shutdownService != null) {
+            shutdownService.registerShutdownListener(new ShutdownListenerDelegate());
+        }
+
         ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
         newInstanceTask = new SingletonTask(ses, new UpdateTopologyWorker());
 
@@ -1003,18 +1133,28 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
             allPorts.put(sw, this.getPorts(sw));
         }
 
-        TopologyInstance nt = new TopologyInstance(switchPorts,
+        TopologyInstance nt = new TopologyInstance(++instanceVersion,
+                switchPorts,
                 blockedPorts,
                 openflowLinks,
                 broadcastDomainPorts,
                 tunnelPorts,
                 switchPortLinks,
                 allPorts,
-                interClusterLinks);
+                interClusterLinks,
+                pathComputationPool);
 
-        nt.compute();
+        TopologyInstance previous = currentInstance;
+        if (incrementalPathComputation && !forced && linkDeltaValid && previous != null) {
+            nt.compute(previous, linksUpdatedSinceLastInstance, linksRemovedSinceLastInstance);
+        } else {
+            nt.compute();
+        }
 
         currentInstance = nt;
+        linksUpdatedSinceLastInstance.clear();
+        linksRemovedSinceLastInstance.clear();
+        linkDeltaValid = true;
 
         return true;
     }
@@ -1191,6 +1331,11 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
             OFPort dstPort, U64 latency, LinkType type) {
         Link link = new Link(srcId, srcPort, dstId, dstPort, latency);
 
+        if (type.equals(LinkType.MULTIHOP_LINK) || type.equals(LinkType.DIRECT_LINK)) {
+            linksUpdatedSinceLastInstance.remove(link); /* replace latency */
+            linksUpdatedSinceLastInstance.add(link);
+        }
+
         if (type.equals(LinkType.MULTIHOP_LINK)) {
             addPortToSwitch(srcId, srcPort);
             addPortToSwitch(dstId, dstPort);
@@ -1215,6 +1360,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
 
     public void removeLink(Link link) {
         linksUpdated = true;
+        linksRemovedSinceLastInstance.add(link);
         dtLinksUpdated = removeLinkFromStructure(directLinks, link);
         removeLinkFromStructure(interClusterLinks, link);
         removeLinkFromStructure(switchPortLinks, link);
@@ -1257,6 +1403,9 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         switchPortLinks.clear();
         interClusterLinks.clear();
         directLinks.clear();
+        linksUpdatedSinceLastInstance.clear();
+        linksRemovedSinceLastInstance.clear();
+        linkDeltaValid = false;
     }
 
     /**
@@ -0,0 +1,247 @@
+package net.floodlightcontroller.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A hash map from primitive long keys to objects that can be read by any
+ * number of threads without locking or allocating. Writers are serialized
+ * on the map. Null values are not allowed.
+ *
+ * Like {@link LongHashMap}, it uses open addressing with linear probing.
+ * To keep reads safe while a writer changes the table, a key stays in its
+ * slot once inserted: removing it only clears the value, and the cleared
+ * slot is reused if the key is added again. The table is rebuilt without
+ * the cleared slots when it fills up, and readers still holding the old
+ * table finish their lookup in it.
+ */
+public class ConcurrentLongHashMap<V> {
+    private static final int MIN_CAPACITY = 4;
+
+    /*
+     * A slot is free when its key is FREE. A key equal to FREE is stored in
+     * a separate field instead.
+     */
+    private static final long FREE = 0;
+
+    private static class Table<V> {
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<V> values;
+        final int mask;
+        /* Slots with a key, including those whose value was removed */
+        int used;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<V>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table<V> table;
+    private volatile V freeKeyValue;
+    private volatile int size;
+
+    public ConcurrentLongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of entries to size the table for
+     */
+    public ConcurrentLongHashMap(int expectedSize) {
+        table = new Table<V>(LongHashMap.capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public V get(long key) {
+        if (key == FREE) {
+            return freeKeyValue;
+        }
+        Table<V> t = table;
+        for (int i = LongHashMap.hash(key) & t.mask; ; i = (i + 1) & t.mask) {
+            long k = t.keys.get(i);
+            if (k == key) {
+                return t.values.get(i);
+            }
+            if (k == FREE) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @param value not null
+     * @return the previous value, or null if there was none
+     */
+    public synchronized V put(long key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * @param key
+     * @param value not null
+     * @return the current value, or null if there was none and value was added
+     */
+    public synchronized V putIfAbsent(long key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * @param key
+     * @return the removed value, or null if there was none
+     */
+    public synchronized V remove(long key) {
+        V old;
+        if (key == FREE) {
+            old = freeKeyValue;
+            freeKeyValue = null;
+        } else {
+            Table<V> t = table;
+            int i = find(t, key);
+            old = i < 0 ? null : t.values.getAndSet(i, null);
+        }
+        if (old != null) {
+            size--;
+        }
+        return old;
+    }
+
+    /**
+     * Remove the entry for a key only if it is mapped to the given value.
+     * @param key
+     * @param value
+     * @return true if the entry was removed
+     */
+    public synchronized boolean remove(long key, Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (key == FREE) {
+            if (!value.equals(freeKeyValue)) {
+                return false;
+            }
+            freeKeyValue = null;
+        } else {
+            Table<V> t = table;
+            int i = find(t, key);
+            if (i < 0 || !value.equals(t.values.get(i))) {
+                return false;
+            }
+            t.values.set(i, null);
+        }
+        size--;
+        return true;
+    }
+
+    public synchronized void clear() {
+        table = new Table<V>(MIN_CAPACITY);
+        freeKeyValue = null;
+        size = 0;
+    }
+
+    /**
+     * @return a copy of the values, in no particular order. Values added or
+     * removed while the copy is made may or may not be included.
+     */
+    public List<V> values() {
+        List<V> result = new ArrayList<V>(size + 1);
+        V v = freeKeyValue;
+        if (v != null) {
+            result.add(v);
+        }
+        Table<V> t = table;
+        for (int i = 0; i <= t.mask; i++) {
+            v = t.values.get(i);
+            if (v != null) {
+                result.add(v);
+            }
+        }
+        return result;
+    }
+
+    private V put(long key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException("ConcurrentLongHashMap does not allow null values");
+        }
+        if (key == FREE) {
+            V old = freeKeyValue;
+            if (old == null || !onlyIfAbsent) {
+                freeKeyValue = value;
+            }
+            if (old == null) {
+                size++;
+            }
+            return old;
+        }
+
+        Table<V> t = table;
+        int i = LongHashMap.hash(key) & t.mask;
+        for (long k; (k = t.keys.get(i)) != FREE; i = (i + 1) & t.mask) {
+            if (k == key) {
+                V old = t.values.get(i);
+                if (old == null || !onlyIfAbsent) {
+                    t.values.set(i, value);
+                }
+                if (old == null) {
+                    size++;
+                }
+                return old;
+            }
+        }
+        /* Publish the value before the key, so a reader that finds the key sees it */
+        t.values.set(i, value);
+        t.keys.set(i, key);
+        size++;
+        if (++t.used > (t.mask + 1) >> 1) {
+            rebuild();
+        }
+        return null;
+    }
+
+    private int find(Table<V> t, long key) {
+        for (int i = LongHashMap.hash(key) & t.mask; ; i = (i + 1) & t.mask) {
+            long k = t.keys.get(i);
+            if (k == key) {
+                return i;
+            }
+            if (k == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    /* Copy the live entries to a new table sized for them */
+    private void rebuild() {
+        Table<V> old = table;
+        Table<V> t = new Table<V>(LongHashMap.capacityFor(Math.max(size, old.used >> 1) + 1));
+        for (int j = 0; j <= old.mask; j++) {
+            V v = old.values.get(j);
+            if (v != null) {
+                long key = old.keys.get(j);
+                int i = LongHashMap.hash(key) & t.mask;
+                while (t.keys.get(i) != FREE) {
+                    i = (i + 1) & t.mask;
+                }
+                t.values.set(i, v);
+                t.keys.set(i, key);
+                t.used++;
+            }
+        }
+        table = t;
+    }
+}
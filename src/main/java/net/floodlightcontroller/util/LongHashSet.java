@@ -0,0 +1,140 @@
+package net.floodlightcontroller.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash set of primitive longs. The companion of {@link LongHashMap}: open
+ * addressing with linear probing over a flat long array.
+ *
+ * Not thread-safe.
+ */
+public class LongHashSet {
+    private long[] keys;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public LongHashSet() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize number of elements to size the table for
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(LongHashMap.capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long key) {
+        for (int i = slot(key); used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key
+     * @return true if the set did not already contain the key
+     */
+    public boolean add(long key) {
+        int i = slot(key);
+        for (; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return false;
+            }
+        }
+        keys[i] = key;
+        used[i] = true;
+        if (++size > (mask + 1) >> 1) {
+            resize((mask + 1) << 1);
+        }
+        return true;
+    }
+
+    /**
+     * @param key
+     * @return true if the set contained the key
+     */
+    public boolean remove(long key) {
+        for (int i = slot(key); used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                deleteSlot(i);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * @return a copy of the elements, in no particular order
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /* See LongHashMap.deleteSlot() */
+    private void deleteSlot(int free) {
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            if (!used[i]) {
+                break;
+            }
+            int home = slot(keys[i]);
+            if (free <= i ? (home <= free || home > i) : (home <= free && home > i)) {
+                keys[free] = keys[i];
+                free = i;
+            }
+        }
+        used[free] = false;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int j = 0; j < oldUsed.length; j++) {
+            if (oldUsed[j]) {
+                int i = slot(oldKeys[j]);
+                while (used[i]) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                used[i] = true;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        return LongHashMap.hash(key) & mask;
+    }
+}
@@ -0,0 +1,153 @@
+package net.floodlightcontroller.util;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * The Netty socket transport used for a server or client. Netty's native
+ * epoll transport avoids the JDK selector and produces less garbage per
+ * I/O event than NIO, which matters with many connections. It is only
+ * available on Linux with the native library loaded, so use
+ * {@link #select(boolean)} to fall back to NIO elsewhere.
+ *
+ * Event loop groups and channels of different transports cannot be mixed,
+ * so all of a bootstrap's groups and its channel class must come from the
+ * same NettyTransport.
+ */
+public enum NettyTransport {
+    NIO,
+    EPOLL;
+
+    private static final Logger log = LoggerFactory.getLogger(NettyTransport.class);
+
+    /**
+     * Choose the transport to use.
+     * @param preferNative if the native epoll transport should be used when available
+     * @return EPOLL if preferred and available; NIO otherwise
+     */
+    public static NettyTransport select(boolean preferNative) {
+        if (preferNative) {
+            if (Epoll.isAvailable()) {
+                return EPOLL;
+            }
+            log.info("Native epoll transport not available. Falling back to NIO: {}",
+                    Epoll.unavailabilityCause() == null ? "unknown cause" : Epoll.unavailabilityCause().getMessage());
+        }
+        return NIO;
+    }
+
+    /**
+     * Choose the transport from the useNativeTransport config option. The
+     * option is shared by all modules that open sockets, so they must parse
+     * it the same way.
+     * @param useNative "yes"/"true" or "no"/"false", case-insensitive
+     * @return EPOLL if requested and available; NIO if not requested, if
+     *         blank, or if not available
+     * @throws IllegalArgumentException if the value is not recognized
+     */
+    public static NettyTransport fromConfig(String useNative) {
+        return select(parseUseNative(useNative));
+    }
+
+    /**
+     * Parse the useNativeTransport config option.
+     * @param useNative "yes"/"true" or "no"/"false", case-insensitive
+     * @return true if the native transport is requested; false if blank
+     * @throws IllegalArgumentException if the value is not recognized
+     */
+    public static boolean parseUseNative(String useNative) {
+        if (useNative == null || useNative.trim().isEmpty()) {
+            return false;
+        }
+        switch (useNative.trim().toLowerCase()) {
+        case "yes":
+        case "true":
+            return true;
+        case "no":
+        case "false":
+            return false;
+        default:
+            throw new IllegalArgumentException("Invalid useNativeTransport " + useNative + ". Must be 'yes' or 'no'");
+        }
+    }
+
+    /**
+     * Parse an epoll trigger mode from config.
+     * @param mode "edge" or "level", case-insensitive
+     * @return the mode, or null if blank, in which case Netty's default is used
+     * @throws IllegalArgumentException if the mode is not recognized
+     */
+    public static EpollMode parseEpollMode(String mode) {
+        if (mode == null || mode.trim().isEmpty()) {
+            return null;
+        }
+        switch (mode.trim().toLowerCase()) {
+        case "edge":
+        case "edge_triggered":
+            return EpollMode.EDGE_TRIGGERED;
+        case "level":
+        case "level_triggered":
+            return EpollMode.LEVEL_TRIGGERED;
+        default:
+            throw new IllegalArgumentException("Invalid epoll mode " + mode + ". Must be 'edge' or 'level'");
+        }
+    }
+
+    /**
+     * @param nThreads number of threads; 0 for Netty's default
+     * @return a new event loop group of this transport
+     */
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+        return this == EPOLL ? new EpollEventLoopGroup(nThreads) : new NioEventLoopGroup(nThreads);
+    }
+
+    /**
+     * @param nThreads number of threads; 0 for Netty's default
+     * @param threadFactory
+     * @return a new event loop group of this transport
+     */
+    public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+        return this == EPOLL ? new EpollEventLoopGroup(nThreads, threadFactory) : new NioEventLoopGroup(nThreads, threadFactory);
+    }
+
+    public Class<? extends ServerChannel> getServerChannelClass() {
+        return this == EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends Channel> getChannelClass() {
+        return this == EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * Set the transport specific options on a bootstrap. For a server,
+     * the options also apply to the accepted channels. Does nothing for NIO.
+     * @param bootstrap
+     * @param epollMode edge or level triggered; null to keep Netty's default
+     */
+    public void setTransportOptions(AbstractBootstrap<?, ?> bootstrap, EpollMode epollMode) {
+        if (this != EPOLL || epollMode == null) {
+            return;
+        }
+        bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode);
+        if (bootstrap instanceof ServerBootstrap) {
+            ((ServerBootstrap) bootstrap).childOption(EpollChannelOption.EPOLL_MODE, epollMode);
+        }
+    }
+}
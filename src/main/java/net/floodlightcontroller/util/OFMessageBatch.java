@@ -0,0 +1,131 @@
+package net.floodlightcontroller.util;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.SwitchDisconnectedException;
+
+import org.projectfloodlight.openflow.protocol.OFBundleCtrlMsg;
+import org.projectfloodlight.openflow.protocol.OFBundleCtrlType;
+import org.projectfloodlight.openflow.protocol.OFBundleFlags;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.BundleId;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Writes a batch of messages, e.g. the flow mods of a route, to a switch
+ * and returns a future that completes when the switch has processed all of
+ * them. Nothing blocks while waiting, so batches can be written to many
+ * switches in parallel.
+ *
+ * By default the batch is followed by a barrier request, and the future
+ * completes with the barrier reply. Messages are written asynchronously, so
+ * a batch that never reaches the switch is detected from the reply: the
+ * future fails with a SwitchDisconnectedException if the switch is not
+ * connected or disconnects before replying. A switch reports a failed
+ * message with an error of its own, which does not fail the future. With OpenFlow 1.4 or
+ * later, the batch can be sent as an atomic bundle instead: the switch
+ * applies all of its messages or none, and the future fails with an
+ * OFErrorMsgException if the bundle could not be committed.
+ */
+public class OFMessageBatch {
+    private static final Set<OFBundleFlags> BUNDLE_FLAGS = EnumSet.of(OFBundleFlags.ATOMIC, OFBundleFlags.ORDERED);
+    private static final AtomicInteger bundleIdGenerator = new AtomicInteger();
+
+    private OFMessageBatch() {}
+
+    /**
+     * Write a batch of messages to a switch.
+     * @param sw
+     * @param msgs
+     * @param useBundle send the messages in a bundle if the switch supports
+     * OpenFlow 1.4 or later; otherwise, follow them with a barrier
+     * @return the barrier or bundle commit reply, once the switch processed the batch
+     */
+    public static ListenableFuture<OFMessage> write(IOFSwitch sw, List<? extends OFMessage> msgs, boolean useBundle) {
+        if (useBundle && sw.getOFFactory().getVersion().compareTo(OFVersion.OF_14) >= 0) {
+            return writeBundle(sw, msgs);
+        }
+        return writeWithBarrier(sw, msgs);
+    }
+
+    /**
+     * Write a batch of messages followed by a barrier request.
+     * @param sw
+     * @param msgs
+     * @return the barrier reply
+     */
+    @SuppressWarnings("unchecked")
+    public static ListenableFuture<OFMessage> writeWithBarrier(IOFSwitch sw, List<? extends OFMessage> msgs) {
+        if (!sw.isConnected()) {
+            return Futures.immediateFailedFuture(new SwitchDisconnectedException(sw.getId()));
+        }
+        sw.write(new ArrayList<OFMessage>(msgs));
+        /* Written after the batch on the same connection, so it fails if any of the batch was lost */
+        return (ListenableFuture<OFMessage>) (ListenableFuture<?>)
+                sw.writeRequest(sw.getOFFactory().buildBarrierRequest().build());
+    }
+
+    /**
+     * Write a batch of messages in an atomic, ordered bundle. The open, add
+     * and commit messages are written back to back, without waiting for the
+     * open reply. Messages without an xid are given one, so that an error
+     * for a message in the bundle can be told apart from the others. The
+     * switch must support OpenFlow 1.4 or later.
+     * @param sw
+     * @param msgs
+     * @return the bundle commit reply
+     */
+    public static ListenableFuture<OFMessage> writeBundle(IOFSwitch sw, List<? extends OFMessage> msgs) {
+        if (!sw.isConnected()) {
+            return Futures.immediateFailedFuture(new SwitchDisconnectedException(sw.getId()));
+        }
+        OFFactory factory = sw.getOFFactory();
+        BundleId id = BundleId.of(bundleIdGenerator.incrementAndGet());
+
+        List<OFMessage> adds = new ArrayList<OFMessage>(msgs.size());
+        for (OFMessage m : msgs) {
+            if (m.getXid() <= 0) {
+                m = m.createBuilder().setXid(factory.nextXid()).build();
+            }
+            /* The bundle add must carry the xid of the message it contains */
+            adds.add(factory.buildBundleAddMsg()
+                    .setXid(m.getXid())
+                    .setBundleId(id)
+                    .setFlags(BUNDLE_FLAGS)
+                    .setData(m)
+                    .build());
+        }
+
+        ListenableFuture<OFBundleCtrlMsg> opened = sw.writeRequest(buildBundleCtrl(factory, id, OFBundleCtrlType.OPEN_REQUEST));
+        sw.write(adds);
+        ListenableFuture<OFBundleCtrlMsg> committed = sw.writeRequest(buildBundleCtrl(factory, id, OFBundleCtrlType.COMMIT_REQUEST));
+
+        /* Fails if either the open or the commit fails, including on disconnect */
+        @SuppressWarnings("unchecked")
+        ListenableFuture<List<OFBundleCtrlMsg>> both = Futures.allAsList(opened, committed);
+        return Futures.transform(both, new Function<List<OFBundleCtrlMsg>, OFMessage>() {
+            @Override
+            public OFMessage apply(List<OFBundleCtrlMsg> replies) {
+                return replies.get(1);
+            }
+        });
+    }
+
+    private static OFBundleCtrlMsg buildBundleCtrl(OFFactory factory, BundleId id, OFBundleCtrlType type) {
+        return factory.buildBundleCtrlMsg()
+                .setBundleId(id)
+                .setBundleCtrlType(type)
+                .setFlags(BUNDLE_FLAGS)
+                .build();
+    }
+}
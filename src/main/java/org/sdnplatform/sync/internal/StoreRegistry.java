@@ -1,9 +1,11 @@
 package org.sdnplatform.sync.internal;
 
+import java.io.File;
 import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -17,6 +19,7 @@ import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.InMemoryStorageEngine;
 import org.sdnplatform.sync.internal.store.JavaDBStorageEngine;
+import org.sdnplatform.sync.internal.store.LogStorageEngine;
 import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.slf4j.Logger;
@@ -46,6 +49,38 @@ public class StoreRegistry {
      */
     private ConnectionPoolDataSource persistentDataSource; 
 
+    /**
+     * Interval in milliseconds between group commits of persistent stores,
+     * or 0 to commit each write as it is made
+     */
+    private int groupCommitInterval = 0;
+
+    /**
+     * The storage engine used for persistent stores
+     */
+    private PersistenceBackend persistenceBackend = PersistenceBackend.JAVADB;
+
+    /**
+     * Whether JavaDB stores write values in the compact encoding
+     */
+    private boolean compactValueEncoding = false;
+
+    /**
+     * The storage engines available for persistent stores
+     */
+    public enum PersistenceBackend {
+        /**
+         * Keep the stores in tables of a Java DB database, in the SyncDB
+         * directory under the database path
+         */
+        JAVADB,
+        /**
+         * Keep each store in an append-only log, in a directory named for
+         * the store under the SyncLog directory under the database path
+         */
+        LOG
+    }
+
     /**
      * The storage engines that contain the locally-stored data
      */
@@ -58,11 +93,19 @@ public class StoreRegistry {
     private InMemoryStorageEngine<HintKey,byte[]> hints;
     
     /**
-     * A queue containing pending hints.  
+     * A queue containing pending hints, in the order they were first
+     * queued.  A key is only in the queue once; later writes to it are
+     * merged into the hint store.
      */
-    private ArrayDeque<HintKey> hintQueue = new ArrayDeque<HintKey>();
+    private ArrayDeque<QueuedHint> hintQueue = new ArrayDeque<QueuedHint>();
     private Lock hintLock = new ReentrantLock();
     private Condition hintsAvailable = hintLock.newCondition();
+
+    /**
+     * The fraction of the hint queue drained at once, so that a backlog is
+     * shared among the hint workers
+     */
+    private static final int HINT_QUEUE_SHARE = 2;
     
     /**
      * Construct a new {@link StoreRegistry}
@@ -79,6 +122,34 @@ public class StoreRegistry {
     // public methods
     // **************
 
+    /**
+     * Set the group commit interval for persistent stores registered after
+     * this call
+     * @param groupCommitInterval the interval in milliseconds, or 0 to
+     * commit each write as it is made
+     */
+    public void setGroupCommitInterval(int groupCommitInterval) {
+        this.groupCommitInterval = groupCommitInterval;
+    }
+
+    /**
+     * Set the storage engine for persistent stores registered after this
+     * call
+     * @param persistenceBackend the storage engine
+     */
+    public void setPersistenceBackend(PersistenceBackend persistenceBackend) {
+        this.persistenceBackend = persistenceBackend;
+    }
+
+    /**
+     * Set whether JavaDB stores registered after this call write values in
+     * the compact encoding, which earlier releases cannot read
+     * @param compactValueEncoding true to write the compact encoding
+     */
+    public void setCompactValueEncoding(boolean compactValueEncoding) {
+        this.compactValueEncoding = compactValueEncoding;
+    }
+
     /**
      * Get the store associated with the given name, or null if there is no
      * such store
@@ -108,10 +179,19 @@ public class StoreRegistry {
         }
                 
         IStorageEngine<ByteArray, byte[]> dstore;
-        if (persistent) {
+        if (persistent && persistenceBackend == PersistenceBackend.LOG) {
+            File logPath = (dbPath == null) ? new File("SyncLog")
+                                            : new File(dbPath, "SyncLog");
+            dstore = new LogStorageEngine(storeName,
+                                          new File(logPath, storeName));
+        } else if (persistent) {
             if (persistentDataSource == null)
                 persistentDataSource = JavaDBStorageEngine.getDataSource(dbPath, false);
-            dstore = new JavaDBStorageEngine(storeName, persistentDataSource);
+            JavaDBStorageEngine jstore =
+                    new JavaDBStorageEngine(storeName, persistentDataSource,
+                                            groupCommitInterval);
+            jstore.setCompactEncoding(compactValueEncoding);
+            dstore = jstore;
         } else {
             dstore = new InMemoryStorageEngine<ByteArray, byte[]>(storeName);
         }
@@ -145,7 +225,7 @@ public class StoreRegistry {
                 boolean needed = !hints.containsKey(hk);
                 needed &= hints.doput(hk, value);
                 if (needed) {
-                    hintQueue.add(hk);
+                    hintQueue.add(new QueuedHint(hk, System.nanoTime()));
                     hintsAvailable.signal();
                 }
             } finally {
@@ -157,41 +237,88 @@ public class StoreRegistry {
     }
 
     /**
-     * Drain up to the given number of hints to the provided collection.
-     * This method will block until at least one hint is available
+     * Drain a batch of hints to the provided collection.  This method will
+     * block until at least one hint has been queued for the coalescing
+     * window.  Writes to a key while its hint is queued replace the older
+     * versions in the hint, so the longer the window the fewer versions of
+     * frequently-written keys are sent.  The batch is a share of the queue
+     * between the given minimum and maximum size, so a backed-up queue is
+     * drained in larger messages.
      * @param c the collection to which the hints should be copied
+     * @param minElements the batch size when the queue is short
      * @param maxElements the maximum number of hints to drain
+     * @param window the time in milliseconds a hint is held before it is
+     * drained
      * @throws InterruptedException
      */
-    public void takeHints(Collection<Hint> c, int maxElements) 
+    public void takeHints(Collection<Hint> c, int minElements,
+                          int maxElements, long window)
             throws InterruptedException {
-        int count = 0;
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+        hintLock.lock();
         try {
-            while (count == 0) {
-                hintLock.lock();
+            while (true) {
                 while (hintQueue.isEmpty()) {
                     hintsAvailable.await();
                 }
-                while (count < maxElements && !hintQueue.isEmpty()) {
-                    HintKey hintKey = hintQueue.pollFirst();
-                    if (hintKey != null) {
-                        List<Versioned<byte[]>> values = hints.remove(hintKey);
-                        if (values == null) {
-                            continue;
-                        }
-                        c.add(new Hint(hintKey, values));
-                        count += 1;
+                long wait = hintQueue.peekFirst().queued + windowNanos -
+                        System.nanoTime();
+                if (wait > 0) {
+                    hintsAvailable.awaitNanos(wait);
+                    continue;
+                }
+
+                int batch = Math.max(minElements,
+                                     Math.min(maxElements,
+                                              hintQueue.size() / HINT_QUEUE_SHARE));
+                long due = System.nanoTime() - windowNanos;
+                int count = 0;
+                while (count < batch && !hintQueue.isEmpty() &&
+                       hintQueue.peekFirst().queued - due <= 0) {
+                    HintKey hintKey = hintQueue.pollFirst().hintKey;
+                    List<Versioned<byte[]>> values = hints.remove(hintKey);
+                    if (values == null) {
+                        continue;
                     }
+                    c.add(new Hint(hintKey, values));
+                    count += 1;
                 }
+                if (count > 0) return;
             }
         } finally {
             hintLock.unlock();
         }
     }
 
-    public void shutdown() {
+    /**
+     * Drop the undelivered hints and close every registered store, so that
+     * persistent stores write out what they still buffer
+     */
+    public synchronized void shutdown() {
         hintQueue.clear();
         hints.close();
+        for (SynchronizingStorageEngine store : localStores.values()) {
+            try {
+                store.close();
+            } catch (SyncException e) {
+                logger.error("Failed to close store " + store.getName(), e);
+            }
+        }
+        localStores.clear();
+    }
+
+    /**
+     * A key in the hint queue and the time it was queued
+     */
+    private static class QueuedHint {
+        private final HintKey hintKey;
+        private final long queued;
+
+        public QueuedHint(HintKey hintKey, long queued) {
+            super();
+            this.hintKey = hintKey;
+            this.queued = queued;
+        }
     }
 
     /**
@@ -1,19 +1,25 @@
 package org.sdnplatform.sync.internal;
 
+import io.netty.channel.epoll.EpollMode;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -26,6 +32,7 @@ import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.util.NettyTransport;
 
 import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.ISyncService;
@@ -36,6 +43,7 @@ import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.error.SyncRuntimeException;
 import org.sdnplatform.sync.error.UnknownStoreException;
 import org.sdnplatform.sync.internal.StoreRegistry.Hint;
+import org.sdnplatform.sync.internal.StoreRegistry.PersistenceBackend;
 import org.sdnplatform.sync.internal.config.ClusterConfig;
 import org.sdnplatform.sync.internal.config.DelegatingCCProvider;
 import org.sdnplatform.sync.internal.config.FallbackCCProvider;
@@ -50,11 +58,14 @@ import org.sdnplatform.sync.internal.rpc.TProtocolUtil;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.IStore;
 import org.sdnplatform.sync.internal.store.MappingStoreListener;
+import org.sdnplatform.sync.internal.store.StoreDigest;
 import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.version.VectorClock;
+import org.sdnplatform.sync.internal.version.VersionedCodec;
 import org.sdnplatform.sync.thrift.KeyedValues;
 import org.sdnplatform.sync.thrift.KeyedVersions;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
 import org.sdnplatform.sync.thrift.SyncMessage;
 import org.sdnplatform.sync.thrift.SyncOfferMessage;
 import org.sdnplatform.sync.thrift.SyncValueMessage;
@@ -133,6 +144,42 @@ public class SyncManager extends AbstractSyncManager {
 	 */
 	private ExecutorService hintThreadPool;
 
+	/**
+	 * The number of hints a {@link HintWorker} sends at once when the hint
+	 * queue is short.  As the queue grows the batches grow with it, up to
+	 * {@link #MAX_HINT_BATCH}.
+	 */
+	private static final int MIN_HINT_BATCH = 50;
+	private static final int MAX_HINT_BATCH = 1000;
+
+	/**
+	 * The estimated size in bytes above which the values for a store are
+	 * split across several messages.  This is well below the maximum frame
+	 * size of the RPC channel.
+	 */
+	private static final int MAX_MESSAGE_BYTES = 256 * 1024;
+
+	/**
+	 * The number of messages that may wait to be written to a node.  The
+	 * hint workers never wait for a slow node: once the queue for a node is
+	 * full further messages to it are dropped, and the values are repaired
+	 * by antientropy instead.
+	 */
+	protected static final int PEER_QUEUE_CAPACITY = 100;
+
+	/**
+	 * The time in milliseconds that a hint is held before it is sent, so
+	 * that repeated writes to the same key are sent as a single value
+	 */
+	private long hintCoalesceWindow = 0;
+
+	/**
+	 * The queues of messages waiting to be written to each node.  A queue
+	 * is removed when its node leaves the cluster configuration.
+	 */
+	protected final ConcurrentHashMap<Short, PeerQueue> peerQueues =
+			new ConcurrentHashMap<Short, PeerQueue>();
+
 	/**
 	 * Random number generator
 	 */
@@ -150,6 +197,36 @@ public class SyncManager extends AbstractSyncManager {
 	 */
 	private boolean persistenceEnabled = true;
 
+	/**
+	 * Whether antientropy first compares store digests with the remote
+	 * node and only offers the keys in the parts of the stores that
+	 * differ, rather than offering every key.  All nodes in the cluster
+	 * must support digests for this to be enabled.
+	 */
+	private boolean digestAntientropy = false;
+
+	/**
+	 * Stores whose digest is queued to be brought up to date on the
+	 * thread pool
+	 */
+	private final Set<String> digestRefreshes =
+			Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Whether sync values sent to other nodes and written to JavaDB stores
+	 * use the compact encoding of {@link VersionedCodec} rather than thrift
+	 * structs and Smile.  Every node reads both, but this should only be
+	 * enabled once all nodes in the cluster have been upgraded to a release
+	 * that does, and no longer need to be rolled back.
+	 */
+	private boolean compactValueEncoding = false;
+
+	/**
+	 * The Netty transport and epoll trigger mode for the RPC service
+	 */
+	private NettyTransport transport = NettyTransport.NIO;
+	private EpollMode epollMode = null;
+
 	private static final String PACKAGE =
 			ISyncService.class.getPackage().getName();
 
@@ -158,6 +235,7 @@ public class SyncManager extends AbstractSyncManager {
 	 */
 	public static IDebugCounter counterHints;
 	public static IDebugCounter counterSentValues;
+	public static IDebugCounter counterDroppedValues;
 	public static IDebugCounter counterReceivedValues;
 	public static IDebugCounter counterPuts;
 	public static IDebugCounter counterGets;
@@ -198,6 +276,31 @@ public class SyncManager extends AbstractSyncManager {
 		return clusterConfig;
 	}
 
+	/**
+	 * Get the Netty transport to use for RPC connections
+	 * @return the transport; NIO unless native epoll is configured and available
+	 */
+	public NettyTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Get the epoll trigger mode for RPC connections
+	 * @return the mode, or null to use Netty's default
+	 */
+	public EpollMode getEpollMode() {
+		return epollMode;
+	}
+
+	/**
+	 * Whether sync values sent to other nodes use the compact encoding
+	 * @return true if values are sent in the encoding of
+	 * {@link VersionedCodec}
+	 */
+	public boolean isCompactValueEncoding() {
+		return compactValueEncoding;
+	}
+
 	/**
 	 * Perform periodic scheduled cleanup.  Note that this will be called
 	 * automatically and you shouldn't generally call it directly except for
@@ -228,6 +331,17 @@ public class SyncManager extends AbstractSyncManager {
 				continue;
 			}
 
+			if (digestAntientropy) {
+				try {
+					sendSyncDigest(node.getNodeId(), store);
+				} catch (Exception e) {
+					logger.error("[{}->{}] Failed to send digest for store {}",
+							new Object[]{getLocalNodeId(), node.getNodeId(),
+							store.getName(), e});
+				}
+				continue;
+			}
+
 			IClosableIterator<Entry<ByteArray,
 			List<Versioned<byte[]>>>> entries =
 			store.entries();
@@ -336,6 +450,75 @@ public class SyncManager extends AbstractSyncManager {
 		return false;
 	}
 
+	/**
+	 * Compare the hashes of a part of a store's digest sent by a remote node
+	 * with the local digest, and continue the exchange for the nodes of the
+	 * digest that differ.  Each side in turn sends its hashes of the
+	 * children of the differing nodes.  When the leaves that differ are
+	 * found, the node that started the exchange offers the keys in them.
+	 * @param nodeId the remote node
+	 * @param message the digest message
+	 * @return the digest message to reply with, or null if there is none
+	 * @throws SyncException
+	 */
+	public SyncMessage handleSyncDigest(Short nodeId,
+			SyncDigestMessage message)
+					throws SyncException {
+		int level = message.getLevel();
+		if (level < 0 || level > StoreDigest.LEAF_LEVEL ||
+				message.getNodesSize() != message.getHashesSize()) {
+			throw new SyncException("Invalid digest message for level " +
+					level);
+		}
+		if (!message.isSetNodes()) return null;
+
+		// A store we don't have is treated as empty.  This runs on the I/O
+		// thread, so only the digest that is already built is read.
+		SynchronizingStorageEngine store =
+				storeRegistry.get(message.getStore().getStoreName());
+		StoreDigest digest = null;
+		if (store != null) {
+			digest = store.getDigestSnapshot();
+			if (!store.isDigestCurrent())
+				queueDigestRefresh(store);
+			// Not built yet; the next antientropy round compares again
+			if (digest == null) return null;
+		}
+
+		List<Integer> differing = new ArrayList<Integer>();
+		for (int i = 0; i < message.getNodesSize(); i++) {
+			int n = message.getNodes().get(i);
+			long local = (digest == null) ? 0 : digest.getHash(level, n);
+			if (local != message.getHashes().get(i))
+				differing.add(n);
+		}
+		if (differing.isEmpty()) return null;
+
+		if (level == StoreDigest.LEAF_LEVEL) {
+			if (!message.isReply()) {
+				// Send back our leaves so the other node offers its keys
+				return getDigestMessage(message, digest, level, differing);
+			}
+			if (store != null && nodeId != null) {
+				BitSet leaves = new BitSet(StoreDigest.LEAVES);
+				for (Integer n : differing) {
+					leaves.set(n);
+				}
+				queueSyncOffer(nodeId, store, leaves);
+			}
+			return null;
+		}
+
+		List<Integer> children =
+				new ArrayList<Integer>(differing.size() * StoreDigest.FANOUT);
+		for (Integer n : differing) {
+			for (int c = 0; c < StoreDigest.FANOUT; c++) {
+				children.add(StoreDigest.getChild(n, c));
+			}
+		}
+		return getDigestMessage(message, digest, level + 1, children);
+	}
+
 	/**
 	 * Get access to the raw storage engine.  This is useful for some
 	 * on-the-wire communication
@@ -444,6 +627,7 @@ public class SyncManager extends AbstractSyncManager {
 		if (hintThreadPool != null) {
 			hintThreadPool.shutdown();
 		}
+		peerQueues.clear();
 		if (storeRegistry != null) {
 			storeRegistry.shutdown();
 		}
@@ -476,6 +660,14 @@ public class SyncManager extends AbstractSyncManager {
 				persistenceEnabled =
 						Boolean.parseBoolean(config.get("persistenceEnabled"));
 			}
+			if (config.containsKey("digestAntientropy")) {
+				digestAntientropy =
+						Boolean.parseBoolean(config.get("digestAntientropy"));
+			}
+			if (config.containsKey("compactValueEncoding")) {
+				compactValueEncoding =
+						Boolean.parseBoolean(config.get("compactValueEncoding"));
+			}
 			if (config.containsKey("configProviders")) {
 				configProviders = config.get("configProviders").split(",");
 			}
@@ -493,6 +685,57 @@ public class SyncManager extends AbstractSyncManager {
 					"providers " + Arrays.toString(configProviders), e);
 		}
 
+		try {
+			transport = NettyTransport.fromConfig(config.get("useNativeTransport"));
+			epollMode = NettyTransport.parseEpollMode(config.get("epollMode"));
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException(e.getMessage(), e);
+		}
+
+		storeRegistry.setCompactValueEncoding(compactValueEncoding);
+
+		if (config.containsKey("persistenceBackend")) {
+			String backend = config.get("persistenceBackend");
+			try {
+				storeRegistry.setPersistenceBackend(
+						PersistenceBackend.valueOf(backend.trim().toUpperCase()));
+			} catch (IllegalArgumentException e) {
+				throw new FloodlightModuleException("Invalid persistence " +
+						"backend " + backend + "; must be one of " +
+						Arrays.toString(PersistenceBackend.values()), e);
+			}
+		}
+
+		// Persistent stores commit every write unless a group commit
+		// interval in milliseconds is given; writes made within the
+		// interval are lost if the controller dies
+		if (config.containsKey("groupCommitInterval")) {
+			try {
+				storeRegistry.setGroupCommitInterval(
+						Integer.parseInt(config.get("groupCommitInterval")));
+			} catch (NumberFormatException e) {
+				throw new FloodlightModuleException("Invalid group commit " +
+						"interval " + config.get("groupCommitInterval"), e);
+			}
+		}
+
+		// Hints are held for the coalescing window in milliseconds before
+		// they are sent, so only the newest versions of a key written
+		// several times within the window are sent
+		if (config.containsKey("hintCoalesceWindow")) {
+			try {
+				hintCoalesceWindow =
+						Long.parseLong(config.get("hintCoalesceWindow"));
+			} catch (NumberFormatException e) {
+				throw new FloodlightModuleException("Invalid hint coalesce " +
+						"window " + config.get("hintCoalesceWindow"), e);
+			}
+			if (hintCoalesceWindow < 0) {
+				throw new FloodlightModuleException("Invalid hint coalesce " +
+						"window " + hintCoalesceWindow);
+			}
+		}
+
 		String manualStoreString = config.get("manualStores");
 		if (manualStoreString != null) {
 			List<String> manualStores = null;
@@ -519,6 +762,8 @@ public class SyncManager extends AbstractSyncManager {
 					"Queued sync events processed");
 			counterSentValues = debugCounter.registerCounter(PACKAGE, "sent-values",
 					"Values synced to remote node");
+			counterDroppedValues = debugCounter.registerCounter(PACKAGE, "dropped-values",
+					"Values not synced because the queue for the remote node was full");
 			counterReceivedValues = debugCounter.registerCounter(PACKAGE, "received-values",
 					"Values received from remote node");
 			counterPuts = debugCounter.registerCounter(PACKAGE, "puts",
@@ -544,6 +789,20 @@ public class SyncManager extends AbstractSyncManager {
 
 		timer = new HashedWheelTimer();
 		rpcService = new RPCService(this, debugCounter, timer);
+		// Values queued for a node that disconnects would only be written
+		// to a dead channel; antientropy resends them on reconnect
+		rpcService.addRPCListener(new IRPCListener() {
+			@Override
+			public void disconnectedNode(Short nodeId) {
+				PeerQueue queue = peerQueues.get(nodeId);
+				if (queue != null)
+					queue.clear();
+			}
+
+			@Override
+			public void connectedNode(Short nodeId) {
+			}
+		});
 
 		cleanupTask = new SingletonTask(threadPool.getScheduledExecutor(),
 				new CleanupTask());
@@ -632,6 +891,7 @@ public class SyncManager extends AbstractSyncManager {
 					logger.info("[{}->{}] Disconnecting deconfigured node",
 							getLocalNodeId(), n.getNodeId());
 					rpcService.disconnectNode(n.getNodeId());
+					removePeerQueue(n.getNodeId());
 				}
 			}
 		} catch (Exception e) {
@@ -664,6 +924,143 @@ public class SyncManager extends AbstractSyncManager {
 		rpcService.writeToNode(nodeId, bsm);
 	}
 
+	/**
+	 * Start a digest exchange for the store with the given node by sending
+	 * the root hash of the store's digest
+	 * @param nodeId the remote node
+	 * @param store the store
+	 * @throws SyncException
+	 * @throws InterruptedException
+	 */
+	private void sendSyncDigest(short nodeId, SynchronizingStorageEngine store)
+			throws SyncException, InterruptedException {
+		StoreDigest digest = store.getDigest();
+		SyncMessage bsm =
+				TProtocolUtil.getTSyncDigestMessage(
+						TProtocolUtil.getTStore(store.getName(),
+								store.getScope(),
+								store.isPersistent()), 0, false);
+		SyncDigestMessage sdm = bsm.getSyncDigest();
+		sdm.addToNodes(0);
+		sdm.addToHashes(digest.getHash(0, 0));
+		sdm.getHeader().setTransactionId(rpcService.getTransactionId());
+		rpcService.writeToNode(nodeId, bsm);
+	}
+
+	/**
+	 * Build or update the digest of a store on the thread pool, so the
+	 * I/O thread can read it from {@link
+	 * SynchronizingStorageEngine#getDigestSnapshot()}
+	 * @param store the store
+	 */
+	private void queueDigestRefresh(final SynchronizingStorageEngine store) {
+		if (!digestRefreshes.add(store.getName())) return;
+		threadPool.getScheduledExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				digestRefreshes.remove(store.getName());
+				try {
+					store.getDigest();
+				} catch (Exception e) {
+					logger.error("[{}] Failed to update digest for store {}",
+							new Object[]{getLocalNodeId(), store.getName(), e});
+				}
+			}
+		});
+	}
+
+	/**
+	 * Build a reply to a digest message with the local hashes of the given
+	 * nodes of the digest
+	 * @param message the message to reply to
+	 * @param digest the local digest, or null if the store is unknown
+	 * @param level the level of the nodes
+	 * @param nodes the nodes
+	 * @return the {@link SyncMessage}
+	 */
+	private SyncMessage getDigestMessage(SyncDigestMessage message,
+			StoreDigest digest, int level, List<Integer> nodes) {
+		SyncMessage bsm =
+				TProtocolUtil.getTSyncDigestMessage(message.getStore(), level,
+						!message.isReply());
+		SyncDigestMessage sdm = bsm.getSyncDigest();
+		List<Long> hashes = new ArrayList<Long>(nodes.size());
+		for (Integer n : nodes) {
+			hashes.add((digest == null) ? 0 : digest.getHash(level, n));
+		}
+		sdm.setNodes(nodes);
+		sdm.setHashes(hashes);
+		sdm.getHeader().setTransactionId(rpcService.getTransactionId());
+		return bsm;
+	}
+
+	/**
+	 * Offer the keys of a store that fall in the given leaves of its digest
+	 * to a node.  This runs on the thread pool, since sending offers may
+	 * block on the message window.
+	 * @param nodeId the remote node
+	 * @param store the store
+	 * @param leaves the leaves of the digest
+	 */
+	private void queueSyncOffer(final short nodeId,
+			final SynchronizingStorageEngine store,
+			final BitSet leaves) {
+		threadPool.getScheduledExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sendSyncOffers(nodeId, store, leaves);
+				} catch (Exception e) {
+					logger.error("[{}->{}] Failed to offer keys for store {}",
+							new Object[]{getLocalNodeId(), nodeId,
+							store.getName(), e});
+				}
+			}
+		});
+	}
+
+	private void sendSyncOffers(short nodeId, SynchronizingStorageEngine store,
+			BitSet leaves)
+					throws SyncException, InterruptedException {
+		if (logger.isDebugEnabled()) {
+			logger.debug("[{}->{}] Offering keys in {} differing leaves " +
+					"of store {}",
+					new Object[]{getLocalNodeId(), nodeId,
+					leaves.cardinality(), store.getName()});
+		}
+		IClosableIterator<ByteArray> keys = store.keys();
+		try {
+			SyncMessage bsm =
+					TProtocolUtil.getTSyncOfferMessage(store.getName(),
+							store.getScope(),
+							store.isPersistent());
+			int count = 0;
+			while (keys.hasNext()) {
+				if (!rpcService.isConnected(nodeId)) return;
+
+				ByteArray key = keys.next();
+				if (!leaves.get(StoreDigest.getLeaf(key))) continue;
+				List<Versioned<byte[]>> values = store.get(key);
+				if (values == null || values.isEmpty()) continue;
+
+				bsm.getSyncOffer().addToVersions(
+						TProtocolUtil.getTKeyedVersions(key, values));
+				count += 1;
+				if (count >= 50) {
+					sendSyncOffer(nodeId, bsm);
+					// realloc sync message - it is still queued up by netty!
+					bsm = TProtocolUtil.getTSyncOfferMessage(store.getName(),
+							store.getScope(),
+							store.isPersistent());
+					count = 0;
+				}
+			}
+			sendSyncOffer(nodeId, bsm);
+		} finally {
+			keys.close();
+		}
+	}
+
 	/**
 	 * Periodically perform cleanup
 	 * @author readams
@@ -728,14 +1125,18 @@ public class SyncManager extends AbstractSyncManager {
 	}
 
 	/**
-	 * Worker thread that will drain the sync item queue and write the
-	 * appropriate messages to the node I/O channels
+	 * Worker thread that will drain the sync item queue and queue the
+	 * appropriate messages for each node
 	 * @author readams
 	 */
 	protected class HintWorker implements Runnable {
-		ArrayList<Hint> tasks = new ArrayList<Hint>(50);
+		ArrayList<Hint> tasks = new ArrayList<Hint>(MIN_HINT_BATCH);
 		protected Map<String, SyncMessage> messages =
 				new LinkedHashMap<String, SyncMessage>();
+		protected Map<String, Integer> messageBytes =
+				new HashMap<String, Integer>();
+		protected List<SyncMessage> fullMessages =
+				new ArrayList<SyncMessage>();
 
 		@Override
 		public void run() {
@@ -743,19 +1144,23 @@ public class SyncManager extends AbstractSyncManager {
 				try {
 					// Batch up sync tasks so we use fewer, larger messages
 					// XXX - todo - handle hints targeted to specific nodes
-					storeRegistry.takeHints(tasks, 50);
+					storeRegistry.takeHints(tasks, MIN_HINT_BATCH,
+							MAX_HINT_BATCH, hintCoalesceWindow);
 					for (Hint task : tasks) {
 						counterHints.increment();
 						SynchronizingStorageEngine store =
 								storeRegistry.get(task.getHintKey().
 										getStoreName());
-						SyncMessage bsm = getMessage(store);
+						SyncMessage bsm =
+								getMessage(store, estimateSize(task));
 						KeyedValues kv =
 								TProtocolUtil.
 								getTKeyedValues(task.getHintKey().getKey(),
-										task.getValues());
+										task.getValues(),
+										compactValueEncoding);
 						bsm.getSyncValue().addToValues(kv);
 					}
+					fullMessages.addAll(messages.values());
 
 					Iterable<Node> nodes = getClusterConfig().getNodes();
 					short localDomainId =
@@ -765,7 +1170,8 @@ public class SyncManager extends AbstractSyncManager {
 					for (Node n : nodes) {
 						if (localNodeId == n.getNodeId())
 							continue;
-						for (SyncMessage bsm : messages.values()) {
+						PeerQueue queue = getPeerQueue(n.getNodeId());
+						for (SyncMessage bsm : fullMessages) {
 							SyncValueMessage svm = bsm.getSyncValue();
 							if (svm.getStore().getScope().
 									equals(org.sdnplatform.sync.thrift.
@@ -775,9 +1181,11 @@ public class SyncManager extends AbstractSyncManager {
 								continue;
 							}
 
-							svm.getHeader().setTransactionId(rpcService.getTransactionId());
-							counterSentValues.add(bsm.getSyncValue().getValuesSize());
-							rpcService.writeToNode(n.getNodeId(), bsm);
+							if (queue == null) {
+								counterDroppedValues.add(svm.getValuesSize());
+							} else {
+								queue.offerOrDrop(bsm);
+							}
 						}
 					}
 					tasks.clear();
@@ -794,25 +1202,150 @@ public class SyncManager extends AbstractSyncManager {
 		 */
 		private void clearMessages() {
 			messages.clear();
+			messageBytes.clear();
+			fullMessages.clear();
 		}
 
 		/**
-		 * Allocate a partially-initialized {@link SyncMessage} object for
-		 * the given store
+		 * Get a partially-initialized {@link SyncMessage} object for the
+		 * given store with room for a value of the given size
 		 * @param store the store
+		 * @param size the estimated size of the value
 		 * @return the {@link SyncMessage} object
 		 */
-		private SyncMessage getMessage(SynchronizingStorageEngine store) {
+		protected SyncMessage getMessage(SynchronizingStorageEngine store,
+										 int size) {
 			String storeName = store.getName();
 			SyncMessage bsm = messages.get(storeName);
+			Integer bytes = messageBytes.get(storeName);
+			if (bsm != null && bytes + size > MAX_MESSAGE_BYTES) {
+				fullMessages.add(bsm);
+				bsm = null;
+			}
 			if (bsm == null) {
 				bsm = TProtocolUtil.getTSyncValueMessage(storeName,
 						store.getScope(),
 						store.isPersistent());
 				messages.put(storeName, bsm);
+				bytes = 0;
 			}
+			messageBytes.put(storeName, bytes + size);
 			return bsm;
 		}
+
+		/**
+		 * Estimate the number of bytes a hint will take in a message
+		 * @param hint the hint
+		 * @return the estimated size
+		 */
+		protected int estimateSize(Hint hint) {
+			int size = hint.getHintKey().getKey().length() + 8;
+			for (Versioned<byte[]> v : hint.getValues()) {
+				if (v.getValue() != null)
+					size += v.getValue().length;
+				size += 16 + 12 * ((VectorClock) v.getVersion()).
+						getEntries().size();
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Get the queue of messages for a node, starting its writer if needed
+	 * @param nodeId the node
+	 * @return the queue, or null if the sync manager is shutting down
+	 */
+	private PeerQueue getPeerQueue(short nodeId) {
+		PeerQueue queue = peerQueues.get(nodeId);
+		if (queue == null) {
+			ExecutorService pool = hintThreadPool;
+			if (pool == null) return null;
+			PeerQueue nqueue = new PeerQueue(nodeId);
+			queue = peerQueues.putIfAbsent(nodeId, nqueue);
+			if (queue == null) {
+				queue = nqueue;
+				pool.execute(queue);
+			}
+		}
+		return queue;
+	}
+
+	/**
+	 * Remove the queue of a node that left the cluster, dropping its
+	 * messages.  Its writer stops once it sees the queue is gone.
+	 * @param nodeId the node
+	 */
+	protected void removePeerQueue(short nodeId) {
+		PeerQueue queue = peerQueues.remove(nodeId);
+		if (queue != null)
+			queue.clear();
+	}
+
+	/**
+	 * Writes the messages queued for a single node, so that a node that is
+	 * slow to accept messages does not hold up the writes to the others.
+	 * The queue is bounded and drops rather than blocks: a message offered
+	 * when it is full is dropped and counted, and so are the messages still
+	 * queued when the node disconnects.  Antientropy repairs the values
+	 * once the node catches up or reconnects.  The same message may be
+	 * queued for several nodes, so each write is a copy with its own
+	 * transaction ID.
+	 */
+	protected class PeerQueue implements Runnable {
+		private final short nodeId;
+		protected final LinkedBlockingQueue<SyncMessage> messages =
+				new LinkedBlockingQueue<SyncMessage>(PEER_QUEUE_CAPACITY);
+
+		public PeerQueue(short nodeId) {
+			super();
+			this.nodeId = nodeId;
+		}
+
+		/**
+		 * Queue a message for the node, or drop it if the queue is full
+		 * @param bsm the message
+		 * @return true if the message was queued, false if it was dropped
+		 */
+		public boolean offerOrDrop(SyncMessage bsm) {
+			if (messages.offer(bsm))
+				return true;
+			counterDroppedValues.add(bsm.getSyncValue().getValuesSize());
+			return false;
+		}
+
+		/**
+		 * Drop all the queued messages
+		 */
+		public void clear() {
+			List<SyncMessage> dropped = new ArrayList<SyncMessage>();
+			messages.drainTo(dropped);
+			for (SyncMessage bsm : dropped) {
+				counterDroppedValues.add(bsm.getSyncValue().getValuesSize());
+			}
+		}
+
+		@Override
+		public void run() {
+			while (rpcService != null && peerQueues.get(nodeId) == this) {
+				try {
+					SyncMessage bsm = messages.poll(1, TimeUnit.SECONDS);
+					if (bsm == null) continue;
+
+					SyncValueMessage svm = bsm.getSyncValue();
+					SyncMessage copy =
+							TProtocolUtil.getTSyncValueMessage(svm.getStore());
+					copy.getSyncValue().setValues(svm.getValues());
+					copy.getSyncValue().getHeader().
+						setTransactionId(rpcService.getTransactionId());
+					counterSentValues.add(svm.getValuesSize());
+					rpcService.writeToNode(nodeId, copy);
+				} catch (InterruptedException e) {
+					return;
+				} catch (Exception e) {
+					logger.error("Error occured writing to node " + nodeId, e);
+				}
+			}
+		}
 	}
 
 	
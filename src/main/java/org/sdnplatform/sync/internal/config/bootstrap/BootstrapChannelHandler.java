@@ -9,6 +9,7 @@ import org.sdnplatform.sync.error.ObsoleteVersionException;
 import org.sdnplatform.sync.internal.config.AuthScheme;
 import org.sdnplatform.sync.internal.config.SyncStoreCCProvider;
 import org.sdnplatform.sync.internal.rpc.AbstractRPCChannelHandler;
+import org.sdnplatform.sync.internal.rpc.TProtocolUtil;
 import org.sdnplatform.sync.internal.rpc.TVersionedValueIterable;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
@@ -21,7 +22,6 @@ import org.sdnplatform.sync.thrift.HelloMessage;
 import org.sdnplatform.sync.thrift.KeyedValues;
 import org.sdnplatform.sync.thrift.MessageType;
 import org.sdnplatform.sync.thrift.SyncMessage;
-import org.sdnplatform.sync.thrift.VersionedValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,8 +84,11 @@ public class BootstrapChannelHandler extends AbstractRPCChannelHandler {
                     getRawStore(SyncStoreCCProvider.SYSTEM_NODE_STORE);
 
             for (KeyedValues kv : response.getNodeStore()) {
-                Iterable<VersionedValue> tvvi = kv.getValues();
-                Iterable<Versioned<byte[]>> vs = new TVersionedValueIterable(tvvi);
+                Iterable<Versioned<byte[]>> vs;
+                if (kv.isSetEncodedValues())
+                    vs = TProtocolUtil.getVersionedList(kv);
+                else
+                    vs = new TVersionedValueIterable(kv.getValues());
                 store.writeSyncValue(new ByteArray(kv.getKey()), vs);
             }
             
@@ -13,6 +13,7 @@ import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.IVersion;
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.error.RemoteStoreException;
+import org.sdnplatform.sync.error.SerializationException;
 import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.error.SyncRuntimeException;
 import org.sdnplatform.sync.internal.rpc.TProtocolUtil;
@@ -182,8 +183,12 @@ public class RemoteStore implements IStore<ByteArray, byte[]> {
             KeyedValues kv = currentChunk.next();
             
             ByteArray k = new ByteArray(kv.getKey());
-            List<Versioned<byte[]>> v = 
-                    TProtocolUtil.getVersionedList(kv.getValues());
+            List<Versioned<byte[]>> v;
+            try {
+                v = TProtocolUtil.getVersionedList(kv);
+            } catch (SerializationException e) {
+                throw new SyncRuntimeException("Could not decode values", e);
+            }
             return new Pair<ByteArray, List<Versioned<byte[]>>>(k, v);
         }
 
@@ -242,8 +242,11 @@ public class RPCChannelHandler extends AbstractRPCChannelHandler {
 
             Scope scope = TProtocolUtil.getScope(request.getStore().getScope());
             for (KeyedValues kv : request.getValues()) {
-                Iterable<VersionedValue> tvvi = kv.getValues();
-                Iterable<Versioned<byte[]>> vs = new TVersionedValueIterable(tvvi);
+                Iterable<Versioned<byte[]>> vs;
+                if (kv.isSetEncodedValues())
+                    vs = TProtocolUtil.getVersionedList(kv);
+                else
+                    vs = new TVersionedValueIterable(kv.getValues());
                 syncManager.writeSyncValue(request.getStore().getStoreName(),
                                            scope,
                                            request.getStore().isPersist(),
@@ -337,7 +340,8 @@ public class RPCChannelHandler extends AbstractRPCChannelHandler {
                         store.get(keyArray);
                 if (values == null || values.size() == 0) continue;
                 KeyedValues kv =
-                        TProtocolUtil.getTKeyedValues(keyArray, values);
+                        TProtocolUtil.getTKeyedValues(keyArray, values,
+                                syncManager.isCompactValueEncoding());
                 svm.addToValues(kv);
             }
 
@@ -353,6 +357,29 @@ public class RPCChannelHandler extends AbstractRPCChannelHandler {
         }
     }
 
+    @Override
+    protected void handleSyncDigest(SyncDigestMessage message,
+                                    Channel channel) {
+        try {
+            SyncMessage bsm =
+                    syncManager.handleSyncDigest(getRemoteNodeId(), message);
+            if (bsm != null) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace("[{}->{}] Sending SyncDigest for level {} " +
+                                 "with {} nodes",
+                                 new Object[]{getLocalNodeIdString(),
+                                              getRemoteNodeIdString(),
+                                              bsm.getSyncDigest().getLevel(),
+                                              bsm.getSyncDigest().getNodesSize()});
+                }
+                channel.writeAndFlush(bsm);
+            }
+        } catch (Exception e) {
+            channel.writeAndFlush(getError(message.getHeader().getTransactionId(),
+                                   e, MessageType.SYNC_DIGEST));
+        }
+    }
+
     @Override
     protected void handleFullSyncRequest(FullSyncRequestMessage request,
                                          Channel channel) {
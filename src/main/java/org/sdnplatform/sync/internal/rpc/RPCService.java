@@ -9,9 +9,6 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.Timer;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
@@ -35,6 +32,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.util.NettyTransport;
 
 import org.sdnplatform.sync.internal.SyncManager;
 import org.sdnplatform.sync.internal.config.Node;
@@ -220,8 +218,10 @@ public class RPCService{
             }
         };
         
-        bossGroup = new NioEventLoopGroup(0, f2);
-        workerGroup = new NioEventLoopGroup(0, f2);
+        NettyTransport transport = syncManager.getTransport();
+        bossGroup = transport.newEventLoopGroup(0, f2);
+        workerGroup = transport.newEventLoopGroup(0, f2);
+        logger.debug("Using {} transport for internal floodlight RPC", transport);
 
         channelInitializer = new RPCChannelInitializer(syncManager, this, timer);
 
@@ -444,7 +444,7 @@ public class RPCService{
     protected void startServer(RPCChannelInitializer channelInitializer) {
         final ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group(bossGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
+        .channel(syncManager.getTransport().getServerChannelClass())
         .option(ChannelOption.SO_REUSEADDR, true)
         .option(ChannelOption.SO_KEEPALIVE, true)
         .option(ChannelOption.TCP_NODELAY, true)
@@ -452,6 +452,7 @@ public class RPCService{
         .option(ChannelOption.SO_RCVBUF, SEND_BUFFER_SIZE)
         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
         .childHandler(channelInitializer);
+        syncManager.getTransport().setTransportOptions(bootstrap, syncManager.getEpollMode());
 
         int port = syncManager.getClusterConfig().getNode().getPort();
         InetSocketAddress sa;
@@ -542,13 +543,14 @@ public class RPCService{
     protected void startClients(RPCChannelInitializer channelInitializer) {
         final Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(workerGroup)
-        .channel(NioSocketChannel.class)
+        .channel(syncManager.getTransport().getChannelClass())
         .option(ChannelOption.SO_REUSEADDR, true)
         .option(ChannelOption.SO_KEEPALIVE, true)
         .option(ChannelOption.TCP_NODELAY, true)
         .option(ChannelOption.SO_SNDBUF, SEND_BUFFER_SIZE)
         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
         .handler(channelInitializer);
+        syncManager.getTransport().setTransportOptions(bootstrap, syncManager.getEpollMode());
         clientBootstrap = bootstrap;
 
         ScheduledExecutorService ses = 
@@ -5,15 +5,18 @@ import java.util.List;
 
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.error.SerializationException;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.version.ClockEntry;
 import org.sdnplatform.sync.internal.version.VectorClock;
+import org.sdnplatform.sync.internal.version.VersionedCodec;
 import org.sdnplatform.sync.thrift.AsyncMessageHeader;
 import org.sdnplatform.sync.thrift.SyncMessage;
 import org.sdnplatform.sync.thrift.KeyedValues;
 import org.sdnplatform.sync.thrift.KeyedVersions;
 import org.sdnplatform.sync.thrift.MessageType;
 import org.sdnplatform.sync.thrift.Store;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
 import org.sdnplatform.sync.thrift.SyncOfferMessage;
 import org.sdnplatform.sync.thrift.SyncValueMessage;
 import org.sdnplatform.sync.thrift.VersionedValue;
@@ -105,6 +108,28 @@ public class TProtocolUtil {
         return kv;
     }
     
+    /**
+     * Construct a thrift {@link org.sdnplatform.sync.thrift.KeyedValues}
+     * @param key the key
+     * @param values the versioned values
+     * @param encode whether to send the values in the compact encoding of
+     * {@link VersionedCodec} rather than as thrift structs.  Only nodes
+     * that understand the encoding can read the values.
+     * @return the thrift object
+     */
+    public static KeyedValues
+            getTKeyedValues(ByteArray key,
+                            List<Versioned<byte[]>> values,
+                            boolean encode) {
+        if (!encode)
+            return getTKeyedValues(key, values);
+        KeyedValues kv = new KeyedValues();
+        kv.setKey(key.get());
+        kv.setValues(new ArrayList<VersionedValue>(0));
+        kv.setEncodedValues(VersionedCodec.encode(values));
+        return kv;
+    }
+
     /**
      * Construct a thrift {@link org.sdnplatform.sync.thrift.KeyedValues}
      * @param key the key
@@ -248,6 +273,31 @@ public class TProtocolUtil {
         return bsm;
     }
 
+    /**
+     * Get a partially-initialized {@link SyncDigestMessage} wrapped with a
+     * {@link SyncMessage}.  The nodes and hashes will not be set, and the
+     * transaction ID will not be set in the {@link AsyncMessageHeader}.
+     * @param store the {@link Store} associated with the message
+     * @param level the level of the digest the hashes are from
+     * @param reply whether the message is sent in reply to a digest from
+     * the node that started the exchange
+     * @return the {@link SyncMessage}
+     */
+    public static SyncMessage getTSyncDigestMessage(Store store,
+                                                    int level,
+                                                    boolean reply) {
+        SyncMessage bsm = new SyncMessage(MessageType.SYNC_DIGEST);
+        AsyncMessageHeader header = new AsyncMessageHeader();
+        SyncDigestMessage sdm = new SyncDigestMessage();
+        sdm.setHeader(header);
+        sdm.setStore(store);
+        sdm.setLevel(level);
+        sdm.setReply(reply);
+
+        bsm.setSyncDigest(sdm);
+        return bsm;
+    }
+
     /**
      * Convert a thrift {@link org.sdnplatform.sync.thrift.VectorClock} into
      * a {@link VectorClock}.
@@ -279,6 +329,20 @@ public class TProtocolUtil {
         return vv;
     }
 
+    /**
+     * Get the versioned values of a {@link KeyedValues}, whichever way
+     * they were sent
+     * @param kv the {@link KeyedValues}
+     * @return the list of versioned
+     * @throws SerializationException if the encoded values are invalid
+     */
+    public static List<Versioned<byte[]>> getVersionedList(KeyedValues kv)
+            throws SerializationException {
+        if (kv.isSetEncodedValues())
+            return VersionedCodec.decode(kv.getEncodedValues());
+        return getVersionedList(kv.getValues());
+    }
+
     /**
      * Convert from a list of {@link VersionedValue} to a list 
      * of {@link Versioned<byte[]>}
@@ -11,9 +11,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sql.ConnectionPoolDataSource;
 import javax.xml.bind.DatatypeConverter;
@@ -22,25 +27,29 @@ import org.apache.derby.jdbc.EmbeddedConnectionPoolDataSource40;
 import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.IVersion;
 import org.sdnplatform.sync.Versioned;
-import org.sdnplatform.sync.IVersion.Occurred;
-import org.sdnplatform.sync.error.ObsoleteVersionException;
 import org.sdnplatform.sync.error.PersistException;
 import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.error.SyncRuntimeException;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.util.EmptyClosableIterator;
 import org.sdnplatform.sync.internal.util.Pair;
+import org.sdnplatform.sync.internal.version.VersionedCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.io.ByteStreams;
 
 /**
- * Persistent storage engine that keeps its data in a JDB database
+ * Persistent storage engine that keeps its data in a JDB database.
+ *
+ * By default each write is committed to the database before it returns.
+ * With a group commit interval, writes are instead merged into an
+ * in-memory overlay of pending version lists, and a background writer
+ * commits the overlay every interval in batched transactions.  Reads see
+ * the pending writes through the overlay.  Writes made within the last
+ * interval are lost if the process dies.
  * @author readams
  */
 public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
@@ -68,13 +77,56 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
     
     private ConnectionPoolDataSource dataSource;
 
+    /**
+     * Interval in milliseconds between group commits, or 0 to commit each
+     * write as it is made
+     */
+    private final int groupCommitInterval;
+
+    /**
+     * Maximum number of keys written in one JDBC batch
+     */
+    private static final int MAX_BATCH = 500;
+
+    /**
+     * Number of pending keys at which writers flush the overlay themselves
+     * rather than wait for the background writer
+     */
+    private static final int MAX_PENDING = 10000;
+
+    /**
+     * Number of locks serializing group-committed writes to the same key
+     */
+    private static final int KEY_LOCKS = 64;
+
+    /**
+     * The merged version lists of keys whose writes have not yet been
+     * committed
+     */
+    private final ConcurrentHashMap<ByteArray, List<Versioned<byte[]>>> pending =
+            new ConcurrentHashMap<ByteArray, List<Versioned<byte[]>>>();
+    private final ReentrantLock[] keyLocks;
+
+    /**
+     * Held while committing the overlay, so commits are not reordered
+     */
+    private final Object flushLock = new Object();
+    private final Object writerSignal = new Object();
+    private Thread writer;
+    private volatile boolean closed = false;
+
     /**
      * Interval in milliseconds before tombstones will be cleared.
      */
     private int tombstoneDeletion = 24 * 60 * 60 * 1000;
 
-    private static final ObjectMapper mapper = 
-            new ObjectMapper(new SmileFactory());
+    /**
+     * Whether values are written in the encoding of {@link VersionedCodec}
+     * rather than Smile.  Both are read either way, but a database written
+     * in the compact encoding cannot be read by earlier releases
+     */
+    private volatile boolean compactEncoding = false;
+
     {
         System.setProperty("derby.stream.error.method",
                            DerbySlf4jBridge.getBridgeMethod());
@@ -90,11 +142,27 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
     public JavaDBStorageEngine(String name, 
                                ConnectionPoolDataSource dataSource)
             throws PersistException {
+        this(name, dataSource, 0);
+    }
+
+    /**
+     * Construct a new storage engine that commits writes in groups
+     * @param name the name of the store
+     * @param dataSource the data source for the database
+     * @param groupCommitInterval the interval in milliseconds between
+     * group commits, or 0 to commit each write as it is made
+     * @throws PersistException
+     */
+    public JavaDBStorageEngine(String name,
+                               ConnectionPoolDataSource dataSource,
+                               int groupCommitInterval)
+            throws PersistException {
         super();
         
         this.name = name;
         this.dbTableName = name.replace('.', '_');
         this.dataSource = dataSource;
+        this.groupCommitInterval = groupCommitInterval;
 
         try {
             initTable();
@@ -102,6 +170,17 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
             throw new PersistException("Could not initialize persistent storage",
                                        sqle);
         }
+
+        keyLocks = new ReentrantLock[KEY_LOCKS];
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            keyLocks[i] = new ReentrantLock();
+        }
+        if (groupCommitInterval > 0) {
+            writer = new Thread(new GroupCommitWriter(),
+                                "JavaDB-GroupCommit-" + name);
+            writer.setDaemon(true);
+            writer.start();
+        }
     }
     
     // *******************************
@@ -111,6 +190,10 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
     @Override
     public List<Versioned<byte[]>> get(ByteArray key) throws SyncException {
         StoreUtils.assertValidKey(key);
+        List<Versioned<byte[]>> values = pending.get(key);
+        if (values != null)
+            return new ArrayList<Versioned<byte[]>>(values);
+
         Connection dbConnection = null;
         PreparedStatement stmt = null;
         try {
@@ -138,7 +221,10 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
             dbConnection = getConnection();
             stmt = dbConnection.prepareStatement(getSql(SELECT_ALL));
             ResultSet rs = stmt.executeQuery();
-            return new DbIterator(dbConnection, stmt, rs);                
+            DbIterator iter = new DbIterator(dbConnection, stmt, rs);
+            if (pending.isEmpty()) return iter;
+            return new OverlayIterator(iter,
+                    new LinkedHashMap<ByteArray, List<Versioned<byte[]>>>(pending));
         } catch (Exception e) {
             logger.error("Could not create iterator on data", e);
             try {
@@ -150,11 +236,129 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         }
     }
 
-    @SuppressWarnings("resource")
-	@Override
+    @Override
     public void put(ByteArray key, Versioned<byte[]> value) 
             throws SyncException {
         StoreUtils.assertValidKey(key);
+        if (groupCommitInterval <= 0) {
+            doPut(key, value);
+            return;
+        }
+
+        ReentrantLock lock = getKeyLock(key);
+        lock.lock();
+        try {
+            if (closed) {
+                doPut(key, value);
+                return;
+            }
+            List<Versioned<byte[]>> values = pending.get(key);
+            if (values == null)
+                values = get(key);
+            else
+                values = new ArrayList<Versioned<byte[]>>(values);
+            StoreUtils.mergeVersion(key, values, value);
+            pending.put(key, values);
+        } finally {
+            lock.unlock();
+        }
+
+        // The writer is falling behind, so help it out
+        if (pending.size() >= MAX_PENDING)
+            flush();
+    }
+
+    @Override
+    public IClosableIterator<ByteArray> keys() {
+        return StoreUtils.keys(entries());
+    }
+
+    @Override
+    public void truncate() throws SyncException {
+        synchronized (flushLock) {
+            lockAll();
+            try {
+                pending.clear();
+                doTruncate();
+            } finally {
+                unlockAll();
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Commit any pending writes and stop the group commit writer.  Writes
+     * after the store is closed are committed as they are made.
+     */
+    @Override
+    public void close() throws SyncException {
+        if (groupCommitInterval <= 0) return;
+
+        closed = true;
+        Thread w;
+        synchronized (writerSignal) {
+            w = writer;
+            writer = null;
+            writerSignal.notifyAll();
+        }
+        if (w != null) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (flushLock) {
+            lockAll();
+            try {
+                flush();
+            } finally {
+                unlockAll();
+            }
+        }
+    }
+
+    /**
+     * Commit all the writes pending at the time of the call.  Does nothing
+     * unless group commit is enabled.
+     * @throws SyncException
+     */
+    public void flush() throws SyncException {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) return;
+
+            List<Pair<ByteArray, List<Versioned<byte[]>>>> batch =
+                    new ArrayList<Pair<ByteArray, List<Versioned<byte[]>>>>();
+            Iterator<Entry<ByteArray, List<Versioned<byte[]>>>> it =
+                    pending.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry<ByteArray, List<Versioned<byte[]>>> e = it.next();
+                batch.add(new Pair<ByteArray, List<Versioned<byte[]>>>(e.getKey(),
+                                                                       e.getValue()));
+                if (batch.size() >= MAX_BATCH || !it.hasNext()) {
+                    doWriteBatch(batch);
+                    // Keys written again since are left for the next commit
+                    for (Pair<ByteArray, List<Versioned<byte[]>>> p : batch) {
+                        pending.remove(p.getFirst(), p.getSecond());
+                    }
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    // *************
+    // Local methods
+    // *************
+
+    @SuppressWarnings("resource")
+    private void doPut(ByteArray key, Versioned<byte[]> value)
+            throws SyncException {
         Connection dbConnection = null;
         try {
             PreparedStatement stmt = null;
@@ -177,22 +381,11 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
                     vindex = 2;
                 }
 
-                List<Versioned<byte[]>> itemsToRemove = 
-                        new ArrayList<Versioned<byte[]>>(values.size());
-                for(Versioned<byte[]> versioned: values) {
-                    Occurred occurred = value.getVersion().compare(versioned.getVersion());
-                    if(occurred == Occurred.BEFORE) {
-                        throw new ObsoleteVersionException("Obsolete version for key '" + key
-                                                           + "': " + value.getVersion());
-                    } else if(occurred == Occurred.AFTER) {
-                        itemsToRemove.add(versioned);
-                    }
-                }
-                values.removeAll(itemsToRemove);
-                values.add(value);
+                StoreUtils.mergeVersion(key, values, value);
 
                 ByteArrayInputStream is = 
-                        new ByteArrayInputStream(mapper.writeValueAsBytes(values));                
+                        new ByteArrayInputStream(StoreUtils.encodeStoredValues(values,
+                                compactEncoding));                
                 update.setBinaryStream(vindex, is);
                 update.execute();
                 dbConnection.commit();
@@ -214,13 +407,7 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         }
     }
 
-    @Override
-    public IClosableIterator<ByteArray> keys() {
-        return StoreUtils.keys(entries());
-    }
-
-    @Override
-    public void truncate() throws SyncException {
+    private void doTruncate() throws SyncException {
         Connection dbConnection = null;
         PreparedStatement update = null;
         try {
@@ -234,14 +421,62 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         }
     }
 
-    @Override
-    public String getName() {
-        return name;
-    }
+    /**
+     * Write the given version lists in a single transaction, updating the
+     * existing rows in one batch and inserting the rest in another
+     * @param batch the keys and their version lists
+     * @throws SyncException
+     */
+    private void doWriteBatch(List<Pair<ByteArray, List<Versioned<byte[]>>>> batch)
+            throws SyncException {
+        Connection dbConnection = null;
+        try {
+            PreparedStatement update = null;
+            PreparedStatement insert = null;
+            try {
+                String[] keys = new String[batch.size()];
+                byte[][] data = new byte[batch.size()][];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = getKeyAsString(batch.get(i).getFirst());
+                    data[i] = StoreUtils.encodeStoredValues(batch.get(i).getSecond(),
+                                                            compactEncoding);
+                }
 
-    @Override
-    public void close() throws SyncException {
-        
+                dbConnection = getConnection();
+                dbConnection.setAutoCommit(false);
+                update = dbConnection.prepareStatement(getSql(UPDATE_KEY));
+                for (int i = 0; i < keys.length; i++) {
+                    update.setBinaryStream(1, new ByteArrayInputStream(data[i]),
+                                           data[i].length);
+                    update.setString(2, keys[i]);
+                    update.addBatch();
+                }
+                int[] counts = update.executeBatch();
+
+                for (int i = 0; i < keys.length; i++) {
+                    if (counts[i] != 0) continue;
+                    if (insert == null)
+                        insert = dbConnection.prepareStatement(getSql(INSERT_KEY));
+                    insert.setString(1, keys[i]);
+                    insert.setBinaryStream(2, new ByteArrayInputStream(data[i]),
+                                           data[i].length);
+                    insert.addBatch();
+                }
+                if (insert != null)
+                    insert.executeBatch();
+                dbConnection.commit();
+            } catch (Exception e) {
+                if (dbConnection != null)
+                    dbConnection.rollback();
+                throw new PersistException("Could not write pending values " +
+                                           "to database", e);
+            } finally {
+                cleanupSQL(dbConnection, update, insert);
+            }
+        } catch (SQLException e) {
+            cleanupSQL(dbConnection);
+            throw new PersistException("Could not clean up", e);
+        }
     }
 
     @Override
@@ -269,6 +504,7 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
 
     @Override
     public void cleanupTask() throws SyncException {
+        flush();
         Connection dbConnection = null;
         PreparedStatement stmt = null;
         try {
@@ -299,6 +535,15 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         this.tombstoneDeletion = interval;
     }
 
+    /**
+     * Set whether values are written in the encoding of
+     * {@link VersionedCodec} rather than Smile
+     * @param compactEncoding true to write the compact encoding
+     */
+    public void setCompactEncoding(boolean compactEncoding) {
+        this.compactEncoding = compactEncoding;
+    }
+
     // *******************
     // JavaDBStorageEngine
     // *******************
@@ -332,9 +577,21 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         return ds;
     }
     
-    // *************
-    // Local methods
-    // *************
+    private ReentrantLock getKeyLock(ByteArray key) {
+        return keyLocks[(key.hashCode() & 0x7fffffff) % KEY_LOCKS];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock l : keyLocks) {
+            l.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (ReentrantLock l : keyLocks) {
+            l.unlock();
+        }
+    }
     
     private static void cleanupSQL(Connection dbConnection) 
             throws SyncException {
@@ -405,8 +662,11 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
                 throws SQLException, JsonParseException, 
                     JsonMappingException, IOException {
         InputStream is = rs.getBinaryStream("datavalue");
-        return mapper.readValue(is,
-                                new TypeReference<List<VCVersioned<byte[]>>>() {});
+        try {
+            return StoreUtils.decodeStoredValues(ByteStreams.toByteArray(is));
+        } finally {
+            is.close();
+        }
     }
     
     private List<Versioned<byte[]>> doSelect(PreparedStatement stmt,
@@ -518,4 +778,82 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         }
         
     }
+
+    /**
+     * Iterates over the database, substituting the pending version lists
+     * of keys with uncommitted writes, and then over the pending keys that
+     * are not yet in the database
+     */
+    private static class OverlayIterator implements
+        IClosableIterator<Entry<ByteArray,List<Versioned<byte[]>>>> {
+
+        private final DbIterator dbIterator;
+        private final Map<ByteArray, List<Versioned<byte[]>>> overlay;
+        private Iterator<Entry<ByteArray, List<Versioned<byte[]>>>> rest;
+
+        public OverlayIterator(DbIterator dbIterator,
+                               Map<ByteArray, List<Versioned<byte[]>>> overlay) {
+            super();
+            this.dbIterator = dbIterator;
+            this.overlay = overlay;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (rest == null) {
+                if (dbIterator.hasNext()) return true;
+                rest = overlay.entrySet().iterator();
+            }
+            return rest.hasNext();
+        }
+
+        @Override
+        public Pair<ByteArray, List<Versioned<byte[]>>> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            if (rest == null) {
+                Pair<ByteArray, List<Versioned<byte[]>>> e = dbIterator.next();
+                List<Versioned<byte[]>> values = overlay.remove(e.getFirst());
+                if (values == null) return e;
+                return new Pair<ByteArray, List<Versioned<byte[]>>>(e.getFirst(),
+                        new ArrayList<Versioned<byte[]>>(values));
+            }
+            Entry<ByteArray, List<Versioned<byte[]>>> e = rest.next();
+            return new Pair<ByteArray, List<Versioned<byte[]>>>(e.getKey(),
+                    new ArrayList<Versioned<byte[]>>(e.getValue()));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            dbIterator.close();
+        }
+    }
+
+    /**
+     * Commits the pending writes every group commit interval
+     */
+    private class GroupCommitWriter implements Runnable {
+        @Override
+        public void run() {
+            while (!closed) {
+                synchronized (writerSignal) {
+                    try {
+                        if (!closed) writerSignal.wait(groupCommitInterval);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                try {
+                    flush();
+                } catch (Exception e) {
+                    logger.error("Failed to commit pending writes for store " +
+                                 name + "; will retry", e);
+                }
+            }
+        }
+    }
 }
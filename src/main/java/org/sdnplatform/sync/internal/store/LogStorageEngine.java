@@ -0,0 +1,714 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.IVersion;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.error.PersistException;
+import org.sdnplatform.sync.error.SyncException;
+import org.sdnplatform.sync.error.SyncRuntimeException;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.util.Pair;
+import org.sdnplatform.sync.internal.version.VersionedCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Persistent storage engine that keeps its data in an append-only log.
+ *
+ * Every write appends the full version list of the key to the active
+ * segment of the log, and an in-memory index maps each key to the record
+ * holding its current version list.  When the active segment reaches the
+ * segment size it is sealed and a new one is started; sealed segments
+ * are read through memory maps.  The cleanup task removes old tombstones
+ * by appending a delete record for the key, and compacts sealed segments
+ * that are mostly dead by copying their live records to the active
+ * segment.  On startup the index is rebuilt by scanning the record
+ * headers of the segments, oldest first.
+ *
+ * Each segment starts with a magic number and the format version.  Each
+ * record is its length and CRC32, followed by the length of its key, the
+ * key, and the version list in the encoding of {@link VersionedCodec},
+ * which is empty for a delete record.  Writes reach the operating system
+ * before they return, but are only forced to disk when a segment is
+ * sealed, by the cleanup task and on close.  Compaction forces the copied
+ * records before it deletes the segment they came from.  A record torn by
+ * a crash is dropped when the log is opened.
+ */
+public class LogStorageEngine implements IStorageEngine<ByteArray, byte[]> {
+    protected static final Logger logger =
+            LoggerFactory.getLogger(LogStorageEngine.class);
+
+    /**
+     * The default maximum size of a segment in bytes
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final int MAGIC = 0x464c4f47;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Sealed segments with a smaller fraction of live bytes than this are
+     * compacted
+     */
+    private static final double COMPACT_THRESHOLD = 0.5;
+
+    private static final byte[] DELETED = new byte[0];
+
+    private final String name;
+    private final File directory;
+    private final int segmentSize;
+
+    /**
+     * Interval in milliseconds before tombstones will be cleared.
+     */
+    private int tombstoneDeletion = 24 * 60 * 60 * 1000;
+
+    /**
+     * The location of the current record of each key
+     */
+    private final ConcurrentHashMap<ByteArray, Location> index =
+            new ConcurrentHashMap<ByteArray, Location>();
+
+    /**
+     * The sealed segments by ID, and the segment being written.  Guarded
+     * by this, as are all writes.
+     */
+    private final TreeMap<Long, Segment> sealed = new TreeMap<Long, Segment>();
+    private Segment active;
+    private volatile boolean open = false;
+
+    /**
+     * Construct a new storage engine that keeps its log in the given
+     * directory, opening the log that is there already
+     * @param name the name of the store
+     * @param directory the directory for the segments of the log
+     * @throws PersistException
+     */
+    public LogStorageEngine(String name, File directory)
+            throws PersistException {
+        this(name, directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Construct a new storage engine that keeps its log in the given
+     * directory, opening the log that is there already
+     * @param name the name of the store
+     * @param directory the directory for the segments of the log
+     * @param segmentSize the size in bytes at which a segment is sealed
+     * @throws PersistException
+     */
+    public LogStorageEngine(String name, File directory, int segmentSize)
+            throws PersistException {
+        super();
+        this.name = name;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        ensureOpen();
+    }
+
+    // *******************
+    // IStorageEngine<K,V>
+    // *******************
+
+    @Override
+    public List<Versioned<byte[]>> get(ByteArray key) throws SyncException {
+        StoreUtils.assertValidKey(key);
+        ensureOpen();
+        Location location = index.get(key);
+        if (location == null)
+            return new ArrayList<Versioned<byte[]>>(0);
+        try {
+            return read(location);
+        } catch (IOException e) {
+            throw new PersistException("Could not read key " + key +
+                                       " from log", e);
+        }
+    }
+
+    @Override
+    public List<IVersion> getVersions(ByteArray key) throws SyncException {
+        return StoreUtils.getVersions(get(key));
+    }
+
+    @Override
+    public synchronized void put(ByteArray key, Versioned<byte[]> value)
+            throws SyncException {
+        List<Versioned<byte[]>> values = get(key);
+        StoreUtils.mergeVersion(key, values, value);
+        try {
+            write(key, values);
+        } catch (IOException e) {
+            throw new PersistException("Could not write key " + key +
+                                       " to log", e);
+        }
+    }
+
+    @Override
+    public IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>>
+            entries() {
+        return new LogIterator(index.keySet().iterator());
+    }
+
+    @Override
+    public IClosableIterator<ByteArray> keys() {
+        final Iterator<ByteArray> keys = index.keySet().iterator();
+        return new IClosableIterator<ByteArray>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public ByteArray next() {
+                return keys.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                // nothing to do
+            }
+        };
+    }
+
+    @Override
+    public synchronized void truncate() throws SyncException {
+        try {
+            closeSegments();
+            for (File f : listSegmentFiles()) {
+                if (!f.delete())
+                    throw new IOException("Could not delete " + f);
+            }
+            active = createSegment(0);
+            open = true;
+        } catch (IOException e) {
+            throw new PersistException("Could not truncate log of store " +
+                                       name, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Force the log to disk and release its files.  The log is opened
+     * again if the store is used after it is closed.
+     */
+    @Override
+    public synchronized void close() throws SyncException {
+        if (!open) return;
+        try {
+            active.channel.force(false);
+        } catch (IOException e) {
+            throw new PersistException("Could not force log of store " +
+                                       name, e);
+        } finally {
+            closeSegments();
+        }
+    }
+
+    @Override
+    public boolean writeSyncValue(ByteArray key,
+                                  Iterable<Versioned<byte[]>> values) {
+        boolean success = false;
+        for (Versioned<byte[]> value : values) {
+            try {
+                put(key, value);
+                success = true;
+            } catch (SyncException e) {
+                // ignore
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public void cleanupTask() throws SyncException {
+        ensureOpen();
+        try {
+            // Remove tombstones that are older than the tombstone deletion
+            // threshold by writing a delete record, unless the key was
+            // written again in the meantime
+            for (ByteArray key : index.keySet()) {
+                Location location = index.get(key);
+                if (location == null ||
+                    !StoreUtils.canDelete(read(location), tombstoneDeletion))
+                    continue;
+                synchronized (this) {
+                    if (index.get(key) == location)
+                        write(key, null);
+                }
+            }
+
+            List<Segment> compact = new ArrayList<Segment>();
+            synchronized (this) {
+                for (Segment s : sealed.values()) {
+                    long total = s.size - SEGMENT_HEADER_SIZE;
+                    if (s.liveBytes < total * COMPACT_THRESHOLD)
+                        compact.add(s);
+                }
+            }
+            for (Segment s : compact) {
+                compact(s);
+            }
+
+            synchronized (this) {
+                if (open)
+                    active.channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new PersistException("Could not clean up log of store " +
+                                       name, e);
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void setTombstoneInterval(int interval) {
+        this.tombstoneDeletion = interval;
+    }
+
+    // ****************
+    // LogStorageEngine
+    // ****************
+
+    /**
+     * @return the number of segments in the log, including the active one
+     */
+    public synchronized int getSegmentCount() {
+        return sealed.size() + (open ? 1 : 0);
+    }
+
+    // *************
+    // Local methods
+    // *************
+
+    private void ensureOpen() throws PersistException {
+        if (open) return;
+        synchronized (this) {
+            if (open) return;
+            try {
+                load();
+            } catch (IOException e) {
+                closeSegments();
+                throw new PersistException("Could not open log of store " +
+                                           name, e);
+            }
+        }
+    }
+
+    /**
+     * Open the segments of the log in order, rebuilding the index from
+     * their records.  The last segment becomes the active segment.
+     */
+    private void load() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create directory " + directory);
+
+        List<File> files = listSegmentFiles();
+        for (int i = 0; i < files.size(); i++) {
+            File f = files.get(i);
+            Segment s = new Segment(getSegmentId(f), f);
+            if (i < files.size() - 1) {
+                s.size = s.channel.size();
+                s.buffer = s.channel.map(MapMode.READ_ONLY, 0, s.size);
+                sealed.put(s.id, s);
+                scan(s, false);
+            } else {
+                active = s;
+                scan(s, true);
+            }
+        }
+        if (active == null)
+            active = createSegment(0);
+        open = true;
+    }
+
+    /**
+     * Add the records of a segment to the index.  The records of the
+     * active segment are checked against their CRC, and a torn record at
+     * its end is truncated.
+     */
+    private void scan(Segment s, boolean isActive) throws IOException {
+        long fileSize = s.channel.size();
+        if (fileSize < SEGMENT_HEADER_SIZE && isActive) {
+            // Crashed while creating the segment
+            s.channel.truncate(0);
+            writeSegmentHeader(s);
+            return;
+        }
+        ByteBuffer header = s.read(0, SEGMENT_HEADER_SIZE);
+        if (header.getInt() != MAGIC)
+            throw new IOException(s.file + " is not a log segment");
+        int version = header.getInt();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported log format version " +
+                                  version + " in " + s.file);
+
+        long pos = SEGMENT_HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE + 4 <= fileSize) {
+            ByteBuffer rh = s.read(pos, RECORD_HEADER_SIZE + 4);
+            int bodyLength = rh.getInt();
+            int crc = rh.getInt();
+            int keyLength = rh.getInt();
+            if (bodyLength < 4 || keyLength < 0 ||
+                keyLength > bodyLength - 4 ||
+                pos + RECORD_HEADER_SIZE + bodyLength > fileSize)
+                break;
+
+            ByteBuffer body = s.read(pos + RECORD_HEADER_SIZE,
+                                     isActive ? bodyLength : 4 + keyLength);
+            if (isActive && crc(body) != crc)
+                break;
+            body.position(4);
+            byte[] key = new byte[keyLength];
+            body.get(key);
+
+            int length = RECORD_HEADER_SIZE + bodyLength;
+            if (bodyLength == 4 + keyLength)
+                setLocation(new ByteArray(key), null);
+            else
+                setLocation(new ByteArray(key),
+                            new Location(s, (int) pos, length));
+            pos += length;
+        }
+
+        if (pos < fileSize) {
+            if (isActive) {
+                logger.warn("Dropping {} bytes of incomplete records at " +
+                            "the end of {}", fileSize - pos, s.file);
+                s.channel.truncate(pos);
+            } else {
+                logger.error("Ignoring {} bytes of corrupt records at " +
+                             "the end of {}", fileSize - pos, s.file);
+            }
+        }
+        s.size = isActive ? pos : fileSize;
+    }
+
+    /**
+     * Copy the live records of a sealed segment to the active segment,
+     * force them to disk and delete it.  Delete records are kept as long as an older segment
+     * might still have a record of the key.
+     */
+    private void compact(Segment s) throws IOException {
+        ByteBuffer buffer = s.buffer.duplicate();
+        long pos = SEGMENT_HEADER_SIZE;
+        while (pos < s.size) {
+            int bodyLength = buffer.getInt((int) pos);
+            int keyLength = buffer.getInt((int) pos + RECORD_HEADER_SIZE);
+            int length = RECORD_HEADER_SIZE + bodyLength;
+            if (bodyLength < 4 || pos + length > s.size)
+                break;
+            byte[] key = new byte[keyLength];
+            buffer.position((int) pos + RECORD_HEADER_SIZE + 4);
+            buffer.get(key);
+            ByteArray k = new ByteArray(key);
+
+            synchronized (this) {
+                if (sealed.get(s.id) != s) return;
+                Location location = index.get(k);
+                if (bodyLength > 4 + keyLength) {
+                    if (location != null && location.segment == s &&
+                        location.offset == pos)
+                        setLocation(k, append(s.read(pos, length)));
+                } else if (location == null && sealed.firstKey() < s.id) {
+                    append(s.read(pos, length));
+                }
+            }
+            pos += length;
+        }
+
+        synchronized (this) {
+            if (sealed.get(s.id) != s) return;
+            // The copies must be on disk before the originals are gone
+            active.channel.force(false);
+            sealed.remove(s.id);
+            s.close();
+            if (!s.file.delete())
+                logger.warn("Could not delete compacted segment {}", s.file);
+        }
+    }
+
+    private List<Versioned<byte[]>> read(Location location)
+            throws IOException {
+        ByteBuffer record =
+                location.segment.read(location.offset, location.length);
+        record.getInt();
+        int crc = record.getInt();
+        ByteBuffer body = record.slice();
+        if (crc(body) != crc)
+            throw new IOException("Corrupt record at " + location.offset +
+                                  " in " + location.segment.file);
+        int keyLength = body.getInt();
+        byte[] value = new byte[body.remaining() - keyLength];
+        body.position(4 + keyLength);
+        body.get(value);
+        return StoreUtils.decodeStoredValues(value);
+    }
+
+    /**
+     * Append a record of the given version list to the log and point the
+     * index at it, or remove the key if the list is null
+     */
+    private void write(ByteArray key, List<Versioned<byte[]>> values)
+            throws IOException {
+        byte[] k = key.get();
+        byte[] value = values == null ? DELETED : VersionedCodec.encode(values);
+        ByteBuffer body = ByteBuffer.allocate(4 + k.length + value.length);
+        body.putInt(k.length);
+        body.put(k);
+        body.put(value);
+        body.flip();
+
+        ByteBuffer record =
+                ByteBuffer.allocate(RECORD_HEADER_SIZE + body.remaining());
+        record.putInt(body.remaining());
+        record.putInt(crc(body));
+        record.put(body);
+        record.flip();
+
+        Location location = append(record);
+        setLocation(key, values == null ? null : location);
+    }
+
+    /**
+     * Append an encoded record to the active segment, starting a new
+     * segment if it would grow past the segment size
+     */
+    private Location append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (active.size > SEGMENT_HEADER_SIZE &&
+            active.size + length > segmentSize) {
+            // Drop anything left by a failed write before sealing
+            active.channel.truncate(active.size);
+            active.channel.force(false);
+            active.buffer = active.channel.map(MapMode.READ_ONLY, 0,
+                                               active.size);
+            sealed.put(active.id, active);
+            active = createSegment(active.id + 1);
+        }
+
+        long offset = active.size;
+        while (record.hasRemaining()) {
+            active.channel.write(record, offset + record.position());
+        }
+        active.size += length;
+        return new Location(active, (int) offset, length);
+    }
+
+    private void setLocation(ByteArray key, Location location) {
+        Location old = location == null ? index.remove(key)
+                                        : index.put(key, location);
+        if (old != null)
+            old.segment.liveBytes -= old.length;
+        if (location != null)
+            location.segment.liveBytes += location.length;
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Segment s = new Segment(id, new File(directory,
+                String.format("%016d%s", id, SEGMENT_SUFFIX)));
+        s.channel.truncate(0);
+        writeSegmentHeader(s);
+        return s;
+    }
+
+    private static void writeSegmentHeader(Segment s) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            s.channel.write(header, header.position());
+        }
+        s.size = SEGMENT_HEADER_SIZE;
+    }
+
+    private void closeSegments() {
+        for (Segment s : sealed.values()) {
+            s.close();
+        }
+        sealed.clear();
+        if (active != null)
+            active.close();
+        active = null;
+        index.clear();
+        open = false;
+    }
+
+    private List<File> listSegmentFiles() {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isFile() && f.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null)
+            return new ArrayList<File>();
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static long getSegmentId(File f) throws IOException {
+        String n = f.getName();
+        try {
+            return Long.parseLong(n.substring(0, n.length() -
+                                                 SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid segment file name " + f, e);
+        }
+    }
+
+    private static int crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A file of the log
+     */
+    private static class Segment {
+        final long id;
+        final File file;
+        final RandomAccessFile raf;
+        final FileChannel channel;
+
+        /**
+         * The map of the segment once it is sealed
+         */
+        volatile MappedByteBuffer buffer;
+
+        /**
+         * The size of the segment and of its live records.  Guarded by
+         * the engine.
+         */
+        long size;
+        long liveBytes;
+
+        Segment(long id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+        }
+
+        ByteBuffer read(long offset, int length) throws IOException {
+            MappedByteBuffer b = buffer;
+            if (b != null) {
+                ByteBuffer d = b.duplicate();
+                d.position((int) offset);
+                d.limit((int) offset + length);
+                return d.slice();
+            }
+            ByteBuffer d = ByteBuffer.allocate(length);
+            while (d.hasRemaining()) {
+                if (channel.read(d, offset + d.position()) < 0)
+                    throw new EOFException("Read past the end of " + file);
+            }
+            d.flip();
+            return d;
+        }
+
+        void close() {
+            StoreUtils.close(raf);
+        }
+    }
+
+    /**
+     * The position of a record in the log
+     */
+    private static class Location {
+        final Segment segment;
+        final int offset;
+        final int length;
+
+        Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private class LogIterator implements
+        IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>> {
+
+        private final Iterator<ByteArray> keys;
+        private Pair<ByteArray, List<Versioned<byte[]>>> next;
+
+        public LogIterator(Iterator<ByteArray> keys) {
+            super();
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // Skip keys removed since the iterator was created
+            while (next == null && keys.hasNext()) {
+                ByteArray key = keys.next();
+                try {
+                    List<Versioned<byte[]>> values = get(key);
+                    if (!values.isEmpty())
+                        next = new Pair<ByteArray,
+                                        List<Versioned<byte[]>>>(key, values);
+                } catch (SyncException e) {
+                    throw new SyncRuntimeException("Error in log iterator",
+                                                   e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Pair<ByteArray, List<Versioned<byte[]>>> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Pair<ByteArray, List<Versioned<byte[]>>> n = next;
+            next = null;
+            return n;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.sdnplatform.sync.IVersion;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.ClockEntry;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+/**
+ * A hash tree (Merkle tree) digest of the keys and versions in a store,
+ * used to find the parts of a store in which two nodes differ without
+ * exchanging every key.
+ *
+ * Each key is assigned to one of {@link #LEAVES} leaves by the hash of the
+ * key. The hash of a leaf is the XOR of the hashes of the key and versions
+ * of every key in it, so a write only has to XOR out the old hash of the
+ * key and XOR in the new one. The tree has a fixed shape with a fanout of
+ * {@link #FANOUT} and {@link #LEAF_LEVEL} + 1 levels, and the hash of an
+ * inner node is the XOR of the leaves under it, computed when it is asked
+ * for. Values are not hashed: as with sync offers, two nodes holding the
+ * same versions of a key are assumed to hold the same values.
+ *
+ * Updates may come from any thread, but updates of the same key must be
+ * serialized by the caller so the old hash is really the one in the tree.
+ */
+public class StoreDigest {
+    public static final int FANOUT_BITS = 4;
+    public static final int FANOUT = 1 << FANOUT_BITS;
+    /**
+     * The level of the leaves; the root is level 0
+     */
+    public static final int LEAF_LEVEL = 3;
+    public static final int LEAVES = 1 << (FANOUT_BITS * LEAF_LEVEL);
+
+    private final AtomicLongArray leaves = new AtomicLongArray(LEAVES);
+
+    /**
+     * @param level the level
+     * @return the number of nodes at the level
+     */
+    public static int getLevelSize(int level) {
+        checkLevel(level);
+        return 1 << (FANOUT_BITS * level);
+    }
+
+    /**
+     * @param key the key
+     * @return the leaf the key belongs to
+     */
+    public static int getLeaf(ByteArray key) {
+        return (int) (hashKey(key) >>> (64 - FANOUT_BITS * LEAF_LEVEL));
+    }
+
+    /**
+     * Compute the hash a key contributes to its leaf
+     * @param key the key
+     * @param versions the versions of the key, or null if there are none
+     * @return the hash, which is 0 for a key without versions
+     */
+    public static long hash(ByteArray key, List<IVersion> versions) {
+        if (versions == null || versions.isEmpty()) return 0;
+        /* Sum the versions, so the order they are stored in does not matter */
+        long h = 0;
+        for (IVersion v : versions) {
+            h += hashVersion(v);
+        }
+        return mix(hashKey(key) ^ mix(h));
+    }
+
+    /**
+     * Replace the hash a key contributes to the digest
+     * @param key the key
+     * @param oldHash the hash the key contributed so far, as computed by
+     * {@link #hash(ByteArray, List)}
+     * @param newHash the new hash of the key
+     */
+    public void update(ByteArray key, long oldHash, long newHash) {
+        long delta = oldHash ^ newHash;
+        if (delta == 0) return;
+        int leaf = getLeaf(key);
+        while (true) {
+            long h = leaves.get(leaf);
+            if (leaves.compareAndSet(leaf, h, h ^ delta)) return;
+        }
+    }
+
+    /**
+     * Get the hash of a node of the tree
+     * @param level the level of the node
+     * @param node the index of the node within its level
+     * @return the hash
+     */
+    public long getHash(int level, int node) {
+        if (node < 0 || node >= getLevelSize(level)) {
+            throw new IllegalArgumentException("Node " + node +
+                                               " is not in level " + level);
+        }
+        int shift = FANOUT_BITS * (LEAF_LEVEL - level);
+        int first = node << shift;
+        int last = first + (1 << shift);
+        long h = 0;
+        for (int i = first; i < last; i++) {
+            h ^= leaves.get(i);
+        }
+        return h;
+    }
+
+    /**
+     * @param node the index of a node within its level
+     * @param childIndex which child, from 0 to {@link #FANOUT} - 1
+     * @return the index of the child within the next level
+     */
+    public static int getChild(int node, int childIndex) {
+        return (node << FANOUT_BITS) | childIndex;
+    }
+
+    private static void checkLevel(int level) {
+        if (level < 0 || level > LEAF_LEVEL) {
+            throw new IllegalArgumentException("Invalid digest level " + level);
+        }
+    }
+
+    private static long hashKey(ByteArray key) {
+        /* 64-bit FNV-1a */
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.get()) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long hashVersion(IVersion v) {
+        if (!(v instanceof VectorClock)) return v.hashCode();
+        long h = 1;
+        for (ClockEntry e : ((VectorClock) v).getEntries()) {
+            h = 31 * h + e.getNodeId();
+            h = 31 * h + e.getVersion();
+        }
+        return mix(h);
+    }
+
+    /* The finalizer of MurmurHash3 */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
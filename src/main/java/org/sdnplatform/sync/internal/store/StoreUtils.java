@@ -29,11 +29,17 @@ import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.IVersion;
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.IVersion.Occurred;
+import org.sdnplatform.sync.error.ObsoleteVersionException;
+import org.sdnplatform.sync.error.SerializationException;
 import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.internal.version.VectorClock;
+import org.sdnplatform.sync.internal.version.VersionedCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -45,6 +51,9 @@ public class StoreUtils {
     protected static final Logger logger =
             LoggerFactory.getLogger(StoreUtils.class);
 
+    private static final ObjectMapper smileMapper =
+            new ObjectMapper(new SmileFactory());
+
     public static void assertValidKeys(Iterable<?> keys) {
         if(keys == null)
             throw new IllegalArgumentException("Keys cannot be null.");
@@ -105,6 +114,72 @@ public class StoreUtils {
     }
 
 
+    /**
+     * Add a new version to the list of versions of a key, removing the
+     * versions it supersedes
+     * @param key the key, for the exception message
+     * @param values the current versions of the key, which are modified
+     * @param value the new version
+     * @throws ObsoleteVersionException if the new version is older than
+     * one of the current versions
+     */
+    public static <K, V> void mergeVersion(K key,
+                                           List<Versioned<V>> values,
+                                           Versioned<V> value)
+            throws ObsoleteVersionException {
+        List<Versioned<V>> itemsToRemove =
+                new ArrayList<Versioned<V>>(values.size());
+        for(Versioned<V> versioned: values) {
+            Occurred occurred = value.getVersion().compare(versioned.getVersion());
+            if(occurred == Occurred.BEFORE) {
+                throw new ObsoleteVersionException("Obsolete version for key '" + key
+                                                   + "': " + value.getVersion());
+            } else if(occurred == Occurred.AFTER) {
+                itemsToRemove.add(versioned);
+            }
+        }
+        values.removeAll(itemsToRemove);
+        values.add(value);
+    }
+
+    /**
+     * Encode a version list for a persistent storage engine
+     * @param values the version list
+     * @param compact whether to use the encoding of {@link VersionedCodec}
+     * rather than Smile.  Data in that encoding cannot be read by releases
+     * earlier than the one that introduced it
+     * @return the encoded data
+     * @throws IOException if the data cannot be encoded
+     */
+    public static byte[] encodeStoredValues(List<Versioned<byte[]>> values,
+                                            boolean compact)
+            throws IOException {
+        if (compact)
+            return VersionedCodec.encode(values);
+        return smileMapper.writeValueAsBytes(values);
+    }
+
+    /**
+     * Decode a version list stored by a persistent storage engine, either
+     * in the encoding of {@link VersionedCodec} or in Smile, as stored by
+     * earlier releases
+     * @param data the stored data
+     * @return the version list
+     * @throws IOException if the data cannot be decoded
+     */
+    public static List<Versioned<byte[]>> decodeStoredValues(byte[] data)
+            throws IOException {
+        if (VersionedCodec.isEncoded(data)) {
+            try {
+                return VersionedCodec.decode(data);
+            } catch (SerializationException e) {
+                throw new IOException(e);
+            }
+        }
+        return smileMapper.readValue(data,
+                new TypeReference<List<VCVersioned<byte[]>>>() {});
+    }
+
     public static <V> List<IVersion> getVersions(List<Versioned<V>> versioneds) {
         List<IVersion> versions = Lists.newArrayListWithCapacity(versioneds.size());
         for(Versioned<?> versioned: versioneds)
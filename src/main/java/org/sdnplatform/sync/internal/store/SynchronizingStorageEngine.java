@@ -1,10 +1,21 @@
 package org.sdnplatform.sync.internal.store;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 
+import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.ISyncService.Scope;
 import org.sdnplatform.sync.error.SyncException;
+import org.sdnplatform.sync.error.SyncRuntimeException;
 import org.sdnplatform.sync.internal.SyncManager;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.slf4j.Logger;
@@ -30,6 +41,50 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
      */
     protected Scope scope;
 
+    /**
+     * The digest of the store, or null if it has not been built yet.
+     * Guarded by this for updates.
+     */
+    private volatile StoreDigest digest;
+
+    /**
+     * The hash each key contributes to {@link #digest}
+     */
+    private Map<ByteArray, Long> digestHashes = new HashMap<ByteArray, Long>();
+
+    /**
+     * Keys written since their hash was last folded into the digest
+     */
+    private final Set<ByteArray> writtenKeys =
+            Collections.newSetFromMap(new ConcurrentHashMap<ByteArray, Boolean>());
+
+    /**
+     * Keys that held a tombstone when they were last hashed.  Tombstone
+     * cleanup deletes them from the local storage without a write.
+     */
+    private final Set<ByteArray> tombstoneKeys =
+            Collections.newSetFromMap(new ConcurrentHashMap<ByteArray, Boolean>());
+
+    /**
+     * The digest being built, if any
+     */
+    private volatile DigestBuild digestBuild;
+
+    /**
+     * Serializes digest builds
+     */
+    private final Object buildLock = new Object();
+
+    /**
+     * A digest being built along with the keys written meanwhile
+     */
+    private static class DigestBuild {
+        final StoreDigest digest = new StoreDigest();
+        final Map<ByteArray, Long> hashes = new HashMap<ByteArray, Long>();
+        final Set<ByteArray> written =
+                Collections.newSetFromMap(new ConcurrentHashMap<ByteArray, Boolean>());
+    }
+
     /**
      * Allocate a synchronizing storage engine
      * @param localStorage the local storage
@@ -58,10 +113,49 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
     public void put(ByteArray key, Versioned<byte[]> value)
             throws SyncException {
         super.put(key, value);
+        keyWritten(key);
         if (!Scope.UNSYNCHRONIZED.equals(scope))
             syncManager.queueSyncTask(this, key, value);
     }
-    
+
+    @Override
+    public boolean writeSyncValue(ByteArray key,
+                                  Iterable<Versioned<byte[]>> values) {
+        boolean r = super.writeSyncValue(key, values);
+        if (r) keyWritten(key);
+        return r;
+    }
+
+    @Override
+    public void truncate() throws SyncException {
+        synchronized (this) {
+            // A truncate during a build abandons it.  Writes racing with
+            // the truncate are marked after it starts, so their keys are
+            // rehashed against the empty digest.
+            digestBuild = null;
+            writtenKeys.clear();
+            tombstoneKeys.clear();
+            digestHashes = new HashMap<ByteArray, Long>();
+            if (digest != null)
+                digest = new StoreDigest();
+            super.truncate();
+        }
+    }
+
+    @Override
+    public void cleanupTask() throws SyncException {
+        super.cleanupTask();
+        // Cleanup removes tombstones directly from the local storage, so
+        // rehash the keys that held one
+        for (ByteArray key : tombstoneKeys) {
+            keyWritten(key);
+        }
+        synchronized (this) {
+            if (digest != null)
+                applyWrittenKeys();
+        }
+    }
+
     // **************
     // Public methods
     // **************
@@ -73,4 +167,137 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
     public Scope getScope() {
         return scope;
     }
+
+    /**
+     * Get the digest of the store, building it first if needed.  Building
+     * the digest iterates over the whole store; after that, only the keys
+     * written since the last call are rehashed.  Either can take a while,
+     * so this must not be called on an I/O thread.
+     * @return the {@link StoreDigest}
+     * @throws SyncException
+     * @see #getDigestSnapshot()
+     */
+    public StoreDigest getDigest() throws SyncException {
+        if (digest == null) {
+            synchronized (buildLock) {
+                if (digest == null) return rebuildDigest();
+            }
+        }
+        synchronized (this) {
+            applyWrittenKeys();
+            return digest;
+        }
+    }
+
+    /**
+     * Get the digest of the store as of the last call to
+     * {@link #getDigest()}, without building or updating it
+     * @return the {@link StoreDigest}, or null if it has not been built
+     */
+    public StoreDigest getDigestSnapshot() {
+        return digest;
+    }
+
+    /**
+     * Check whether the digest has been built and holds every write
+     * @return true if {@link #getDigestSnapshot()} is up to date
+     */
+    public boolean isDigestCurrent() {
+        return digest != null && writtenKeys.isEmpty();
+    }
+
+    /**
+     * Build the digest of the store from scratch.  Writes may continue
+     * while it is built, and the previous digest, if any, is used until
+     * the new one is complete.
+     * @return the new {@link StoreDigest}
+     * @throws SyncException
+     */
+    public StoreDigest rebuildDigest() throws SyncException {
+        synchronized (buildLock) {
+            // Once the build is visible, every write also records its key
+            // in it, including writes of keys the iterator misses
+            DigestBuild b = new DigestBuild();
+            digestBuild = b;
+
+            IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>> entries =
+                    localStorage.entries();
+            try {
+                while (entries.hasNext()) {
+                    ByteArray key = entries.next().getKey();
+                    long h = getDigestHash(key);
+                    if (h != 0 && b.hashes.put(key, h) == null)
+                        b.digest.update(key, 0, h);
+                }
+            } finally {
+                entries.close();
+            }
+
+            synchronized (this) {
+                if (digestBuild != b) return digest;
+                // Publish the digest first, so a write never sees neither
+                digest = b.digest;
+                digestBuild = null;
+                digestHashes = b.hashes;
+                writtenKeys.addAll(b.written);
+                applyWrittenKeys();
+            }
+            return b.digest;
+        }
+    }
+
+    // *************
+    // Local methods
+    // *************
+
+    private void keyWritten(ByteArray key) {
+        // Only mark the key after the write, so a digest update that
+        // misses the write sees the key again next time
+        if (digest == null && digestBuild == null) return;
+        writtenKeys.add(key);
+        DigestBuild b = digestBuild;
+        if (b != null) b.written.add(key);
+    }
+
+    /**
+     * Rehash the written keys into the digest.  Must hold this.
+     */
+    private void applyWrittenKeys() {
+        Iterator<ByteArray> it = writtenKeys.iterator();
+        while (it.hasNext()) {
+            ByteArray key = it.next();
+            it.remove();
+            long newHash;
+            try {
+                newHash = getDigestHash(key);
+            } catch (SyncRuntimeException e) {
+                writtenKeys.add(key);
+                throw e;
+            }
+            Long oldHash = newHash == 0 ?
+                    digestHashes.remove(key) : digestHashes.put(key, newHash);
+            digest.update(key, oldHash == null ? 0 : oldHash, newHash);
+        }
+    }
+
+    private long getDigestHash(ByteArray key) {
+        List<Versioned<byte[]>> values;
+        try {
+            values = localStorage.get(key);
+        } catch (SyncException e) {
+            throw new SyncRuntimeException(e);
+        }
+        boolean tombstone = false;
+        for (Versioned<byte[]> v : values) {
+            if (v.getValue() == null) {
+                tombstone = true;
+                break;
+            }
+        }
+        if (tombstone)
+            tombstoneKeys.add(key);
+        else
+            tombstoneKeys.remove(key);
+        return StoreDigest.hash(key, StoreUtils.getVersions(values));
+    }
 }
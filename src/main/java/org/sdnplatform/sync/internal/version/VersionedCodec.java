@@ -0,0 +1,252 @@
+package org.sdnplatform.sync.internal.version;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.error.SerializationException;
+
+/**
+ * A compact binary encoding of lists of {@link Versioned} values and of
+ * {@link VectorClock}s, used for sync values on the wire and in persistent
+ * storage in place of Thrift structs and Jackson.
+ *
+ * An encoded list starts with a format version byte, followed by the
+ * number of values.  Each value is its length plus one, or zero for a
+ * tombstone, followed by its bytes and its clock.  A clock is the number
+ * of entries, each a node ID and a version, followed by the timestamp.
+ * All numbers are varints.  Within a list, the timestamp of each clock
+ * after the first is the zigzag-encoded difference from the one before,
+ * since the versions of a key are usually written close together.
+ *
+ * The version byte is never the first byte of Smile data, so
+ * {@link #isEncoded(byte[])} tells encoded lists apart from those stored
+ * by earlier releases.
+ */
+public class VersionedCodec {
+    /**
+     * The first byte of an encoded list
+     */
+    public static final byte FORMAT_VERSION = 1;
+
+    /**
+     * Encode a list of versioned values.  The versions must be
+     * {@link VectorClock}s.
+     * @param values the values
+     * @return the encoded list
+     */
+    public static byte[] encode(List<Versioned<byte[]>> values) {
+        Writer w = new Writer(16 + 32 * values.size());
+        w.writeByte(FORMAT_VERSION);
+        w.writeVarint(values.size());
+        long timestamp = 0;
+        boolean first = true;
+        for (Versioned<byte[]> v : values) {
+            byte[] value = v.getValue();
+            if (value == null) {
+                w.writeVarint(0);
+            } else {
+                w.writeVarint(value.length + 1L);
+                w.writeBytes(value);
+            }
+            VectorClock clock = (VectorClock) v.getVersion();
+            writeEntries(w, clock);
+            if (first)
+                w.writeVarint(clock.getTimestamp());
+            else
+                w.writeVarint(zigzag(clock.getTimestamp() - timestamp));
+            timestamp = clock.getTimestamp();
+            first = false;
+        }
+        return w.toByteArray();
+    }
+
+    /**
+     * Decode a list of versioned values
+     * @param data the encoded list
+     * @return the values
+     * @throws SerializationException if the data is not a valid encoded
+     * list
+     */
+    public static List<Versioned<byte[]>> decode(byte[] data)
+            throws SerializationException {
+        Reader r = new Reader(data);
+        try {
+            int format = r.readByte();
+            if (format != FORMAT_VERSION)
+                throw new SerializationException("Unsupported encoding " +
+                                                 "version " + format);
+            int count = r.readLength();
+            List<Versioned<byte[]>> values =
+                    new ArrayList<Versioned<byte[]>>(count);
+            long timestamp = 0;
+            for (int i = 0; i < count; i++) {
+                long length = r.readVarint();
+                byte[] value = null;
+                if (length > 0)
+                    value = r.readBytes(checkLength(length - 1));
+                List<ClockEntry> entries = readEntries(r);
+                if (i == 0)
+                    timestamp = r.readVarint();
+                else
+                    timestamp += unzigzag(r.readVarint());
+                values.add(new Versioned<byte[]>(value,
+                        new VectorClock(entries, timestamp)));
+            }
+            return values;
+        } catch (IndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated encoded values", e);
+        }
+    }
+
+    /**
+     * @param data some data
+     * @return whether the data is a list encoded by {@link #encode(List)}
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data.length > 0 && data[0] == FORMAT_VERSION;
+    }
+
+    /**
+     * Encode a vector clock on its own
+     * @param clock the clock
+     * @return the encoded clock
+     */
+    public static byte[] encodeClock(VectorClock clock) {
+        Writer w = new Writer(16 + 4 * clock.getEntries().size());
+        writeEntries(w, clock);
+        w.writeVarint(clock.getTimestamp());
+        return w.toByteArray();
+    }
+
+    /**
+     * Decode a vector clock encoded by {@link #encodeClock(VectorClock)}
+     * @param data the encoded clock
+     * @return the clock
+     * @throws SerializationException if the data is not a valid clock
+     */
+    public static VectorClock decodeClock(byte[] data)
+            throws SerializationException {
+        Reader r = new Reader(data);
+        try {
+            List<ClockEntry> entries = readEntries(r);
+            return new VectorClock(entries, r.readVarint());
+        } catch (IndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated encoded clock", e);
+        }
+    }
+
+    private static void writeEntries(Writer w, VectorClock clock) {
+        List<ClockEntry> entries = clock.getEntries();
+        w.writeVarint(entries.size());
+        for (ClockEntry e : entries) {
+            w.writeVarint(e.getNodeId() & 0xffff);
+            w.writeVarint(e.getVersion());
+        }
+    }
+
+    private static List<ClockEntry> readEntries(Reader r)
+            throws SerializationException {
+        int count = r.readLength();
+        List<ClockEntry> entries = new ArrayList<ClockEntry>(count);
+        for (int i = 0; i < count; i++) {
+            short nodeId = (short) r.readVarint();
+            entries.add(new ClockEntry(nodeId, r.readVarint()));
+        }
+        return entries;
+    }
+
+    private static int checkLength(long length)
+            throws SerializationException {
+        if (length < 0 || length > Integer.MAX_VALUE)
+            throw new SerializationException("Invalid length " + length);
+        return (int) length;
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarint(long n) {
+            ensure(10);
+            while ((n & ~0x7fL) != 0) {
+                buf[pos++] = (byte) ((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            buf[pos++] = (byte) n;
+        }
+
+        void writeBytes(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int readByte() {
+            if (pos >= buf.length) throw new IndexOutOfBoundsException();
+            return buf[pos++];
+        }
+
+        long readVarint() throws SerializationException {
+            long n = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                n |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return n;
+            }
+            throw new SerializationException("Malformed varint");
+        }
+
+        int readLength() throws SerializationException {
+            int length = checkLength(readVarint());
+            // Each element takes at least one byte
+            if (length > buf.length - pos)
+                throw new SerializationException("Invalid count " + length);
+            return length;
+        }
+
+        byte[] readBytes(int length) {
+            if (length > buf.length - pos)
+                throw new IndexOutOfBoundsException();
+            byte[] b = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return b;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package net.floodlightcontroller.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FloodlightContextTest {
+
+    @Test
+    public void testStoreByKey() {
+        FloodlightContextStore<String> store = new FloodlightContextStore<String>();
+        FloodlightContext cntx = new FloodlightContext();
+        String k1 = FloodlightContextTest.class.getName() + ".k1";
+        String k2 = FloodlightContextTest.class.getName() + ".k2";
+
+        assertNull(store.get(cntx, k1));
+        store.put(cntx, k1, "v1");
+        store.put(cntx, k2, "v2");
+        assertEquals("v1", store.get(cntx, k1));
+        assertEquals("v2", store.get(cntx, k2));
+
+        /* An equal but not identical key finds the same slot */
+        assertEquals("v1", store.get(cntx, new String(k1)));
+
+        store.remove(cntx, k1);
+        assertNull(store.get(cntx, k1));
+        assertEquals("v2", store.get(cntx, k2));
+
+        /* Values are per context */
+        assertNull(store.get(new FloodlightContext(), k2));
+    }
+
+    @Test
+    public void testStoreBySlot() {
+        FloodlightContextStore<Integer> store = new FloodlightContextStore<Integer>();
+        String key = FloodlightContextTest.class.getName() + ".slot";
+        int slot = store.registerKey(key);
+        assertTrue(slot >= 0);
+        assertEquals(slot, FloodlightContext.getSlot(key));
+        assertEquals(slot, store.registerKey(key));
+
+        FloodlightContext cntx = new FloodlightContext();
+        store.put(cntx, slot, 42);
+        assertEquals(Integer.valueOf(42), store.get(cntx, key));
+        store.put(cntx, key, 43);
+        assertEquals(Integer.valueOf(43), store.get(cntx, slot));
+    }
+
+    @Test
+    public void testClear() {
+        FloodlightContextStore<String> store = new FloodlightContextStore<String>();
+        FloodlightContext cntx = new FloodlightContext();
+        String key = FloodlightContextTest.class.getName() + ".clear";
+
+        store.put(cntx, key, "v");
+        cntx.getStorage().put("unslotted", "u");
+        cntx.clear();
+        assertNull(store.get(cntx, key));
+        assertTrue(cntx.getStorage().isEmpty());
+
+        /* The context can be reused after a clear */
+        store.put(cntx, key, "w");
+        assertEquals("w", store.get(cntx, key));
+    }
+
+    @Test
+    public void testSlotGrowth() {
+        FloodlightContextStore<Integer> store = new FloodlightContextStore<Integer>();
+        /* Created before the keys below exist, so it has to grow */
+        FloodlightContext cntx = new FloodlightContext();
+        for (int i = 0; i < 20; i++) {
+            store.put(cntx, FloodlightContextTest.class.getName() + ".grow" + i, i);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(i), store.get(cntx, FloodlightContextTest.class.getName() + ".grow" + i));
+        }
+    }
+}
@@ -6,6 +6,7 @@ import static org.easymock.EasyMock.replay;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -15,6 +16,8 @@ import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
 
 import io.netty.channel.Channel;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 
@@ -89,6 +92,7 @@ public class OFConnectionTest {
     
     @After
     public void tearDown() throws Exception {
+    	OFConnection.setCoalesceWrites(false);
     	if (timer != null) {
     		timer.stop();
     	}
@@ -165,7 +169,9 @@ public class OFConnectionTest {
     private Capture<List<OFMessage>> prepareChannelForWriteList() {
         EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
         Capture<List<OFMessage>> cMsgList = EasyMock.newCapture();
-        expect(channel.writeAndFlush(capture(cMsgList))).andReturn(null).once();
+        expect(channel.writeAndFlush(capture(cMsgList)))
+                .andReturn(new DefaultChannelPromise(channel, ImmediateEventExecutor.INSTANCE).setSuccess())
+                .once();
         replay(channel);
         return cMsgList;
     }
@@ -278,4 +284,70 @@ public class OFConnectionTest {
                 Matchers.<OFMessage> contains(hello, packetOut));
     }
 
+    /** write several lists with coalescing enabled; they go out in order with one flush */
+    @Test(timeout = 5000)
+    public void testCoalescedMessageWrites() throws InterruptedException, ExecutionException {
+        OFConnection.setCoalesceWrites(true);
+        Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        OFPacketOut packetOut = factory.buildPacketOut()
+                .setData(new byte[] { 0x01, 0x02, 0x03, 0x04 })
+                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
+                .build();
+        OFEchoRequest echoRequest = factory.echoRequest(new byte[] {});
+
+        conn.write(hello);
+        conn.write(ImmutableList.<OFMessage>of(packetOut, echoRequest));
+        assertThat("Only one flush task should be queued",
+                eventLoop.getQueuedTasks().size(), equalTo(1));
+
+        eventLoop.runTasks();
+        assertThat("Write should have been flushed", cMsgList.hasCaptured(), equalTo(true));
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(hello, packetOut, echoRequest));
+        EasyMock.verify(channel);
+    }
+
+    /** a coalesced request still queued when the channel closes fails its future */
+    @Test(timeout = 5000)
+    public void testCoalescedWriteAfterDisconnect() throws InterruptedException, ExecutionException {
+        OFConnection.setCoalesceWrites(true);
+        // connected for writeRequest() and write(), closed by the time of the flush
+        expect(channel.isActive()).andReturn(Boolean.TRUE).times(2).andReturn(Boolean.FALSE).anyTimes();
+        replay(channel);
+
+        OFEchoRequest echoRequest = factory.echoRequest(new byte[] {});
+        ListenableFuture<OFEchoReply> future = conn.writeRequest(echoRequest);
+        assertThat("Future should not be complete yet", future.isDone(), equalTo(false));
+
+        eventLoop.runTasks();
+        FutureTestUtils.assertFutureFailedWithException(future,
+                SwitchDisconnectedException.class);
+        assertThat("Connection should have no pending requests",
+                conn.getPendingRequestIds().isEmpty(), equalTo(true));
+        EasyMock.verify(channel);
+    }
+
+    /** a coalesced request whose flush fails fails its future */
+    @Test(timeout = 5000)
+    public void testCoalescedWriteFailure() throws InterruptedException, ExecutionException {
+        OFConnection.setCoalesceWrites(true);
+        expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        expect(channel.writeAndFlush(EasyMock.anyObject()))
+                .andReturn(new DefaultChannelPromise(channel, ImmediateEventExecutor.INSTANCE)
+                        .setFailure(new IOException("Connection reset by peer")))
+                .once();
+        replay(channel);
+
+        OFEchoRequest echoRequest = factory.echoRequest(new byte[] {});
+        ListenableFuture<OFEchoReply> future = conn.writeRequest(echoRequest);
+
+        eventLoop.runTasks();
+        FutureTestUtils.assertFutureFailedWithException(future,
+                SwitchDisconnectedException.class);
+        assertThat("Connection should have no pending requests",
+                conn.getPendingRequestIds().isEmpty(), equalTo(true));
+        EasyMock.verify(channel);
+    }
 }
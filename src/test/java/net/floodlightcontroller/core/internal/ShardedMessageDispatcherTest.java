@@ -0,0 +1,192 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.debugcounter.DebugCounterResource;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+public class ShardedMessageDispatcherTest {
+    private static final String MODULE = "test";
+
+    private OFFactory factory;
+    private IDebugCounterService debugCounterService;
+    private ShardedMessageDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        factory = OFFactories.getFactory(OFVersion.OF_13);
+        debugCounterService = new DebugCounterServiceImpl();
+        debugCounterService.registerModule(MODULE);
+    }
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    private IOFSwitch mockSwitch(long dpid) {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    private long getCounter(String hierarchy) {
+        List<DebugCounterResource> l = debugCounterService.getCounterHierarchy(MODULE, hierarchy);
+        return l.get(0).getCounterValue();
+    }
+
+    @Test(timeout = 10000)
+    public void testPerSwitchOrdering() throws InterruptedException {
+        final int perSwitch = 200;
+        final List<IOFSwitch> switches = new ArrayList<IOFSwitch>();
+        for (int i = 1; i <= 8; i++) {
+            switches.add(mockSwitch(i));
+        }
+        final Map<IOFSwitch, List<Long>> received = new HashMap<IOFSwitch, List<Long>>();
+        for (IOFSwitch sw : switches) {
+            received.put(sw, Collections.synchronizedList(new ArrayList<Long>()));
+        }
+        final CountDownLatch done = new CountDownLatch(perSwitch * switches.size());
+
+        dispatcher = new ShardedMessageDispatcher(new ShardedMessageDispatcher.IMessageHandler() {
+            @Override
+            public void handle(IOFSwitch sw, OFMessage m, FloodlightContext bContext) {
+                received.get(sw).add(m.getXid());
+                done.countDown();
+            }
+        }, 4, 16, ShardedMessageDispatcher.OverflowPolicy.BLOCK, debugCounterService, MODULE);
+        dispatcher.start();
+
+        for (long xid = 0; xid < perSwitch; xid++) {
+            for (IOFSwitch sw : switches) {
+                dispatcher.dispatch(sw, factory.buildEchoRequest().setXid(xid).build(), null);
+            }
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        for (IOFSwitch sw : switches) {
+            List<Long> xids = received.get(sw);
+            assertEquals(perSwitch, xids.size());
+            for (int i = 0; i < perSwitch; i++) {
+                assertEquals(i, xids.get(i).longValue());
+            }
+        }
+        long dequeued = 0;
+        for (int i = 0; i < dispatcher.getShardCount(); i++) {
+            dequeued += getCounter("dispatch/shard-" + i + "/dequeued");
+        }
+        assertEquals(perSwitch * switches.size(), dequeued);
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        dispatcher = new ShardedMessageDispatcher(new ShardedMessageDispatcher.IMessageHandler() {
+            @Override
+            public void handle(IOFSwitch sw, OFMessage m, FloodlightContext bContext) { }
+        }, 1, 2, ShardedMessageDispatcher.OverflowPolicy.DROP, debugCounterService, MODULE);
+
+        /* Not started, so nothing is taken off the queue */
+        IOFSwitch sw = mockSwitch(1);
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(sw, factory.echoRequest(new byte[] {}), null);
+        }
+        assertEquals(2, getCounter("dispatch/shard-0/enqueued"));
+        assertEquals(3, getCounter("dispatch/shard-0/dropped"));
+        assertEquals(2, getCounter("dispatch/shard-0/max-depth"));
+    }
+
+    @Test(timeout = 5000)
+    public void testBlockTimesOut() {
+        dispatcher = new ShardedMessageDispatcher(new ShardedMessageDispatcher.IMessageHandler() {
+            @Override
+            public void handle(IOFSwitch sw, OFMessage m, FloodlightContext bContext) { }
+        }, 1, 1, ShardedMessageDispatcher.OverflowPolicy.BLOCK, 20, debugCounterService, MODULE);
+
+        /* Not started, so the I/O thread gives up waiting for room and drops */
+        IOFSwitch sw = mockSwitch(1);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(sw, factory.echoRequest(new byte[] {}), null);
+        }
+        assertEquals(1, getCounter("dispatch/shard-0/enqueued"));
+        assertEquals(2, getCounter("dispatch/shard-0/dropped"));
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentMaxDepth() throws InterruptedException {
+        final int threads = 8;
+        final int perThread = 500;
+        dispatcher = new ShardedMessageDispatcher(new ShardedMessageDispatcher.IMessageHandler() {
+            @Override
+            public void handle(IOFSwitch sw, OFMessage m, FloodlightContext bContext) { }
+        }, 1, threads * perThread, ShardedMessageDispatcher.OverflowPolicy.DROP, debugCounterService, MODULE);
+
+        /* Not started, so the depth only grows and the last enqueue sees all of it */
+        final IOFSwitch sw = mockSwitch(1);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        dispatcher.dispatch(sw, factory.echoRequest(new byte[] {}), null);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(threads * perThread, getCounter("dispatch/shard-0/enqueued"));
+        assertEquals(threads * perThread, getCounter("dispatch/shard-0/max-depth"));
+    }
+
+    @Test
+    public void testSameSwitchSameShard() {
+        dispatcher = new ShardedMessageDispatcher(new ShardedMessageDispatcher.IMessageHandler() {
+            @Override
+            public void handle(IOFSwitch sw, OFMessage m, FloodlightContext bContext) { }
+        }, 3, 2, ShardedMessageDispatcher.OverflowPolicy.DROP, debugCounterService, MODULE);
+
+        for (long dpid = 1; dpid < 100; dpid++) {
+            int shard = dispatcher.getShard(mockSwitch(dpid));
+            assertTrue(shard >= 0 && shard < 3);
+            assertEquals(shard, dispatcher.getShard(mockSwitch(dpid)));
+        }
+    }
+}
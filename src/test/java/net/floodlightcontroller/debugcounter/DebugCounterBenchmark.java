@@ -0,0 +1,92 @@
+package net.floodlightcontroller.debugcounter;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+
+/**
+ * Compares the increment throughput of {@link DebugCounterImpl} and
+ * {@link StripedDebugCounterImpl} when one counter is shared by 1 to 32
+ * threads, as ControllerCounters are by the I/O threads. Not a unit test;
+ * run it by hand:
+ *
+ * java -cp target/bin:target/bin-test:lib/* net.floodlightcontroller.debugcounter.DebugCounterBenchmark [seconds per run]
+ *
+ * Each configuration is run once to warm up and then measured. Results are
+ * in millions of increments per second, summed over all threads.
+ */
+public class DebugCounterBenchmark {
+    private static final int[] THREADS = { 1, 2, 4, 8, 16, 32 };
+
+    private static double run(final IDebugCounter counter, int threads, long durationMs)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] counts = new long[threads];
+        final long[] stop = new long[1];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long n = 0;
+                    long end = stop[0];
+                    /* Check the clock every 1024 increments to keep it out of the measurement */
+                    while (true) {
+                        for (int j = 0; j < 1024; j++) {
+                            counter.increment();
+                        }
+                        n += 1024;
+                        if (System.nanoTime() >= end) {
+                            break;
+                        }
+                    }
+                    counts[id] = n;
+                }
+            });
+            workers[i].start();
+        }
+        long begin = System.nanoTime();
+        stop[0] = begin + durationMs * 1000000L;
+        start.countDown();
+        for (Thread t : workers) {
+            t.join();
+        }
+        long elapsedNs = System.nanoTime() - begin;
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (counter.getCounterValue() != total) {
+            throw new IllegalStateException("Counter is " + counter.getCounterValue() + ", expected " + total);
+        }
+        return total * 1000.0 / elapsedNs;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long durationMs = args.length > 0 ? Long.parseLong(args[0]) * 1000 : 2000;
+        System.out.printf("%8s %14s %14s%n", "threads", "atomic Mops/s", "striped Mops/s");
+        for (int threads : THREADS) {
+            double[] results = new double[2];
+            for (int impl = 0; impl < 2; impl++) {
+                double r = 0;
+                for (int iteration = 0; iteration < 2; iteration++) {
+                    IDebugCounter counter = impl == 0 ?
+                            new DebugCounterImpl("bench", "counter", "benchmark",
+                                    Collections.<MetaData>emptyList()) :
+                            new StripedDebugCounterImpl("bench", "counter", "benchmark",
+                                    Collections.<MetaData>emptyList());
+                    r = run(counter, threads, durationMs);
+                }
+                results[impl] = r;
+            }
+            System.out.printf("%8d %14.1f %14.1f%n", threads, results[0], results[1]);
+        }
+    }
+}
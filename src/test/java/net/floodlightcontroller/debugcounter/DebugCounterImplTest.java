@@ -78,4 +78,48 @@ public class DebugCounterImplTest {
         assertEquals(ImmutableSet.of(MetaData.WARN, MetaData.DROP),
                      c2.getMetaData());
     }
+
+    @Test
+    public void testStriped() throws Exception {
+        final StripedDebugCounterImpl c =
+                new StripedDebugCounterImpl("foo", "bar", "The foo bar counter",
+                                            Collections.<MetaData>emptyList());
+        assertEquals(0L, c.getCounterValue());
+        c.increment();
+        c.add(41);
+        assertEquals(42L, c.getCounterValue());
+        try {
+            c.add(-1);
+            fail("Expected Exception not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        c.increment();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(42L + 8 * 10000, c.getCounterValue());
+
+        /* Last modified only moves when the value changed since the last read */
+        long lastModified = c.getLastModified();
+        Thread.sleep(5);
+        assertEquals(lastModified, c.getLastModified());
+        c.increment();
+        assertTrue(c.getLastModified() > lastModified);
+
+        c.reset();
+        assertEquals(0L, c.getCounterValue());
+    }
 }
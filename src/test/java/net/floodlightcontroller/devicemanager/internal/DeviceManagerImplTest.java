@@ -57,6 +57,8 @@ import net.floodlightcontroller.core.HARole;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.MockDebugCounterService;
 import net.floodlightcontroller.devicemanager.IDevice;
@@ -384,6 +386,47 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 		assertEquals(c.getTime(), d.getLastSeen());
 	}
 
+	@Test
+	public void testLastSeenUpdatedInPlace() throws Exception {
+		long t1 = 1000000L;
+		long t2 = t1 + Entity.ACTIVITY_TIMEOUT / 2;
+		Entity entity1 = new Entity(MacAddress.of(1L), VlanVid.ZERO, IPv4Address.NONE, IPv6Address.NONE, DatapathId.NONE, OFPort.ZERO, t1);
+		Entity entity1b = new Entity(MacAddress.of(1L), VlanVid.ZERO, IPv4Address.NONE, IPv6Address.NONE, DatapathId.NONE, OFPort.ZERO, t2);
+
+		Device d = deviceManager.learnDeviceByEntity(entity1);
+		Entity learned = d.getEntities()[0];
+		assertSame(d, deviceManager.learnDeviceByEntity(entity1b));
+		assertSame(learned, d.getEntities()[0]);
+		assertEquals(t2, learned.getLastSeenTime());
+		assertEquals(t1, learned.getActiveSinceTime());
+		assertEquals(new Date(t2), d.getLastSeen());
+
+		/* Seen again after the activity timeout starts a new period of activity */
+		long t3 = t2 + Entity.ACTIVITY_TIMEOUT + 1;
+		learned.setLastSeenTime(t3);
+		assertEquals(t3, learned.getActiveSinceTime());
+	}
+
+	@Test
+	public void testNullDates() throws Exception {
+		/* A null date is 'no time', like Entity.NO_DATE */
+		Entity entity = new Entity(MacAddress.of(1L), VlanVid.ZERO, IPv4Address.NONE, IPv6Address.NONE, DatapathId.NONE, OFPort.ZERO, 1000L);
+		entity.setActiveSince(null);
+		assertEquals(Entity.NO_TIME, entity.getActiveSinceTime());
+		assertEquals(Entity.NO_DATE, entity.getActiveSince());
+		entity.setLastSeenTimestamp(null);
+		assertEquals(Entity.NO_TIME, entity.getLastSeenTime());
+
+		AttachmentPoint ap = new AttachmentPoint(DatapathId.of(1L), OFPort.of(1), null, null);
+		assertEquals(0, ap.getActiveSinceTime());
+		assertEquals(0, ap.getLastSeenTime());
+		ap.setLastSeenTime(1000L);
+		ap.setActiveSince(null);
+		assertEquals(0, ap.getActiveSinceTime());
+		ap.setLastSeen(null);
+		assertEquals(1000L, ap.getLastSeenTime());
+	}
+
 
 	@Test
 	public void testEntityLearning() throws Exception {
@@ -1701,7 +1744,7 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 	 * Note: Entity expiration does not result in device moved notification.
 	 * @throws Exception
 	 */
-	public void doTestEntityExpiration() throws Exception {
+	public void doTestEntityExpiration(long expired) throws Exception {
 		IDeviceListener mockListener =
 				createMock(IDeviceListener.class);
 		expect(mockListener.getName()).andReturn("mockListener").anyTimes();
@@ -1756,7 +1799,9 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 		mockListener.deviceMoved(isA(IDevice.class)); /* the device really should move, since it's losing an attachment point along with having its DPID changed */
 		mockListener.deviceIPV4AddrChanged(isA(IDevice.class));
 		replay(mockListener);
+		IDebugCounter cntExpired = prepareCleanup();
 		deviceManager.entityCleanupTask.reschedule(0, null);
+		assertEquals(expired, cntExpired.getCounterValue());
 
 		d = deviceManager.getDevice(d.getDeviceKey());
 		assertArrayEquals(new IPv4Address[] { IPv4Address.of(2) }, d.getIPv4Addresses());
@@ -1784,7 +1829,7 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 		verify(mockListener);
 	}
 
-	public void doTestDeviceExpiration() throws Exception {
+	public void doTestDeviceExpiration(long expired) throws Exception {
 		IDeviceListener mockListener =
 				createMock(IDeviceListener.class);
 		expect(mockListener.getName()).andReturn("mockListener").anyTimes();
@@ -1828,7 +1873,9 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 
 		mockListener.deviceRemoved(isA(IDevice.class));
 		replay(mockListener);
+		IDebugCounter cntExpired = prepareCleanup();
 		deviceManager.entityCleanupTask.reschedule(0, null);
+		assertEquals(expired, cntExpired.getCounterValue());
 
 		IDevice r = deviceManager.getDevice(d.getDeviceKey());
 		assertNull(r);
@@ -1846,97 +1893,122 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 	/*
 	 * A ConcurrentHashMap for devices (deviceMap) that can be used to test
 	 * code that specially handles concurrent modification situations. In
-	 * particular, we overwrite values() and will replace / remove all the
-	 * elements returned by values.
+	 * particular, once armed, the first conditional replace() or remove()
+	 * of a device replaces / removes that device just before the operation
+	 * is applied, so the operation fails as if another thread got there
+	 * first.
 	 *
-	 * The remove flag in the constructor specifies if devices returned by
-	 * values() should be removed or replaced.
+	 * The remove flag in the constructor specifies if devices should be
+	 * removed or replaced.
 	 */
 	protected static class ConcurrentlyModifiedDeviceMap
 	extends ConcurrentHashMap<Long, Device> {
 		private static final long serialVersionUID = 7784938535441180562L;
 		protected boolean remove;
+		protected boolean armed;
+		private final Set<Long> modified = new HashSet<Long>();
 		public ConcurrentlyModifiedDeviceMap(boolean remove) {
 			super();
 			this.remove = remove;
 		}
 
 		@Override
-		public Collection<Device> values() {
-			// Get the values from the real map and copy them since
-			// the collection returned by values can reflect changed
-			Collection<Device> devs = new ArrayList<Device>(super.values());
-			for (Device d: devs) {
-				if (remove) {
-					// We remove the device from the underlying map
-					super.remove(d.getDeviceKey());
-				} else {
-					super.remove(d.getDeviceKey());
-					// We add a different Device instance with the same
-					// key to the map. We'll do some hackery so the device
-					// is different enough to compare differently in equals
-					// but otherwise looks the same.
-					// It's ugly but it works.
-					// clone entities
-					Device newDevice = d;
-					for (Entity e: d.getEntities()) {
-						Entity newEntity = new Entity (e.macAddress,
-								e.vlan,
-								e.ipv4Address,
-								e.ipv6Address,
-								e.switchDPID,
-								e.switchPort,
-								e.lastSeenTimestamp);
-						if (newEntity.vlan.equals(VlanVid.ZERO)) {
-							newEntity.vlan = VlanVid.ofVlan(1);
-						} else {
-							newEntity.vlan = VlanVid.ofVlan((e.vlan.getVlan() + 1 % 4095) + 1);
-						}
-						newDevice = new Device(newDevice, newEntity, -1);
+		public boolean replace(Long key, Device oldValue, Device newValue) {
+			modify(key);
+			return super.replace(key, oldValue, newValue);
+		}
+
+		@Override
+		public boolean remove(Object key, Object value) {
+			modify((Long) key);
+			return super.remove(key, value);
+		}
+
+		private void modify(Long key) {
+			if (!armed || !modified.add(key))
+				return;
+			Device d = super.get(key);
+			if (d == null)
+				return;
+			if (remove) {
+				// We remove the device from the underlying map
+				super.remove(d.getDeviceKey());
+			} else {
+				super.remove(d.getDeviceKey());
+				// We add a different Device instance with the same
+				// key to the map. We'll do some hackery so the device
+				// is different enough to compare differently in equals
+				// but otherwise looks the same.
+				// It's ugly but it works.
+				// clone entities
+				Device newDevice = d;
+				for (Entity e: d.getEntities()) {
+					Entity newEntity = new Entity (e.macAddress,
+							e.vlan,
+							e.ipv4Address,
+							e.ipv6Address,
+							e.switchDPID,
+							e.switchPort,
+							e.lastSeenTimestamp);
+					if (newEntity.vlan.equals(VlanVid.ZERO)) {
+						newEntity.vlan = VlanVid.ofVlan(1);
+					} else {
+						newEntity.vlan = VlanVid.ofVlan((e.vlan.getVlan() + 1 % 4095) + 1);
 					}
-					assertEquals(false, newDevice.equals(d));
-					super.put(newDevice.getDeviceKey(), newDevice);
+					newDevice = new Device(newDevice, newEntity, -1);
 				}
+				assertEquals(false, newDevice.equals(d));
+				super.put(newDevice.getDeviceKey(), newDevice);
 			}
-			return devs;
 		}
 	}
 
+	/* Arm the concurrently modified device map, if any, and count expired entities */
+	private IDebugCounter prepareCleanup() {
+		if (deviceManager.deviceMap instanceof ConcurrentlyModifiedDeviceMap) {
+			((ConcurrentlyModifiedDeviceMap) deviceManager.deviceMap).armed = true;
+		}
+		DebugCounterServiceImpl counters = new DebugCounterServiceImpl();
+		counters.registerModule("test");
+		deviceManager.cntEntityExpired = counters.registerCounter("test", "entity-expired", "");
+		return deviceManager.cntEntityExpired;
+	}
+
 	@Test
 	public void testEntityExpiration() throws Exception {
-		doTestEntityExpiration();
+		doTestEntityExpiration(1);
 	}
 
 	@Test
 	public void testDeviceExpiration() throws Exception {
-		doTestDeviceExpiration();
+		doTestDeviceExpiration(2);
 	}
 
 	/* Test correct entity cleanup behavior when a concurrent modification
-	 * occurs.
+	 * occurs. The retry removes the expired entity and its clone.
 	 */
 	@Test
 	public void testEntityExpirationConcurrentModification() throws Exception {
 		deviceManager.deviceMap = new ConcurrentlyModifiedDeviceMap(false);
-		doTestEntityExpiration();
+		doTestEntityExpiration(2);
 	}
 
 	/* Test correct entity cleanup behavior when a concurrent remove
-	 * occurs.
+	 * occurs. Nothing is removed by the cleanup itself.
 	 */
 	@Test
 	public void testDeviceExpirationConcurrentRemove() throws Exception {
 		deviceManager.deviceMap = new ConcurrentlyModifiedDeviceMap(true);
-		doTestDeviceExpiration();
+		doTestDeviceExpiration(0);
 	}
 
 	/* Test correct entity cleanup behavior when a concurrent modification
-	 * occurs.
+	 * occurs. The retry removes both entities and their clones.
 	 */
 	@Test
 	public void testDeviceExpirationConcurrentModification() throws Exception {
 		deviceManager.deviceMap = new ConcurrentlyModifiedDeviceMap(false);
-		doTestDeviceExpiration();
+		doTestDeviceExpiration(4);
 	}
 
 
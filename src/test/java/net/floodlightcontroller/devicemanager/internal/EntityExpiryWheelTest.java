@@ -0,0 +1,91 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+public class EntityExpiryWheelTest {
+    private static final long TIMEOUT = 10000;
+    private static final long TICK = 1000;
+    private static final long START = 1000000;
+
+    private static Entity entity(long mac, long lastSeen) {
+        return new Entity(MacAddress.of(mac), VlanVid.ZERO, IPv4Address.NONE, IPv6Address.NONE,
+                DatapathId.of(1L), OFPort.of(1), lastSeen);
+    }
+
+    @Test
+    public void testExpiry() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(TIMEOUT, TICK, START);
+        wheel.add(1L, entity(1, START));
+        wheel.add(2L, entity(2, START + 5000));
+
+        assertTrue(wheel.sweep(START + TIMEOUT).isEmpty());
+        assertEquals(Collections.singleton(1L), wheel.sweep(START + TIMEOUT + 1));
+        assertTrue(wheel.sweep(START + TIMEOUT + 4000).isEmpty());
+        assertEquals(Collections.singleton(2L), wheel.sweep(START + TIMEOUT + 6000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRefreshMovesToLaterBucket() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(TIMEOUT, TICK, START);
+        Entity e = entity(1, START);
+        wheel.add(1L, e);
+        e.setLastSeenTime(START + 8000);
+
+        /* Its original bucket comes due, but it was seen since */
+        assertTrue(wheel.sweep(START + TIMEOUT + 2000).isEmpty());
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.sweep(START + 8000 + TIMEOUT).isEmpty());
+        assertEquals(Collections.singleton(1L), wheel.sweep(START + 8000 + TIMEOUT + 1));
+    }
+
+    @Test
+    public void testAlreadyExpired() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(TIMEOUT, TICK, START);
+        wheel.add(1L, entity(1, START - TIMEOUT - 1));
+        /* Within the same tick as the wheel was created */
+        assertEquals(Collections.singleton(1L), wheel.sweep(START));
+    }
+
+    @Test
+    public void testNoTimeNeverExpires() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(TIMEOUT, TICK, START);
+        Entity e = entity(1, Entity.NO_TIME);
+        wheel.add(1L, e);
+        for (long t = START; t < START + 5 * TIMEOUT; t += 3 * TICK) {
+            assertTrue(wheel.sweep(t).isEmpty());
+        }
+        assertEquals(1, wheel.size());
+
+        /* Until it gets a time */
+        long seen = START + 5 * TIMEOUT;
+        e.setLastSeenTime(seen);
+        Set<Long> expired = Collections.emptySet();
+        for (long t = seen; expired.isEmpty() && t < seen + 3 * TIMEOUT; t += TICK) {
+            expired = wheel.sweep(t);
+        }
+        assertEquals(Collections.singleton(1L), expired);
+    }
+
+    @Test
+    public void testLongPause() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(TIMEOUT, TICK, START);
+        wheel.add(1L, entity(1, START));
+        wheel.add(2L, entity(2, START + 100 * TIMEOUT));
+        /* Many revolutions since the last sweep */
+        Set<Long> expired = wheel.sweep(START + 50 * TIMEOUT);
+        assertEquals(Collections.singleton(1L), expired);
+        assertEquals(1, wheel.size());
+    }
+}
@@ -0,0 +1,107 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+
+public class MacVlanDeviceIndexTest {
+
+    private static Entity entity(long mac, VlanVid vlan) {
+        return new Entity(MacAddress.of(mac), vlan, IPv4Address.NONE, IPv6Address.NONE,
+                DatapathId.of(1L), OFPort.of(1), new Date());
+    }
+
+    @Test
+    public void testCreate() {
+        assertTrue(MacVlanDeviceIndex.create(EnumSet.of(DeviceField.MAC, DeviceField.VLAN))
+                instanceof MacVlanDeviceIndex);
+        assertFalse(MacVlanDeviceIndex.create(EnumSet.of(DeviceField.MAC))
+                instanceof MacVlanDeviceIndex);
+    }
+
+    @Test
+    public void testPack() {
+        /* Untagged, don't care and VLAN 4095 are all distinct */
+        Set<Long> keys = new HashSet<Long>();
+        keys.add(MacVlanDeviceIndex.pack(entity(1L, VlanVid.ZERO)));
+        keys.add(MacVlanDeviceIndex.pack(entity(1L, null)));
+        keys.add(MacVlanDeviceIndex.pack(entity(1L, VlanVid.ofVlan(4095))));
+        keys.add(MacVlanDeviceIndex.pack(entity(2L, VlanVid.ZERO)));
+        keys.add(MacVlanDeviceIndex.pack(entity(0xffffffffffffL, VlanVid.ZERO)));
+        assertEquals(5, keys.size());
+    }
+
+    @Test
+    public void testMatchesDeviceUniqueIndex() {
+        Entity e1a = entity(1L, VlanVid.ofVlan(1));
+        Entity e1b = entity(1L, VlanVid.ofVlan(2));
+        Entity e2 = entity(2L, VlanVid.ZERO);
+        Entity e2alt = new Entity(MacAddress.of(2L), VlanVid.ZERO, IPv4Address.of(2), IPv6Address.NONE,
+                DatapathId.NONE, OFPort.ZERO, Entity.NO_DATE);
+        Entity e3 = entity(0L, VlanVid.ZERO);
+        Device d1 = new Device(null, Long.valueOf(1), null, null, null, Arrays.asList(e1a, e1b), null);
+
+        DeviceUniqueIndex generic = new DeviceUniqueIndex(MacVlanDeviceIndex.KEY_FIELDS);
+        DeviceUniqueIndex fast = new MacVlanDeviceIndex();
+        for (DeviceUniqueIndex idx : Arrays.asList(generic, fast)) {
+            assertTrue(idx.updateIndex(d1, d1.getDeviceKey()));
+            idx.updateIndex(e2, 2L);
+            idx.updateIndex(e3, 3L);
+        }
+        /* Both indexes apply the same check for entities without a key */
+        Entity noKey = entity(0L, null);
+        assertEquals(IndexedEntity.hasNonZeroOrNonNullKeys(MacVlanDeviceIndex.KEY_FIELDS, noKey),
+                new IndexedEntity(MacVlanDeviceIndex.KEY_FIELDS, noKey).hasNonZeroOrNonNullKeys());
+        assertEquals(generic.updateIndex(noKey, 6L), fast.updateIndex(noKey, 6L));
+        for (Entity e : Arrays.asList(e1a, e1b, e2, e2alt, e3, entity(2L, null), entity(4L, VlanVid.ZERO))) {
+            assertEquals(generic.findByEntity(e), fast.findByEntity(e));
+        }
+        assertEquals(toSet(generic.getAll()), toSet(fast.getAll()));
+
+        /* The device key object given to the index is returned as is */
+        Long key = Long.valueOf(1000);
+        fast.updateIndex(entity(5L, VlanVid.ZERO), key);
+        assertSame(key, fast.findByEntity(entity(5L, VlanVid.ZERO)));
+
+        /* Entity of another device is already indexed */
+        Device other = new Device(null, Long.valueOf(42), null, null, null,
+                Collections.singletonList(e2), null);
+        assertFalse(fast.updateIndex(other, 42L));
+
+        fast.removeEntity(e1a, 42L);
+        assertEquals(Long.valueOf(1L), fast.findByEntity(e1a));
+        fast.removeEntity(e1a, 1L);
+        assertNull(fast.findByEntity(e1a));
+        fast.removeEntityIfNeeded(e2, 2L, Collections.singletonList(e2alt));
+        assertEquals(Long.valueOf(2L), fast.findByEntity(e2));
+        fast.removeEntityIfNeeded(e2, 2L, Collections.singletonList(e1b));
+        assertNull(fast.findByEntity(e2));
+        fast.removeEntity(e3);
+        assertNull(fast.findByEntity(e3));
+        assertEquals(Long.valueOf(1L), fast.findByEntity(e1b));
+    }
+
+    private static Set<Long> toSet(Iterator<Long> it) {
+        Set<Long> s = new HashSet<Long>();
+        while (it.hasNext()) {
+            s.add(it.next());
+        }
+        return s;
+    }
+}
@@ -0,0 +1,92 @@
+package net.floodlightcontroller.forwarding;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.routing.PathId;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class FlowDecisionCacheTest {
+    private static final long MS = 1000000L;
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private final DatapathId d1 = DatapathId.of(1);
+    private final DatapathId d2 = DatapathId.of(2);
+
+    private FlowDecisionCache.Key key(long dstMac) {
+        Match m = factory.buildMatch()
+                .setExact(MatchField.IN_PORT, OFPort.of(1))
+                .setExact(MatchField.ETH_DST, MacAddress.of(dstMac))
+                .build();
+        return new FlowDecisionCache.Key(d1, OFPort.of(1), m);
+    }
+
+    private FlowDecisionCache.Decision decision(long version, long createdNs) {
+        Path path = new Path(new PathId(d1, d2), Arrays.asList(
+                new NodePortTuple(d1, OFPort.of(1)), new NodePortTuple(d1, OFPort.of(2)),
+                new NodePortTuple(d2, OFPort.of(1)), new NodePortTuple(d2, OFPort.of(3))));
+        return new FlowDecisionCache.Decision(version, createdNs, path, U64.of(1 << 24), U64.of(2));
+    }
+
+    @Test
+    public void testGet() {
+        FlowDecisionCache cache = new FlowDecisionCache(100, 1000);
+        FlowDecisionCache.Decision d = decision(7, 0);
+        assertNull(cache.putIfAbsent(key(1), d));
+        assertSame(d, cache.get(key(1), 7, 999 * MS));
+        assertEquals(OFPort.of(2), d.getFirstHopOutPort());
+        assertNull(cache.get(key(2), 7, 0));
+
+        /* Stale once the topology changes */
+        assertNull(cache.get(key(1), 8, 0));
+        assertEquals(0, cache.size());
+
+        /* and once the time to live has passed */
+        cache.putIfAbsent(key(1), d);
+        assertNull(cache.get(key(1), 7, 1001 * MS));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        FlowDecisionCache cache = new FlowDecisionCache(100, 1000);
+        FlowDecisionCache.Decision first = decision(7, 0);
+        FlowDecisionCache.Decision second = decision(7, 10 * MS);
+        assertNull(cache.putIfAbsent(key(1), first));
+        /* The first route pushed wins */
+        assertSame(first, cache.putIfAbsent(key(1), second));
+
+        /* An expired decision is replaced */
+        FlowDecisionCache.Decision later = decision(7, 2000 * MS);
+        assertNull(cache.putIfAbsent(key(1), later));
+        assertSame(later, cache.get(key(1), 7, 2000 * MS));
+
+        cache.remove(key(1), first); /* no longer there */
+        assertSame(later, cache.get(key(1), 7, 2000 * MS));
+        cache.remove(key(1), later);
+        assertNull(cache.get(key(1), 7, 2000 * MS));
+    }
+
+    @Test
+    public void testCapacity() {
+        FlowDecisionCache cache = new FlowDecisionCache(10, 1000);
+        for (long mac = 1; mac <= 100; mac++) {
+            cache.putIfAbsent(key(mac), decision(7, 0));
+        }
+        assertEquals(10, cache.size());
+        assertNotNull(cache.get(key(100), 7, 0));
+        assertNull(cache.get(key(1), 7, 0));
+    }
+}
@@ -21,6 +21,8 @@ import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -1074,4 +1076,45 @@ public class ForwardingTest extends FloodlightTestCase {
 		forwarding.deleteFlowsByDescriptor(descriptors);
 		verify(routingEngine);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testFlowSetIdRegistry() {
+		Forwarding.FlowSetIdRegistry registry = new Forwarding.FlowSetIdRegistry();
+		DatapathId d1 = DatapathId.of(1);
+		DatapathId d2 = DatapathId.of(2);
+		NodePortTuple s1p1 = new NodePortTuple(d1, OFPort.of(1));
+		NodePortTuple s1p2 = new NodePortTuple(d1, OFPort.of(2));
+		NodePortTuple s2p1 = new NodePortTuple(d2, OFPort.of(1));
+		NodePortTuple s2p2 = new NodePortTuple(d2, OFPort.of(2));
+
+		U64 a = registry.generateFlowSetId();
+		U64 b = registry.generateFlowSetId();
+		U64 c = registry.generateFlowSetId();
+		registry.registerFlowSetId(Arrays.asList(s1p1, s1p2, s2p1, s2p2), a);
+		registry.registerFlowSetId(Arrays.asList(s1p1, s1p2), b);
+		registry.registerFlowSetId(s2p2, c);
+		assertEquals(3, registry.getFlowSetCount());
+		assertEquals(new HashSet<U64>(Arrays.asList(a, b)), registry.getFlowSetIds(s1p1));
+		assertEquals(new HashSet<NodePortTuple>(Arrays.asList(s1p1, s1p2)), registry.getNodePortTuples(b));
+
+		/* Port down removes the flowsets using it, everywhere */
+		Map<U64, Set<NodePortTuple>> removed = registry.removeNodePortTuple(s1p2);
+		assertEquals(2, removed.size());
+		assertEquals(4, removed.get(a).size());
+		assertEquals(1, registry.getFlowSetCount());
+		assertTrue(registry.getFlowSetIds(s1p1).isEmpty());
+		assertEquals(Collections.singleton(c), registry.getFlowSetIds(s2p2));
+		assertTrue(registry.removeNodePortTuple(s1p2).isEmpty());
+
+		/* Flow removed on one switch forgets that switch's ports of the flowset */
+		U64 cookie = forwarding.makeForwardingCookie(null, c);
+		assertEquals(c, Forwarding.FlowSetIdRegistry.getFlowSetId(cookie));
+		registry.registerFlowSetId(s1p1, c);
+		registry.removeFlowSetId(d2, Forwarding.FlowSetIdRegistry.getFlowSetId(cookie));
+		assertEquals(Collections.singleton(s1p1), registry.getNodePortTuples(c));
+		assertTrue(registry.getFlowSetIds(s2p2).isEmpty());
+		registry.removeFlowSetId(d1, c);
+		assertEquals(0, registry.getFlowSetCount());
+		assertTrue(registry.getFlowSetIds(s1p1).isEmpty());
+	}
+}
@@ -0,0 +1,142 @@
+package net.floodlightcontroller.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+public class EthernetViewTest {
+
+    private Ethernet buildTcpPacket(short vlan) {
+        return (Ethernet) new Ethernet()
+            .setDestinationMACAddress("00:11:22:33:44:55")
+            .setSourceMACAddress("00:44:33:22:11:00")
+            .setVlanID(vlan)
+            .setPriorityCode((byte) 3)
+            .setEtherType(EthType.IPv4)
+            .setPayload(new IPv4()
+                .setTtl((byte) 128)
+                .setSourceAddress("192.168.1.1")
+                .setDestinationAddress("192.168.1.2")
+                .setPayload(new TCP()
+                    .setSourcePort((short) 5000)
+                    .setDestinationPort((short) 80)
+                    .setFlags((short) 0x02)
+                    .setPayload(new Data(new byte[] { 0x01, 0x02 }))));
+    }
+
+    @Test
+    public void testTcpFields() {
+        byte[] data = buildTcpPacket(Ethernet.VLAN_UNTAGGED).serialize();
+        EthernetView v = new EthernetView(data);
+
+        assertTrue(v.isValid());
+        assertEquals(MacAddress.of("00:11:22:33:44:55"), v.getDestinationMACAddress());
+        assertEquals(MacAddress.of("00:44:33:22:11:00"), v.getSourceMACAddress());
+        assertEquals(EthType.IPv4, v.getEtherType());
+        assertFalse(v.isVlanTagged());
+        assertEquals(Ethernet.VLAN_UNTAGGED, v.getVlanID());
+
+        assertTrue(v.isIPv4());
+        assertFalse(v.isFragment());
+        assertEquals(IPv4Address.of("192.168.1.1"), v.getIPv4Source());
+        assertEquals(IPv4Address.of("192.168.1.2"), v.getIPv4Destination());
+        assertEquals(IpProtocol.TCP, v.getIpProtocol());
+        assertEquals((byte) 128, v.getTtl());
+
+        assertTrue(v.hasTransportPorts());
+        assertEquals(TransportPort.of(5000), v.getTransportSource());
+        assertEquals(TransportPort.of(80), v.getTransportDestination());
+        assertEquals(0x02, v.getTcpFlags());
+        assertFalse(v.isMaterialized());
+    }
+
+    @Test
+    public void testVlanAndOffset() {
+        byte[] frame = buildTcpPacket((short) 42).serialize();
+        byte[] data = new byte[frame.length + 10];
+        System.arraycopy(frame, 0, data, 4, frame.length);
+        EthernetView v = new EthernetView(data, 4, frame.length);
+
+        assertTrue(v.isVlanTagged());
+        assertEquals(42, v.getVlanID());
+        assertEquals(3, v.getPriorityCode());
+        assertEquals(EthType.IPv4, v.getEtherType());
+        assertEquals(TransportPort.of(80), v.getTransportDestination());
+    }
+
+    @Test
+    public void testToEthernet() {
+        Ethernet eth = buildTcpPacket((short) 42);
+        EthernetView v = new EthernetView(eth.serialize());
+
+        Ethernet materialized = v.toEthernet();
+        assertTrue(v.isMaterialized());
+        assertSame(materialized, v.toEthernet());
+        assertEquals(eth.getSourceMACAddress(), materialized.getSourceMACAddress());
+        assertEquals(eth.getVlanID(), materialized.getVlanID());
+        IPv4 ip = (IPv4) materialized.getPayload();
+        assertEquals(IPv4Address.of("192.168.1.2"), ip.getDestinationAddress());
+        assertEquals(TransportPort.of(5000), ((TCP) ip.getPayload()).getSourcePort());
+    }
+
+    @Test
+    public void testNonIp() {
+        Ethernet eth = new Ethernet()
+            .setDestinationMACAddress("ff:ff:ff:ff:ff:ff")
+            .setSourceMACAddress("00:44:33:22:11:00")
+            .setEtherType(EthType.of(0x88b5))
+            .setPad(true);
+        eth.setPayload(new Data(new byte[] { 0x01 }));
+        EthernetView v = new EthernetView(eth.serialize());
+
+        assertTrue(v.isBroadcast());
+        assertTrue(v.isMulticast());
+        assertEquals(EthType.of(0x88b5), v.getEtherType());
+        assertFalse(v.isIPv4());
+        assertFalse(v.hasTransportPorts());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotIPv4() {
+        new EthernetView(new byte[20]).getIPv4Source();
+    }
+
+    @Test
+    public void testTruncated() {
+        EthernetView v = new EthernetView(new byte[10]);
+        assertFalse(v.isValid());
+        assertFalse(v.isIPv4());
+    }
+
+    @Test
+    public void testTruncatedFrame() {
+        byte[] data = buildTcpPacket(Ethernet.VLAN_UNTAGGED).serialize();
+
+        EthernetView v = new EthernetView(data, 0, 8);
+        assertFalse(v.isValid());
+        assertEquals(MacAddress.of("00:11:22:33:44:55"), v.getDestinationMACAddress());
+        assertNull(v.getSourceMACAddress());
+        assertFalse(v.isBroadcast());
+        assertFalse(v.isMulticast());
+        assertFalse(v.isIPv4());
+        assertFalse(v.hasTransportPorts());
+
+        v = new EthernetView(data, 0, 4);
+        assertNull(v.getDestinationMACAddress());
+        assertNull(v.getSourceMACAddress());
+        assertFalse(v.isBroadcast());
+
+        v = new EthernetView(new byte[0]);
+        assertNull(v.getDestinationMACAddress());
+        assertFalse(v.isMulticast());
+    }
+}
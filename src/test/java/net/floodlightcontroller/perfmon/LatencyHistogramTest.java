@@ -0,0 +1,69 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    private static void assertWithin(long expected, long actual, double relativeError) {
+        assertTrue("expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + (long) (expected * relativeError) + 128);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100000; v++) {
+            h.record(v * 1000); /* 1us to 100ms */
+        }
+        assertEquals(100000, h.getTotalCount());
+        assertEquals(1000, h.getMin());
+        assertEquals(100000000, h.getMax());
+        assertEquals(50000500, h.getMean());
+        assertWithin(50000000, h.getValueAtPercentile(50), 0.035);
+        assertWithin(99000000, h.getValueAtPercentile(99), 0.035);
+        assertWithin(99900000, h.getValueAtPercentile(99.9), 0.035);
+        assertEquals(h.getMax(), h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testSmallAndLargeValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        h.record(0);
+        h.record(100);
+        h.record(LatencyHistogram.HIGHEST_TRACKABLE_NS * 2);
+        assertEquals(4, h.getTotalCount());
+        assertEquals(0, h.getMin());
+        assertEquals(LatencyHistogram.HIGHEST_TRACKABLE_NS, h.getMax());
+        assertTrue(h.getValueAtPercentile(50) < 128);
+        assertEquals(LatencyHistogram.HIGHEST_TRACKABLE_NS, h.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    public void testAddAndReset() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            a.record(10000);
+        }
+        b.record(5000000);
+
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.add(a);
+        merged.add(b);
+        assertEquals(100, merged.getTotalCount());
+        assertEquals(10000, merged.getMin());
+        assertEquals(5000000, merged.getMax());
+        assertWithin(10000, merged.getValueAtPercentile(99), 0.035);
+        assertEquals(5000000, merged.getValueAtPercentile(99.9));
+
+        a.reset();
+        assertEquals(0, a.getTotalCount());
+        assertEquals(0, a.getMin());
+        assertEquals(0, a.getMax());
+        assertEquals(0, a.getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,184 @@
+package net.floodlightcontroller.statistics;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class StatsPollerTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private ScheduledExecutorService executor;
+    private IOFSwitchService switchService;
+    /* The future of the last request sent to each switch */
+    private final Map<DatapathId, SettableFuture<List<OFStatsReply>>> requests =
+            new ConcurrentHashMap<DatapathId, SettableFuture<List<OFStatsReply>>>();
+    private final Map<DatapathId, List<OFStatsReply>> replies =
+            new ConcurrentHashMap<DatapathId, List<OFStatsReply>>();
+
+    private final StatsPoller.IStatsReplyHandler handler = new StatsPoller.IStatsReplyHandler() {
+        @Override
+        public void onReply(DatapathId dpid, List<OFStatsReply> r) {
+            replies.put(dpid, r);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        Map<DatapathId, IOFSwitch> switches = new HashMap<DatapathId, IOFSwitch>();
+        for (long i = 1; i <= 5; i++) {
+            IOFSwitch sw = mockSwitch(DatapathId.of(i));
+            switches.put(sw.getId(), sw);
+        }
+        switchService = createMock(IOFSwitchService.class);
+        for (Map.Entry<DatapathId, IOFSwitch> e : switches.entrySet()) {
+            expect(switchService.getSwitch(e.getKey())).andReturn(e.getValue()).anyTimes();
+        }
+        replay(switchService);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private IOFSwitch mockSwitch(final DatapathId dpid) {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(dpid).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        expect(sw.writeStatsRequest(anyObject(OFStatsRequest.class))).andAnswer(new IAnswer<ListenableFuture<List<OFStatsReply>>>() {
+            @Override
+            public ListenableFuture<List<OFStatsReply>> answer() {
+                SettableFuture<List<OFStatsReply>> f = SettableFuture.create();
+                requests.put(dpid, f);
+                return f;
+            }
+        }).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    private List<OFStatsReply> reply() {
+        return Collections.<OFStatsReply>singletonList(factory.buildPortStatsReply().build());
+    }
+
+    @Test
+    public void testOutstandingLimit() {
+        StatsPoller poller = new StatsPoller(OFStatsType.PORT, handler, switchService, executor, 2, 60000);
+        List<DatapathId> dpids = new ArrayList<DatapathId>();
+        for (long i = 1; i <= 5; i++) {
+            dpids.add(DatapathId.of(i));
+        }
+        poller.pollAll(dpids, 0);
+        assertEquals(2, requests.size());
+        assertEquals(2, poller.getOutstanding());
+        assertEquals(5, poller.getPending());
+
+        /* Already pending, so not polled twice */
+        poller.poll(DatapathId.of(1));
+        assertEquals(5, poller.getPending());
+
+        /* Each reply lets one more request out */
+        int replied = 0;
+        while (replied < 5) {
+            DatapathId next = null;
+            for (DatapathId d : requests.keySet()) {
+                if (!replies.containsKey(d)) {
+                    next = d;
+                    break;
+                }
+            }
+            requests.get(next).set(reply());
+            replied++;
+            assertTrue(poller.getOutstanding() <= 2);
+        }
+        assertEquals(5, replies.size());
+        assertEquals(0, poller.getOutstanding());
+        assertEquals(0, poller.getPending());
+    }
+
+    @Test(timeout = 10000)
+    public void testTimeout() throws Exception {
+        StatsPoller poller = new StatsPoller(OFStatsType.PORT, handler, switchService, executor, 1, 50);
+        poller.poll(DatapathId.of(1));
+        poller.poll(DatapathId.of(2));
+        assertEquals(1, requests.size());
+
+        /* Switch 1 never replies; after the timeout switch 2 gets its turn */
+        while (!requests.containsKey(DatapathId.of(2))) {
+            Thread.sleep(10);
+        }
+        requests.get(DatapathId.of(2)).set(reply());
+        assertEquals(1, replies.size());
+        assertTrue(replies.containsKey(DatapathId.of(2)));
+        assertEquals(0, poller.getPending());
+    }
+
+    @Test(timeout = 10000)
+    public void testStop() throws Exception {
+        StatsPoller poller = new StatsPoller(OFStatsType.PORT, handler, switchService, executor, 1, 60000);
+        List<DatapathId> dpids = new ArrayList<DatapathId>();
+        for (long i = 1; i <= 5; i++) {
+            dpids.add(DatapathId.of(i));
+        }
+        /* Spread over a long interval so most polls are still delayed */
+        poller.pollAll(dpids, 200);
+        poller.stop();
+        assertTrue(poller.isStopped());
+        int sent = requests.size();
+        Thread.sleep(400);
+        assertEquals(sent, requests.size());
+        /* Only the request already sent is still pending */
+        assertEquals(poller.getOutstanding(), poller.getPending());
+
+        /* Nothing is sent once stopped */
+        poller.poll(DatapathId.of(1));
+        poller.pollAll(dpids, 0);
+        assertEquals(sent, requests.size());
+    }
+
+    @Test
+    public void testOffset() {
+        long intervalMs = 10000;
+        long first = StatsPoller.getOffset(DatapathId.of(1), intervalMs);
+        assertEquals(first, StatsPoller.getOffset(DatapathId.of(1), intervalMs));
+        boolean differ = false;
+        for (long i = 1; i <= 100; i++) {
+            long offset = StatsPoller.getOffset(DatapathId.of(i), intervalMs);
+            assertTrue(offset >= 0 && offset < intervalMs);
+            differ |= offset != first;
+        }
+        assertTrue(differ);
+        assertEquals(0, StatsPoller.getOffset(DatapathId.of(1), 0));
+    }
+}
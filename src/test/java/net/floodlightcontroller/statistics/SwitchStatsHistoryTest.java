@@ -0,0 +1,154 @@
+package net.floodlightcontroller.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+public class SwitchStatsHistoryTest {
+	private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+	private OFFlowStatsEntry flow(int inPort, long durationSec, long packets, long bytes) {
+		Match match = factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(inPort)).build();
+		return factory.buildFlowStatsEntry()
+				.setTableId(TableId.of(0))
+				.setPriority(100)
+				.setCookie(U64.of(1))
+				.setMatch(match)
+				.setDurationSec(durationSec)
+				.setDurationNsec(0)
+				.setPacketCount(U64.of(packets))
+				.setByteCount(U64.of(bytes))
+				.build();
+	}
+
+	private List<OFStatsReply> flowReply(OFFlowStatsEntry... entries) {
+		List<OFFlowStatsEntry> l = new ArrayList<OFFlowStatsEntry>();
+		Collections.addAll(l, entries);
+		return Collections.<OFStatsReply>singletonList(factory.buildFlowStatsReply().setEntries(l).build());
+	}
+
+	private List<OFStatsReply> tableReply(long active, long lookups, long matched) {
+		return Collections.<OFStatsReply>singletonList(factory.buildTableStatsReply()
+				.setEntries(Collections.singletonList(factory.buildTableStatsEntry()
+						.setTableId(TableId.of(0))
+						.setActiveCount(active)
+						.setLookupCount(U64.of(lookups))
+						.setMatchedCount(U64.of(matched))
+						.build()))
+				.build());
+	}
+
+	@Test
+	public void testFlowRates() {
+		SwitchStatsHistory h = new SwitchStatsHistory(4);
+		h.updateFlows(flowReply(flow(1, 10, 100, 10000)), 1000);
+		assertTrue(h.getFlowSamples(0).isEmpty()); /* baseline only */
+
+		h.updateFlows(flowReply(flow(1, 20, 600, 60000), flow(2, 5, 10, 1000)), 11000);
+		Map<FlowStatsKey, List<RateSample>> flows = h.getFlowSamples(0);
+		assertEquals(1, flows.size());
+		RateSample s = flows.values().iterator().next().get(0);
+		assertEquals(10000000000L, s.getElapsedNs());
+		assertEquals(50.0, s.getPacketsPerSecond(), 0.001);
+		assertEquals(5000.0, s.getBytesPerSecond(), 0.001);
+
+		h.updateFlows(flowReply(flow(1, 30, 1600, 160000), flow(2, 15, 110, 11000)), 21000);
+		h.updateFlows(flowReply(flow(1, 40, 1600, 160000), flow(2, 25, 210, 21000)), 31000);
+		flows = h.getFlowSamples(0);
+		assertEquals(2, flows.size());
+		FlowStatsKey key1 = FlowStatsKey.of(flow(1, 0, 0, 0));
+		assertEquals(3, flows.get(key1).size());
+		RateSample avg = RateSample.over(flows.get(key1));
+		assertEquals(1500, avg.getPacketDelta());
+		assertEquals(50.0, avg.getPacketsPerSecond(), 0.001);
+
+		/* Only samples inside the window */
+		flows = h.getFlowSamples(21000);
+		assertEquals(2, flows.get(key1).size());
+		assertEquals(0.0, RateSample.over(flows.get(key1).subList(1, 2)).getPacketsPerSecond(), 0.001);
+		assertNull(RateSample.over(Collections.<RateSample>emptyList()));
+
+		/* Reinstalled flow starts a new baseline; removed flow is forgotten */
+		h.updateFlows(flowReply(flow(1, 1, 5, 500)), 41000);
+		h.updateFlows(flowReply(flow(1, 11, 105, 10500)), 51000);
+		flows = h.getFlowSamples(41000);
+		assertEquals(1, flows.size());
+		assertEquals(1, flows.get(key1).size());
+		assertEquals(10.0, flows.get(key1).get(0).getPacketsPerSecond(), 0.001);
+		/* The buffer keeps only the latest four samples */
+		assertEquals(4, h.getFlowSamples(0).get(key1).size());
+	}
+
+	@Test
+	public void testTableRates() {
+		SwitchStatsHistory h = new SwitchStatsHistory(4);
+		h.updateTables(tableReply(5, 1000, 900), 1000, 1000000000L);
+		h.updateTables(tableReply(7, 3000, 2500), 3000, 3000000000L);
+		Map<TableId, List<TableRateSample>> tables = h.getTableSamples(0);
+		TableRateSample s = tables.get(TableId.of(0)).get(0);
+		assertEquals(7, s.getActiveCount());
+		assertEquals(1000.0, s.getLookupsPerSecond(), 0.001);
+		assertEquals(800.0, s.getMatchesPerSecond(), 0.001);
+	}
+
+	@Test
+	public void testRingBuffer() {
+		StatsRingBuffer<RateSample> buf = new StatsRingBuffer<RateSample>(3);
+		assertNull(buf.getLatest());
+		assertTrue(buf.getSince(0).isEmpty());
+		for (long t = 1; t <= 5; t++) {
+			buf.add(new RateSample(t, 1, t, t, 1, 1));
+		}
+		assertEquals(5, buf.getLatest().getTimeMs());
+		List<RateSample> all = buf.getSince(0);
+		assertEquals(3, all.size());
+		assertEquals(3, all.get(0).getTimeMs());
+		assertEquals(5, all.get(2).getTimeMs());
+		assertEquals(2, buf.getSince(4).size());
+	}
+
+	@Test(timeout = 30000)
+	public void testRingBufferConcurrentRead() throws Exception {
+		final int capacity = 4;
+		final long count = 200000;
+		final StatsRingBuffer<RateSample> buf = new StatsRingBuffer<RateSample>(capacity);
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (long t = 1; t <= count; t++) {
+					buf.add(new RateSample(t, 1, t, t, 1, 1));
+				}
+			}
+		});
+		writer.start();
+		/* Every read is a run of consecutive samples, never a newer one out of order */
+		while (writer.isAlive()) {
+			List<RateSample> read = buf.getSince(0);
+			assertTrue(read.size() <= capacity);
+			for (int i = 1; i < read.size(); i++) {
+				assertEquals(read.get(i - 1).getTimeMs() + 1, read.get(i).getTimeMs());
+			}
+		}
+		writer.join();
+		List<RateSample> read = buf.getSince(0);
+		assertEquals(capacity, read.size());
+		assertEquals(count, read.get(capacity - 1).getTimeMs());
+	}
+}
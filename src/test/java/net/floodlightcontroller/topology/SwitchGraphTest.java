@@ -0,0 +1,108 @@
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.BroadcastTree;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class SwitchGraphTest {
+    private static final DatapathId S1 = DatapathId.of(1);
+    private static final DatapathId S2 = DatapathId.of(2);
+    private static final DatapathId S3 = DatapathId.of(3);
+    private static final DatapathId S4 = DatapathId.of(4);
+
+    private SwitchGraph graph;
+    private Map<Link, Integer> linkCost;
+
+    /*
+     * 1 -> 2 -> 4 with cost 1 each, 1 -> 3 -> 4 with cost 2 each
+     */
+    @Before
+    public void setUp() {
+        Set<DatapathId> switches = new HashSet<DatapathId>();
+        Map<DatapathId, Set<Link>> links = new HashMap<DatapathId, Set<Link>>();
+        linkCost = new HashMap<Link, Integer>();
+        addLink(switches, links, S1, 1, S2, 1, 1);
+        addLink(switches, links, S2, 2, S4, 1, 1);
+        addLink(switches, links, S1, 2, S3, 1, 2);
+        addLink(switches, links, S3, 2, S4, 2, 2);
+        graph = new SwitchGraph(switches, links);
+    }
+
+    private void addLink(Set<DatapathId> switches, Map<DatapathId, Set<Link>> links,
+            DatapathId src, int srcPort, DatapathId dst, int dstPort, int cost) {
+        Link l = new Link(src, OFPort.of(srcPort), dst, OFPort.of(dstPort), U64.ZERO);
+        for (DatapathId sw : new DatapathId[] { src, dst }) {
+            switches.add(sw);
+            if (!links.containsKey(sw)) {
+                links.put(sw, new HashSet<Link>());
+            }
+            links.get(sw).add(l);
+        }
+        linkCost.put(l, cost);
+    }
+
+    @Test
+    public void testShortestPath() {
+        SwitchGraph.Search search = graph.newSearch();
+        search.run(graph.getIndex(S4), graph.getCosts(linkCost));
+
+        List<NodePortTuple> path = search.getPathFrom(S1);
+        assertEquals(4, path.size());
+        assertEquals(new NodePortTuple(S1, OFPort.of(1)), path.get(0));
+        assertEquals(new NodePortTuple(S2, OFPort.of(1)), path.get(1));
+        assertEquals(new NodePortTuple(S2, OFPort.of(2)), path.get(2));
+        assertEquals(new NodePortTuple(S4, OFPort.of(1)), path.get(3));
+
+        BroadcastTree bt = search.toBroadcastTree();
+        assertNull(bt.getTreeLink(S4));
+        assertEquals(0, bt.getCost(S4));
+        assertEquals(2, bt.getCost(S1));
+        assertEquals(2, bt.getCost(S3));
+    }
+
+    @Test
+    public void testRemoveAndRestore() {
+        SwitchGraph.Search search = graph.newSearch();
+        int[] costs = graph.getCosts(linkCost);
+        int root = graph.getIndex(S4);
+
+        search.removeLinksInto(new NodePortTuple(S4, OFPort.of(1)));
+        search.run(root, costs);
+        List<NodePortTuple> path = search.getPathFrom(S1);
+        assertEquals(4, path.size());
+        assertEquals(new NodePortTuple(S3, OFPort.of(1)), path.get(1));
+        assertTrue(search.getPathFrom(S2).isEmpty());
+
+        search.restore();
+        search.removeSwitch(S2);
+        search.removeSwitch(S3);
+        search.run(root, costs);
+        assertTrue(search.getPathFrom(S1).isEmpty());
+
+        search.restore();
+        search.run(root, costs);
+        assertEquals(new NodePortTuple(S2, OFPort.of(1)), search.getPathFrom(S1).get(1));
+    }
+
+    @Test
+    public void testUnknownSwitch() {
+        assertEquals(-1, graph.getIndex(DatapathId.of(5)));
+        assertEquals(4, graph.getSwitchCount());
+    }
+}
@@ -44,10 +44,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.HOPCOUNT;
+import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.HOPCOUNT_AVOID_TUNNELS;
 import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.LATENCY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class TopologyInstanceTest {
@@ -933,4 +938,204 @@ public class TopologyInstanceTest {
         verifyRoute(r10, r10.size());
     }
     
-}
\ No newline at end of file
+    @Test
+    public void testIncrementalPathComputation() throws Exception {
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {1, 2, 4, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 3, 5, 2, DIRECT_LINK},
+                {3, 4, 6, 2, DIRECT_LINK},
+                {4, 2, 2, 3, DIRECT_LINK},
+                {4, 3, 3, 2, DIRECT_LINK},
+                {4, 4, 5, 1, DIRECT_LINK},
+                {5, 3, 6, 1, DIRECT_LINK},
+        };
+        int [] lat = {3,2,4,2,1,1,2,3,2};
+        int k = topologyManager.getMaxPathsToCompute();
+        NodePortTuple removedSrc = new NodePortTuple(DatapathId.of(3), OFPort.of(4));
+        NodePortTuple removedDst = new NodePortTuple(DatapathId.of(6), OFPort.of(2));
+
+        topologyManager.setPathMetric(HOPCOUNT);
+        TopologyManager.setIncrementalPathComputationInternal(true);
+        try {
+            configureTopology(linkArray, lat);
+
+            /* Remove a link and apply it as a delta against the previous instance */
+            topologyManager.removeLink(DatapathId.of(3), OFPort.of(4), DatapathId.of(6), OFPort.of(2));
+            topologyManager.createNewInstance();
+            TopologyInstance incremental = topologyManager.getCurrentInstance();
+
+            /* Forced recomputation always starts from scratch */
+            topologyManager.createNewInstance("test", true);
+            TopologyInstance full = topologyManager.getCurrentInstance();
+
+            for (int i = 1; i <= 6; i++) {
+                for (int j = 1; j <= 6; j++) {
+                    List<Path> ip = incremental.getPathsFast(DatapathId.of(i), DatapathId.of(j), k);
+                    List<Path> fp = full.getPathsFast(DatapathId.of(i), DatapathId.of(j), k);
+                    assertEquals(fp.isEmpty(), ip.isEmpty());
+                    if (!ip.isEmpty()) {
+                        assertEquals(fp.get(0).getHopCount(), ip.get(0).getHopCount());
+                    }
+                    for (Path p : ip) {
+                        assertFalse(p.getPath().contains(removedSrc));
+                        assertFalse(p.getPath().contains(removedDst));
+                    }
+                }
+            }
+        } finally {
+            TopologyManager.setIncrementalPathComputationInternal(false);
+        }
+    }
+
+    @Test
+    public void testIncrementalPathComputationTunnelWeight() throws Exception {
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {1, 3, 3, 3, DIRECT_LINK},
+                {4, 1, 5, 1, DIRECT_LINK},
+                {5, 2, 6, 1, DIRECT_LINK},
+        };
+        int [] lat = {1,1,1,1,1};
+        int k = topologyManager.getMaxPathsToCompute();
+        DatapathId src = DatapathId.of(1);
+        DatapathId dst = DatapathId.of(3);
+
+        /* The tunnel is priced by the number of switches with links */
+        topologyManager.addTunnelPort(DatapathId.of(1), OFPort.of(3));
+        topologyManager.addTunnelPort(DatapathId.of(3), OFPort.of(3));
+        topologyManager.setPathMetric(HOPCOUNT_AVOID_TUNNELS);
+        TopologyManager.setIncrementalPathComputationInternal(true);
+        try {
+            configureTopology(linkArray, lat);
+            List<Path> before = topologyManager.getCurrentInstance().getPathsFast(src, dst, k);
+
+            /* Switch 6 loses its only link, which reprices the tunnel between 1 and 3 */
+            topologyManager.removeLink(DatapathId.of(5), OFPort.of(2), DatapathId.of(6), OFPort.of(1));
+            topologyManager.createNewInstance();
+            TopologyInstance incremental = topologyManager.getCurrentInstance();
+            assertNotSame(before, incremental.getPathsFast(src, dst, k));
+
+            topologyManager.createNewInstance("test", true);
+            TopologyInstance full = topologyManager.getCurrentInstance();
+            for (int i = 1; i <= 3; i++) {
+                for (int j = 1; j <= 3; j++) {
+                    assertEquals(full.getPathsFast(DatapathId.of(i), DatapathId.of(j), k),
+                            incremental.getPathsFast(DatapathId.of(i), DatapathId.of(j), k));
+                }
+            }
+        } finally {
+            TopologyManager.setIncrementalPathComputationInternal(false);
+        }
+    }
+
+    @Test
+    public void testLazyPathComputation() throws Exception {
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {1, 2, 4, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 3, 5, 2, DIRECT_LINK},
+                {3, 4, 6, 2, DIRECT_LINK},
+                {4, 2, 2, 3, DIRECT_LINK},
+                {4, 3, 3, 2, DIRECT_LINK},
+                {4, 4, 5, 1, DIRECT_LINK},
+                {5, 3, 6, 1, DIRECT_LINK},
+        };
+        int [] lat = {3,2,4,2,1,1,2,3,2};
+        int k = topologyManager.getMaxPathsToCompute();
+
+        topologyManager.setPathMetric(HOPCOUNT);
+        configureTopology(linkArray, lat);
+        TopologyInstance eager = topologyManager.getCurrentInstance();
+
+        TopologyManager.setLazyPathComputationInternal(true);
+        try {
+            topologyManager.createNewInstance("test", true);
+            TopologyInstance lazy = topologyManager.getCurrentInstance();
+
+            for (int i = 1; i <= 6; i++) {
+                for (int j = 1; j <= 6; j++) {
+                    DatapathId src = DatapathId.of(i);
+                    DatapathId dst = DatapathId.of(j);
+                    assertEquals(eager.getPathsFast(src, dst, k), lazy.getPathsFast(src, dst, k));
+                    assertEquals(eager.getPath(src, dst), lazy.getPath(src, dst));
+                }
+                /* Both modes flood along the same tree */
+                assertEquals(eager.swBroadcastPorts(DatapathId.of(i)), lazy.swBroadcastPorts(DatapathId.of(i)));
+            }
+            assertEquals(eager.getAllBroadcastPorts(), lazy.getAllBroadcastPorts());
+        } finally {
+            TopologyManager.setLazyPathComputationInternal(false);
+        }
+    }
+
+    @Test
+    public void testParallelPathComputation() throws Exception {
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {1, 2, 4, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 3, 5, 2, DIRECT_LINK},
+                {3, 4, 6, 2, DIRECT_LINK},
+                {4, 2, 2, 3, DIRECT_LINK},
+                {4, 3, 3, 2, DIRECT_LINK},
+                {4, 4, 5, 1, DIRECT_LINK},
+                {5, 3, 6, 1, DIRECT_LINK},
+        };
+        int [] lat = {3,2,4,2,1,1,2,3,2};
+        int k = topologyManager.getMaxPathsToCompute();
+
+        topologyManager.setPathMetric(HOPCOUNT);
+        configureTopology(linkArray, lat);
+        TopologyInstance sequential = topologyManager.getCurrentInstance();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        topologyManager.setPathComputationPoolInternal(pool);
+        try {
+            topologyManager.createNewInstance("test", true);
+            TopologyInstance parallel = topologyManager.getCurrentInstance();
+
+            for (int i = 1; i <= 6; i++) {
+                for (int j = 1; j <= 6; j++) {
+                    DatapathId src = DatapathId.of(i);
+                    DatapathId dst = DatapathId.of(j);
+                    assertEquals(sequential.getPathsFast(src, dst, k), parallel.getPathsFast(src, dst, k));
+                }
+            }
+            assertEquals(sequential.getAllBroadcastPorts(), parallel.getAllBroadcastPorts());
+        } finally {
+            topologyManager.setPathComputationPoolInternal(null);
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSnapshotVersion() throws Exception {
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {2, 1, 1, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 1, 2, 2, DIRECT_LINK},
+        };
+        int [] lat = {1,1,1,1};
+
+        configureTopology(linkArray, lat);
+        ITopologySnapshot before = topologyManager.getSnapshot();
+        assertSame(topologyManager.getCurrentInstance(), before);
+        assertTrue(before.isInSameCluster(DatapathId.of(1), DatapathId.of(3)));
+        assertFalse(before.getPath(DatapathId.of(1), DatapathId.of(3)).getPath().isEmpty());
+
+        topologyManager.removeLink(DatapathId.of(2), OFPort.of(2), DatapathId.of(3), OFPort.of(1));
+        topologyManager.createNewInstance();
+        ITopologySnapshot after = topologyManager.getSnapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertFalse(after.isInSameCluster(DatapathId.of(1), DatapathId.of(3)));
+
+        /* The old snapshot still sees the topology it was computed from */
+        assertTrue(before.isInSameCluster(DatapathId.of(1), DatapathId.of(3)));
+        assertFalse(before.getPath(DatapathId.of(1), DatapathId.of(3)).getPath().isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentLongHashMapTest {
+
+    @Test
+    public void testBasic() {
+        ConcurrentLongHashMap<String> m = new ConcurrentLongHashMap<String>();
+        assertTrue(m.isEmpty());
+        assertNull(m.put(0, "zero"));
+        assertNull(m.put(-1, "minus one"));
+        assertNull(m.putIfAbsent(1L << 40, "big"));
+        assertEquals("big", m.putIfAbsent(1L << 40, "BIG"));
+        assertEquals("zero", m.put(0, "ZERO"));
+        assertEquals(3, m.size());
+        assertEquals("ZERO", m.get(0));
+        assertEquals("minus one", m.get(-1));
+        assertEquals("big", m.get(1L << 40));
+        assertNull(m.get(2));
+        assertEquals(3, m.values().size());
+
+        assertFalse(m.remove(-1, "other"));
+        assertTrue(m.remove(-1, "minus one"));
+        assertNull(m.get(-1));
+        /* A removed key can be added again */
+        assertNull(m.putIfAbsent(-1, "again"));
+        assertEquals("again", m.get(-1));
+
+        assertEquals("ZERO", m.remove(0));
+        assertNull(m.remove(0));
+        assertEquals(2, m.size());
+        m.clear();
+        assertTrue(m.isEmpty());
+        assertNull(m.get(-1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        new ConcurrentLongHashMap<String>().put(1, null);
+    }
+
+    @Test
+    public void testRandomAgainstHashMap() {
+        Random r = new Random(42);
+        ConcurrentLongHashMap<Long> m = new ConcurrentLongHashMap<Long>();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        for (int i = 0; i < 200000; i++) {
+            /* Small key range so that removes hit and probe sequences collide */
+            long key = r.nextInt(5000) << 24;
+            if (r.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), m.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), m.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), m.size());
+        assertEquals(expected.size(), m.values().size());
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue(), m.get(e.getKey()));
+        }
+    }
+
+    @Test
+    public void testReadDuringWrites() throws Exception {
+        final ConcurrentLongHashMap<Long> m = new ConcurrentLongHashMap<Long>();
+        /* Keys 1 to 1000 are never removed and must always be found */
+        for (long k = 1; k <= 1000; k++) {
+            m.put(k, k);
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    for (long k = 1; k <= 1000; k++) {
+                        Long v = m.get(k);
+                        if (v == null || v != k) {
+                            failure.set("Key " + k + " mapped to " + v);
+                            return;
+                        }
+                    }
+                }
+            }
+        });
+        reader.start();
+        /* Enough churn to rebuild the table many times */
+        for (long k = 1001; k < 200000; k++) {
+            m.put(k, k);
+            if (k > 1100) {
+                m.remove(k - 100);
+            }
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,65 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongHashMapTest {
+
+    @Test
+    public void testBasic() {
+        LongHashMap<String> m = new LongHashMap<String>();
+        assertTrue(m.isEmpty());
+        assertNull(m.put(0, "zero"));
+        assertNull(m.put(-1, "minus one"));
+        assertNull(m.put(1L << 40, "big"));
+        assertEquals("zero", m.put(0, "ZERO"));
+        assertEquals(3, m.size());
+        assertEquals("ZERO", m.get(0));
+        assertEquals("minus one", m.get(-1));
+        assertTrue(m.containsKey(1L << 40));
+        assertNull(m.get(2));
+
+        long[] keys = m.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new long[] { -1, 0, 1L << 40 }, keys);
+
+        assertEquals("ZERO", m.remove(0));
+        assertNull(m.remove(0));
+        assertEquals(2, m.size());
+        m.clear();
+        assertTrue(m.isEmpty());
+        assertNull(m.get(-1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        new LongHashMap<String>().put(1, null);
+    }
+
+    @Test
+    public void testRandomAgainstHashMap() {
+        Random r = new Random(42);
+        LongHashMap<Long> m = new LongHashMap<Long>();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        for (int i = 0; i < 200000; i++) {
+            /* Small key range so that removes hit and probe sequences collide */
+            long key = r.nextInt(5000) << 24;
+            if (r.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), m.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), m.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), m.size());
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue(), m.get(e.getKey()));
+        }
+        assertEquals(expected.size(), m.keys().length);
+    }
+}
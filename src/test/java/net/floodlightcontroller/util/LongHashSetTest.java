@@ -0,0 +1,54 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testBasic() {
+        LongHashSet s = new LongHashSet();
+        assertTrue(s.add(0));
+        assertTrue(s.add(Long.MIN_VALUE));
+        assertFalse(s.add(0));
+        assertTrue(s.contains(0));
+        assertFalse(s.contains(1));
+        assertEquals(2, s.size());
+
+        long[] elements = s.toArray();
+        Arrays.sort(elements);
+        assertArrayEquals(new long[] { Long.MIN_VALUE, 0 }, elements);
+
+        assertTrue(s.remove(0));
+        assertFalse(s.remove(0));
+        assertEquals(1, s.size());
+        s.clear();
+        assertTrue(s.isEmpty());
+    }
+
+    @Test
+    public void testRandomAgainstHashSet() {
+        Random r = new Random(42);
+        LongHashSet s = new LongHashSet();
+        Set<Long> expected = new HashSet<Long>();
+        for (int i = 0; i < 200000; i++) {
+            long key = r.nextInt(5000) << 24;
+            if (r.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), s.remove(key));
+            } else {
+                assertEquals(expected.add(key), s.add(key));
+            }
+        }
+        assertEquals(expected.size(), s.size());
+        for (Long key : expected) {
+            assertTrue(s.contains(key));
+        }
+        assertEquals(expected.size(), s.toArray().length);
+    }
+}
@@ -0,0 +1,85 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.*;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import org.junit.Test;
+
+public class NettyTransportTest {
+
+    @Test
+    public void testParseEpollMode() {
+        assertNull(NettyTransport.parseEpollMode(null));
+        assertNull(NettyTransport.parseEpollMode(""));
+        assertNull(NettyTransport.parseEpollMode("  "));
+        assertEquals(EpollMode.EDGE_TRIGGERED, NettyTransport.parseEpollMode("edge"));
+        assertEquals(EpollMode.EDGE_TRIGGERED, NettyTransport.parseEpollMode(" EDGE "));
+        assertEquals(EpollMode.EDGE_TRIGGERED, NettyTransport.parseEpollMode("Edge_Triggered"));
+        assertEquals(EpollMode.LEVEL_TRIGGERED, NettyTransport.parseEpollMode("level"));
+        assertEquals(EpollMode.LEVEL_TRIGGERED, NettyTransport.parseEpollMode("LEVEL_TRIGGERED"));
+        try {
+            NettyTransport.parseEpollMode("both");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParseUseNative() {
+        assertFalse(NettyTransport.parseUseNative(null));
+        assertFalse(NettyTransport.parseUseNative(""));
+        assertFalse(NettyTransport.parseUseNative("NO"));
+        assertFalse(NettyTransport.parseUseNative("false"));
+        assertFalse(NettyTransport.parseUseNative(" FALSE "));
+        assertTrue(NettyTransport.parseUseNative("YES"));
+        assertTrue(NettyTransport.parseUseNative("yes"));
+        assertTrue(NettyTransport.parseUseNative("TRUE"));
+        assertTrue(NettyTransport.parseUseNative(" true "));
+        try {
+            NettyTransport.parseUseNative("epoll");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSelect() {
+        assertEquals(NettyTransport.NIO, NettyTransport.select(false));
+        assertEquals(NettyTransport.NIO, NettyTransport.fromConfig(null));
+        assertEquals(NettyTransport.NIO, NettyTransport.fromConfig("NO"));
+
+        /* Native epoll is only used where it is available; NIO elsewhere */
+        NettyTransport expected = Epoll.isAvailable() ? NettyTransport.EPOLL : NettyTransport.NIO;
+        assertEquals(expected, NettyTransport.select(true));
+        assertEquals(expected, NettyTransport.fromConfig("YES"));
+        assertEquals(expected, NettyTransport.fromConfig("TRUE"));
+    }
+
+    @Test
+    public void testNioTransport() {
+        NettyTransport nio = NettyTransport.NIO;
+        assertEquals(NioServerSocketChannel.class, nio.getServerChannelClass());
+        assertEquals(NioSocketChannel.class, nio.getChannelClass());
+
+        EventLoopGroup group = nio.newEventLoopGroup(1);
+        try {
+            assertTrue(group instanceof NioEventLoopGroup);
+        } finally {
+            group.shutdownGracefully();
+        }
+
+        /* Epoll options are never set on an NIO bootstrap */
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        nio.setTransportOptions(bootstrap, EpollMode.EDGE_TRIGGERED);
+        assertFalse(bootstrap.toString().contains("EPOLL_MODE"));
+    }
+}
@@ -0,0 +1,171 @@
+package net.floodlightcontroller.util;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.SwitchDisconnectedException;
+import net.floodlightcontroller.core.internal.OFErrorMsgException;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
+import org.projectfloodlight.openflow.protocol.OFBundleAddMsg;
+import org.projectfloodlight.openflow.protocol.OFBundleCtrlMsg;
+import org.projectfloodlight.openflow.protocol.OFBundleCtrlType;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class OFMessageBatchTest {
+
+    private IOFSwitch createSwitch(OFFactory factory, Capture<Iterable<OFMessage>> written,
+            boolean connected) {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.of(1)).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        expect(sw.isConnected()).andReturn(connected).anyTimes();
+        expect(sw.write(capture(written))).andReturn(Collections.<OFMessage>emptyList()).anyTimes();
+        return sw;
+    }
+
+    @Test
+    public void testBarrier() throws Exception {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        Capture<Iterable<OFMessage>> written = newCapture(CaptureType.ALL);
+        IOFSwitch sw = createSwitch(factory, written, true);
+        SettableFuture<OFBarrierReply> barrier = SettableFuture.create();
+        expect(sw.writeRequest(anyObject(OFBarrierRequest.class))).andReturn(barrier).once();
+        replay(sw);
+
+        OFFlowMod fm = factory.buildFlowAdd().build();
+        /* Bundles are not supported before OpenFlow 1.4, so a barrier is used */
+        ListenableFuture<OFMessage> f = OFMessageBatch.write(sw, Collections.singletonList(fm), true);
+        verify(sw);
+        assertEquals(Collections.<OFMessage>singletonList(fm), written.getValue());
+        assertFalse(f.isDone());
+
+        OFBarrierReply reply = factory.buildBarrierReply().build();
+        barrier.set(reply);
+        assertSame(reply, f.get());
+    }
+
+    @Test
+    public void testDisconnected() {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        Capture<Iterable<OFMessage>> written = newCapture(CaptureType.ALL);
+        OFFlowMod fm = factory.buildFlowAdd().build();
+        IOFSwitch sw = createSwitch(factory, written, false);
+        replay(sw);
+
+        ListenableFuture<OFMessage> f = OFMessageBatch.writeWithBarrier(sw, Collections.singletonList(fm));
+        assertFalse(written.hasCaptured());
+        try {
+            f.get();
+            fail("Expected the batch to fail");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof SwitchDisconnectedException);
+        }
+    }
+
+    @Test
+    public void testDisconnectedBeforeBarrierReply() {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        Capture<Iterable<OFMessage>> written = newCapture(CaptureType.ALL);
+        IOFSwitch sw = createSwitch(factory, written, true);
+        SettableFuture<OFBarrierReply> barrier = SettableFuture.create();
+        expect(sw.writeRequest(anyObject(OFBarrierRequest.class))).andReturn(barrier).once();
+        replay(sw);
+
+        /* The write itself succeeds; the batch is lost when the connection drops */
+        ListenableFuture<OFMessage> f = OFMessageBatch.writeWithBarrier(sw,
+                Collections.singletonList(factory.buildFlowAdd().build()));
+        assertFalse(f.isDone());
+        barrier.setException(new SwitchDisconnectedException(DatapathId.of(1)));
+        try {
+            f.get();
+            fail("Expected the batch to fail");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof SwitchDisconnectedException);
+        }
+    }
+
+    @Test
+    public void testBundle() throws Exception {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_14);
+        Capture<Iterable<OFMessage>> written = newCapture(CaptureType.ALL);
+        IOFSwitch sw = createSwitch(factory, written, true);
+        Capture<OFBundleCtrlMsg> ctrl = newCapture(CaptureType.ALL);
+        SettableFuture<OFBundleCtrlMsg> open = SettableFuture.create();
+        SettableFuture<OFBundleCtrlMsg> commit = SettableFuture.create();
+        expect(sw.writeRequest(capture(ctrl))).andReturn(open).once().andReturn(commit).once();
+        replay(sw);
+
+        OFFlowMod fm1 = factory.buildFlowAdd().build();
+        OFFlowMod fm2 = factory.buildFlowDelete().build();
+        ListenableFuture<OFMessage> f = OFMessageBatch.write(sw, Arrays.asList(fm1, fm2), true);
+        verify(sw);
+
+        List<OFBundleCtrlMsg> ctrls = ctrl.getValues();
+        assertEquals(OFBundleCtrlType.OPEN_REQUEST, ctrls.get(0).getBundleCtrlType());
+        assertEquals(OFBundleCtrlType.COMMIT_REQUEST, ctrls.get(1).getBundleCtrlType());
+        assertEquals(ctrls.get(0).getBundleId(), ctrls.get(1).getBundleId());
+        int i = 0;
+        Set<Long> xids = new HashSet<Long>();
+        for (OFMessage m : written.getValue()) {
+            OFBundleAddMsg add = (OFBundleAddMsg) m;
+            assertEquals(ctrls.get(0).getBundleId(), add.getBundleId());
+            /* Each message is given its own xid, carried by its bundle add */
+            assertTrue(add.getXid() > 0);
+            assertTrue(xids.add(add.getXid()));
+            assertEquals(add.getXid(), add.getData().getXid());
+            OFFlowMod fm = i == 0 ? fm1 : fm2;
+            assertEquals(fm.createBuilder().setXid(add.getXid()).build(), add.getData());
+            i++;
+        }
+        assertEquals(2, i);
+
+        open.set(factory.buildBundleCtrlMsg().setBundleCtrlType(OFBundleCtrlType.OPEN_REPLY).build());
+        assertFalse(f.isDone());
+        OFBundleCtrlMsg committed = factory.buildBundleCtrlMsg().setBundleCtrlType(OFBundleCtrlType.COMMIT_REPLY).build();
+        commit.set(committed);
+        assertSame(committed, f.get());
+    }
+
+    @Test
+    public void testBundleCommitFails() throws Exception {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_14);
+        Capture<Iterable<OFMessage>> written = newCapture(CaptureType.ALL);
+        IOFSwitch sw = createSwitch(factory, written, true);
+        SettableFuture<OFBundleCtrlMsg> open = SettableFuture.create();
+        SettableFuture<OFBundleCtrlMsg> commit = SettableFuture.create();
+        expect(sw.writeRequest(anyObject(OFBundleCtrlMsg.class))).andReturn(open).once().andReturn(commit).once();
+        replay(sw);
+
+        ListenableFuture<OFMessage> f = OFMessageBatch.writeBundle(sw,
+                Collections.singletonList(factory.buildFlowAdd().build()));
+        open.set(factory.buildBundleCtrlMsg().setBundleCtrlType(OFBundleCtrlType.OPEN_REPLY).build());
+        commit.setException(new OFErrorMsgException(factory.errorMsgs().buildBadRequestErrorMsg().build()));
+        try {
+            f.get();
+            fail("Expected the bundle to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OFErrorMsgException);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.sdnplatform.sync.internal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.internal.StoreRegistry.Hint;
+import org.sdnplatform.sync.internal.store.JavaDBStorageEngine;
+import org.sdnplatform.sync.internal.store.LogStorageEngine;
+import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+public class StoreRegistryTest {
+    @Rule
+    public TemporaryFolder dbFolder = new TemporaryFolder();
+
+    private StoreRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new StoreRegistry(null, null);
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    private static ByteArray key(int i) {
+        return new ByteArray(("key" + i).getBytes());
+    }
+
+    private void queue(int key, int... clock) {
+        registry.queueHint("test", key(key),
+                           new Versioned<byte[]>(new byte[] {1},
+                                                 TUtils.getClock(clock)));
+    }
+
+    @Test(timeout = 10000)
+    public void testCoalesceWindow() throws Exception {
+        long start = System.nanoTime();
+        queue(1, 1);
+        // Written again while queued; only the newer version is sent
+        queue(1, 1, 1);
+
+        List<Hint> hints = new ArrayList<Hint>();
+        registry.takeHints(hints, 1, 10, 200);
+        assertTrue(System.nanoTime() - start >= 200 * 1000000L);
+        assertEquals(1, hints.size());
+        assertEquals(key(1), hints.get(0).getHintKey().getKey());
+        assertEquals(1, hints.get(0).getValues().size());
+        VectorClock clock =
+                (VectorClock) hints.get(0).getValues().get(0).getVersion();
+        assertEquals(TUtils.getClock(1, 1).getEntries(), clock.getEntries());
+    }
+
+    @Test(timeout = 10000)
+    public void testWindowHoldsNewHints() throws Exception {
+        queue(1, 1);
+        Thread.sleep(300);
+        queue(2, 1);
+
+        // Only the hint that has waited out the window is drained
+        List<Hint> hints = new ArrayList<Hint>();
+        registry.takeHints(hints, 10, 10, 200);
+        assertEquals(1, hints.size());
+        assertEquals(key(1), hints.get(0).getHintKey().getKey());
+
+        hints.clear();
+        registry.takeHints(hints, 10, 10, 200);
+        assertEquals(1, hints.size());
+        assertEquals(key(2), hints.get(0).getHintKey().getKey());
+    }
+
+    @Test(timeout = 10000)
+    public void testBatchSize() throws Exception {
+        for (int i = 0; i < 3000; i++) {
+            queue(i, 1);
+        }
+        List<Hint> hints = new ArrayList<Hint>();
+
+        // Half the queue, up to the maximum
+        registry.takeHints(hints, 50, 1000, 0);
+        assertEquals(1000, hints.size());
+        hints.clear();
+        registry.takeHints(hints, 50, 1000, 0);
+        assertEquals(1000, hints.size());
+        hints.clear();
+        registry.takeHints(hints, 50, 1000, 0);
+        assertEquals(500, hints.size());
+
+        // At least the minimum while the queue is short
+        hints.clear();
+        registry.takeHints(hints, 50, 1000, 0);
+        assertEquals(250, hints.size());
+        hints.clear();
+        registry.takeHints(hints, 200, 1000, 0);
+        assertEquals(200, hints.size());
+        hints.clear();
+        registry.takeHints(hints, 200, 1000, 0);
+        assertEquals(50, hints.size());
+    }
+
+    @Test
+    public void testShutdownClosesStores() throws Exception {
+        File dbPath = dbFolder.newFolder("db");
+        StoreRegistry r = new StoreRegistry(new SyncManager(), dbPath.getPath());
+        r.setGroupCommitInterval(60000);
+        SynchronizingStorageEngine store =
+                r.register("gc", Scope.UNSYNCHRONIZED, true);
+        store.put(key(1), new Versioned<byte[]>(new byte[] {1},
+                                                TUtils.getClock(1)));
+
+        // The write is still pending; shutting down commits it
+        r.shutdown();
+        assertNull(r.get("gc"));
+
+        JavaDBStorageEngine reopened =
+                new JavaDBStorageEngine("gc",
+                        JavaDBStorageEngine.getDataSource(dbPath.getPath(), false));
+        List<Versioned<byte[]>> values = reopened.get(key(1));
+        assertEquals(1, values.size());
+        assertArrayEquals(new byte[] {1}, values.get(0).getValue());
+    }
+
+    @Test
+    public void testShutdownClosesLogStores() throws Exception {
+        File dbPath = dbFolder.newFolder("log");
+        StoreRegistry r = new StoreRegistry(new SyncManager(), dbPath.getPath());
+        r.setPersistenceBackend(StoreRegistry.PersistenceBackend.LOG);
+        SynchronizingStorageEngine store =
+                r.register("log", Scope.UNSYNCHRONIZED, true);
+        for (int i = 0; i < 10; i++) {
+            store.put(key(i), new Versioned<byte[]>(new byte[] {(byte) i},
+                                                    TUtils.getClock(1)));
+        }
+        r.shutdown();
+
+        LogStorageEngine reopened =
+                new LogStorageEngine("log", new File(new File(dbPath, "SyncLog"), "log"));
+        try {
+            for (int i = 0; i < 10; i++) {
+                List<Versioned<byte[]>> values = reopened.get(key(i));
+                assertEquals(1, values.size());
+                assertArrayEquals(new byte[] {(byte) i}, values.get(0).getValue());
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+}
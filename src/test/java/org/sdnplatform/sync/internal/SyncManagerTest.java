@@ -38,13 +38,19 @@ import org.sdnplatform.sync.ISyncService.Scope;
 import org.sdnplatform.sync.error.ObsoleteVersionException;
 import org.sdnplatform.sync.internal.AbstractSyncManager;
 import org.sdnplatform.sync.internal.SyncManager;
+import org.sdnplatform.sync.internal.StoreRegistry.Hint;
+import org.sdnplatform.sync.internal.StoreRegistry.HintKey;
 import org.sdnplatform.sync.internal.SyncTorture;
 import org.sdnplatform.sync.internal.config.Node;
 import org.sdnplatform.sync.internal.config.PropertyCCProvider;
+import org.sdnplatform.sync.internal.rpc.TProtocolUtil;
 import org.sdnplatform.sync.internal.store.Key;
+import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.store.TBean;
+import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.util.CryptoUtil;
 import org.sdnplatform.sync.internal.version.VectorClock;
+import org.sdnplatform.sync.thrift.SyncMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -694,6 +700,77 @@ public class SyncManagerTest {
 
     }
     
+    @Test
+    public void testHintMessageSplit() throws Exception {
+        SyncManager sm = syncManagers[0];
+        SynchronizingStorageEngine store = sm.getStoreInternal("global");
+        SyncManager.HintWorker worker = sm.new HintWorker();
+
+        SyncMessage first = worker.getMessage(store, 200 * 1024);
+        assertSame(first, worker.getMessage(store, 50 * 1024));
+        // Past 256 KB a new message is started and the full one set aside
+        SyncMessage second = worker.getMessage(store, 10 * 1024);
+        assertNotSame(first, second);
+        assertEquals(Collections.singletonList(first), worker.fullMessages);
+        assertSame(second, worker.getMessage(store, 10 * 1024));
+
+        List<Versioned<byte[]>> values = new ArrayList<Versioned<byte[]>>();
+        values.add(new Versioned<byte[]>(new byte[1000],
+                                         TUtils.getClock(1, 2)));
+        Hint hint = new Hint(new HintKey("global",
+                                         new ByteArray(new byte[10]), (short)1),
+                             values);
+        assertTrue(worker.estimateSize(hint) >= 1010);
+    }
+
+    @Test
+    public void testPeerQueueOverflow() throws Exception {
+        // Not started, so nothing drains it
+        SyncManager.PeerQueue queue = syncManagers[0].new PeerQueue((short)2);
+        SyncMessage bsm =
+                TProtocolUtil.getTSyncValueMessage("global", Scope.GLOBAL, false);
+        for (int i = 0; i < SyncManager.PEER_QUEUE_CAPACITY; i++) {
+            assertTrue(queue.offerOrDrop(bsm));
+        }
+        // Full; dropped rather than waiting for the node
+        assertFalse(queue.offerOrDrop(bsm));
+        assertEquals(SyncManager.PEER_QUEUE_CAPACITY, queue.messages.size());
+
+        queue.clear();
+        assertEquals(0, queue.messages.size());
+        assertTrue(queue.offerOrDrop(bsm));
+    }
+
+    @Test
+    public void testPeerQueueClearedOnDisconnect() throws Exception {
+        SyncManager sm = syncManagers[0];
+        SyncManager.PeerQueue queue = sm.new PeerQueue((short)2);
+        sm.peerQueues.put((short)2, queue);
+        SyncMessage bsm =
+                TProtocolUtil.getTSyncValueMessage("global", Scope.GLOBAL, false);
+        queue.offerOrDrop(bsm);
+        queue.offerOrDrop(bsm);
+
+        sm.rpcService.disconnectNode((short)2);
+        assertEquals(0, queue.messages.size());
+    }
+
+    @Test
+    public void testPeerQueueRemovedWithNode() throws Exception {
+        SyncManager sm = syncManagers[0];
+        SyncManager.PeerQueue queue = sm.new PeerQueue((short)4);
+        sm.peerQueues.put((short)4, queue);
+        queue.offerOrDrop(TProtocolUtil.getTSyncValueMessage("global",
+                                                             Scope.GLOBAL,
+                                                             false));
+
+        moduleContexts[0].addConfigParam(sm, "nodes",
+                mapper.writeValueAsString(nodes.subList(0, 3)));
+        sm.doUpdateConfiguration();
+        assertNull(sm.peerQueues.get((short)4));
+        assertEquals(0, queue.messages.size());
+    }
+
     @Test
     @Ignore // ignored just to speed up routine tests
     public void testPerfSimpleWriteLocal() throws Exception {
@@ -0,0 +1,112 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.sql.ConnectionPoolDataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.TUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+
+import static org.junit.Assert.*;
+import static org.sdnplatform.sync.internal.TUtils.*;
+
+public class JavaDBGroupCommitStorageEngineTest extends AbstractStorageEngineT {
+
+    private ConnectionPoolDataSource dataSource;
+    private JavaDBStorageEngine store;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = JavaDBStorageEngine.getDataSource(null, true);
+        // Long enough that the writer does not commit during a test
+        this.store = new JavaDBStorageEngine("testgc", dataSource, 60000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.store.truncate();
+        this.store.close();
+        this.store = null;
+    }
+
+    @Override
+    public IStorageEngine<ByteArray, byte[]> getStorageEngine() {
+        return store;
+    }
+
+    @Override
+    public List<ByteArray> getKeys(int numKeys) {
+        List<ByteArray> keys = new ArrayList<ByteArray>(numKeys);
+        for(int i = 0; i < numKeys; i++)
+            keys.add(new ByteArray(TUtils.randomBytes(10)));
+        return keys;
+    }
+
+    @Test
+    public void testPendingWritesVisible() throws Exception {
+        JavaDBStorageEngine direct =
+                new JavaDBStorageEngine("testgc", dataSource);
+        List<ByteArray> keys = getKeys(3);
+        store.put(keys.get(0), new Versioned<byte[]>(new byte[] {1},
+                                                     getClock(1)));
+        store.flush();
+        store.put(keys.get(0), new Versioned<byte[]>(new byte[] {2},
+                                                     getClock(1, 1)));
+        store.put(keys.get(1), new Versioned<byte[]>(new byte[] {3},
+                                                     getClock(1)));
+
+        // The database only has the committed write
+        assertEquals(1, direct.get(keys.get(0)).size());
+        assertTrue(Arrays.equals(new byte[] {1},
+                                 direct.get(keys.get(0)).get(0).getValue()));
+        assertEquals(0, direct.get(keys.get(1)).size());
+
+        // The store sees the pending writes
+        assertTrue(Arrays.equals(new byte[] {2},
+                                 store.get(keys.get(0)).get(0).getValue()));
+        assertEquals(1, store.get(keys.get(1)).size());
+        int count = 0;
+        IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>> iter =
+                store.entries();
+        try {
+            while (iter.hasNext()) {
+                Entry<ByteArray, List<Versioned<byte[]>>> e = iter.next();
+                assertEquals(store.get(e.getKey()), e.getValue());
+                count += 1;
+            }
+        } finally {
+            iter.close();
+        }
+        assertEquals(2, count);
+
+        store.flush();
+        assertTrue(Arrays.equals(new byte[] {2},
+                                 direct.get(keys.get(0)).get(0).getValue()));
+        assertEquals(1, direct.get(keys.get(1)).size());
+    }
+
+    @Test
+    public void testCloseCommits() throws Exception {
+        List<ByteArray> keys = getKeys(10);
+        for (ByteArray key : keys) {
+            store.put(key, new Versioned<byte[]>(key.get(), getClock(1)));
+        }
+        store.close();
+
+        JavaDBStorageEngine direct =
+                new JavaDBStorageEngine("testgc", dataSource);
+        for (ByteArray key : keys) {
+            assertEquals(1, direct.get(key).size());
+            assertTrue(Arrays.equals(key.get(),
+                                     direct.get(key).get(0).getValue()));
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.sdnplatform.sync.internal.store;
 
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,14 +11,17 @@ import javax.sql.ConnectionPoolDataSource;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.io.ByteStreams;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.internal.TUtils;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.JavaDBStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.version.VectorClock;
+import org.sdnplatform.sync.internal.version.VersionedCodec;
 
 import static org.junit.Assert.*;
 import static org.sdnplatform.sync.internal.TUtils.*;
@@ -23,11 +30,11 @@ import static org.sdnplatform.sync.internal.TUtils.*;
 public class JavaDBStorageEngineTest extends AbstractStorageEngineT {
 
     private IStorageEngine<ByteArray, byte[]> store;
+    private ConnectionPoolDataSource dataSource;
 
     @Before
     public void setUp() throws Exception {
-        ConnectionPoolDataSource dataSource = 
-                JavaDBStorageEngine.getDataSource(null, true);
+        dataSource = JavaDBStorageEngine.getDataSource(null, true);
         this.store = new JavaDBStorageEngine("test", dataSource); 
     }
     
@@ -60,5 +67,42 @@ public class JavaDBStorageEngineTest extends AbstractStorageEngineT {
                 mapper.readValue(cs, new TypeReference<VectorClock>() {});
         assertEquals(clock, reconstructed);
     }
-    
+
+    private byte[] getStoredData() throws Exception {
+        Connection conn =
+                dataSource.getPooledConnection().getConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("select datavalue from test");
+            assertTrue(rs.next());
+            InputStream is = rs.getBinaryStream("datavalue");
+            byte[] data = ByteStreams.toByteArray(is);
+            is.close();
+            assertFalse(rs.next());
+            stmt.close();
+            return data;
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testValueEncoding() throws Exception {
+        ByteArray key = new ByteArray(new byte[] {1});
+        store.put(key, new Versioned<byte[]>(new byte[] {1}, getClock(1)));
+
+        // Written in Smile unless the compact encoding is enabled, so
+        // earlier releases can still read the database
+        assertFalse(VersionedCodec.isEncoded(getStoredData()));
+        List<Versioned<byte[]>> values = store.get(key);
+        assertEquals(1, values.size());
+        assertArrayEquals(new byte[] {1}, values.get(0).getValue());
+
+        ((JavaDBStorageEngine) store).setCompactEncoding(true);
+        store.put(key, new Versioned<byte[]>(new byte[] {2}, getClock(1, 1)));
+        assertTrue(VersionedCodec.isEncoded(getStoredData()));
+        values = store.get(key);
+        assertEquals(1, values.size());
+        assertArrayEquals(new byte[] {2}, values.get(0).getValue());
+    }
 }
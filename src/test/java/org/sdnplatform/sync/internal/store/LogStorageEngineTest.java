@@ -0,0 +1,140 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.TUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+import static org.junit.Assert.*;
+import static org.sdnplatform.sync.internal.TUtils.*;
+
+public class LogStorageEngineTest extends AbstractStorageEngineT {
+
+    @Rule
+    public TemporaryFolder logFolder = new TemporaryFolder();
+
+    private File dir;
+    private LogStorageEngine store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = logFolder.newFolder("test");
+        this.store = new LogStorageEngine("test", dir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.store.truncate();
+        this.store.close();
+        this.store = null;
+    }
+
+    @Override
+    public IStorageEngine<ByteArray, byte[]> getStorageEngine() {
+        return store;
+    }
+
+    @Override
+    public List<ByteArray> getKeys(int numKeys) {
+        List<ByteArray> keys = new ArrayList<ByteArray>(numKeys);
+        for(int i = 0; i < numKeys; i++)
+            keys.add(new ByteArray(TUtils.randomBytes(10)));
+        return keys;
+    }
+
+    private static void assertValue(byte[] expected,
+                                    List<Versioned<byte[]>> values) {
+        assertEquals(1, values.size());
+        assertTrue(Arrays.equals(expected, values.get(0).getValue()));
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        List<ByteArray> keys = getKeys(100);
+        for (ByteArray key : keys) {
+            store.put(key, new Versioned<byte[]>(key.get(), getClock(1)));
+        }
+        store.put(keys.get(0), new Versioned<byte[]>(new byte[] {1},
+                                                     getClock(1, 1)));
+        store.close();
+
+        LogStorageEngine reopened = new LogStorageEngine("test", dir);
+        assertValue(new byte[] {1}, reopened.get(keys.get(0)));
+        for (ByteArray key : keys.subList(1, keys.size())) {
+            assertValue(key.get(), reopened.get(key));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        ByteArray key1 = new ByteArray((byte) 1);
+        ByteArray key2 = new ByteArray((byte) 2);
+        store.put(key1, new Versioned<byte[]>(new byte[] {1}, getClock(1)));
+        store.put(key2, new Versioned<byte[]>(new byte[] {2}, getClock(1)));
+        store.close();
+
+        // Cut the last record short, as if the process died writing it
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        LogStorageEngine reopened = new LogStorageEngine("test", dir);
+        assertValue(new byte[] {1}, reopened.get(key1));
+        assertEquals(0, reopened.get(key2).size());
+        reopened.put(key2, new Versioned<byte[]>(new byte[] {3}, getClock(1)));
+        reopened.close();
+
+        reopened = new LogStorageEngine("test", dir);
+        assertValue(new byte[] {3}, reopened.get(key2));
+        reopened.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        store.close();
+        store = new LogStorageEngine("test", dir, 4096);
+        List<ByteArray> keys = getKeys(10);
+        VectorClock clock = getClock(1);
+        for (int i = 0; i < 200; i++) {
+            clock = clock.incremented(1, System.currentTimeMillis());
+            for (ByteArray key : keys) {
+                store.put(key, new Versioned<byte[]>(new byte[] {(byte) i},
+                                                     clock));
+            }
+        }
+        // A key deleted long ago, whose old records must stay hidden
+        ByteArray deleted = new ByteArray((byte) 1);
+        store.put(deleted, new Versioned<byte[]>(new byte[] {1}, getClock(1)));
+        store.put(deleted, new Versioned<byte[]>(null, getClock(1, 1)));
+        store.setTombstoneInterval(0);
+        Thread.sleep(1);
+
+        int before = store.getSegmentCount();
+        store.cleanupTask();
+        assertTrue(store.getSegmentCount() < before);
+        assertEquals(0, store.get(deleted).size());
+        for (ByteArray key : keys) {
+            assertValue(new byte[] {(byte) 199}, store.get(key));
+        }
+        store.close();
+
+        store = new LogStorageEngine("test", dir, 4096);
+        assertEquals(0, store.get(deleted).size());
+        for (ByteArray key : keys) {
+            assertValue(new byte[] {(byte) 199}, store.get(key));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.sdnplatform.sync.internal.store;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.sdnplatform.sync.IVersion;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.TUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+public class StoreDigestTest {
+
+    private static ByteArray key(int i) {
+        return new ByteArray(("key" + i).getBytes());
+    }
+
+    private static List<IVersion> versions(IVersion... vs) {
+        List<IVersion> l = new ArrayList<IVersion>();
+        Collections.addAll(l, vs);
+        return l;
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        VectorClock v1 = TUtils.getClock(1, 2);
+        VectorClock v2 = TUtils.getClock(1, 1, 2);
+
+        assertEquals(0, StoreDigest.hash(key(1), null));
+        assertEquals(0, StoreDigest.hash(key(1), versions()));
+        assertEquals(StoreDigest.hash(key(1), versions(v1, v2)),
+                     StoreDigest.hash(key(1), versions(v2, v1)));
+        assertEquals(StoreDigest.hash(key(1), versions(v1)),
+                     StoreDigest.hash(key(1), versions(TUtils.getClock(1, 2))));
+        assertFalse(StoreDigest.hash(key(1), versions(v1)) ==
+                    StoreDigest.hash(key(1), versions(v2)));
+        assertFalse(StoreDigest.hash(key(1), versions(v1)) ==
+                    StoreDigest.hash(key(2), versions(v1)));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        StoreDigest a = new StoreDigest();
+        StoreDigest b = new StoreDigest();
+        assertEquals(0, a.getHash(0, 0));
+
+        VectorClock v1 = TUtils.getClock(1);
+        VectorClock v2 = TUtils.getClock(1, 1);
+        for (int i = 0; i < 1000; i++) {
+            a.update(key(i), 0, StoreDigest.hash(key(i), versions(v1)));
+        }
+        // The same keys in a different order, some via an older version
+        for (int i = 999; i >= 0; i--) {
+            long h = 0;
+            if (i % 3 == 0) {
+                h = StoreDigest.hash(key(i), versions(v2));
+                b.update(key(i), 0, h);
+            }
+            b.update(key(i), h, StoreDigest.hash(key(i), versions(v1)));
+        }
+        assertEquals(a.getHash(0, 0), b.getHash(0, 0));
+        assertFalse(a.getHash(0, 0) == 0);
+
+        // A single key differs in exactly one node of each level
+        ByteArray k = key(5);
+        b.update(k, StoreDigest.hash(k, versions(v1)),
+                 StoreDigest.hash(k, versions(v2)));
+        int leaf = StoreDigest.getLeaf(k);
+        for (int level = 0; level <= StoreDigest.LEAF_LEVEL; level++) {
+            int node = leaf >> (StoreDigest.FANOUT_BITS *
+                                (StoreDigest.LEAF_LEVEL - level));
+            int diffs = 0;
+            for (int n = 0; n < StoreDigest.getLevelSize(level); n++) {
+                if (a.getHash(level, n) != b.getHash(level, n)) {
+                    assertEquals(node, n);
+                    diffs += 1;
+                }
+            }
+            assertEquals(1, diffs);
+        }
+
+        // The hash of a node combines its children
+        for (int n = 0; n < StoreDigest.getLevelSize(2); n++) {
+            long h = 0;
+            for (int c = 0; c < StoreDigest.FANOUT; c++) {
+                h ^= a.getHash(3, StoreDigest.getChild(n, c));
+            }
+            assertEquals(a.getHash(2, n), h);
+        }
+    }
+
+    @Test
+    public void testDigestFollowsWrites() throws Exception {
+        SynchronizingStorageEngine store =
+                new SynchronizingStorageEngine(
+                        new InMemoryStorageEngine<ByteArray, byte[]>("test"),
+                        null, null,
+                        org.sdnplatform.sync.ISyncService.Scope.UNSYNCHRONIZED);
+        for (int i = 0; i < 100; i++) {
+            store.put(key(i), new Versioned<byte[]>(new byte[] {1},
+                                                    TUtils.getClock(1)));
+        }
+        StoreDigest digest = store.getDigest();
+        for (int i = 50; i < 150; i++) {
+            store.put(key(i), new Versioned<byte[]>(new byte[] {2},
+                                                    TUtils.getClock(1, 1)));
+        }
+        // The writes are folded into the same digest when it is next read
+        assertSame(digest, store.getDigest());
+        long h = digest.getHash(0, 0);
+        assertEquals(store.rebuildDigest().getHash(0, 0), h);
+
+        store.truncate();
+        assertEquals(0, store.getDigest().getHash(0, 0));
+    }
+
+    @Test
+    public void testDigestSnapshot() throws Exception {
+        SynchronizingStorageEngine store =
+                new SynchronizingStorageEngine(
+                        new InMemoryStorageEngine<ByteArray, byte[]>("test"),
+                        null, null,
+                        org.sdnplatform.sync.ISyncService.Scope.UNSYNCHRONIZED);
+        assertNull(store.getDigestSnapshot());
+        assertFalse(store.isDigestCurrent());
+
+        StoreDigest digest = store.getDigest();
+        long h = digest.getHash(0, 0);
+        assertSame(digest, store.getDigestSnapshot());
+        assertTrue(store.isDigestCurrent());
+
+        // The snapshot only follows writes once the digest is updated
+        store.put(key(1), new Versioned<byte[]>(new byte[] {1},
+                                                TUtils.getClock(1)));
+        assertFalse(store.isDigestCurrent());
+        assertEquals(h, store.getDigestSnapshot().getHash(0, 0));
+        store.getDigest();
+        assertTrue(store.isDigestCurrent());
+        assertFalse(h == store.getDigestSnapshot().getHash(0, 0));
+    }
+
+    @Test
+    public void testDigestFollowsCleanup() throws Exception {
+        SynchronizingStorageEngine store =
+                new SynchronizingStorageEngine(
+                        new InMemoryStorageEngine<ByteArray, byte[]>("test"),
+                        null, null,
+                        org.sdnplatform.sync.ISyncService.Scope.UNSYNCHRONIZED);
+        store.setTombstoneInterval(0);
+        for (int i = 0; i < 10; i++) {
+            store.put(key(i), new Versioned<byte[]>(new byte[] {1},
+                                                    TUtils.getClock(1)));
+        }
+        for (int i = 0; i < 5; i++) {
+            store.put(key(i), new Versioned<byte[]>(null,
+                                                    TUtils.getClock(1, 1)));
+        }
+        StoreDigest digest = store.getDigest();
+        long h = digest.getHash(0, 0);
+        Thread.sleep(10);
+
+        // Cleanup drops the tombstones and updates the same digest
+        store.cleanupTask();
+        assertTrue(store.isDigestCurrent());
+        assertSame(digest, store.getDigestSnapshot());
+        assertFalse(h == digest.getHash(0, 0));
+        assertEquals(store.rebuildDigest().getHash(0, 0), digest.getHash(0, 0));
+    }
+
+    @Test(timeout = 30000)
+    public void testDigestConcurrentWrites() throws Exception {
+        final SynchronizingStorageEngine store =
+                new SynchronizingStorageEngine(
+                        new InMemoryStorageEngine<ByteArray, byte[]>("test"),
+                        null, null,
+                        org.sdnplatform.sync.ISyncService.Scope.UNSYNCHRONIZED);
+        store.getDigest();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int v = 1; v <= 20; v++) {
+                        for (int i = 0; i < 200; i++) {
+                            store.put(key(i), new Versioned<byte[]>(new byte[] {1},
+                                    TUtils.getClock(new int[v])));
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        writer.start();
+        // Digests read and rebuilt while writing still converge
+        while (writer.isAlive()) {
+            store.getDigest();
+            store.rebuildDigest();
+        }
+        writer.join();
+        long h = store.getDigest().getHash(0, 0);
+        assertEquals(store.rebuildDigest().getHash(0, 0), h);
+    }
+}
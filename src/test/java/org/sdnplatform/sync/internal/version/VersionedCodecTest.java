@@ -0,0 +1,112 @@
+package org.sdnplatform.sync.internal.version;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.junit.Test;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.error.SerializationException;
+import org.sdnplatform.sync.internal.rpc.TProtocolUtil;
+import org.sdnplatform.sync.internal.store.StoreUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.thrift.KeyedValues;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import static org.junit.Assert.*;
+import static org.sdnplatform.sync.internal.TUtils.*;
+
+public class VersionedCodecTest {
+
+    private static List<Versioned<byte[]>> getValues() {
+        List<Versioned<byte[]>> values = new ArrayList<Versioned<byte[]>>();
+        values.add(new Versioned<byte[]>(new byte[] {1, 2, 3},
+                                         getClock(1, 2, 2)));
+        // A tombstone, and a timestamp before the previous one
+        values.add(new Versioned<byte[]>(null,
+                new VectorClock(getClock(3, 30000).getEntries(),
+                                System.currentTimeMillis() - 100000)));
+        values.add(new Versioned<byte[]>(new byte[0],
+                new VectorClock(getClock(1).getEntries(), 0)));
+        return values;
+    }
+
+    private static void assertValuesEqual(List<Versioned<byte[]>> expected,
+                                          List<Versioned<byte[]>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            VectorClock ev = (VectorClock) expected.get(i).getVersion();
+            VectorClock av = (VectorClock) actual.get(i).getVersion();
+            assertEquals(ev, av);
+            assertEquals(ev.getTimestamp(), av.getTimestamp());
+            assertTrue(Arrays.equals(expected.get(i).getValue(),
+                                     actual.get(i).getValue()));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<Versioned<byte[]>> values = getValues();
+        byte[] data = VersionedCodec.encode(values);
+        assertTrue(VersionedCodec.isEncoded(data));
+        assertValuesEqual(values, VersionedCodec.decode(data));
+
+        List<Versioned<byte[]>> empty = new ArrayList<Versioned<byte[]>>();
+        assertValuesEqual(empty,
+                          VersionedCodec.decode(VersionedCodec.encode(empty)));
+
+        VectorClock clock = getClock(1, 1, 2, 20000);
+        VectorClock decoded =
+                VersionedCodec.decodeClock(VersionedCodec.encodeClock(clock));
+        assertEquals(clock, decoded);
+        assertEquals(clock.getTimestamp(), decoded.getTimestamp());
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        byte[] data = VersionedCodec.encode(getValues());
+        for (int i = 1; i < data.length; i++) {
+            try {
+                VersionedCodec.decode(Arrays.copyOf(data, i));
+                fail("Decoded truncated data");
+            } catch (SerializationException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testSmileStillLoads() throws Exception {
+        List<Versioned<byte[]>> values = getValues();
+        byte[] smile = new ObjectMapper(new SmileFactory())
+                .writeValueAsBytes(values);
+        assertFalse(VersionedCodec.isEncoded(smile));
+        assertValuesEqual(values, StoreUtils.decodeStoredValues(smile));
+        assertValuesEqual(values, StoreUtils.decodeStoredValues(
+                                      VersionedCodec.encode(values)));
+    }
+
+    @Test
+    public void testKeyedValues() throws Exception {
+        List<Versioned<byte[]>> values = getValues();
+        ByteArray key = new ByteArray(new byte[] {4, 5});
+        for (boolean encode : new boolean[] {false, true}) {
+            KeyedValues kv = TProtocolUtil.getTKeyedValues(key, values, encode);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            kv.write(new TCompactProtocol(new TIOStreamTransport(os)));
+
+            KeyedValues read = new KeyedValues();
+            read.read(new TCompactProtocol(new TIOStreamTransport(
+                    new ByteArrayInputStream(os.toByteArray()))));
+            assertEquals(encode, read.isSetEncodedValues());
+            assertTrue(Arrays.equals(key.get(), read.getKey()));
+            assertValuesEqual(values, TProtocolUtil.getVersionedList(read));
+        }
+    }
+}